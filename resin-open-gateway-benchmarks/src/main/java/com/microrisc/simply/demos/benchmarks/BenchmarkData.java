@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.simply.demos.benchmarks;
+
+import com.microrisc.simply.demos.config.DeviceInfo;
+import com.microrisc.simply.demos.monitoring.DataToPublish;
+import com.microrisc.simply.devices.protronix.dpa22x.types.CO2SensorData;
+import com.microrisc.simply.devices.protronix.dpa22x.types.VOCSensorData;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generates input data of benchmarks for networks of specified size.
+ * Odd nodes carry CO2 sensors, even nodes carry VOC sensors.
+ */
+final class BenchmarkData {
+    
+    // not instantiable
+    private BenchmarkData() {}
+    
+    // returns type of device on specified node
+    private static String deviceType(int nodeId) {
+        return ( nodeId % 2 == 1 )? "co2-t-h" : "voc-t-h";
+    }
+    
+    /**
+     * Returns information about devices on nodes 1 to {@code nodes}.
+     */
+    static Map<Integer, DeviceInfo> devicesInfo(int nodes) {
+        Map<Integer, DeviceInfo> devicesInfo = new HashMap<>();
+        for ( int nodeId = 1; nodeId <= nodes; nodeId++ ) {
+            devicesInfo.put(nodeId, new DeviceInfo(nodeId, "protronix", deviceType(nodeId)));
+        }
+        return devicesInfo;
+    }
+    
+    /**
+     * Returns data obtained from sensors on nodes 1 to {@code nodes}.
+     */
+    static Map<String, DataToPublish> sensorData(int nodes) {
+        Map<String, DataToPublish> sensorData = new LinkedHashMap<>();
+        for ( int nodeId = 1; nodeId <= nodes; nodeId++ ) {
+            Object data = deviceType(nodeId).equals("co2-t-h")
+                    ? new CO2SensorData(400 + nodeId, 21.5f, 45.2f)
+                    : new VOCSensorData(100 + nodeId, 22.3f, 51.7f);
+            sensorData.put(
+                    String.valueOf(nodeId), 
+                    new DataToPublish(data, -60 - (nodeId % 30), System.currentTimeMillis())
+            );
+        }
+        return sensorData;
+    }
+    
+    /**
+     * Returns application configuration in JSON with nodes 1 to {@code nodes}.
+     */
+    static String applicationConfigurationJson(int nodes) {
+        StringBuilder json = new StringBuilder()
+                .append("{\"pollingPeriod\":30, \"communicationInterface\":\"cdc\",")
+                .append("\"dpaBridge\":{\"enabled\":true, \"requestTimeout\":5000},")
+                .append("\"metrics\":{\"httpPort\":9100, \"httpBindAddress\":\"0.0.0.0\", \"publishPeriod\":60},")
+                .append("\"radio\":{\"idleGap\":500,")
+                .append("\"command\":{\"queueCapacity\":16, \"rate\":2, \"burst\":4},")
+                .append("\"telemetry\":{\"queueCapacity\":8, \"rate\":0, \"burst\":1},")
+                .append("\"maintenance\":{\"queueCapacity\":32, \"rate\":0, \"burst\":1}},")
+                .append("\"devices\":[");
+        for ( int nodeId = 1; nodeId <= nodes; nodeId++ ) {
+            if ( nodeId > 1 ) {
+                json.append(',');
+            }
+            json.append("{\"device\":").append(nodeId)
+                .append(", \"manufacturer\":\"protronix\", \"type\":\"")
+                .append(deviceType(nodeId)).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
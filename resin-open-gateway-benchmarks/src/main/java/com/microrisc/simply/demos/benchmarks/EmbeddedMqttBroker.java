@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal in-process MQTT 3.1.1 broker listening on the loopback interface.
+ * <p>
+ * The broker accepts connections, acknowledges published messages on all
+ * QoS levels, subscriptions and pings. It doesn't route messages anywhere -
+ * it only records time of arrival of each published message and counts bytes
+ * received and sent.
+ */
+final class EmbeddedMqttBroker {
+    
+    // packet types
+    private static final int CONNECT = 1;
+    private static final int PUBLISH = 3;
+    private static final int PUBREL = 6;
+    private static final int SUBSCRIBE = 8;
+    private static final int UNSUBSCRIBE = 10;
+    private static final int PINGREQ = 12;
+    private static final int DISCONNECT = 14;
+    
+    // input stream counting read bytes
+    private final class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if ( b >= 0 ) {
+                bytesReceived.incrementAndGet();
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if ( read > 0 ) {
+                bytesReceived.addAndGet(read);
+            }
+            return read;
+        }
+    }
+    
+    private final ServerSocket serverSocket;
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    
+    // times of arrival of published messages [System.nanoTime()]
+    private final List<Long> arrivals = new ArrayList<>();
+    
+    
+    /**
+     * Starts the broker on free port of the loopback interface.
+     */
+    EmbeddedMqttBroker() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "embedded-broker");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+    
+    // accepts connections until the broker is closed
+    private void accept() {
+        while ( !serverSocket.isClosed() ) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch ( IOException ex ) {
+                return;
+            }
+            Thread connection = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            }, "embedded-broker-connection");
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+    
+    // serves one client connection
+    private void serve(Socket socket) {
+        try ( Socket s = socket ) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(
+                    new CountingInputStream(new BufferedInputStream(s.getInputStream()))
+            );
+            OutputStream out = new BufferedOutputStream(s.getOutputStream());
+            
+            while ( true ) {
+                int header = in.read();
+                if ( header < 0 ) {
+                    return;
+                }
+                byte[] body = new byte[readRemainingLength(in)];
+                in.readFully(body);
+                
+                int type = header >> 4;
+                switch ( type ) {
+                    case CONNECT:
+                        write(out, 0x20, 0x00, 0x00);
+                        break;
+                    case PUBLISH:
+                        recordArrival();
+                        int qos = (header >> 1) & 0x03;
+                        if ( qos > 0 ) {
+                            int topicLength = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+                            int msgIdHigh = body[2 + topicLength] & 0xFF;
+                            int msgIdLow = body[3 + topicLength] & 0xFF;
+                            write(out, ( qos == 1 )? 0x40 : 0x50, msgIdHigh, msgIdLow);
+                        }
+                        break;
+                    case PUBREL:
+                        write(out, 0x70, body[0] & 0xFF, body[1] & 0xFF);
+                        break;
+                    case SUBSCRIBE:
+                        // granted QoS 0 for each topic filter
+                        int filters = 0;
+                        for ( int i = 2; i < body.length; ) {
+                            int filterLength = ((body[i] & 0xFF) << 8) | (body[i + 1] & 0xFF);
+                            i += 2 + filterLength + 1;
+                            filters++;
+                        }
+                        int[] subAck = new int[2 + filters];
+                        subAck[0] = body[0] & 0xFF;
+                        subAck[1] = body[1] & 0xFF;
+                        write(out, 0x90, subAck);
+                        break;
+                    case UNSUBSCRIBE:
+                        write(out, 0xB0, body[0] & 0xFF, body[1] & 0xFF);
+                        break;
+                    case PINGREQ:
+                        write(out, 0xD0);
+                        break;
+                    case DISCONNECT:
+                        return;
+                    default:
+                        break;
+                }
+            }
+        } catch ( IOException ex ) {
+            // connection closed
+        }
+    }
+    
+    // reads variable length encoded remaining length
+    private static int readRemainingLength(InputStream in) throws IOException {
+        int length = 0;
+        int multiplier = 1;
+        int encoded;
+        do {
+            encoded = in.read();
+            if ( encoded < 0 ) {
+                throw new EOFException();
+            }
+            length += (encoded & 0x7F) * multiplier;
+            multiplier *= 128;
+        } while ( (encoded & 0x80) != 0 );
+        return length;
+    }
+    
+    // writes packet with specified header and short body
+    private void write(OutputStream out, int header, int... body) throws IOException {
+        out.write(header);
+        out.write(body.length);
+        for ( int b : body ) {
+            out.write(b);
+        }
+        out.flush();
+        bytesSent.addAndGet(2 + body.length);
+    }
+    
+    // records arrival of published message
+    private void recordArrival() {
+        long now = System.nanoTime();
+        synchronized ( arrivals ) {
+            arrivals.add(now);
+            arrivals.notifyAll();
+        }
+    }
+    
+    /**
+     * Returns address the broker listens on.
+     */
+    String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+    
+    /**
+     * Returns port the broker listens on.
+     */
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    /**
+     * Returns and clears times of arrival of messages published so far.
+     */
+    List<Long> takeArrivals() {
+        synchronized ( arrivals ) {
+            List<Long> taken = new ArrayList<>(arrivals);
+            arrivals.clear();
+            return taken;
+        }
+    }
+    
+    /**
+     * Waits until specified number of messages has arrived since the last 
+     * taking of arrivals, at most for specified timeout [in ms].
+     * Returns false if the messages have not arrived in time.
+     */
+    boolean awaitArrivals(int count, long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized ( arrivals ) {
+            while ( arrivals.size() < count ) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if ( remaining <= 0 ) {
+                    return false;
+                }
+                arrivals.wait(remaining);
+            }
+            return true;
+        }
+    }
+    
+    long getBytesReceived() {
+        return bytesReceived.get();
+    }
+    
+    long getBytesSent() {
+        return bytesSent.get();
+    }
+    
+    /**
+     * Stops the broker.
+     */
+    void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.benchmarks;
+
+import com.microrisc.simply.demos.config.DeviceInfo;
+import com.microrisc.simply.demos.config.SinkConfiguration;
+import com.microrisc.simply.demos.metrics.MetricsRegistry;
+import com.microrisc.simply.demos.monitoring.DataToPublish;
+import com.microrisc.simply.demos.monitoring.MqttFormConverter;
+import com.microrisc.simply.demos.mqtt.MqttCommunicator;
+import com.microrisc.simply.demos.mqtt.MqttConfiguration;
+import com.microrisc.simply.demos.sink.MqttSink;
+import com.microrisc.simply.demos.sink.Reading;
+import com.microrisc.simply.demos.sink.SinkDispatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark of the publish path of the gateway against an
+ * in-process MQTT broker.
+ * <p>
+ * Each cycle acquires data of all nodes one by one. Data of each node are 
+ * converted into MQTT messages by the same converter as the application and 
+ * passed as a reading to {@link SinkDispatcher}, which publishes them by 
+ * {@link MqttSink} through {@link MqttCommunicator}. Reports messages per 
+ * second, bytes on the wire and percentiles of latency from acquisition of 
+ * data of a node to arrival of its message to the broker.
+ * <p>
+ * Arguments in form {@code name=value}, all optional:
+ * <ul>
+ *  <li>{@code nodes} - number of nodes [239]</li>
+ *  <li>{@code qos} - QoS of published messages [2]</li>
+ *  <li>{@code format} - {@code senml} for message per quantity as the application
+ *      publishes, {@code senml-pack} for one message per node [senml]</li>
+ *  <li>{@code cycles} - number of measured cycles [20]</li>
+ *  <li>{@code warmup} - number of warm-up cycles [5]</li>
+ *  <li>{@code radioDelay} - emulated radio time of acquisition from one node [in ms, 0]</li>
+ * </ul>
+ */
+public final class EndToEndBenchmark {
+    
+    // maximal time to wait for messages of measured cycles to arrive [in ms]
+    private static final long ARRIVAL_TIMEOUT = 60000;
+    
+    // maximal time to wait for free space in the queue of the sink [in ms]
+    private static final long OFFER_TIMEOUT = 60000;
+    
+    // time to stop the dispatcher [in ms]
+    private static final long STOP_TIMEOUT = 5000;
+    
+    // parameters
+    private final int nodes;
+    private final int qos;
+    private final String format;
+    private final int cycles;
+    private final int warmup;
+    private final long radioDelay;
+    
+    private final EmbeddedMqttBroker broker;
+    private final MqttCommunicator mqttCommunicator;
+    private final Map<Integer, DeviceInfo> devicesInfo;
+    private final MqttFormConverter converter;
+    private final SinkDispatcher sinkDispatcher;
+    
+    // times of acquisition of published messages, in order of publishing
+    private final List<Long> acquisitions = new ArrayList<>();
+    
+    
+    private EndToEndBenchmark(Map<String, String> params) throws Exception {
+        this.nodes = Integer.parseInt(param(params, "nodes", "239"));
+        this.qos = Integer.parseInt(param(params, "qos", "2"));
+        this.format = param(params, "format", "senml");
+        this.cycles = Integer.parseInt(param(params, "cycles", "20"));
+        this.warmup = Integer.parseInt(param(params, "warmup", "5"));
+        this.radioDelay = Long.parseLong(param(params, "radioDelay", "0"));
+        
+        if ( !format.equals("senml") && !format.equals("senml-pack") ) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+        
+        this.broker = new EmbeddedMqttBroker();
+        this.mqttCommunicator = new MqttCommunicator(new MqttConfiguration(
+                "tcp://", broker.getHost(), broker.getPort(), "e2e-benchmark", "benchmark", 
+                true, true, false, "", "", "", ""
+        ));
+        this.devicesInfo = BenchmarkData.devicesInfo(nodes);
+        this.converter = new MqttFormConverter(devicesInfo, Collections.<String, String>emptyMap());
+        
+        // the queue blocks instead of dropping, so that messages arrive in 
+        // the order of acquisition
+        this.sinkDispatcher = new SinkDispatcher(MetricsRegistry.getDefault(), null);
+        this.sinkDispatcher.addSink(
+                new SinkConfiguration(
+                        "mqtt", "mqtt", SinkConfiguration.DEFAULT_QUEUE_CAPACITY, 
+                        SinkConfiguration.OverflowPolicy.BLOCK, OFFER_TIMEOUT, 
+                        Collections.<String, Object>emptyMap()
+                ),
+                new MqttSink(mqttCommunicator, qos)
+        );
+    }
+    
+    // returns value of specified parameter
+    private static String param(Map<String, String> params, String name, String defaultValue) {
+        String value = params.get(name);
+        return ( value != null )? value : defaultValue;
+    }
+    
+    // merges SenML messages of one node into single message
+    private static String pack(List<String> messages) {
+        StringBuilder packed = new StringBuilder("{\"e\":[");
+        String baseName = "";
+        for ( int i = 0; i < messages.size(); i++ ) {
+            String message = messages.get(i);
+            int start = message.indexOf('[') + 1;
+            int end = message.lastIndexOf(']');
+            if ( i > 0 ) {
+                packed.append(',');
+            }
+            packed.append(message, start, end);
+            baseName = message.substring(end + 1, message.length() - 1);
+        }
+        return packed.append(']').append(baseName).append('}').toString();
+    }
+    
+    // runs one cycle - data of each node are passed to the sink right after 
+    // their acquisition as the application does
+    private void runCycle() throws Exception {
+        Map<String, DataToPublish> allData = BenchmarkData.sensorData(nodes);
+        
+        for ( Map.Entry<String, DataToPublish> entry : allData.entrySet() ) {
+            if ( radioDelay > 0 ) {
+                Thread.sleep(radioDelay);
+            }
+            long acquisitionTime = System.nanoTime();
+            
+            int nodeId = Integer.parseInt(entry.getKey());
+            DataToPublish dataToPublish = entry.getValue();
+            List<String> messages = converter.toMqttForm(nodeId, dataToPublish);
+            if ( format.equals("senml-pack") ) {
+                messages = Arrays.asList(pack(messages));
+            }
+            for ( int i = 0; i < messages.size(); i++ ) {
+                acquisitions.add(acquisitionTime);
+            }
+            sinkDispatcher.publish(new Reading(
+                    "benchmark", nodeId, null, devicesInfo.get(nodeId).getType(),
+                    dataToPublish.getTimestamp(), Collections.<String, Number>emptyMap(),
+                    "benchmark/std/sensors/protronix/" + nodeId, messages
+            ));
+        }
+    }
+    
+    // returns specified percentile of sorted values
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+    
+    // runs the benchmark and prints the report
+    private void run() throws Exception {
+        for ( int i = 0; i < warmup; i++ ) {
+            runCycle();
+        }
+        
+        // wait for messages in flight of warm-up cycles
+        broker.awaitArrivals(acquisitions.size(), ARRIVAL_TIMEOUT);
+        broker.takeArrivals();
+        acquisitions.clear();
+        long bytesStart = broker.getBytesReceived() + broker.getBytesSent();
+        
+        long start = System.nanoTime();
+        for ( int i = 0; i < cycles; i++ ) {
+            runCycle();
+        }
+        long cyclesElapsed = System.nanoTime() - start;
+        
+        // throughput includes delivery of messages still waiting in the sink
+        if ( !broker.awaitArrivals(acquisitions.size(), ARRIVAL_TIMEOUT) ) {
+            System.out.println("Not all messages arrived in time");
+        }
+        long elapsed = System.nanoTime() - start;
+        List<Long> arrivals = broker.takeArrivals();
+        long bytes = broker.getBytesReceived() + broker.getBytesSent() - bytesStart;
+        
+        int messages = Math.min(arrivals.size(), acquisitions.size());
+        long[] latencies = new long[messages];
+        for ( int i = 0; i < messages; i++ ) {
+            latencies[i] = arrivals.get(i) - acquisitions.get(i);
+        }
+        Arrays.sort(latencies);
+        
+        double seconds = elapsed / 1e9;
+        System.out.printf("nodes=%d qos=%d format=%s cycles=%d radioDelay=%d ms%n", 
+                nodes, qos, format, cycles, radioDelay);
+        System.out.printf("messages published:  %d (arrived %d)%n", acquisitions.size(), arrivals.size());
+        System.out.printf("throughput:          %.1f msg/s%n", acquisitions.size() / seconds);
+        System.out.printf("bytes on the wire:   %d (%.1f per message)%n", bytes, (double) bytes / Math.max(1, messages));
+        System.out.printf("cycle time:          %.2f ms%n", cyclesElapsed / 1e6 / cycles);
+        if ( messages > 0 ) {
+            System.out.printf("latency p50:         %.3f ms%n", percentile(latencies, 50) / 1e6);
+            System.out.printf("latency p99:         %.3f ms%n", percentile(latencies, 99) / 1e6);
+            System.out.printf("latency max:         %.3f ms%n", latencies[messages - 1] / 1e6);
+        }
+    }
+    
+    // releases the dispatcher, the communicator and the broker
+    private void close() throws Exception {
+        sinkDispatcher.stop(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_TIMEOUT));
+        mqttCommunicator.disconnect();
+        broker.close();
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = new HashMap<>();
+        for ( String arg : args ) {
+            int separator = arg.indexOf('=');
+            if ( separator < 0 ) {
+                throw new IllegalArgumentException("Argument not in form name=value: " + arg);
+            }
+            params.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        
+        EndToEndBenchmark benchmark = new EndToEndBenchmark(params);
+        try {
+            benchmark.run();
+        } finally {
+            benchmark.close();
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.simply.demos.benchmarks;
+
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+/**
+ * MQTT client, which never connects to any broker. Published messages are
+ * only counted.
+ */
+final class FakeMqttClient extends MqttClient {
+    
+    private long publishedMessages = 0;
+    private long publishedBytes = 0;
+    
+    FakeMqttClient() throws MqttException {
+        super("tcp://localhost:1883", "benchmark", new MemoryPersistence());
+    }
+    
+    @Override
+    public void publish(String topic, MqttMessage message) throws MqttException {
+        publishedMessages++;
+        publishedBytes += message.getPayload().length;
+    }
+    
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+    
+    long getPublishedMessages() {
+        return publishedMessages;
+    }
+    
+    long getPublishedBytes() {
+        return publishedBytes;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.simply.demos.benchmarks;
+
+import com.microrisc.simply.demos.monitoring.DataToPublish;
+import com.microrisc.simply.demos.monitoring.MqttFormConverter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of transformation of data of one acquisition cycle into MQTT messages.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MqttFormConverterBenchmark {
+    
+    @Param({ "10", "100", "239" })
+    public int nodes;
+    
+    private MqttFormConverter converter;
+    private Map<String, DataToPublish> sensorData;
+    
+    @Setup
+    public void setup() {
+        converter = new MqttFormConverter(
+                BenchmarkData.devicesInfo(nodes), Collections.<String, String>emptyMap()
+        );
+        sensorData = BenchmarkData.sensorData(nodes);
+    }
+    
+    @Benchmark
+    public Map<String, List<String>> toMqttForm() {
+        return converter.toMqttForm(sensorData);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.simply.demos.benchmarks;
+
+import com.microrisc.simply.demos.mqtt.MqttFormatter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of encodings of {@link MqttFormatter}.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MqttFormatterBenchmark {
+    
+    private final String value = "21.5";
+    private final String moduleId = "8100401F";
+    private final long timestamp = 1466000000123L;
+    private final short[] responseData = { 0x01, 0x02, 0x7F, 0x80, 0xFF };
+    
+    @Benchmark
+    public String formatCO2() {
+        return MqttFormatter.formatCO2(value, moduleId, timestamp);
+    }
+    
+    @Benchmark
+    public String formatTemperature() {
+        return MqttFormatter.formatTemperature(value, moduleId, timestamp);
+    }
+    
+    @Benchmark
+    public String formatRssi() {
+        return MqttFormatter.formatRssi("-62", moduleId, timestamp);
+    }
+    
+    @Benchmark
+    public String formatError() {
+        return MqttFormatter.formatError("Error: TIMEOUT, \"node\" not responding");
+    }
+    
+    @Benchmark
+    public String formatDpaResponse() {
+        return MqttFormatter.formatDpaResponse(
+                "42", 1, 0x0C, 0x02, "ok", "NO_ERROR", -62, responseData, null
+        );
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.simply.demos.benchmarks;
+
+import com.microrisc.simply.demos.mqtt.MqttCommunicator;
+import com.microrisc.simply.demos.mqtt.MqttFormatter;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the overhead of {@link MqttCommunicator#publish} over
+ * an in-process fake client, which never touches the network.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MqttPublishBenchmark {
+    
+    @Param({ "0", "1", "2" })
+    public int qos;
+    
+    private MqttCommunicator mqttCommunicator;
+    private byte[] payload;
+    
+    @Setup
+    public void setup() throws MqttException {
+        mqttCommunicator = new MqttCommunicator(new FakeMqttClient(), true);
+        payload = MqttFormatter.formatCO2("812", "8100401F", System.currentTimeMillis()).getBytes();
+    }
+    
+    @Benchmark
+    public void publish() throws MqttException {
+        mqttCommunicator.publish("gw/std/sensors/protronix/1", qos, payload);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.bridge;
+
+import java.util.Arrays;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Raw DPA request received over MQTT.
+ * <p>
+ * JSON form of the request: <br>
+ * {@code {"msgid":"1", "nadr":1, "pnum":12, "pcmd":2, "hwpid":65535, "data":[10,1,2], "timeout":2000}}
+ * <br>
+ * Items {@code hwpid}, {@code data} and {@code timeout} are optional.
+ */
+public final class DpaRequest {
+
+    /** HW profile ID matching any HW profile. */
+    public static final int HWPID_ANY = 0xFFFF;
+
+    /** Indicates, that the default timeout should be used. */
+    public static final long TIMEOUT_DEFAULT = -1;
+    
+    /** Maximal timeout [in ms]. */
+    public static final long TIMEOUT_MAX = 60000;
+    
+    // maximal values of items of the request
+    private static final int NADR_MAX = 0xEF;
+    private static final int PNUM_MAX = 0xFF;
+    private static final int PCMD_MAX = 0x7F;
+    private static final int HWPID_MAX = 0xFFFF;
+
+    private final String msgId;
+    private final int nodeAddress;
+    private final int peripheral;
+    private final int command;
+    private final int hwpid;
+    private final short[] data;
+    private final long timeout;
+
+    // key of identical requests
+    private final String key;
+
+
+    /**
+     * Creates new DPA request.
+     * @param msgId ID of the message, the request has arrived in
+     * @param nodeAddress address of the destination node
+     * @param peripheral peripheral number
+     * @param command peripheral command
+     * @param hwpid HW profile ID
+     * @param data request data
+     * @param timeout timeout [in ms] not greater than {@link #TIMEOUT_MAX} or 
+     *        {@link #TIMEOUT_DEFAULT}
+     */
+    public DpaRequest(
+            String msgId, int nodeAddress, int peripheral, int command, int hwpid,
+            short[] data, long timeout
+    ) {
+        checkRange("nadr", nodeAddress, 0, NADR_MAX);
+        checkRange("pnum", peripheral, 0, PNUM_MAX);
+        checkRange("pcmd", command, 0, PCMD_MAX);
+        checkRange("hwpid", hwpid, 0, HWPID_MAX);
+        if ( timeout != TIMEOUT_DEFAULT ) {
+            checkRange("timeout", timeout, 0, TIMEOUT_MAX);
+        }
+
+        this.msgId = msgId;
+        this.nodeAddress = nodeAddress;
+        this.peripheral = peripheral;
+        this.command = command;
+        this.hwpid = hwpid;
+        this.data = data.clone();
+        this.timeout = timeout;
+        this.key = nodeAddress + ":" + peripheral + ":" + command + ":" + hwpid + ":"
+                + Arrays.toString(data);
+    }
+
+    // checks, if the value is within specified interval
+    private static void checkRange(String name, long value, long min, long max) {
+        if ( value < min || value > max ) {
+            throw new IllegalArgumentException(
+                    "Value of " + name + " out of range [" + min + ", " + max + "]: " + value
+            );
+        }
+    }
+
+    // returns value of specified number item, or default value if not present
+    private static long getNumber(JSONObject jsonObject, String name, long defaultValue) {
+        Object value = jsonObject.get(name);
+        if ( value == null ) {
+            return defaultValue;
+        }
+        if ( !(value instanceof Number) ) {
+            throw new IllegalArgumentException("Item " + name + " is not a number: " + value);
+        }
+        return ((Number) value).longValue();
+    }
+
+    // returns value of specified mandatory number item
+    private static long getNumber(JSONObject jsonObject, String name) {
+        if ( jsonObject.get(name) == null ) {
+            throw new IllegalArgumentException("Missing item: " + name);
+        }
+        return getNumber(jsonObject, name, 0);
+    }
+    
+    // returns HW profile ID of the request, HWPID_ANY if it is not present
+    private static int getOptionalHwpid(JSONObject jsonObject) {
+        return ( jsonObject.get("hwpid") == null )? HWPID_ANY : getInt(jsonObject, "hwpid", HWPID_MAX);
+    }
+    
+    // returns value of specified number item checked to be within the interval
+    // from 0 to max, the check is done before narrowing to int
+    private static int getInt(JSONObject jsonObject, String name, int max) {
+        long value = getNumber(jsonObject, name);
+        checkRange(name, value, 0, max);
+        return (int) value;
+    }
+
+    /**
+     * Parses DPA request from its JSON form.
+     * @param json JSON form of the request
+     * @return parsed request
+     * @throws ParseException if {@code json} is not valid JSON
+     * @throws IllegalArgumentException if some item is missing or invalid
+     */
+    public static DpaRequest fromJson(String json) throws ParseException {
+        Object parsed = JSONValue.parseWithException(json);
+        if ( !(parsed instanceof JSONObject) ) {
+            throw new IllegalArgumentException("Request is not a JSON object");
+        }
+        JSONObject jsonObject = (JSONObject) parsed;
+
+        Object msgId = jsonObject.get("msgid");
+        if ( msgId == null ) {
+            throw new IllegalArgumentException("Missing item: msgid");
+        }
+
+        short[] data = new short[0];
+        Object dataObject = jsonObject.get("data");
+        if ( dataObject != null ) {
+            if ( !(dataObject instanceof JSONArray) ) {
+                throw new IllegalArgumentException("Item data is not an array");
+            }
+            JSONArray dataArray = (JSONArray) dataObject;
+            data = new short[dataArray.size()];
+            for ( int i = 0; i < data.length; i++ ) {
+                Object item = dataArray.get(i);
+                if ( !(item instanceof Number) ) {
+                    throw new IllegalArgumentException("Data item is not a number: " + item);
+                }
+                long value = ((Number) item).longValue();
+                checkRange("data[" + i + "]", value, 0, 0xFF);
+                data[i] = (short) value;
+            }
+        }
+
+        return new DpaRequest(
+                String.valueOf(msgId),
+                getInt(jsonObject, "nadr", NADR_MAX),
+                getInt(jsonObject, "pnum", PNUM_MAX),
+                getInt(jsonObject, "pcmd", PCMD_MAX),
+                getOptionalHwpid(jsonObject),
+                data,
+                getNumber(jsonObject, "timeout", TIMEOUT_DEFAULT)
+        );
+    }
+
+    /**
+     * @return ID of the message, the request has arrived in
+     */
+    public String getMsgId() {
+        return msgId;
+    }
+
+    /**
+     * @return address of the destination node
+     */
+    public int getNodeAddress() {
+        return nodeAddress;
+    }
+
+    /**
+     * @return peripheral number
+     */
+    public int getPeripheral() {
+        return peripheral;
+    }
+
+    /**
+     * @return peripheral command
+     */
+    public int getCommand() {
+        return command;
+    }
+
+    /**
+     * @return HW profile ID
+     */
+    public int getHwpid() {
+        return hwpid;
+    }
+
+    /**
+     * @return request data
+     */
+    public short[] getData() {
+        return data.clone();
+    }
+
+    /**
+     * @return timeout [in ms] or {@link #TIMEOUT_DEFAULT}
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns key of the request. Requests with the same key differ only in
+     * their message IDs and timeouts and their radio transactions are
+     * therefore identical.
+     * @return key of the request
+     */
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.bridge;
+
+import com.microrisc.simply.CallRequestProcessingState;
+import static com.microrisc.simply.CallRequestProcessingState.ERROR;
+import com.microrisc.simply.Network;
+import com.microrisc.simply.Node;
+import com.microrisc.simply.demos.concurrent.Threads;
+import com.microrisc.simply.demos.config.DpaBridgeConfiguration;
+import com.microrisc.simply.demos.metrics.MetricsRegistry;
+import com.microrisc.simply.demos.mqtt.MqttCommunicator;
+import com.microrisc.simply.demos.mqtt.MqttFormatter;
+import com.microrisc.simply.demos.mqtt.MqttMessageHandler;
+import com.microrisc.simply.demos.mqtt.MqttTopics;
+import com.microrisc.simply.demos.radio.RadioArbiter;
+import com.microrisc.simply.demos.radio.RadioPriority;
+import com.microrisc.simply.errors.CallRequestProcessingError;
+import com.microrisc.simply.iqrf.dpa.v22x.devices.Custom;
+import com.microrisc.simply.iqrf.dpa.v22x.types.DPA_AdditionalInfo;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bridge of raw DPA requests received over MQTT into the DPA network.
+ * <p>
+ * Requests are received on the DPA requests topic. Each accepted request is
+ * confirmed on the DPA confirmations topic and submitted to the radio arbiter
+ * as a command. After its execution, the result is published on the DPA
+ * responses topic.
+ * <p>
+ * Request identical to some outstanding request is not submitted again - it is
+ * coalesced with the outstanding one and gets the same response. If the queue
+ * of commands of the radio arbiter is full, request is rejected.
+ * <p>
+ * Requests are executed by means of the {@link Custom} device object of the
+ * destination node, so the node must have some user peripheral enabled in
+ * the peripheral distribution.
+ */
+public final class DpaRequestBridge implements MqttMessageHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(DpaRequestBridge.class);
+
+    // QoS of published confirmations and responses
+    private static final int PUBLISH_QOS = 2;
+
+    // result of execution of a request
+    private static final class Result {
+        final String status;
+        final String responseCode;
+        final Integer dpaValue;
+        final short[] data;
+        final String error;
+
+        Result(String status, String responseCode, Integer dpaValue, short[] data, String error) {
+            this.status = status;
+            this.responseCode = responseCode;
+            this.dpaValue = dpaValue;
+            this.data = data;
+            this.error = error;
+        }
+    }
+
+    // request waiting for or being in execution, together with message IDs
+    // of all requests coalesced with it
+    private final class OutstandingRequest implements Runnable {
+        final DpaRequest request;
+        final List<String> msgIds = new ArrayList<>();
+        Future<?> future;
+
+        OutstandingRequest(DpaRequest request) {
+            this.request = request;
+            this.msgIds.add(request.getMsgId());
+        }
+
+        @Override
+        public void run() {
+            Result result = null;
+            List<String> resultMsgIds;
+            try {
+                result = execute(request);
+            } catch ( RuntimeException ex ) {
+                log.error("Execution of DPA request {} failed", request.getMsgId(), ex);
+                result = new Result("error", null, null, null, String.valueOf(ex));
+            } finally {
+                synchronized ( outstandingRequests ) {
+                    if ( outstandingRequests.get(request.getKey()) == this ) {
+                        outstandingRequests.remove(request.getKey());
+                    }
+                    resultMsgIds = new ArrayList<>(msgIds);
+                }
+                for ( String msgId : resultMsgIds ) {
+                    publishResponse(msgId, request, result);
+                }
+            }
+        }
+    }
+
+    private final Network network;
+    private final MqttCommunicator mqttCommunicator;
+    private final MqttTopics mqttTopics;
+    private final RadioArbiter radioArbiter;
+    private final long defaultTimeout;
+
+    // outstanding requests indexed by their keys
+    private final Map<String, OutstandingRequest> outstandingRequests = new HashMap<>();
+
+    // publishing of confirmations and responses - never from the MQTT callback thread
+    private final ExecutorService publishExecutor = Threads.newSingleThreadExecutor("dpa-bridge-publisher");
+
+
+    /**
+     * Creates new bridge.
+     * @param network DPA network to execute requests in
+     * @param mqttCommunicator MQTT communicator
+     * @param mqttTopics MQTT topics
+     * @param radioArbiter arbiter of access to the radio of the network
+     * @param configuration bridge configuration
+     */
+    public DpaRequestBridge(
+            Network network, MqttCommunicator mqttCommunicator, MqttTopics mqttTopics,
+            RadioArbiter radioArbiter, DpaBridgeConfiguration configuration
+    ) {
+        this.network = network;
+        this.mqttCommunicator = mqttCommunicator;
+        this.mqttTopics = mqttTopics;
+        this.radioArbiter = radioArbiter;
+        this.defaultTimeout = configuration.getRequestTimeout();
+    }
+
+    /**
+     * Starts receiving of DPA requests.
+     * @throws MqttException if subscription to the requests topic failed
+     */
+    public void start() throws MqttException {
+        mqttCommunicator.subscribe(mqttTopics.getStdSensorsProtronixDpaRequests(), PUBLISH_QOS, this);
+    }
+
+    /**
+     * Stops receiving of DPA requests and publishing of confirmations and responses.
+     * Outstanding requests are cancelled and their requesters get the cancelled 
+     * response.
+     */
+    public void destroy() {
+        try {
+            mqttCommunicator.unsubscribe(mqttTopics.getStdSensorsProtronixDpaRequests());
+        } catch ( MqttException ex ) {
+            log.warn("Unsubscribing from DPA requests failed: {}", ex.toString());
+        }
+        
+        Result cancelled = new Result("cancelled", null, null, null, "Bridge stopped");
+        synchronized ( outstandingRequests ) {
+            for ( OutstandingRequest outstanding : outstandingRequests.values() ) {
+                outstanding.future.cancel(false);
+                for ( String msgId : outstanding.msgIds ) {
+                    publishResponse(msgId, outstanding.request, cancelled);
+                }
+                // request already in execution must not respond again
+                outstanding.msgIds.clear();
+            }
+            outstandingRequests.clear();
+        }
+        publishExecutor.shutdown();
+    }
+
+    @Override
+    public void handleMessage(String topic, MqttMessage message) {
+        DpaRequest request = null;
+        try {
+            request = DpaRequest.fromJson(new String(message.getPayload()));
+        } catch ( ParseException ex ) {
+            log.warn("Malformed DPA request: {}", ex.toString());
+            publishConfirmation(null, "rejected", "Malformed JSON: " + ex);
+            return;
+        } catch ( IllegalArgumentException ex ) {
+            log.warn("Invalid DPA request: {}", ex.getMessage());
+            publishConfirmation(null, "rejected", ex.getMessage());
+            return;
+        }
+        submit(request);
+    }
+
+    /**
+     * Submits specified request for execution.
+     * @param request request to submit
+     */
+    public void submit(DpaRequest request) {
+        String status;
+        synchronized ( outstandingRequests ) {
+            OutstandingRequest outstanding = outstandingRequests.get(request.getKey());
+            if ( outstanding != null ) {
+                outstanding.msgIds.add(request.getMsgId());
+                status = "coalesced";
+            } else {
+                outstanding = new OutstandingRequest(request);
+                try {
+                    outstanding.future = radioArbiter.submit(RadioPriority.COMMAND, outstanding);
+                    outstandingRequests.put(request.getKey(), outstanding);
+                    status = "queued";
+                } catch ( RejectedExecutionException ex ) {
+                    status = "rejected";
+                }
+            }
+        }
+
+        MetricsRegistry.getDefault().counter(
+                "dpa_bridge_requests_total", "Number of DPA requests received over MQTT.",
+                "status", status
+        ).inc();
+
+        if ( status.equals("rejected") ) {
+            publishConfirmation(request.getMsgId(), status, "Radio queue full");
+        } else {
+            publishConfirmation(request.getMsgId(), status, null);
+        }
+    }
+
+    // executes specified request in the network
+    private Result execute(DpaRequest request) {
+        Node node = network.getNode(String.valueOf(request.getNodeAddress()));
+        if ( node == null ) {
+            return new Result("error", null, null, null, "Node not found");
+        }
+
+        Custom custom = node.getDeviceObject(Custom.class);
+        if ( custom == null ) {
+            return new Result("error", null, null, null, "Custom peripheral not available on node");
+        }
+
+        custom.setRequestHwProfile(request.getHwpid());
+        custom.setDefaultWaitingTimeout(
+                (request.getTimeout() == DpaRequest.TIMEOUT_DEFAULT) ? defaultTimeout : request.getTimeout()
+        );
+
+        short[] responseData = custom.send(
+                (short) request.getPeripheral(), (short) request.getCommand(), request.getData()
+        );
+
+        DPA_AdditionalInfo addInfo = custom.getDPA_AdditionalInfoOfLastCall();
+        String responseCode = (addInfo != null)? String.valueOf(addInfo.getResponseCode()) : null;
+        Integer dpaValue = (addInfo != null)? addInfo.getDPA_Value() : null;
+
+        if ( responseData != null ) {
+            return new Result("ok", responseCode, dpaValue, responseData, null);
+        }
+
+        CallRequestProcessingState requestState = custom.getCallRequestProcessingStateOfLastCall();
+        if ( requestState == ERROR ) {
+            CallRequestProcessingError error = custom.getCallRequestProcessingErrorOfLastCall();
+            return new Result("error", responseCode, dpaValue, null, String.valueOf(error));
+        }
+        return new Result("error", responseCode, dpaValue, null, "Request not processed: " + requestState);
+    }
+
+    // publishes result of specified request to the requester of specified message ID
+    private void publishResponse(String msgId, DpaRequest request, Result result) {
+        publish(
+                mqttTopics.getStdSensorsProtronixDpaResponses(),
+                MqttFormatter.formatDpaResponse(
+                    msgId, request.getNodeAddress(), request.getPeripheral(), request.getCommand(),
+                    result.status, result.responseCode, result.dpaValue, result.data, result.error
+                )
+        );
+    }
+
+    // publishes confirmation of request
+    private void publishConfirmation(String msgId, String status, String error) {
+        publish(
+                mqttTopics.getStdSensorsProtronixDpaConfirmations(),
+                MqttFormatter.formatDpaConfirmation(
+                    msgId, status, radioArbiter.getQueueSize(RadioPriority.COMMAND), error
+                )
+        );
+    }
+
+    // publishes specified message asynchronously
+    private void publish(final String topic, final String message) {
+        try {
+            publishExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mqttCommunicator.publish(topic, PUBLISH_QOS, message.getBytes());
+                    } catch ( MqttException ex ) {
+                        log.error("Error while publishing to {}: {}", topic, ex.toString());
+                    }
+                }
+            });
+        } catch ( RejectedExecutionException ex ) {
+            log.warn("Bridge destroyed, message to {} not published", topic);
+        }
+    }
+}
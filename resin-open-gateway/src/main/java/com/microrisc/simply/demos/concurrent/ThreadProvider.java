@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Provider of threads for background tasks of the gateway. Implementations 
+ * are found by {@link java.util.ServiceLoader}, see {@link Threads}.
+ * <p>
+ * All created threads are daemon threads.
+ */
+public interface ThreadProvider {
+    
+    /**
+     * @return name of the provider, used in logs
+     */
+    String getName();
+    
+    /**
+     * Creates new thread, which is not started yet.
+     * @param name name of the thread
+     * @param task task to run
+     * @return created thread
+     */
+    Thread newThread(String name, Runnable task);
+    
+    /**
+     * Creates new executor running tasks one after another in the order of 
+     * their submission.
+     * @param name name of the thread of the executor
+     * @return created executor
+     */
+    ExecutorService newSingleThreadExecutor(String name);
+    
+    /**
+     * Creates new executor running scheduled tasks one after another.
+     * @param name name of the thread of the executor
+     * @return created executor
+     */
+    ScheduledExecutorService newScheduledExecutor(String name);
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.concurrent;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates threads for background tasks of the gateway through the provider 
+ * of threads.
+ * <p>
+ * The first {@link ThreadProvider} found by {@link ServiceLoader} is used,
+ * so the build for Java 21 runs background tasks on virtual threads. Platform
+ * threads can be forced by the system property {@value #PROVIDER_PROPERTY} 
+ * set to {@code platform}.
+ * <p>
+ * Threads doing DPA requests through the radio arbiter stay platform threads
+ * regardless of the provider, because requests block in native code of the
+ * communication interface.
+ */
+public final class Threads {
+    
+    private static final Logger log = LoggerFactory.getLogger(Threads.class);
+    
+    /** System property with the name of the provider to use. */
+    public static final String PROVIDER_PROPERTY = "gateway.threads";
+    
+    private static final ThreadProvider provider = loadProvider();
+    
+    // not instantiable
+    private Threads() {}
+    
+    // loads provider of threads
+    private static ThreadProvider loadProvider() {
+        String requestedName = System.getProperty(PROVIDER_PROPERTY);
+        if ( PlatformThreadProvider.NAME.equals(requestedName) ) {
+            return new PlatformThreadProvider();
+        }
+        
+        Iterator<ThreadProvider> providers = ServiceLoader.load(ThreadProvider.class).iterator();
+        while ( true ) {
+            ThreadProvider loadedProvider;
+            try {
+                if ( !providers.hasNext() ) {
+                    break;
+                }
+                loadedProvider = providers.next();
+            } catch ( ServiceConfigurationError ex ) {
+                // e.g. provider compiled for newer Java
+                log.warn("Provider of threads not available: {}", ex.toString());
+                continue;
+            }
+            if ( requestedName == null || requestedName.equals(loadedProvider.getName()) ) {
+                log.info("Using {} threads", loadedProvider.getName());
+                return loadedProvider;
+            }
+        }
+        
+        if ( requestedName != null ) {
+            log.warn("Provider of threads {} not found, using platform threads", requestedName);
+        }
+        return new PlatformThreadProvider();
+    }
+    
+    /**
+     * @return used provider of threads
+     */
+    public static ThreadProvider getProvider() {
+        return provider;
+    }
+    
+    /**
+     * Creates new daemon thread, which is not started yet.
+     * @param name name of the thread
+     * @param task task to run
+     * @return created thread
+     */
+    public static Thread newThread(String name, Runnable task) {
+        return provider.newThread(name, task);
+    }
+    
+    /**
+     * Creates new executor running tasks one after another.
+     * @param name name of the thread of the executor
+     * @return created executor
+     */
+    public static ExecutorService newSingleThreadExecutor(String name) {
+        return provider.newSingleThreadExecutor(name);
+    }
+    
+    /**
+     * Creates new executor running scheduled tasks one after another.
+     * @param name name of the thread of the executor
+     * @return created executor
+     */
+    public static ScheduledExecutorService newScheduledExecutor(String name) {
+        return provider.newScheduledExecutor(name);
+    }
+}
@@ -16,8 +16,9 @@
 
 package com.microrisc.simply.demos.config;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Holds application configuration parameters.
@@ -26,53 +27,94 @@ import java.util.Map;
  * @author Michal Konopa
  */
 public final class ApplicationConfiguration {
+    
+    /** 
+     * Default maximal duration of shutdown [in ms]. Shorter than the default 
+     * time, Docker waits for a container to stop before killing it.
+     */
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT = 8000;
+    
     private final long pollingPeriod;
-    private final String communicationInterface;
-    private final Map<Integer, DeviceInfo> devicesInfoMap;
+    private final List<NetworkConfiguration> networks;
+    private final DpaBridgeConfiguration dpaBridgeConfiguration;
+    private final RadioConfiguration radioConfiguration;
+    private final MetricsConfiguration metricsConfiguration;
+    private final List<SinkConfiguration> sinks;
+    private final long shutdownTimeout;
     
     
     /**
      * Creates new object holding information about application configuration parameters.
-     * @param pollingPeriod polling period
-     * @param communicationInterface communication interface
-     * @param devicesInfoMap info about each device
+     * @param pollingPeriod default polling period of networks
+     * @param networks configurations of networks
+     * @param dpaBridgeConfiguration configuration of MQTT to DPA requests bridge
+     * @param radioConfiguration configuration of access to the radio
+     * @param metricsConfiguration configuration of exposing of metrics
+     * @param sinks configurations of output sinks of readings
+     * @param shutdownTimeout maximal duration of shutdown [in ms]
      */
     public ApplicationConfiguration(
-            long pollingPeriod, String communicationInterface, Map<Integer, DeviceInfo> devicesInfoMap
+            long pollingPeriod, List<NetworkConfiguration> networks,
+            DpaBridgeConfiguration dpaBridgeConfiguration, RadioConfiguration radioConfiguration,
+            MetricsConfiguration metricsConfiguration, List<SinkConfiguration> sinks,
+            long shutdownTimeout
     ) {
         this.pollingPeriod = pollingPeriod;
-        this.communicationInterface = communicationInterface;
-        this.devicesInfoMap = new HashMap<>(devicesInfoMap);
+        this.networks = Collections.unmodifiableList(new ArrayList<>(networks));
+        this.dpaBridgeConfiguration = dpaBridgeConfiguration;
+        this.radioConfiguration = radioConfiguration;
+        this.metricsConfiguration = metricsConfiguration;
+        this.sinks = Collections.unmodifiableList(new ArrayList<>(sinks));
+        this.shutdownTimeout = shutdownTimeout;
     }
     
     /**
-     * @return the number of devices
+     * @return the default polling period of networks
      */
-    public long getNumberOfDevices() {
-        return devicesInfoMap.size();
+    public long getPollingPeriod() {
+        return pollingPeriod;
     }
 
     /**
-     * @return the polling period
+     * @return configurations of networks in the order of their declaration
      */
-    public long getPollingPeriod() {
-        return pollingPeriod;
+    public List<NetworkConfiguration> getNetworks() {
+        return networks;
     }
-
+    
     /**
-     * @return the communication interface
+     * @return the configuration of MQTT to DPA requests bridge
      */
-    public String getCommunicationInterface() {
-        return communicationInterface;
+    public DpaBridgeConfiguration getDpaBridgeConfiguration() {
+        return dpaBridgeConfiguration;
     }
-
+    
+    /**
+     * @return the configuration of access to the radio
+     */
+    public RadioConfiguration getRadioConfiguration() {
+        return radioConfiguration;
+    }
+    
+    /**
+     * @return the configuration of exposing of metrics
+     */
+    public MetricsConfiguration getMetricsConfiguration() {
+        return metricsConfiguration;
+    }
+    
+    /**
+     * @return configurations of output sinks of readings
+     */
+    public List<SinkConfiguration> getSinks() {
+        return sinks;
+    }
+    
     /**
-     * Returns information about devices. Information relating to device on
-     * node, at which that device resides, is at the index equal to the node ID. 
-     * @return map of information about devices on nodes
+     * @return maximal duration of shutdown [in ms]
      */
-    public Map<Integer, DeviceInfo> getDevicesInfoMap() {
-        return devicesInfoMap;
+    public long getShutdownTimeout() {
+        return shutdownTimeout;
     }
     
 }
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.config;
+
+import com.microrisc.simply.demos.mqtt.MqttConfiguration;
+import com.microrisc.simply.demos.radio.RadioPriority;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Loads application and MQTT configuration from their JSON form.
+ *
+ * @author Rostislav Spinar
+ * @author Michal Konopa
+ */
+public final class ConfigurationLoader {
+
+    /** ID of the network declared directly at the top level of application configuration. */
+    public static final String DEFAULT_NETWORK_ID = "1";
+
+    // type of device of sensors sharing one UART, which requires Modbus registers
+    private static final String COMBINED_DEVICE_TYPE = "co2-voc-t-h";
+
+    // not instantiable
+    private ConfigurationLoader() {}
+
+    /**
+     * Loads MQTT configuration.
+     * @param reader source of the configuration in JSON
+     * @return loaded configuration
+     * @throws IOException if an I/O error occurs
+     * @throws ParseException if the source is not valid JSON
+     * @throws IllegalArgumentException if MQTT version is not supported
+     */
+    public static MqttConfiguration loadMqttConfiguration(Reader reader)
+            throws IOException, ParseException
+    {
+        JSONObject jsonObject = (JSONObject) JSONValue.parseWithException(reader);
+        Object mqttVersion = jsonObject.get("mqttversion");
+        Object messageExpiry = jsonObject.get("messageexpiry");
+
+        return new MqttConfiguration(
+                (String) jsonObject.get("protocol"),
+                (String) jsonObject.get("broker"),
+                (long) jsonObject.get("port"),
+                (String) jsonObject.get("clientid"),
+                (String) jsonObject.get("gwid"),
+                (boolean) jsonObject.get("cleansession"),
+                (boolean) jsonObject.get("quitemode"),
+                (boolean) jsonObject.get("ssl"),
+                (String) jsonObject.get("certfile"),
+                (String) jsonObject.get("username"),
+                (String) jsonObject.get("password"),
+                (String) jsonObject.get("roottopic"),
+                (mqttVersion != null)? (int)(long) mqttVersion : MqttConfiguration.MQTT_VERSION_3,
+                (messageExpiry != null)? (long) messageExpiry : 0
+        );
+    }
+
+    /**
+     * Loads application configuration.
+     * @param reader source of the configuration in JSON
+     * @return loaded configuration
+     * @throws IOException if an I/O error occurs
+     * @throws ParseException if the source is not valid JSON
+     * @throws IllegalArgumentException if no network is declared, or some 
+     *         network has no or duplicate ID or not supported communication interface,
+     *         or some sink has no or duplicate name or not supported overflow policy
+     */
+    public static ApplicationConfiguration loadApplicationConfiguration(Reader reader)
+            throws IOException, ParseException
+    {
+        JSONObject appJsonObjects = (JSONObject) JSONValue.parseWithException(reader);
+        long pollingPeriod = (long) appJsonObjects.get("pollingPeriod");
+        Object shutdownTimeout = appJsonObjects.get("shutdownTimeout");
+
+        List<NetworkConfiguration> networks = new ArrayList<>();
+        JSONArray networksArray = (JSONArray) appJsonObjects.get("networks");
+        if ( networksArray == null ) {
+            // single network declared directly at the top level, its topics are without prefix
+            networks.add(loadNetworkConfiguration(appJsonObjects, DEFAULT_NETWORK_ID, "", pollingPeriod));
+        } else {
+            if ( networksArray.isEmpty() ) {
+                throw new IllegalArgumentException("No network declared");
+            }
+            Set<String> networkIds = new HashSet<>();
+            for ( int i = 0; i < networksArray.size(); i++ ) {
+                JSONObject networkJsonObject = (JSONObject) networksArray.get(i);
+                String id = (String) networkJsonObject.get("id");
+                if ( id == null ) {
+                    throw new IllegalArgumentException("Network without id at index: " + i);
+                }
+                if ( !networkIds.add(id) ) {
+                    throw new IllegalArgumentException("Duplicate network id: " + id);
+                }
+                networks.add(loadNetworkConfiguration(networkJsonObject, id, id + "/", pollingPeriod));
+            }
+        }
+
+        return new ApplicationConfiguration(
+                pollingPeriod,
+                networks,
+                loadDpaBridgeConfiguration((JSONObject) appJsonObjects.get("dpaBridge")),
+                loadRadioConfiguration((JSONObject) appJsonObjects.get("radio")),
+                loadMetricsConfiguration((JSONObject) appJsonObjects.get("metrics")),
+                loadSinksConfiguration((JSONArray) appJsonObjects.get("sinks")),
+                (shutdownTimeout != null)? 
+                    (long) shutdownTimeout : ApplicationConfiguration.DEFAULT_SHUTDOWN_TIMEOUT
+        );
+    }
+
+    // loads configuration of one network, missing items get default values
+    private static NetworkConfiguration loadNetworkConfiguration(
+            JSONObject networkJsonObject, String id, String defaultTopicPrefix, long defaultPollingPeriod
+    ) {
+        String communicationInterface = (String) networkJsonObject.get("communicationInterface");
+        String simplyConfigFile = (String) networkJsonObject.get("simplyConfig");
+        if ( simplyConfigFile == null ) {
+            simplyConfigFile = NetworkConfiguration.getDefaultSimplyConfigFile(communicationInterface);
+            if ( simplyConfigFile == null ) {
+                throw new IllegalArgumentException(
+                        "No supported communication interface: " + communicationInterface
+                );
+            }
+        }
+        
+        Object pollingPeriod = networkJsonObject.get("pollingPeriod");
+        Object topicPrefix = networkJsonObject.get("topicPrefix");
+        Object topologySnapshot = networkJsonObject.get("topologySnapshot");
+        Object presenceSweep = networkJsonObject.get("presenceSweep");
+
+        return new NetworkConfiguration(
+                id,
+                communicationInterface,
+                simplyConfigFile,
+                (pollingPeriod != null)? (long) pollingPeriod : defaultPollingPeriod,
+                (topicPrefix != null)? (String) topicPrefix : defaultTopicPrefix,
+                (topologySnapshot != null)? (boolean) topologySnapshot : true,
+                (presenceSweep != null)? (boolean) presenceSweep : false,
+                loadDevicesInfo((JSONArray) networkJsonObject.get("devices"))
+        );
+    }
+
+    // loads information about devices
+    private static Map<Integer, DeviceInfo> loadDevicesInfo(JSONArray devicesArray) {
+        Map<Integer, DeviceInfo> devicesInfos = new HashMap<>();
+        for ( int i = 0; i < devicesArray.size(); i++ ) {
+            JSONObject deviceObjects = (JSONObject) devicesArray.get(i);
+
+            String type = (String) deviceObjects.get("type");
+            JSONObject registersObject = (JSONObject) deviceObjects.get("registers");
+            if ( registersObject == null && COMBINED_DEVICE_TYPE.equals(type) ) {
+                throw new IllegalArgumentException(
+                        "Missing registers of device: " + deviceObjects.get("device")
+                );
+            }
+
+            DeviceInfo deviceInfo = new DeviceInfo(
+                    (long) deviceObjects.get("device"),
+                    (String) deviceObjects.get("manufacturer"),
+                    type,
+                    (registersObject != null)? loadModbusRegisterMap(registersObject) : null
+            );
+
+            devicesInfos.put((int)deviceInfo.getId(), deviceInfo);
+        }
+        return devicesInfos;
+    }
+
+    // loads Modbus registers of sensors sharing one UART, registers of all 
+    // quantities are mandatory, other missing items get default values
+    private static ModbusRegisterMap loadModbusRegisterMap(JSONObject registersJsonObject) {
+        Object slave = registersJsonObject.get("slave");
+        Object function = registersJsonObject.get("function");
+        Object scale = registersJsonObject.get("scale");
+
+        return new ModbusRegisterMap(
+                (slave != null)? (int) (long) slave : ModbusRegisterMap.DEFAULT_SLAVE,
+                (function != null)? (int) (long) function : ModbusRegisterMap.DEFAULT_FUNCTION,
+                getRegister(registersJsonObject, "co2"),
+                getRegister(registersJsonObject, "voc"),
+                getRegister(registersJsonObject, "temperature"),
+                getRegister(registersJsonObject, "humidity"),
+                (scale != null)? (int) (long) scale : ModbusRegisterMap.DEFAULT_SCALE
+        );
+    }
+
+    // returns address of specified mandatory register
+    private static int getRegister(JSONObject registersJsonObject, String name) {
+        Object register = registersJsonObject.get(name);
+        if ( register == null ) {
+            throw new IllegalArgumentException("Missing register: " + name);
+        }
+        return (int) (long) register;
+    }
+
+    // loads configuration of access to the radio, missing items get default values
+    private static RadioConfiguration loadRadioConfiguration(JSONObject radioJsonObject) {
+        Map<RadioPriority, RadioConfiguration.ClassSettings> classSettings
+                = new EnumMap<>(RadioPriority.class);
+        if ( radioJsonObject == null ) {
+            return new RadioConfiguration(RadioConfiguration.DEFAULT_IDLE_GAP, classSettings);
+        }
+
+        for ( RadioPriority priority : RadioPriority.values() ) {
+            JSONObject classJsonObject = (JSONObject) radioJsonObject.get(priority.name().toLowerCase());
+            if ( classJsonObject == null ) {
+                continue;
+            }
+
+            RadioConfiguration.ClassSettings defaults
+                    = RadioConfiguration.DEFAULT_CLASS_SETTINGS.get(priority);
+            Object queueCapacity = classJsonObject.get("queueCapacity");
+            Object rate = classJsonObject.get("rate");
+            Object burst = classJsonObject.get("burst");
+
+            classSettings.put(priority, new RadioConfiguration.ClassSettings(
+                    (queueCapacity != null)? (int)(long) queueCapacity : defaults.getQueueCapacity(),
+                    (rate != null)? ((Number) rate).doubleValue() : defaults.getRate(),
+                    (burst != null)? (int)(long) burst : defaults.getBurst()
+            ));
+        }
+
+        Object idleGap = radioJsonObject.get("idleGap");
+        return new RadioConfiguration(
+                (idleGap != null)? (long) idleGap : RadioConfiguration.DEFAULT_IDLE_GAP,
+                classSettings
+        );
+    }
+
+    // loads configuration of metrics exposition, missing items get default values
+    private static MetricsConfiguration loadMetricsConfiguration(JSONObject metricsJsonObject) {
+        if ( metricsJsonObject == null ) {
+            return MetricsConfiguration.DEFAULT;
+        }
+
+        Object httpPort = metricsJsonObject.get("httpPort");
+        Object httpBindAddress = metricsJsonObject.get("httpBindAddress");
+        Object publishPeriod = metricsJsonObject.get("publishPeriod");
+
+        return new MetricsConfiguration(
+                (httpPort != null)? (int)(long) httpPort : MetricsConfiguration.DEFAULT_HTTP_PORT,
+                (httpBindAddress != null)?
+                    (String) httpBindAddress : MetricsConfiguration.DEFAULT_HTTP_BIND_ADDRESS,
+                (publishPeriod != null)?
+                    (long) publishPeriod : MetricsConfiguration.DEFAULT_PUBLISH_PERIOD
+        );
+    }
+
+    // loads configuration of output sinks, only MQTT sink is used if no sink is declared
+    private static List<SinkConfiguration> loadSinksConfiguration(JSONArray sinksArray) {
+        List<SinkConfiguration> sinks = new ArrayList<>();
+        if ( sinksArray == null ) {
+            sinks.add(SinkConfiguration.DEFAULT_MQTT);
+            return sinks;
+        }
+        
+        Set<String> names = new HashSet<>();
+        for ( int i = 0; i < sinksArray.size(); i++ ) {
+            JSONObject sinkJsonObject = (JSONObject) sinksArray.get(i);
+            String type = (String) sinkJsonObject.get("type");
+            if ( type == null ) {
+                throw new IllegalArgumentException("Sink without type at index: " + i);
+            }
+            Object name = sinkJsonObject.get("name");
+            if ( name == null ) {
+                name = type;
+            }
+            if ( !names.add((String) name) ) {
+                throw new IllegalArgumentException("Duplicate sink name: " + name);
+            }
+            
+            Object queueCapacity = sinkJsonObject.get("queueCapacity");
+            Object overflow = sinkJsonObject.get("overflow");
+            Object offerTimeout = sinkJsonObject.get("offerTimeout");
+            
+            // other items are specific to the type of the sink
+            Map<String, Object> properties = new HashMap<>();
+            for ( Object key : sinkJsonObject.keySet() ) {
+                properties.put((String) key, sinkJsonObject.get(key));
+            }
+            
+            sinks.add(new SinkConfiguration(
+                    type, 
+                    (String) name,
+                    (queueCapacity != null)? 
+                        (int)(long) queueCapacity : SinkConfiguration.DEFAULT_QUEUE_CAPACITY,
+                    (overflow != null)? 
+                        SinkConfiguration.OverflowPolicy.valueOf(((String) overflow).toUpperCase()) 
+                        : SinkConfiguration.OverflowPolicy.DROP,
+                    (offerTimeout != null)? 
+                        (long) offerTimeout : SinkConfiguration.DEFAULT_OFFER_TIMEOUT,
+                    properties
+            ));
+        }
+        return sinks;
+    }
+
+    // loads configuration of DPA requests bridge, missing items get default values
+    private static DpaBridgeConfiguration loadDpaBridgeConfiguration(JSONObject bridgeJsonObject) {
+        if ( bridgeJsonObject == null ) {
+            return DpaBridgeConfiguration.DISABLED;
+        }
+
+        Object enabled = bridgeJsonObject.get("enabled");
+        Object requestTimeout = bridgeJsonObject.get("requestTimeout");
+
+        return new DpaBridgeConfiguration(
+                (enabled != null)? (boolean) enabled : true,
+                (requestTimeout != null)?
+                    (long) requestTimeout : DpaBridgeConfiguration.DEFAULT_REQUEST_TIMEOUT
+        );
+    }
+}
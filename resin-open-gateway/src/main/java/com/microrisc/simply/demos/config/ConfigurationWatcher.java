@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.config;
+
+import com.microrisc.simply.demos.concurrent.Threads;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches configuration files and notifies listener about their changes.
+ * <p>
+ * Editors typically write a file in several steps, so events are collected
+ * until the watched directories stay quiet for the settle time and the 
+ * listener is then notified once for each changed file.
+ */
+public final class ConfigurationWatcher {
+    
+    /**
+     * Listener of changes of watched files.
+     */
+    public static interface Listener {
+        
+        /**
+         * Called on the watcher thread after specified file has changed.
+         * @param file changed file
+         */
+        void fileChanged(Path file);
+    }
+    
+    private static final Logger log = LoggerFactory.getLogger(ConfigurationWatcher.class);
+    
+    /** Default time, the directories must stay quiet before listener is notified [in ms]. */
+    public static final long DEFAULT_SETTLE_TIME = 500;
+    
+    private final WatchService watchService;
+    private final Set<Path> watchedFiles;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Listener listener;
+    private final long settleTime;
+    
+    private final Thread watcherThread = Threads.newThread("config-watcher", new Runnable() {
+        @Override
+        public void run() {
+            watch();
+        }
+    });
+    
+    
+    /**
+     * Creates new watcher of specified files.
+     * @param files files to watch
+     * @param listener listener to notify about changes
+     * @param settleTime time, the directories must stay quiet before listener 
+     *                   is notified [in ms]
+     * @throws IOException if watching of directories of the files cannot be registered
+     */
+    public ConfigurationWatcher(Set<Path> files, Listener listener, long settleTime) 
+            throws IOException 
+    {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.watchedFiles = new LinkedHashSet<>();
+        this.listener = listener;
+        this.settleTime = settleTime;
+        
+        for ( Path file : files ) {
+            Path absoluteFile = file.toAbsolutePath().normalize();
+            watchedFiles.add(absoluteFile);
+            
+            Path directory = absoluteFile.getParent();
+            if ( !directories.containsValue(directory) ) {
+                WatchKey key = directory.register(
+                        watchService, 
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY
+                );
+                directories.put(key, directory);
+            }
+        }
+    }
+    
+    /**
+     * Starts watching.
+     */
+    public void start() {
+        watcherThread.start();
+    }
+    
+    /**
+     * Stops watching.
+     */
+    public void stop() {
+        try {
+            watchService.close();
+        } catch ( IOException ex ) {
+            log.warn("Closing of watch service failed: {}", ex.toString());
+        }
+        watcherThread.interrupt();
+    }
+    
+    // watching loop
+    private void watch() {
+        try {
+            while ( true ) {
+                Set<Path> changedFiles = new LinkedHashSet<>();
+                collectChanges(watchService.take(), changedFiles);
+                
+                // waiting for the directories to settle
+                WatchKey key;
+                while ( (key = watchService.poll(settleTime, TimeUnit.MILLISECONDS)) != null ) {
+                    collectChanges(key, changedFiles);
+                }
+                
+                for ( Path file : changedFiles ) {
+                    log.info("Configuration file changed: {}", file);
+                    try {
+                        listener.fileChanged(file);
+                    } catch ( RuntimeException ex ) {
+                        log.error("Error while processing change of {}", file, ex);
+                    }
+                }
+            }
+        } catch ( InterruptedException | ClosedWatchServiceException ex ) {
+            log.info("Watching of configuration files stopped.");
+        }
+    }
+    
+    // adds watched files changed according to events of specified key
+    private void collectChanges(WatchKey key, Set<Path> changedFiles) {
+        Path directory = directories.get(key);
+        for ( WatchEvent<?> event : key.pollEvents() ) {
+            if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+                // unknown changes - all files in the directory are considered changed
+                for ( Path file : watchedFiles ) {
+                    if ( file.getParent().equals(directory) ) {
+                        changedFiles.add(file);
+                    }
+                }
+                continue;
+            }
+            
+            Path file = directory.resolve((Path) event.context());
+            if ( watchedFiles.contains(file) ) {
+                changedFiles.add(file);
+            }
+        }
+        key.reset();
+    }
+}
@@ -26,6 +26,7 @@ public final class DeviceInfo {
     private final long id;
     private final String manufacturer;
     private final String type;
+    private final ModbusRegisterMap registers;
     
     
     /**
@@ -35,9 +36,22 @@ public final class DeviceInfo {
      * @param type type
      */
     public DeviceInfo(long id, String manufacturer, String type) {
+        this(id, manufacturer, type, null);
+    }
+    
+    /**
+     * Creates new object of device identification.
+     * @param id ID of the device
+     * @param manufacturer manufacturer name
+     * @param type type
+     * @param registers Modbus registers of sensors sharing one UART, 
+     *        {@code null} if the device is not read by registers
+     */
+    public DeviceInfo(long id, String manufacturer, String type, ModbusRegisterMap registers) {
         this.id = id;
         this.manufacturer = manufacturer;
         this.type = type;
+        this.registers = registers;
     }
     
     /**
@@ -60,5 +74,13 @@ public final class DeviceInfo {
     public String getType() {
         return type;
     }
+    
+    /**
+     * @return Modbus registers of sensors sharing one UART, {@code null} if 
+     *         the device is not read by registers
+     */
+    public ModbusRegisterMap getRegisters() {
+        return registers;
+    }
 
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.config;
+
+/**
+ * Holds configuration parameters of MQTT to DPA requests bridge.
+ */
+public final class DpaBridgeConfiguration {
+
+    /** Default timeout of one request [in ms]. */
+    public static final long DEFAULT_REQUEST_TIMEOUT = 5000;
+
+    /** Configuration with the bridge disabled. */
+    public static final DpaBridgeConfiguration DISABLED = new DpaBridgeConfiguration(
+            false, DEFAULT_REQUEST_TIMEOUT
+    );
+
+    private final boolean enabled;
+    private final long requestTimeout;
+
+
+    /**
+     * Creates new object holding configuration of the DPA requests bridge.
+     * @param enabled indicates, whether the bridge is enabled
+     * @param requestTimeout default timeout of one request [in ms]
+     */
+    public DpaBridgeConfiguration(boolean enabled, long requestTimeout) {
+        this.enabled = enabled;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * @return {@code true} if the bridge is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return default timeout of one request [in ms]
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if ( !(obj instanceof DpaBridgeConfiguration) ) {
+            return false;
+        }
+        DpaBridgeConfiguration other = (DpaBridgeConfiguration) obj;
+        return enabled == other.enabled && requestTimeout == other.requestTimeout;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (enabled? 1 : 0) + (int)(requestTimeout ^ (requestTimeout >>> 32));
+    }
+
+}
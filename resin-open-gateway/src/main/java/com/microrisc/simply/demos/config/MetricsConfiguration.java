@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.config;
+
+/**
+ * Holds configuration parameters of metrics exposition.
+ */
+public final class MetricsConfiguration {
+
+    /** Default port of the HTTP endpoint. */
+    public static final int DEFAULT_HTTP_PORT = 9100;
+
+    /** Default address to bind the HTTP endpoint to. */
+    public static final String DEFAULT_HTTP_BIND_ADDRESS = "0.0.0.0";
+
+    /** Default period of publishing of metrics over MQTT [in s]. */
+    public static final long DEFAULT_PUBLISH_PERIOD = 60;
+
+    /** Default configuration. */
+    public static final MetricsConfiguration DEFAULT = new MetricsConfiguration(
+            DEFAULT_HTTP_PORT, DEFAULT_HTTP_BIND_ADDRESS, DEFAULT_PUBLISH_PERIOD
+    );
+
+    private final int httpPort;
+    private final String httpBindAddress;
+    private final long publishPeriod;
+
+
+    /**
+     * Creates new object holding configuration of metrics exposition.
+     * @param httpPort port of the HTTP endpoint, 0 to disable the endpoint
+     * @param httpBindAddress address to bind the HTTP endpoint to
+     * @param publishPeriod period of publishing of metrics over MQTT [in s],
+     *                      0 to disable publishing
+     */
+    public MetricsConfiguration(int httpPort, String httpBindAddress, long publishPeriod) {
+        this.httpPort = httpPort;
+        this.httpBindAddress = httpBindAddress;
+        this.publishPeriod = publishPeriod;
+    }
+
+    /**
+     * @return port of the HTTP endpoint, 0 if the endpoint is disabled
+     */
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    /**
+     * @return address to bind the HTTP endpoint to
+     */
+    public String getHttpBindAddress() {
+        return httpBindAddress;
+    }
+
+    /**
+     * @return period of publishing of metrics over MQTT [in s], 0 if disabled
+     */
+    public long getPublishPeriod() {
+        return publishPeriod;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if ( !(obj instanceof MetricsConfiguration) ) {
+            return false;
+        }
+        MetricsConfiguration other = (MetricsConfiguration) obj;
+        return httpPort == other.httpPort
+                && httpBindAddress.equals(other.httpBindAddress)
+                && publishPeriod == other.publishPeriod;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = httpPort;
+        hash = 31 * hash + httpBindAddress.hashCode();
+        return 31 * hash + (int)(publishPeriod ^ (publishPeriod >>> 32));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.config;
+
+/**
+ * Holds Modbus registers of sensors sharing one UART of a node, which are 
+ * read together by one request. The registers must be given according to 
+ * the firmware of the sensors.
+ */
+public final class ModbusRegisterMap {
+
+    /** Default Modbus address of the sensors. */
+    public static final int DEFAULT_SLAVE = 1;
+
+    /** Default function reading the registers - read input registers. */
+    public static final int DEFAULT_FUNCTION = 0x04;
+
+    /** Default divisor of raw values of temperature and humidity. */
+    public static final int DEFAULT_SCALE = 10;
+
+    // maximal number of registers, whose response fits into data of DPA response
+    private static final int MAX_REGISTER_COUNT = 25;
+
+    private final int slave;
+    private final int function;
+    private final int co2Register;
+    private final int vocRegister;
+    private final int temperatureRegister;
+    private final int humidityRegister;
+    private final int scale;
+
+
+    /**
+     * Creates new map of registers.
+     * @param slave Modbus address of the sensors
+     * @param function Modbus function reading the registers
+     * @param co2Register address of register of CO2
+     * @param vocRegister address of register of VOC
+     * @param temperatureRegister address of register of temperature
+     * @param humidityRegister address of register of humidity
+     * @param scale divisor of raw values of temperature and humidity
+     */
+    public ModbusRegisterMap(
+            int slave, int function, int co2Register, int vocRegister, 
+            int temperatureRegister, int humidityRegister, int scale
+    ) {
+        if ( function != 0x03 && function != 0x04 ) {
+            throw new IllegalArgumentException("Unsupported Modbus function: " + function);
+        }
+        if ( scale <= 0 ) {
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        }
+        if ( slave < 1 || slave > 247 ) {
+            throw new IllegalArgumentException("Modbus address out of range: " + slave);
+        }
+        this.slave = slave;
+        this.function = function;
+        this.co2Register = co2Register;
+        this.vocRegister = vocRegister;
+        this.temperatureRegister = temperatureRegister;
+        this.humidityRegister = humidityRegister;
+        this.scale = scale;
+
+        if ( getFirstRegister() < 0 || getFirstRegister() + getRegisterCount() > 0x10000 ) {
+            throw new IllegalArgumentException("Register address out of range");
+        }
+        if ( getRegisterCount() > MAX_REGISTER_COUNT ) {
+            throw new IllegalArgumentException(
+                    "Too many registers between the first and the last one: " + getRegisterCount()
+            );
+        }
+    }
+
+    /**
+     * @return Modbus address of the sensors
+     */
+    public int getSlave() {
+        return slave;
+    }
+
+    /**
+     * @return Modbus function reading the registers
+     */
+    public int getFunction() {
+        return function;
+    }
+
+    /**
+     * @return address of register of CO2
+     */
+    public int getCo2Register() {
+        return co2Register;
+    }
+
+    /**
+     * @return address of register of VOC
+     */
+    public int getVocRegister() {
+        return vocRegister;
+    }
+
+    /**
+     * @return address of register of temperature
+     */
+    public int getTemperatureRegister() {
+        return temperatureRegister;
+    }
+
+    /**
+     * @return address of register of humidity
+     */
+    public int getHumidityRegister() {
+        return humidityRegister;
+    }
+
+    /**
+     * @return divisor of raw values of temperature and humidity
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return address of the first register to read
+     */
+    public int getFirstRegister() {
+        return Math.min(
+                Math.min(co2Register, vocRegister), Math.min(temperatureRegister, humidityRegister)
+        );
+    }
+
+    /**
+     * @return number of registers to read, from the first one to the last one
+     */
+    public int getRegisterCount() {
+        int lastRegister = Math.max(
+                Math.max(co2Register, vocRegister), Math.max(temperatureRegister, humidityRegister)
+        );
+        return lastRegister - getFirstRegister() + 1;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if ( !(obj instanceof ModbusRegisterMap) ) {
+            return false;
+        }
+        ModbusRegisterMap other = (ModbusRegisterMap) obj;
+        return slave == other.slave && function == other.function 
+                && co2Register == other.co2Register && vocRegister == other.vocRegister
+                && temperatureRegister == other.temperatureRegister 
+                && humidityRegister == other.humidityRegister && scale == other.scale;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = slave;
+        hash = 31 * hash + function;
+        hash = 31 * hash + co2Register;
+        hash = 31 * hash + vocRegister;
+        hash = 31 * hash + temperatureRegister;
+        hash = 31 * hash + humidityRegister;
+        return 31 * hash + scale;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds configuration parameters of one IQRF network, i.e. of one coordinator
+ * together with devices on its nodes.
+ */
+public final class NetworkConfiguration {
+    private final String id;
+    private final String communicationInterface;
+    private final String simplyConfigFile;
+    private final long pollingPeriod;
+    private final String topicPrefix;
+    private final boolean topologySnapshot;
+    private final boolean presenceSweep;
+    private final Map<Integer, DeviceInfo> devicesInfoMap;
+    
+    
+    /**
+     * Creates new object holding configuration of one network.
+     * @param id ID of the network, unique within the application
+     * @param communicationInterface communication interface of the coordinator
+     * @param simplyConfigFile file of Simply configuration in config/simply
+     * @param pollingPeriod polling period [in s]
+     * @param topicPrefix prefix inserted between MQTT topics and node IDs
+     * @param topologySnapshot indicates, whether Simply is to be initialized
+     *        from topology snapshot, if available
+     * @param presenceSweep indicates, whether presence of nodes is to be 
+     *        checked by FRC before each polling cycle
+     * @param devicesInfoMap info about each device
+     */
+    public NetworkConfiguration(
+            String id, String communicationInterface, String simplyConfigFile, 
+            long pollingPeriod, String topicPrefix, boolean topologySnapshot,
+            boolean presenceSweep, Map<Integer, DeviceInfo> devicesInfoMap
+    ) {
+        this.id = id;
+        this.communicationInterface = communicationInterface;
+        this.simplyConfigFile = simplyConfigFile;
+        this.pollingPeriod = pollingPeriod;
+        this.topicPrefix = topicPrefix;
+        this.topologySnapshot = topologySnapshot;
+        this.presenceSweep = presenceSweep;
+        this.devicesInfoMap = new HashMap<>(devicesInfoMap);
+    }
+    
+    /**
+     * Returns name of the Simply configuration file used for specified 
+     * communication interface by default.
+     * @param communicationInterface communication interface
+     * @return name of the file, {@code null} if the interface is not supported
+     */
+    public static String getDefaultSimplyConfigFile(String communicationInterface) {
+        switch ( communicationInterface.toLowerCase() ) {
+            case "cdc":
+                return "Simply-CDC.properties";
+            case "spi":
+                return "Simply-SPI.properties";
+            case "sim":
+                return "Simply-SIM.properties";
+            case "replay":
+                return "Simply-REPLAY.properties";
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * @return the ID of the network
+     */
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * @return the communication interface
+     */
+    public String getCommunicationInterface() {
+        return communicationInterface;
+    }
+    
+    /**
+     * @return the file of Simply configuration
+     */
+    public String getSimplyConfigFile() {
+        return simplyConfigFile;
+    }
+    
+    /**
+     * @return the polling period
+     */
+    public long getPollingPeriod() {
+        return pollingPeriod;
+    }
+    
+    /**
+     * @return the prefix inserted between MQTT topics and node IDs
+     */
+    public String getTopicPrefix() {
+        return topicPrefix;
+    }
+    
+    /**
+     * @return {@code true} if Simply is to be initialized from topology snapshot
+     */
+    public boolean isTopologySnapshot() {
+        return topologySnapshot;
+    }
+    
+    /**
+     * @return {@code true} if presence of nodes is to be checked by FRC before each polling cycle
+     */
+    public boolean isPresenceSweep() {
+        return presenceSweep;
+    }
+    
+    /**
+     * @return the number of devices
+     */
+    public long getNumberOfDevices() {
+        return devicesInfoMap.size();
+    }
+    
+    /**
+     * Returns information about devices. Information relating to device on
+     * node, at which that device resides, is at the index equal to the node ID. 
+     * @return map of information about devices on nodes
+     */
+    public Map<Integer, DeviceInfo> getDevicesInfoMap() {
+        return devicesInfoMap;
+    }
+    
+}
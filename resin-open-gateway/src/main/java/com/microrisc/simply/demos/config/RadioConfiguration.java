@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.config;
+
+import com.microrisc.simply.demos.radio.RadioPriority;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Holds configuration parameters of access to the radio.
+ */
+public final class RadioConfiguration {
+
+    /**
+     * Settings of one priority class.
+     */
+    public static final class ClassSettings {
+        private final int queueCapacity;
+        private final double rate;
+        private final int burst;
+
+        /**
+         * Creates new settings of priority class.
+         * @param queueCapacity maximal number of waiting tasks
+         * @param rate maximal rate of tasks [per second], 0 for unlimited rate
+         * @param burst maximal number of tasks run at once after idle time
+         */
+        public ClassSettings(int queueCapacity, double rate, int burst) {
+            if ( queueCapacity <= 0 ) {
+                throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+            }
+            this.queueCapacity = queueCapacity;
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        /**
+         * @return maximal number of waiting tasks
+         */
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        /**
+         * @return maximal rate of tasks [per second], 0 for unlimited rate
+         */
+        public double getRate() {
+            return rate;
+        }
+
+        /**
+         * @return maximal number of tasks run at once after idle time
+         */
+        public int getBurst() {
+            return burst;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if ( !(obj instanceof ClassSettings) ) {
+                return false;
+            }
+            ClassSettings other = (ClassSettings) obj;
+            return queueCapacity == other.queueCapacity
+                    && Double.compare(rate, other.rate) == 0
+                    && burst == other.burst;
+        }
+
+        @Override
+        public int hashCode() {
+            long rateBits = Double.doubleToLongBits(rate);
+            int hash = queueCapacity;
+            hash = 31 * hash + (int)(rateBits ^ (rateBits >>> 32));
+            return 31 * hash + burst;
+        }
+    }
+
+    /** Default minimal idle time of the radio before maintenance tasks run [in ms]. */
+    public static final long DEFAULT_IDLE_GAP = 500;
+
+    /** Default settings of classes. */
+    public static final Map<RadioPriority, ClassSettings> DEFAULT_CLASS_SETTINGS;
+
+    static {
+        DEFAULT_CLASS_SETTINGS = new EnumMap<>(RadioPriority.class);
+        DEFAULT_CLASS_SETTINGS.put(RadioPriority.COMMAND, new ClassSettings(16, 2, 4));
+        DEFAULT_CLASS_SETTINGS.put(RadioPriority.TELEMETRY, new ClassSettings(8, 0, 1));
+        DEFAULT_CLASS_SETTINGS.put(RadioPriority.MAINTENANCE, new ClassSettings(32, 0, 1));
+    }
+
+    private final long idleGap;
+    private final Map<RadioPriority, ClassSettings> classSettings;
+
+
+    /**
+     * Creates new object holding configuration of access to the radio.
+     * @param idleGap minimal idle time of the radio before maintenance tasks run [in ms]
+     * @param classSettings settings of classes, missing classes get default settings
+     */
+    public RadioConfiguration(long idleGap, Map<RadioPriority, ClassSettings> classSettings) {
+        this.idleGap = idleGap;
+        this.classSettings = new EnumMap<>(DEFAULT_CLASS_SETTINGS);
+        this.classSettings.putAll(classSettings);
+    }
+
+    /**
+     * @return minimal idle time of the radio before maintenance tasks run [in ms]
+     */
+    public long getIdleGap() {
+        return idleGap;
+    }
+
+    /**
+     * @param priority priority class
+     * @return settings of specified class
+     */
+    public ClassSettings getClassSettings(RadioPriority priority) {
+        return classSettings.get(priority);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if ( !(obj instanceof RadioConfiguration) ) {
+            return false;
+        }
+        RadioConfiguration other = (RadioConfiguration) obj;
+        return idleGap == other.idleGap && classSettings.equals(other.classSettings);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (int)(idleGap ^ (idleGap >>> 32)) + classSettings.hashCode();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds configuration parameters of one output sink of readings.
+ * <p>
+ * Parameters common to all sinks are accessible by getters, parameters 
+ * specific to the type of the sink are accessible as properties.
+ */
+public final class SinkConfiguration {
+    
+    /**
+     * Policy applied to a reading, which does not fit into the full queue of a sink.
+     */
+    public static enum OverflowPolicy {
+        /** The reading is dropped immediately. */
+        DROP,
+        
+        /** Publisher waits for free space at most for the offer timeout, then the reading is dropped. */
+        BLOCK,
+        
+        /** The oldest reading in the queue is dropped to make space for the reading. */
+        DROP_OLDEST,
+        
+        /** 
+         * The reading replaces pending reading of the same node with the same 
+         * quantities, so only the newest value of each is kept. If there is 
+         * no such reading, the oldest reading in the queue is dropped.
+         */
+        COALESCE
+    }
+    
+    /** Default maximal number of readings waiting for the sink. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    
+    /** Default maximal time to wait for free space in the queue [in ms]. */
+    public static final long DEFAULT_OFFER_TIMEOUT = 100;
+    
+    /** Configuration of the sink used, if no sink is configured. */
+    public static final SinkConfiguration DEFAULT_MQTT = new SinkConfiguration(
+            "mqtt", "mqtt", DEFAULT_QUEUE_CAPACITY, OverflowPolicy.DROP, DEFAULT_OFFER_TIMEOUT,
+            Collections.<String, Object>emptyMap()
+    );
+    
+    private final String type;
+    private final String name;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long offerTimeout;
+    private final Map<String, Object> properties;
+    
+    
+    /**
+     * Creates new object holding configuration of a sink.
+     * @param type type of the sink
+     * @param name name of the sink, unique within the application
+     * @param queueCapacity maximal number of readings waiting for the sink
+     * @param overflowPolicy policy applied, if the queue is full
+     * @param offerTimeout maximal time to wait for free space in the queue 
+     *        under the {@code BLOCK} policy [in ms]
+     * @param properties parameters specific to the type of the sink
+     */
+    public SinkConfiguration(
+            String type, String name, int queueCapacity, OverflowPolicy overflowPolicy, 
+            long offerTimeout, Map<String, Object> properties
+    ) {
+        if ( queueCapacity <= 0 ) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        if ( offerTimeout < 0 ) {
+            throw new IllegalArgumentException("Offer timeout cannot be negative: " + offerTimeout);
+        }
+        this.type = type;
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.offerTimeout = offerTimeout;
+        this.properties = Collections.unmodifiableMap(new HashMap<>(properties));
+    }
+    
+    /**
+     * @return type of the sink
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return name of the sink
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return maximal number of readings waiting for the sink
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return policy applied, if the queue is full
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return maximal time to wait for free space in the queue [in ms]
+     */
+    public long getOfferTimeout() {
+        return offerTimeout;
+    }
+    
+    /**
+     * Returns string property.
+     * @param key key of the property
+     * @param defaultValue value returned, if the property is not present
+     * @return value of the property
+     */
+    public String getProperty(String key, String defaultValue) {
+        Object value = properties.get(key);
+        return (value != null)? value.toString() : defaultValue;
+    }
+    
+    /**
+     * Returns numeric property.
+     * @param key key of the property
+     * @param defaultValue value returned, if the property is not present
+     * @return value of the property
+     * @throws IllegalArgumentException if the property is not a number
+     */
+    public long getLongProperty(String key, long defaultValue) {
+        Object value = properties.get(key);
+        if ( value == null ) {
+            return defaultValue;
+        }
+        if ( !(value instanceof Number) ) {
+            throw new IllegalArgumentException(
+                    "Property " + key + " of sink " + name + " is not a number: " + value
+            );
+        }
+        return ((Number) value).longValue();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if ( !(obj instanceof SinkConfiguration) ) {
+            return false;
+        }
+        SinkConfiguration other = (SinkConfiguration) obj;
+        return type.equals(other.type)
+                && name.equals(other.name)
+                && queueCapacity == other.queueCapacity
+                && overflowPolicy == other.overflowPolicy
+                && offerTimeout == other.offerTimeout
+                && properties.equals(other.properties);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = type.hashCode();
+        hash = 31 * hash + name.hashCode();
+        hash = 31 * hash + queueCapacity;
+        hash = 31 * hash + overflowPolicy.hashCode();
+        hash = 31 * hash + (int)(offerTimeout ^ (offerTimeout >>> 32));
+        return 31 * hash + properties.hashCode();
+    }
+}
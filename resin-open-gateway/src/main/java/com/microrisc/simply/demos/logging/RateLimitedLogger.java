@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+
+/**
+ * Logger, which logs messages of the same key at most once per specified
+ * interval. Messages suppressed within the interval are counted and their
+ * number is appended to the next logged message of the same key.
+ * <p>
+ * Intended for messages repeated for each node in each cycle, so the cost of
+ * logging stays bounded regardless of number of nodes. Key is typically
+ * a node ID together with kind of the message.
+ */
+public final class RateLimitedLogger {
+
+    // state of one key
+    private static final class KeyState {
+        final AtomicLong nextLogTime = new AtomicLong(Long.MIN_VALUE);
+        final AtomicLong suppressed = new AtomicLong();
+    }
+
+    private final Logger logger;
+    private final long intervalNanos;
+    private final ConcurrentMap<String, KeyState> states = new ConcurrentHashMap<>();
+
+
+    /**
+     * Creates new rate limited logger.
+     * @param logger underlying logger
+     * @param interval minimal interval between messages of the same key
+     * @param unit time unit of {@code interval}
+     */
+    public RateLimitedLogger(Logger logger, long interval, TimeUnit unit) {
+        this.logger = logger;
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    // returns number of suppressed messages, if the message of specified key
+    // should be logged now, -1 otherwise
+    private long acquire(String key) {
+        KeyState state = states.get(key);
+        if ( state == null ) {
+            KeyState newState = new KeyState();
+            state = states.putIfAbsent(key, newState);
+            if ( state == null ) {
+                state = newState;
+            }
+        }
+
+        long now = System.nanoTime();
+        long nextLogTime = state.nextLogTime.get();
+        if ( (nextLogTime == Long.MIN_VALUE || now - nextLogTime >= 0)
+                && state.nextLogTime.compareAndSet(nextLogTime, now + intervalNanos)
+        ) {
+            return state.suppressed.getAndSet(0);
+        }
+        state.suppressed.incrementAndGet();
+        return -1;
+    }
+
+    // appends information about suppressed messages to the format
+    private static String withSuppressed(String format, long suppressed) {
+        if ( suppressed == 0 ) {
+            return format;
+        }
+        return format + " [" + suppressed + " similar messages suppressed]";
+    }
+
+    /**
+     * Logs message at WARN level, if no message of the same key has been
+     * logged within the interval.
+     * @param key key of the message
+     * @param format message format
+     * @param arguments message arguments
+     */
+    public void warn(String key, String format, Object... arguments) {
+        if ( !logger.isWarnEnabled() ) {
+            return;
+        }
+        long suppressed = acquire(key);
+        if ( suppressed >= 0 ) {
+            logger.warn(withSuppressed(format, suppressed), arguments);
+        }
+    }
+
+    /**
+     * Logs message at ERROR level, if no message of the same key has been
+     * logged within the interval.
+     * @param key key of the message
+     * @param format message format
+     * @param arguments message arguments
+     */
+    public void error(String key, String format, Object... arguments) {
+        if ( !logger.isErrorEnabled() ) {
+            return;
+        }
+        long suppressed = acquire(key);
+        if ( suppressed >= 0 ) {
+            logger.error(withSuppressed(format, suppressed), arguments);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonically increasing counter.
+ */
+public final class Counter {
+    
+    private final AtomicLong value = new AtomicLong();
+    
+    /**
+     * Increments the counter by 1.
+     */
+    public void inc() {
+        value.incrementAndGet();
+    }
+    
+    /**
+     * Increments the counter by specified amount.
+     * @param amount amount to add, must be nonnegative
+     */
+    public void add(long amount) {
+        if ( amount < 0 ) {
+            throw new IllegalArgumentException("Counter cannot decrease: " + amount);
+        }
+        value.addAndGet(amount);
+    }
+    
+    /**
+     * @return current value
+     */
+    public long get() {
+        return value.get();
+    }
+}
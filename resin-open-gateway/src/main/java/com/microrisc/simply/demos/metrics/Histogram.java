@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with fixed buckets. Recording is lock free.
+ */
+public final class Histogram {
+    
+    /** Default bucket upper bounds [in s] suitable for DPA and MQTT latencies. */
+    public static final double[] DEFAULT_LATENCY_BUCKETS = {
+        0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+    
+    // upper bounds of buckets [in ns], ascending
+    private final long[] upperBoundsNanos;
+    
+    // upper bounds of buckets [in s]
+    private final double[] upperBounds;
+    
+    // counts of values in buckets, the last bucket is for values above all bounds
+    private final AtomicLongArray bucketCounts;
+    
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    
+    
+    /**
+     * Creates new histogram.
+     * @param upperBounds upper bounds of buckets [in s], ascending
+     */
+    public Histogram(double[] upperBounds) {
+        for ( int i = 1; i < upperBounds.length; i++ ) {
+            if ( upperBounds[i] <= upperBounds[i-1] ) {
+                throw new IllegalArgumentException("Bucket bounds must be ascending");
+            }
+        }
+        this.upperBounds = upperBounds.clone();
+        this.upperBoundsNanos = new long[upperBounds.length];
+        for ( int i = 0; i < upperBounds.length; i++ ) {
+            upperBoundsNanos[i] = (long)(upperBounds[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+        this.bucketCounts = new AtomicLongArray(upperBounds.length + 1);
+    }
+    
+    /**
+     * Records specified duration.
+     * @param durationNanos duration [in ns]
+     */
+    public void record(long durationNanos) {
+        int bucket = Arrays.binarySearch(upperBoundsNanos, durationNanos);
+        if ( bucket < 0 ) {
+            bucket = -bucket - 1;
+        }
+        bucketCounts.incrementAndGet(bucket);
+        sumNanos.addAndGet(durationNanos);
+        count.incrementAndGet();
+    }
+    
+    /**
+     * @return upper bounds of buckets [in s]
+     */
+    public double[] getUpperBounds() {
+        return upperBounds.clone();
+    }
+    
+    /**
+     * Returns counts of recorded values in buckets. The last item is the
+     * count of values above the highest bound.
+     * @return counts of values in buckets
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[bucketCounts.length()];
+        for ( int i = 0; i < counts.length; i++ ) {
+            counts[i] = bucketCounts.get(i);
+        }
+        return counts;
+    }
+    
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * @return sum of recorded values [in s]
+     */
+    public double getSum() {
+        return (double) sumNanos.get() / TimeUnit.SECONDS.toNanos(1);
+    }
+    
+    /**
+     * Estimates specified quantile as the upper bound of the bucket the
+     * quantile falls into.
+     * @param quantile quantile in the interval [0, 1]
+     * @return estimated quantile [in s], {@link Double#POSITIVE_INFINITY} if it
+     *         is above the highest bound, {@link Double#NaN} if no value was recorded
+     */
+    public double estimateQuantile(double quantile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for ( long bucketCount : counts ) {
+            total += bucketCount;
+        }
+        if ( total == 0 ) {
+            return Double.NaN;
+        }
+        
+        long rank = (long) Math.ceil(quantile * total);
+        long cumulative = 0;
+        for ( int i = 0; i < upperBounds.length; i++ ) {
+            cumulative += counts[i];
+            if ( cumulative >= rank ) {
+                return upperBounds[i];
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+}
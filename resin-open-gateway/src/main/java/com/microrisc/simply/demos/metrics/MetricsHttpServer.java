@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.metrics;
+
+import com.microrisc.simply.demos.concurrent.Threads;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded HTTP server exposing metrics in the Prometheus text format on the
+ * {@code /metrics} path.
+ */
+public final class MetricsHttpServer {
+    
+    private static final Logger log = LoggerFactory.getLogger(MetricsHttpServer.class);
+    
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final MetricsRegistry registry;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    
+    
+    /**
+     * Creates new server and binds it to specified address.
+     * @param registry registry of metrics to expose
+     * @param bindAddress address to bind to
+     * @param port port to bind to
+     * @throws IOException if the server cannot be bound
+     */
+    public MetricsHttpServer(MetricsRegistry registry, String bindAddress, int port) 
+            throws IOException 
+    {
+        this.registry = registry;
+        this.server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        this.executor = Threads.newSingleThreadExecutor("metrics-http");
+        
+        server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleMetrics(exchange);
+            }
+        });
+        server.setExecutor(executor);
+    }
+    
+    // writes metrics as a response to specified exchange
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            if ( !exchange.getRequestMethod().equals("GET") ) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            
+            ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+            Writer writer = new OutputStreamWriter(body, UTF_8);
+            registry.writePrometheus(writer);
+            writer.flush();
+            
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.size());
+            try ( OutputStream responseBody = exchange.getResponseBody() ) {
+                body.writeTo(responseBody);
+            }
+        } catch ( RuntimeException ex ) {
+            log.error("Error while exporting metrics", ex);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    /**
+     * Starts serving of requests.
+     */
+    public void start() {
+        server.start();
+        log.info("Metrics exposed on {}", server.getAddress());
+    }
+    
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
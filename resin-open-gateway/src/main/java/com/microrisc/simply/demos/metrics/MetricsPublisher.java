@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.metrics;
+
+import com.microrisc.simply.demos.concurrent.Threads;
+import com.microrisc.simply.demos.mqtt.MqttCommunicator;
+import java.nio.charset.Charset;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically publishes JSON snapshot of metrics to the gateway status topic.
+ */
+public final class MetricsPublisher {
+    
+    private static final Logger log = LoggerFactory.getLogger(MetricsPublisher.class);
+    
+    // status is periodic - lost snapshot is replaced by the next one
+    private static final int PUBLISH_QOS = 0;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final MetricsRegistry registry;
+    private final MqttCommunicator mqttCommunicator;
+    private final String topic;
+    private final ScheduledExecutorService scheduler;
+    
+    
+    /**
+     * Creates new publisher.
+     * @param registry registry of metrics to publish
+     * @param mqttCommunicator MQTT communicator
+     * @param topic topic to publish to
+     */
+    public MetricsPublisher(MetricsRegistry registry, MqttCommunicator mqttCommunicator, String topic) {
+        this.registry = registry;
+        this.mqttCommunicator = mqttCommunicator;
+        this.topic = topic;
+        this.scheduler = Threads.newScheduledExecutor("metrics-publisher");
+    }
+    
+    /**
+     * Starts periodic publishing.
+     * @param period publishing period [in s]
+     */
+    public void start(long period) {
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                publish();
+            }
+        }, period, period, TimeUnit.SECONDS);
+    }
+    
+    // publishes current snapshot of metrics
+    private void publish() {
+        try {
+            mqttCommunicator.publish(topic, PUBLISH_QOS, registry.toJson().getBytes(UTF_8));
+        } catch ( MqttException ex ) {
+            log.warn("Error while publishing metrics: {}", ex.toString());
+        } catch ( RuntimeException ex ) {
+            log.error("Error while publishing metrics", ex);
+        }
+    }
+    
+    /**
+     * Stops publishing.
+     */
+    public void stop() {
+        scheduler.shutdown();
+    }
+}
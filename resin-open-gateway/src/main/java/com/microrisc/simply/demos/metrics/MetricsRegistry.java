@@ -0,0 +1,293 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.json.simple.JSONObject;
+
+/**
+ * Registry of application metrics.
+ * <p>
+ * Metrics are organized into families of the same name and type. Metrics of
+ * one family differ in their labels, which are specified as name-value pairs,
+ * e.g. {@code counter("dpa_failures_total", "...", "node", "1")}. Getting of a
+ * metric, which already exists, returns the existing one, so instrumented code
+ * can get its metrics at any time. Hot paths should keep the references.
+ */
+public final class MetricsRegistry {
+    
+    // types of metrics
+    private static enum Type { 
+        COUNTER, GAUGE, HISTOGRAM;
+        
+        String prometheusName() {
+            return name().toLowerCase();
+        }
+    }
+    
+    // family of metrics of the same name
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        
+        // metrics indexed by their labels in the Prometheus text form
+        final ConcurrentMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+        
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+    
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+    
+    
+    /**
+     * @return default registry of the application
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+    
+    // returns family of specified name, creates it if it does not exist
+    private Family getFamily(String name, String help, Type type) {
+        Family family = families.get(name);
+        if ( family == null ) {
+            Family newFamily = new Family(name, help, type);
+            family = families.putIfAbsent(name, newFamily);
+            if ( family == null ) {
+                family = newFamily;
+            }
+        }
+        if ( family.type != type ) {
+            throw new IllegalArgumentException(
+                    "Metric " + name + " already registered as " + family.type
+            );
+        }
+        return family;
+    }
+    
+    // escapes label value for the Prometheus text format
+    private static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+    
+    // returns labels in the Prometheus text form, without braces
+    private static String formatLabels(String[] labels) {
+        if ( labels.length % 2 != 0 ) {
+            throw new IllegalArgumentException("Labels must be name-value pairs");
+        }
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < labels.length; i += 2 ) {
+            if ( i > 0 ) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(escapeLabelValue(labels[i+1])).append('"');
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Returns counter of specified name and labels, creates it if it does not exist.
+     * @param name name of the counter
+     * @param help description of the counter
+     * @param labels label name-value pairs
+     * @return counter
+     */
+    public Counter counter(String name, String help, String... labels) {
+        Family family = getFamily(name, help, Type.COUNTER);
+        String labelsText = formatLabels(labels);
+        Object counter = family.metrics.get(labelsText);
+        if ( counter == null ) {
+            Counter newCounter = new Counter();
+            counter = family.metrics.putIfAbsent(labelsText, newCounter);
+            if ( counter == null ) {
+                counter = newCounter;
+            }
+        }
+        return (Counter) counter;
+    }
+    
+    /**
+     * Returns histogram of specified name and labels, creates it with specified
+     * buckets if it does not exist.
+     * @param name name of the histogram
+     * @param help description of the histogram
+     * @param upperBounds upper bounds of buckets [in s]
+     * @param labels label name-value pairs
+     * @return histogram
+     */
+    public Histogram histogram(String name, String help, double[] upperBounds, String... labels) {
+        Family family = getFamily(name, help, Type.HISTOGRAM);
+        String labelsText = formatLabels(labels);
+        Object histogram = family.metrics.get(labelsText);
+        if ( histogram == null ) {
+            Histogram newHistogram = new Histogram(upperBounds);
+            histogram = family.metrics.putIfAbsent(labelsText, newHistogram);
+            if ( histogram == null ) {
+                histogram = newHistogram;
+            }
+        }
+        return (Histogram) histogram;
+    }
+    
+    /**
+     * Registers specified gauge. Gauge registered under the same name and labels
+     * before is replaced.
+     * @param name name of the gauge
+     * @param help description of the gauge
+     * @param gauge gauge to register
+     * @param labels label name-value pairs
+     */
+    public void gauge(String name, String help, Gauge gauge, String... labels) {
+        getFamily(name, help, Type.GAUGE).metrics.put(formatLabels(labels), gauge);
+    }
+    
+    /**
+     * Removes all metrics of specified name and labels.
+     * @param name name of the metrics
+     * @param labels label name-value pairs
+     */
+    public void remove(String name, String... labels) {
+        Family family = families.get(name);
+        if ( family != null ) {
+            family.metrics.remove(formatLabels(labels));
+        }
+    }
+    
+    // returns sample name with labels
+    private static String sampleName(String name, String labelsText, String extraLabel) {
+        if ( labelsText.isEmpty() && extraLabel == null ) {
+            return name;
+        }
+        StringBuilder sb = new StringBuilder(name).append('{').append(labelsText);
+        if ( extraLabel != null ) {
+            if ( !labelsText.isEmpty() ) {
+                sb.append(',');
+            }
+            sb.append(extraLabel);
+        }
+        return sb.append('}').toString();
+    }
+    
+    // formats number for the Prometheus text format
+    private static String formatValue(double value) {
+        if ( Double.isNaN(value) ) {
+            return "NaN";
+        }
+        if ( Double.isInfinite(value) ) {
+            return (value > 0)? "+Inf" : "-Inf";
+        }
+        if ( value == Math.rint(value) && Math.abs(value) < 1e15 ) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+    
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     * @param writer writer to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writePrometheus(Writer writer) throws IOException {
+        for ( Family family : families.values() ) {
+            if ( family.metrics.isEmpty() ) {
+                continue;
+            }
+            writer.write("# HELP " + family.name + " " + family.help.replace("\n", " ") + "\n");
+            writer.write("# TYPE " + family.name + " " + family.type.prometheusName() + "\n");
+            
+            for ( Map.Entry<String, Object> entry : family.metrics.entrySet() ) {
+                String labels = entry.getKey();
+                switch ( family.type ) {
+                    case COUNTER:
+                        writer.write(sampleName(family.name, labels, null) + " " 
+                                + ((Counter) entry.getValue()).get() + "\n");
+                    break;
+                    
+                    case GAUGE:
+                        writer.write(sampleName(family.name, labels, null) + " " 
+                                + formatValue(((Gauge) entry.getValue()).getValue()) + "\n");
+                    break;
+                    
+                    case HISTOGRAM:
+                        Histogram histogram = (Histogram) entry.getValue();
+                        double[] upperBounds = histogram.getUpperBounds();
+                        long[] counts = histogram.getBucketCounts();
+                        long cumulative = 0;
+                        for ( int i = 0; i < upperBounds.length; i++ ) {
+                            cumulative += counts[i];
+                            writer.write(sampleName(family.name + "_bucket", labels, 
+                                    "le=\"" + formatValue(upperBounds[i]) + "\"") + " " + cumulative + "\n");
+                        }
+                        cumulative += counts[upperBounds.length];
+                        writer.write(sampleName(family.name + "_bucket", labels, "le=\"+Inf\"") 
+                                + " " + cumulative + "\n");
+                        writer.write(sampleName(family.name + "_sum", labels, null) + " " 
+                                + formatValue(histogram.getSum()) + "\n");
+                        writer.write(sampleName(family.name + "_count", labels, null) + " " 
+                                + cumulative + "\n");
+                    break;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns compact JSON snapshot of all metrics. Histograms are summarized
+     * by their count, sum and estimated 50th and 99th percentiles.
+     * @return JSON snapshot of metrics
+     */
+    @SuppressWarnings("unchecked")
+    public String toJson() {
+        JSONObject snapshot = new JSONObject();
+        for ( Family family : families.values() ) {
+            for ( Map.Entry<String, Object> entry : family.metrics.entrySet() ) {
+                String key = sampleName(family.name, entry.getKey(), null);
+                switch ( family.type ) {
+                    case COUNTER:
+                        snapshot.put(key, ((Counter) entry.getValue()).get());
+                    break;
+                    
+                    case GAUGE:
+                        double value = ((Gauge) entry.getValue()).getValue();
+                        snapshot.put(key, (Double.isNaN(value) || Double.isInfinite(value))? null : value);
+                    break;
+                    
+                    case HISTOGRAM:
+                        Histogram histogram = (Histogram) entry.getValue();
+                        JSONObject summary = new JSONObject();
+                        summary.put("count", histogram.getCount());
+                        summary.put("sum", histogram.getSum());
+                        summary.put("p50", formatValue(histogram.estimateQuantile(0.5)));
+                        summary.put("p99", formatValue(histogram.estimateQuantile(0.99)));
+                        snapshot.put(key, summary);
+                    break;
+                }
+            }
+        }
+        return snapshot.toJSONString();
+    }
+}
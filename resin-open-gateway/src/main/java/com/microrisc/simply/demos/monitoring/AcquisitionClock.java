@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.monitoring;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps values of the monotonic {@link System#nanoTime()} clock to the wall 
+ * clock time.
+ * <p>
+ * Both clocks are read at the same moment to make an anchor of the mapping. 
+ * Times obtained between two resynchronizations keep their mutual distances
+ * even if the wall clock is stepped meanwhile, e.g. by the first NTP 
+ * synchronization after boot. The step is picked up by the next 
+ * resynchronization. Not thread safe.
+ */
+public final class AcquisitionClock {
+    
+    // anchor of the mapping
+    private long anchorWallTime;
+    private long anchorNanoTime;
+    
+    
+    /**
+     * Creates new clock synchronized with the current wall clock time.
+     */
+    public AcquisitionClock() {
+        resync();
+    }
+    
+    /**
+     * Makes new anchor of the mapping from the current values of both clocks.
+     */
+    public void resync() {
+        anchorNanoTime = System.nanoTime();
+        anchorWallTime = System.currentTimeMillis();
+    }
+    
+    /**
+     * Returns wall clock time corresponding to specified monotonic time.
+     * @param nanoTime value of {@link System#nanoTime()}
+     * @return wall clock time [in ms since the epoch]
+     */
+    public long toWallTime(long nanoTime) {
+        return anchorWallTime + TimeUnit.NANOSECONDS.toMillis(nanoTime - anchorNanoTime);
+    }
+    
+    /**
+     * @return wall clock time of this moment according to the mapping [in ms since the epoch]
+     */
+    public long now() {
+        return toWallTime(System.nanoTime());
+    }
+}
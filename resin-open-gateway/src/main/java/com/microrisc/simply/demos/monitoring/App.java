@@ -14,48 +14,41 @@
  * limitations under the License.
  */
 package com.microrisc.simply.demos.monitoring;
-
+import com.microrisc.simply.demos.bridge.DpaRequestBridge;
 import com.microrisc.simply.demos.config.ApplicationConfiguration;
-import com.microrisc.simply.demos.config.DeviceInfo;
+import com.microrisc.simply.demos.config.ConfigurationLoader;
+import com.microrisc.simply.demos.config.ConfigurationWatcher;
+import com.microrisc.simply.demos.config.DpaBridgeConfiguration;
+import com.microrisc.simply.demos.config.MetricsConfiguration;
+import com.microrisc.simply.demos.config.NetworkConfiguration;
+import com.microrisc.simply.demos.config.SinkConfiguration;
 import com.microrisc.simply.demos.mqtt.MqttConfiguration;
 import com.microrisc.simply.demos.mqtt.MqttTopics;
 import com.microrisc.simply.demos.mqtt.MqttCommunicator;
-import com.microrisc.simply.demos.mqtt.MqttFormatter;
-import com.microrisc.simply.CallRequestProcessingState;
-import static com.microrisc.simply.CallRequestProcessingState.ERROR;
-import com.microrisc.simply.Network;
-import com.microrisc.simply.Node;
+import com.microrisc.simply.demos.metrics.MetricsHttpServer;
+import com.microrisc.simply.demos.metrics.MetricsPublisher;
+import com.microrisc.simply.demos.metrics.MetricsRegistry;
+import com.microrisc.simply.demos.sink.SinkDispatcher;
+import com.microrisc.simply.demos.sink.SinkFactory;
 import com.microrisc.simply.SimplyException;
-import com.microrisc.simply.compounddevices.CompoundDeviceObject;
-import com.microrisc.simply.devices.protronix.dpa22x.CO2Sensor;
-import com.microrisc.simply.devices.protronix.dpa22x.VOCSensor;
-import com.microrisc.simply.devices.protronix.dpa22x.types.CO2SensorData;
-import com.microrisc.simply.devices.protronix.dpa22x.types.VOCSensorData;
-import com.microrisc.simply.errors.CallRequestProcessingError;
-import com.microrisc.simply.errors.CallRequestProcessingErrorType;
-import com.microrisc.simply.iqrf.dpa.DPA_ResponseCode;
-import com.microrisc.simply.iqrf.dpa.DPA_Simply;
-import com.microrisc.simply.iqrf.dpa.v22x.DPA_SimplyFactory;
-import com.microrisc.simply.iqrf.dpa.v22x.devices.Coordinator;
-import com.microrisc.simply.iqrf.dpa.v22x.devices.OS;
-import com.microrisc.simply.iqrf.dpa.v22x.types.DPA_AdditionalInfo;
-import com.microrisc.simply.iqrf.dpa.v22x.types.DPA_Parameter;
-import com.microrisc.simply.iqrf.dpa.v22x.types.OsInfo;
-import java.io.File;
+import ch.qos.logback.classic.LoggerContext;
 import java.io.FileReader;
 import java.io.IOException;
-import java.text.DecimalFormat;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.paho.client.mqttv3.MqttException;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Sending Protronix values over MQTT in JSON SENML format .
@@ -65,674 +58,503 @@ import org.json.simple.parser.ParseException;
  */
 public final class App {
     
-    // data to publish
-    private static class DataToPublish {
-        Object sensorData;
-        Integer rssi;
-        
-        public DataToPublish(Object sensorData, Integer rssi) {
-            this.sensorData = sensorData;
-            this.rssi = rssi;
-        }
-    }
-    
-    // RSSI is not avalaible
-    private static final int RSSI_NOT_AVAILABLE = 0;
-    
-    
-    // references for DPA
-    private static DPA_Simply dpaSimply = null;
+    private static final Logger log = LoggerFactory.getLogger(App.class);
     
     // references for MQTT
     private static MqttCommunicator mqttCommunicator = null;
+    private static MqttConfiguration mqttConfiguration = null;
     
     // application related references
-    private static ApplicationConfiguration appConfiguration = null;
+    private static volatile ApplicationConfiguration appConfiguration = null;
     
     // MQTT topics
     private static MqttTopics mqttTopics = null;
     
-    // OS's info map
-    private static Map<String, OsInfo> osInfoMap = null;
+    // monitors of networks - one for each configured network
+    private static volatile List<NetworkMonitor> networkMonitors = new CopyOnWriteArrayList<>();
+    
+    // bridge of DPA requests received over MQTT
+    private static DpaRequestBridge dpaRequestBridge = null;
+    
+    // metrics
+    private static final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private static MetricsHttpServer metricsHttpServer = null;
+    private static MetricsPublisher metricsPublisher = null;
+    
+    // dispatcher of readings to output sinks
+    private static SinkDispatcher sinkDispatcher = null;
+    
+    // watcher of configuration files
+    private static volatile ConfigurationWatcher configurationWatcher = null;
+    
+    // released at the end of the application
+    private static final CountDownLatch endLatch = new CountDownLatch(1);
+    
+    // indicates, that resources have already been released
+    private static boolean resourcesReleased = false;
     
-    // sensor's map
-    private static Map<String, CompoundDeviceObject> sensorsMap = null;
+    // set at the beginning of shutdown, reloads of configuration are no longer applied
+    private static volatile boolean shuttingDown = false;
     
-    // not used so far
-    private static int pid = 0;
     
     
+    // default file of application configuration
+    private static final String DEFAULT_APP_CONFIG_FILE = "App.json";
+    
+    // file of MQTT configuration
+    private static final String MQTT_CONFIG_FILE = "Mqtt.json";
+    
+    // directory of readings not written into sinks before shutdown
+    private static final String SPOOL_DIRECTORY = "spool";
+    
     
     // MAIN PROCESSING
+    // optional argument: file of application configuration in config/app
     public static void main(String[] args) throws InterruptedException, MqttException {
         // initialization
-        init();
+        init( (args.length > 0)? args[0] : DEFAULT_APP_CONFIG_FILE );
         
-        // main application loop
-        while ( true ) {
-            getAndPublishSensorData();
-            Thread.sleep(appConfiguration.getPollingPeriod() * 1000);
+        // each network is polled in its own acquisition loop
+        for ( NetworkMonitor networkMonitor : networkMonitors ) {
+            networkMonitor.start();
         }
+        
+        endLatch.await();
     }
     
     // initializes application
-    private static void init() {
+    private static void init(String appConfigFile) throws InterruptedException {
         // application exit hook
         Runtime.getRuntime().addShutdownHook( new Thread(new Runnable() {
 
             @Override
             public void run() {
-                System.out.println("End via shutdown hook.");
+                log.info("End via shutdown hook.");
                 releaseResources();
+                endLatch.countDown();
             }
         }));
         
         // loading application configuration
         try {
-            appConfiguration = loadApplicationConfiguration("App.json");
+            appConfiguration = loadApplicationConfiguration(getAppConfigPath(appConfigFile));
         } catch ( Exception ex ) {
             printMessageAndExit("Error in loading application configuration: " + ex);
         }
         
-        // Simply initialization
-        if ( appConfiguration.getCommunicationInterface().equalsIgnoreCase("cdc")) {
-            dpaSimply = getDPA_Simply("Simply-CDC.properties");
-        } else if( appConfiguration.getCommunicationInterface().equalsIgnoreCase("spi")) {
-            dpaSimply = getDPA_Simply("Simply-SPI.properties");
-        } else {
-            printMessageAndExit("No supported communication interface: " + appConfiguration.getCommunicationInterface());
-        }
-        
         initMqtt();
         
-        // getting reference to IQRF DPA network to use
-        Network dpaNetwork = dpaSimply.getNetwork("1", Network.class);
-        if ( dpaNetwork == null ) {
-            printMessageAndExit("DPA Network doesn't exist");
+        initMetrics();
+        
+        initSinks();
+        
+        // Simply initialization of each network
+        for ( NetworkConfiguration networkConfiguration : appConfiguration.getNetworks() ) {
+            try {
+                networkMonitors.add(createNetworkMonitor(networkConfiguration));
+            } catch ( SimplyException ex ) {
+                printMessageAndExit(
+                        "Error while initializing network " + networkConfiguration.getId() 
+                        + ": " + ex.getMessage()
+                );
+            }
         }
         
-        // reference to map of all nodes in the network
-        Map<String, Node> nodesMap = dpaNetwork.getNodesMap();
+        try {
+            startDpaRequestBridge();
+        } catch ( MqttException ex ) {
+            printMessageAndExit("Error while starting DPA requests bridge: " + ex);
+        }
         
-        // reference to OS Info
-        osInfoMap = getOsInfoFromNodes(nodesMap);
+        initConfigurationWatcher(appConfigFile);
+    }
+    
+    // creates and initializes monitor of specified network
+    private static NetworkMonitor createNetworkMonitor(NetworkConfiguration networkConfiguration) 
+            throws SimplyException, InterruptedException 
+    {
+        NetworkMonitor networkMonitor = new NetworkMonitor(
+                networkConfiguration, appConfiguration.getRadioConfiguration(),
+                mqttCommunicator, sinkDispatcher, mqttTopics, metrics
+        );
+        try {
+            networkMonitor.init();
+        } catch ( SimplyException | InterruptedException ex ) {
+            networkMonitor.destroy();
+            throw ex;
+        }
+        return networkMonitor;
+    }
+    
+    // starts bridge of DPA requests received over MQTT - requests are bridged 
+    // into the first network
+    private static void startDpaRequestBridge() throws MqttException {
+        DpaBridgeConfiguration bridgeConfiguration = appConfiguration.getDpaBridgeConfiguration();
+        if ( !bridgeConfiguration.isEnabled() || networkMonitors.isEmpty() ) {
+            return;
+        }
         
-        // printing MIDs of nodes in the network
-        printMIDs(osInfoMap);
+        NetworkMonitor networkMonitor = networkMonitors.get(0);
+        dpaRequestBridge = new DpaRequestBridge(
+                networkMonitor.getDpaNetwork(), mqttCommunicator, mqttTopics, 
+                networkMonitor.getRadioArbiter(), bridgeConfiguration
+        );
+        dpaRequestBridge.start();
+    }
+    
+    // stops bridge of DPA requests, if it is running
+    private static void stopDpaRequestBridge() {
+        if ( dpaRequestBridge != null ) {
+            dpaRequestBridge.destroy();
+            dpaRequestBridge = null;
+        }
+    }
+    
+    // inits exposition of metrics over HTTP and MQTT
+    private static void initMetrics() {
+        MetricsConfiguration metricsConfiguration = appConfiguration.getMetricsConfiguration();
         
-        // reference to sensors
-        sensorsMap = getSensorsMap(nodesMap);
+        if ( metricsConfiguration.getHttpPort() > 0 ) {
+            try {
+                metricsHttpServer = new MetricsHttpServer(
+                        metrics, metricsConfiguration.getHttpBindAddress(), 
+                        metricsConfiguration.getHttpPort()
+                );
+                metricsHttpServer.start();
+            } catch ( IOException ex ) {
+                log.error("Error while starting metrics HTTP endpoint: {}", ex.toString());
+            }
+        }
         
-        // setting, that last RSSI value will be returned in every DPA response or confirmation
-        setGettingLastRssi(dpaNetwork);
+        startMetricsPublisher();
+    }
+    
+    // starts publishing of metrics over MQTT, if enabled
+    private static void startMetricsPublisher() {
+        long publishPeriod = appConfiguration.getMetricsConfiguration().getPublishPeriod();
+        if ( publishPeriod > 0 ) {
+            metricsPublisher = new MetricsPublisher(
+                    metrics, mqttCommunicator, mqttTopics.getGatewayStatus()
+            );
+            metricsPublisher.start(publishPeriod);
+        }
+    }
+    
+    // inits output sinks of readings, sinks with invalid configuration are skipped
+    private static void initSinks() {
+        sinkDispatcher = new SinkDispatcher(metrics, Paths.get(SPOOL_DIRECTORY));
+        for ( SinkConfiguration sinkConfiguration : appConfiguration.getSinks() ) {
+            try {
+                sinkDispatcher.addSink(
+                        sinkConfiguration, SinkFactory.create(sinkConfiguration, mqttCommunicator)
+                );
+            } catch ( IllegalArgumentException ex ) {
+                log.error("Error in configuration of sink {}: {}", sinkConfiguration.getName(), ex.getMessage());
+            }
+        }
     }
     
     // inits MQTT related functionality
     private static void initMqtt() {
         // loading MQTT configuration
-        MqttConfiguration mqttConfiguration = null;
         try {
-            mqttConfiguration = loadMqttConfiguration("Mqtt.json");
+            mqttConfiguration = loadMqttConfiguration(getMqttConfigPath());
         } catch ( Exception ex ) {
             printMessageAndExit("Error in loading MQTT configuration: " + ex);
         } 
         
         // topics initialization
-        mqttTopics = new MqttTopics.Builder().gwId(mqttConfiguration.getGwId())
-                .stdSensorsProtronix("/std/sensors/protronix/")
-                .stdSensorsProtronixErrors("/std/sensors/protronix/errors/")
-                .build();
+        mqttTopics = createMqttTopics(mqttConfiguration);
 
         try {
-            mqttCommunicator = new MqttCommunicator(mqttConfiguration);
-        } catch ( MqttException ex ) {
+            mqttCommunicator = MqttCommunicator.create(mqttConfiguration);
+        } catch ( MqttException | IllegalStateException ex ) {
             printMessageAndExit("Error while creation of MQTT communicator: " + ex);
         }
     }
     
-    // prints out specified message, destroys the Simply and exits
-    private static void printMessageAndExit(String message) {
-        System.out.println(message);
-        releaseResources();
-        System.exit(1);
+    // creates MQTT topics according to specified configuration
+    private static MqttTopics createMqttTopics(MqttConfiguration mqttConfiguration) {
+        return new MqttTopics.Builder().gwId(mqttConfiguration.getGwId())
+                .stdSensorsProtronix("/std/sensors/protronix/")
+                .stdSensorsProtronixErrors("/std/sensors/protronix/errors/")
+                .build();
     }
     
-    // sets getting last RSSI in DPA responses or notifications
-    private static void setGettingLastRssi(Network dpaNetwork) {
-        Node node0 = dpaNetwork.getNode("0");
-        if ( node0 == null ) {
-            printMessageAndExit("Node 0 doesn't exist");
-        }
+    // inits watching of configuration files for changes
+    private static void initConfigurationWatcher(String appConfigFile) {
+        final Path appConfigPath = getAppConfigPath(appConfigFile).toAbsolutePath().normalize();
+        final Path mqttConfigPath = getMqttConfigPath().toAbsolutePath().normalize();
         
-        Coordinator coord = node0.getDeviceObject(Coordinator.class);
-        if ( coord == null ) {
-            printMessageAndExit("Coordinator doesn't exist on Node 0");
-        }
-        
-        DPA_Parameter dpaParam = coord.setDPA_Param( 
-                new DPA_Parameter(DPA_Parameter.DPA_ValueType.LAST_RSSI, false, false)
-        );
-        
-        if ( dpaParam == null ) {
-            CallRequestProcessingError error = coord.getCallRequestProcessingErrorOfLastCall();
-            if ( error != null ) {
-                System.out.println("Error while setting DPA parameter: " + error);
-            }
-            printMessageAndExit("Setting DPA parameter NOT successfull.");
+        try {
+            configurationWatcher = new ConfigurationWatcher(
+                    new HashSet<>(Arrays.asList(appConfigPath, mqttConfigPath)),
+                    new ConfigurationWatcher.Listener() {
+                        @Override
+                        public void fileChanged(Path file) {
+                            if ( file.equals(appConfigPath) ) {
+                                reloadApplicationConfiguration(appConfigPath);
+                            } else if ( file.equals(mqttConfigPath) ) {
+                                reloadMqttConfiguration(mqttConfigPath);
+                            }
+                        }
+                    },
+                    ConfigurationWatcher.DEFAULT_SETTLE_TIME
+            );
+            configurationWatcher.start();
+        } catch ( IOException ex ) {
+            log.error("Watching of configuration files not available: {}", ex.toString());
         }
     }
     
-    // gets data from sensors and publishes them
-    /*
-         task:
-         1. Obtain data from sensors.
-         2. Creation of MQTT form of obtained sensor's data. 
-         3. Sending MQTT form of sensor's data through MQTT to destination point.
-    */
-    private static void getAndPublishSensorData() {
-        Map<String, DataToPublish> dataFromSensorsMap = getDataFromSensors();
-
-        // getting MQTT form of data from sensors
-        Map<String, List<String>> dataFromSensorsMqtt = toMqttForm(dataFromSensorsMap);
-
-        // sending data
-        mqttSendAndPublish(dataFromSensorsMqtt);
-    }
-    
-    // init dpa simply
-    private static DPA_Simply getDPA_Simply(String configFile) {
-        DPA_Simply DPASimply = null;
+    // reloads application configuration and applies its changes
+    private static synchronized void reloadApplicationConfiguration(Path configPath) {
+        if ( shuttingDown ) {
+            return;
+        }
         
+        ApplicationConfiguration newConfiguration = null;
         try {
-            DPASimply = DPA_SimplyFactory.getSimply("config" + File.separator + "simply" + File.separator + configFile);
-        } catch ( SimplyException ex ) {
-            printMessageAndExit("Error while creating Simply: " + ex.getMessage());
+            newConfiguration = loadApplicationConfiguration(configPath);
+        } catch ( Exception ex ) {
+            log.error("Error in reloading application configuration, keeping the current one: {}", ex.toString());
+            return;
         }
         
-        return DPASimply;
-    }
-    
-    // tests, if specified node ID is in valid interval
-    private static boolean isNodeIdInValidInterval(long nodeId) {
-        return ( nodeId > 0 && nodeId <= appConfiguration.getNumberOfDevices() );
-    }
-    
-    // returns reference to map of OS info objects for specified nodes map
-    private static Map<String, OsInfo> getOsInfoFromNodes(Map<String, Node> nodesMap) {
-        Map<String, OsInfo> osInfoMap = new LinkedHashMap<>();
-        
-        for ( Map.Entry<String, Node> entry : nodesMap.entrySet() ) {
-            int nodeId = Integer.parseInt(entry.getKey());
-            
-            // node ID must be within valid interval
-            if ( !isNodeIdInValidInterval(nodeId) ) {
-                continue;
-            }
-                
-            System.out.println("Getting OS info on the node: " + entry.getKey());
-
-            // OS peripheral
-            OS os = entry.getValue().getDeviceObject(OS.class);
-            
-            if ( os != null ) {
-                // get OS info about module
-                OsInfo osInfo = os.read();
-                if ( osInfo != null ) {
-                    osInfoMap.put(entry.getKey(), osInfo);
-                } else {
-                    CallRequestProcessingState procState = os.getCallRequestProcessingStateOfLastCall();
-                    if ( procState == ERROR ) {
-                        // general call error    
-                        CallRequestProcessingError error = os.getCallRequestProcessingErrorOfLastCall();
-                        System.err.println("Getting OS info failed: " + error);
-                        
-                        if (error.getErrorType() == CallRequestProcessingErrorType.NETWORK_INTERNAL) {
-                            // specific call error
-                            DPA_AdditionalInfo dpaAddInfo = os.getDPA_AdditionalInfoOfLastCall();
-                            if ( dpaAddInfo != null ) {
-                                DPA_ResponseCode dpaResponseCode = dpaAddInfo.getResponseCode();
-                                System.err.println("DPA response code: " + dpaResponseCode);
-                            }
-                        }
-                    } else {
-                        System.err.println("Getting OS info hasn't been processed yet: " + procState);
-                    }
-                }
-            } else {
-                System.err.println("OS doesn't exist on node");
-            }
+        if ( !newConfiguration.getRadioConfiguration().equals(appConfiguration.getRadioConfiguration())
+                || !newConfiguration.getMetricsConfiguration().equals(appConfiguration.getMetricsConfiguration())
+                || !newConfiguration.getSinks().equals(appConfiguration.getSinks())
+        ) {
+            log.warn("Changes of radio, metrics and sinks configuration take effect after restart");
         }
         
-        return osInfoMap;
-    }
-    
-    // prints MIDs of specified nodes in the map
-    private static void printMIDs(Map<String, OsInfo> osInfoMap) {
-        for ( Map.Entry<String, OsInfo> entry : osInfoMap.entrySet() ) {
-            System.out.println("Node: " + entry.getKey() + " MID: " + entry.getValue().getPrettyFormatedModuleId() );
+        ApplicationConfiguration oldConfiguration = appConfiguration;
+        appConfiguration = newConfiguration;
+        
+        NetworkMonitor oldBridgedMonitor = networkMonitors.isEmpty()? null : networkMonitors.get(0);
+        
+        Map<String, NetworkMonitor> oldMonitors = new HashMap<>();
+        for ( NetworkMonitor networkMonitor : networkMonitors ) {
+            oldMonitors.put(networkMonitor.getConfiguration().getId(), networkMonitor);
         }
-    }
-    
-    // returns map of CO2 and VOC sensors from specified map of nodes
-    private static Map<String, CompoundDeviceObject> getSensorsMap(Map<String, Node> nodesMap) {
-        Map<String, CompoundDeviceObject> sensorsMap = new LinkedHashMap<>();
         
-        for ( Map.Entry<String, Node> entry : nodesMap.entrySet() ) {
-            int nodeId = Integer.parseInt(entry.getKey());
-            
-            // node ID must be within valid interval
-            if ( !isNodeIdInValidInterval(nodeId) ) {
-                continue;
+        // new list of monitors in the order of the new configuration
+        List<NetworkMonitor> newMonitors = new CopyOnWriteArrayList<>();
+        for ( NetworkConfiguration networkConfiguration : newConfiguration.getNetworks() ) {
+            NetworkMonitor networkMonitor = oldMonitors.remove(networkConfiguration.getId());
+            if ( networkMonitor != null ) {
+                NetworkConfiguration current = networkMonitor.getConfiguration();
+                if ( current.getSimplyConfigFile().equals(networkConfiguration.getSimplyConfigFile()) ) {
+                    // the same Simply - only devices and intervals are changed
+                    networkMonitor.reconfigure(networkConfiguration);
+                    newMonitors.add(networkMonitor);
+                    continue;
+                }
+                log.info("Simply configuration of network {} changed, recreating", networkConfiguration.getId());
+                if ( networkMonitor == oldBridgedMonitor ) {
+                    stopDpaRequestBridge();
+                }
+                networkMonitors.remove(networkMonitor);
+                networkMonitor.destroy();
             }
             
-            System.out.println("Getting device: " + entry.getKey());
-            DeviceInfo sensorInfo = appConfiguration.getDevicesInfoMap().get(nodeId);
-
-            switch ( sensorInfo.getType() ) {
-                case "co2-t-h":
-                    CO2Sensor co2Sensor = entry.getValue().getDeviceObject(CO2Sensor.class);
-                    if ( co2Sensor != null ) {
-                        sensorsMap.put(entry.getKey(), (CompoundDeviceObject) co2Sensor);
-                        System.out.println("Device type: " + sensorInfo.getType());
-                    } else {
-                        System.err.println("CO2 sensor not found on node: " + nodeId);
-                    }
-                break;
-
-                case "voc-t-h":
-                    VOCSensor vocSensor = entry.getValue().getDeviceObject(VOCSensor.class);
-                    if ( vocSensor != null ) {
-                        sensorsMap.put(entry.getKey(), (CompoundDeviceObject) vocSensor);
-                        System.out.println("Device type: " + sensorInfo.getType());
-                    } else {
-                        System.err.println("VOC sensor not found on node: " + nodeId);
-                    }
+            if ( shuttingDown ) {
                 break;
-
-                default:
-                    printMessageAndExit("Device type not supported:" + sensorInfo.getType());
+            }
+            
+            try {
+                networkMonitor = createNetworkMonitor(networkConfiguration);
+            } catch ( SimplyException ex ) {
+                log.error("Error while initializing network {}: {}", networkConfiguration.getId(), ex.getMessage());
+                continue;
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
                 break;
             }
+            networkMonitor.start();
+            newMonitors.add(networkMonitor);
+            log.info("Network {} added", networkConfiguration.getId());
         }
         
-        return sensorsMap;
-    }
-    
-    // returns data from sensors as specicied by map
-    private static Map<String, DataToPublish> getDataFromSensors() {
-        // data from sensors
-        Map<String, DataToPublish> dataFromSensors = new HashMap<>();
+        // monitors not processed yet are kept for the shutdown to stop them
+        if ( shuttingDown ) {
+            newMonitors.addAll(oldMonitors.values());
+            networkMonitors = newMonitors;
+            log.info("Shutdown in progress, reload of application configuration abandoned");
+            return;
+        }
         
-        for ( Map.Entry<String, CompoundDeviceObject> entry : sensorsMap.entrySet() ) {
-            
-            int nodeId = Integer.parseInt(entry.getKey());
-            
-            // node ID must be within valid interval
-            if ( !isNodeIdInValidInterval(nodeId) ) {
-                continue;
-            }
-            
-            DeviceInfo sensorInfo = appConfiguration.getDevicesInfoMap().get(nodeId);
-            System.out.println("Getting data from sensor " + entry.getKey());
-
-            switch ( sensorInfo.getType() ) {
-                case "co2-t-h":
-                    CompoundDeviceObject compDevObject = entry.getValue();
-                    if ( compDevObject == null ) {
-                        System.err.println("Sensor not found. Id: " + entry.getKey());
-                        break;
-                    }
-                    
-                    if ( !(compDevObject instanceof CO2Sensor) ) {
-                        System.err.println("Bad type of sensor. Got: " + compDevObject.getClass() 
-                            + ", expected: " + CO2Sensor.class
-                        );
-                        break;
-                    }
-                    
-                    CO2Sensor co2Sensor = (CO2Sensor)compDevObject;
-                    CO2SensorData co2SensorData = co2Sensor.get();
-                    if ( co2SensorData != null ) {
-                        Integer rssi = null;
-                        DPA_AdditionalInfo addInfo = co2Sensor.getDPA_AdditionalInfoOfLastCall();
-                        if ( addInfo == null ) {
-                            System.err.println("No additional info for CO2 sensor");
-                        } else {
-                            rssi = addInfo.getDPA_Value();
-                        }
-                        dataFromSensors.put(entry.getKey(), new DataToPublish(co2SensorData, rssi) );
-                    } else {
-                        CallRequestProcessingState requestState = co2Sensor.getCallRequestProcessingStateOfLastCall();
-                        if ( requestState == ERROR ) {                      
-                            // call error    
-                            CallRequestProcessingError error = co2Sensor.getCallRequestProcessingErrorOfLastCall();
-                            System.err.println("Error while getting data from CO2 sensor: " + error);
-                            
-                            String mqttError = MqttFormatter.formatError( String.valueOf(error) );
-                            mqttPublishErrors(nodeId, mqttTopics, mqttError);
-                            
-                            // specific call error
-                            if ( error.getErrorType() == CallRequestProcessingErrorType.NETWORK_INTERNAL ) {
-                                DPA_AdditionalInfo dpaAddInfo = co2Sensor.getDPA_AdditionalInfoOfLastCall();
-                                if ( dpaAddInfo != null ) {
-                                    DPA_ResponseCode dpaResponseCode = dpaAddInfo.getResponseCode();
-                                    System.err.println("DPA response code: " + dpaResponseCode);  
-                                }
-                            }
-                        } else {
-                            System.err.println(
-                                "Could not get data from CO2 sensor. State of the sensor: " + requestState
-                            );
-                        }
-                    } 
-                break;
-
-                case "voc-t-h":
-                    compDevObject = entry.getValue();
-                    if ( compDevObject == null ) {
-                        System.err.println("Sensor not found. Id: " + entry.getKey());
-                        break;
-                    }
-                    
-                    if ( !(compDevObject instanceof VOCSensor) ) {
-                        System.err.println("Bad type of sensor. Got: " + compDevObject.getClass() 
-                            + ", expected: " + VOCSensor.class
-                        );
-                        break;
-                    }
-                    
-                    VOCSensor vocSensor = (VOCSensor)compDevObject;
-                    VOCSensorData vocSensorData = vocSensor.get();
-                    if ( vocSensorData != null ) {
-                        Integer rssi = null;
-                        DPA_AdditionalInfo addInfo = vocSensor.getDPA_AdditionalInfoOfLastCall();
-                        if ( addInfo == null ) {
-                            System.err.println("No additional info for VOC sensor");
-                        } else {
-                            rssi = addInfo.getDPA_Value();
-                        }
-                        dataFromSensors.put(entry.getKey(), new DataToPublish(vocSensorData, rssi) );
-                    } else {
-                        CallRequestProcessingState requestState = vocSensor.getCallRequestProcessingStateOfLastCall();
-                        if ( requestState == ERROR ) {
-                            // general call error
-                            CallRequestProcessingError error = vocSensor.getCallRequestProcessingErrorOfLastCall();
-                            System.err.println("Error while getting data from VOC sensor: " + error);
-                            
-                            String mqttError = MqttFormatter.formatError( String.valueOf(error) );
-                            mqttPublishErrors(nodeId, mqttTopics, mqttError);
-                            
-                            // specific call error
-                            if (error.getErrorType() == CallRequestProcessingErrorType.NETWORK_INTERNAL) {
-                                DPA_AdditionalInfo dpaAddInfo = vocSensor.getDPA_AdditionalInfoOfLastCall();
-                                if ( dpaAddInfo != null ) {
-                                    DPA_ResponseCode dpaResponseCode = dpaAddInfo.getResponseCode();
-                                    System.err.println("DPA response code: " + dpaResponseCode);
-                                }
-                            }
-                        } else {
-                            System.err.println(
-                                "Could not get data from VOC sensor. State of the sensor: " + requestState
-                            );
-                        }
-                    }
-                break;
-
-                default:
-                    printMessageAndExit("Device type not supported:" + sensorInfo.getType());
-                break;
+        // networks no longer configured
+        for ( NetworkMonitor networkMonitor : oldMonitors.values() ) {
+            if ( networkMonitor == oldBridgedMonitor ) {
+                stopDpaRequestBridge();
             }
+            networkMonitor.destroy();
+            log.info("Network {} removed", networkMonitor.getConfiguration().getId());
         }
         
-        return dataFromSensors;
-    }
-    
-    // returns ID of module for specified sensor ID
-    private static String getModuleId(String sensorId, Map<String, OsInfo> osInfoMap) {
-        if ( osInfoMap.get(sensorId) != null ) {
-            return osInfoMap.get(sensorId).getPrettyFormatedModuleId();
+        networkMonitors = newMonitors;
+        
+        // bridge follows the first network and its configuration
+        NetworkMonitor newBridgedMonitor = networkMonitors.isEmpty()? null : networkMonitors.get(0);
+        if ( newBridgedMonitor != oldBridgedMonitor 
+                || !newConfiguration.getDpaBridgeConfiguration().equals(oldConfiguration.getDpaBridgeConfiguration())
+        ) {
+            restartDpaRequestBridge();
         }
-        return "not-known";
+        
+        log.info("Application configuration reloaded");
     }
     
-    // for specified sensor's data returns their equivalent MQTT form
-    private static Map<String, List<String>> toMqttForm(
-            Map<String, DataToPublish> dataFromSensorsMap
-    ) {
-        Map<String, List<String>> mqttAllSensorsData = new LinkedHashMap<>();
+    // reloads MQTT configuration and applies its changes
+    private static synchronized void reloadMqttConfiguration(Path configPath) {
+        if ( shuttingDown ) {
+            return;
+        }
         
-        // for each sensor's data
-        for ( Map.Entry<String, DataToPublish> entry : dataFromSensorsMap.entrySet() ) {
-            int nodeId = Integer.parseInt(entry.getKey());
-            
-            if ( !isNodeIdInValidInterval(nodeId) ) {
-                continue;
-            }
-            
-            // mqtt data for 1 sensor
-            List<String> mqttSensorData = new LinkedList<>();
-            
-            DeviceInfo sensorInfo = appConfiguration.getDevicesInfoMap().get(nodeId);
-            System.out.println("Preparing MQTT message for node: " + entry.getKey());
-            
-            DecimalFormat sensorDataFormat = new DecimalFormat("##.#");
-            DataToPublish dataToPublish = entry.getValue();
-            
-            Integer rssi = dataToPublish.rssi;
-            if ( rssi == null ) {
-                rssi = RSSI_NOT_AVAILABLE;
+        MqttConfiguration newConfiguration = null;
+        try {
+            newConfiguration = loadMqttConfiguration(configPath);
+        } catch ( Exception ex ) {
+            log.error("Error in reloading MQTT configuration, keeping the current one: {}", ex.toString());
+            return;
+        }
+        
+        if ( newConfiguration.getMqttVersion() != mqttConfiguration.getMqttVersion() ) {
+            log.warn("Change of MQTT version takes effect after restart, keeping the current configuration");
+            return;
+        }
+        
+        if ( !newConfiguration.isSameConnection(mqttConfiguration) ) {
+            try {
+                mqttCommunicator.reconfigure(newConfiguration);
+            } catch ( MqttException ex ) {
+                log.error("Error in connecting according to new MQTT configuration: {}", ex.toString());
+                return;
             }
-            
-            switch ( sensorInfo.getType().toLowerCase() ) {
-                case "co2-t-h":
-                    CO2SensorData co2SensorData = (CO2SensorData)dataToPublish.sensorData;
-                    if ( co2SensorData == null ) {
-                        System.out.println(
-                            "No data received from device, check log for details "
-                            + "about protronix uart data"
-                        );
-                        mqttAllSensorsData.put(entry.getKey(), null);
-                        break;
-                    }
-                    
-                    // packet id
-                    pid++;
-                    
-                    String moduleId = getModuleId(entry.getKey(), osInfoMap);
-                    
-                    String mqttDataCO2 = MqttFormatter
-                                .formatCO2(
-                                    String.valueOf(co2SensorData.getCo2()), 
-                                    moduleId
-                                );
-                    String mqttDataTemperature = MqttFormatter
-                                .formatTemperature(
-                                    sensorDataFormat.format(co2SensorData.getTemperature()), 
-                                    moduleId
-                                );
-                    
-                    String mqttDataHumidity = MqttFormatter
-                                .formatHumidity(
-                                    sensorDataFormat.format(co2SensorData.getHumidity()), 
-                                    moduleId
-                                );
-                    
-                    String mqttDataRssi = MqttFormatter
-                                .formatRssi(
-                                    sensorDataFormat.format(rssi), 
-                                    moduleId
-                                );
-                    
-                    mqttSensorData.add(mqttDataCO2);
-                    mqttSensorData.add(mqttDataTemperature);
-                    mqttSensorData.add(mqttDataHumidity);
-                    mqttSensorData.add(mqttDataRssi);
-                    
-                    mqttAllSensorsData.put(entry.getKey(), mqttSensorData);
-                break;
-
-                case "voc-t-h":
-                    VOCSensorData vocSensorData = (VOCSensorData)dataToPublish.sensorData;
-                    if ( vocSensorData == null ) {
-                        System.out.println(
-                            "No data received from device, check log for details "
-                            + "about protronix uart data"
-                        );
-                        mqttAllSensorsData.put(entry.getKey(), null);
-                        break;
-                    }
-                    
-                    // packet id
-                    pid++;
-
-                    moduleId = getModuleId(entry.getKey(), osInfoMap);
-
-                    String mqttDataVOC = MqttFormatter
-                                .formatVOC(
-                                    String.valueOf(vocSensorData.getVoc()), 
-                                    moduleId
-                                );
-                    mqttDataTemperature = MqttFormatter
-                                .formatTemperature(
-                                    sensorDataFormat.format(vocSensorData.getTemperature()), 
-                                    moduleId
-                                );
-                    
-                    mqttDataHumidity = MqttFormatter
-                                .formatHumidity(
-                                    sensorDataFormat.format(vocSensorData.getHumidity()), 
-                                    moduleId
-                                );
-                    
-                    mqttDataRssi = MqttFormatter
-                                .formatRssi(
-                                    sensorDataFormat.format(rssi), 
-                                    moduleId
-                                );
-                    
-                    mqttSensorData.add(mqttDataVOC);
-                    mqttSensorData.add(mqttDataTemperature);
-                    mqttSensorData.add(mqttDataHumidity);
-                    mqttSensorData.add(mqttDataRssi);
-
-                    mqttAllSensorsData.put(entry.getKey(), mqttSensorData);
-                break;
-
-                default:
-                    printMessageAndExit("Device type not supported:" + sensorInfo.getType());
-                break;
-            }                      
         }
         
-        return mqttAllSensorsData;
-    }
-    
-    // sends and publishes prepared json messages with data from sensors to 
-    // specified MQTT topics
-    private static void mqttSendAndPublish(Map<String, List<String>> dataFromsSensorsMqtt) { 
-        for ( Map.Entry<String, List<String>> entry : dataFromsSensorsMqtt.entrySet() ) {        
-            int nodeId = Integer.parseInt(entry.getKey());
-            
-            if ( !isNodeIdInValidInterval(nodeId) ) {
-                continue;
+        if ( !newConfiguration.getGwId().equals(mqttConfiguration.getGwId()) ) {
+            mqttTopics = createMqttTopics(newConfiguration);
+            for ( NetworkMonitor networkMonitor : networkMonitors ) {
+                networkMonitor.setMqttTopics(mqttTopics);
             }
             
-            if ( entry.getValue() != null ) {
-                System.out.println("Sending parsed data for node: " + entry.getKey());
-                for ( String mqttData : entry.getValue() ) {
-                    try {
-                        mqttCommunicator.publish(
-                                mqttTopics.getStdSensorsProtronix() + entry.getKey(), 
-                                2, 
-                                mqttData.getBytes()
-                        );
-                    } catch ( MqttException ex ) {
-                        System.err.println("Error while publishing sync dpa message: " + ex);
-                    }
-                }
-            } else {
-                System.err.println("No data found for sensor: " + entry.getKey());
+            if ( metricsPublisher != null ) {
+                metricsPublisher.stop();
+                metricsPublisher = null;
             }
+            startMetricsPublisher();
+            restartDpaRequestBridge();
         }
+        
+        mqttConfiguration = newConfiguration;
+        log.info("MQTT configuration reloaded");
     }
     
-    // publishes error messages to specified MQTT topics
-    private static void mqttPublishErrors(int nodeId, MqttTopics mqttTopics, String errorMessage) {
+    // restarts bridge of DPA requests according to current configuration
+    private static void restartDpaRequestBridge() {
+        stopDpaRequestBridge();
         try {
-            mqttCommunicator.publish(
-                    mqttTopics.getStdSensorsProtronixErrors() + nodeId, 
-                    2, 
-                    errorMessage.getBytes()
-            );
+            startDpaRequestBridge();
         } catch ( MqttException ex ) {
-            System.err.println("Error while publishing error message: " + ex);
+            log.error("Error while starting DPA requests bridge: {}", ex.toString());
         }
     }
     
+    // prints out specified message, destroys the Simply and exits
+    private static void printMessageAndExit(String message) {
+        log.error(message);
+        releaseResources();
+        System.exit(1);
+    }
+    
+    // returns path to specified file of application configuration
+    private static Path getAppConfigPath(String configFile) {
+        return Paths.get("config", "app", configFile);
+    }
+    
+    // returns path to file of MQTT configuration
+    private static Path getMqttConfigPath() {
+        return Paths.get("config", "mqtt", MQTT_CONFIG_FILE);
+    }
+    
     // loads mqtt params from file
-    private static MqttConfiguration loadMqttConfiguration(String configFile) 
+    private static MqttConfiguration loadMqttConfiguration(Path configPath) 
             throws IOException, ParseException 
     {
-        JSONParser parser = new JSONParser();
-        Object obj = parser.parse( 
-                new FileReader("config" + File.separator + "mqtt" + File.separator + configFile)
-        );
-
-        JSONObject jsonObject = (JSONObject) obj;
-        
-        return new MqttConfiguration(
-                (String) jsonObject.get("protocol"),
-                (String) jsonObject.get("broker"),
-                (long) jsonObject.get("port"),
-                (String) jsonObject.get("clientid"),
-                (String) jsonObject.get("gwid"),
-                (boolean) jsonObject.get("cleansession"),
-                (boolean) jsonObject.get("quitemode"),
-                (boolean) jsonObject.get("ssl"),
-                (String) jsonObject.get("certfile"),
-                (String) jsonObject.get("username"),
-                (String) jsonObject.get("password"),
-                (String) jsonObject.get("roottopic")
-        );
+        try ( FileReader reader = new FileReader(configPath.toFile()) ) {
+            return ConfigurationLoader.loadMqttConfiguration(reader);
+        }
     }
     
     // loads app configuration from file
-    private static ApplicationConfiguration loadApplicationConfiguration(String configFile) 
+    private static ApplicationConfiguration loadApplicationConfiguration(Path configPath) 
             throws IOException, ParseException 
     {
-        JSONObject appJsonObjects = (JSONObject) JSONValue
-            .parseWithException( new FileReader(
-                    "config" + File.separator + "app" + File.separator + configFile
-            )
-        );
-
-        // get the devices
-        JSONArray devicesArray = (JSONArray) appJsonObjects.get("devices");
-
-        Map<Integer, DeviceInfo> devicesInfos = new HashMap<>();
-        for ( int i = 0; i < devicesArray.size(); i++ ) {
-            JSONObject deviceObjects = (JSONObject) devicesArray.get(i);
-
-            DeviceInfo deviceInfo = new DeviceInfo(
-                    (long) deviceObjects.get("device"),
-                    (String) deviceObjects.get("manufacturer"),
-                    (String) deviceObjects.get("type")
-            );
-
-            devicesInfos.put((int)deviceInfo.getId(), deviceInfo);
+        try ( FileReader reader = new FileReader(configPath.toFile()) ) {
+            return ConfigurationLoader.loadApplicationConfiguration(reader);
         }
-        
-        return new ApplicationConfiguration(
-                (long) appJsonObjects.get("pollingPeriod"),
-                (String) appJsonObjects.get("communicationInterface"),
-                devicesInfos
-        );
     }
     
-    // releases used resources
+    // releases used resources in the order, in which no data are lost:
+    // acquisition is stopped first, then readings passed to sinks are written
+    // and pending MQTT deliveries completed - all within the shutdown timeout;
+    // Simply is destroyed at the end
     private static void releaseResources() {
-        if ( dpaSimply != null ) {
-            dpaSimply.destroy();
+        // the deadline is not shortened by waiting for a reload in progress, 
+        // which is interrupted by stopping of the watcher
+        ApplicationConfiguration configuration = appConfiguration;
+        long shutdownTimeout = (configuration != null)? 
+                configuration.getShutdownTimeout() : ApplicationConfiguration.DEFAULT_SHUTDOWN_TIMEOUT;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownTimeout);
+        
+        shuttingDown = true;
+        ConfigurationWatcher watcher = configurationWatcher;
+        if ( watcher != null ) {
+            watcher.stop();
+        }
+        
+        releaseResources(deadline);
+    }
+    
+    // releases resources, which must be done until specified deadline [System.nanoTime()]
+    private static synchronized void releaseResources(long deadline) {
+        if ( resourcesReleased ) {
+            return;
+        }
+        resourcesReleased = true;
+        
+        for ( NetworkMonitor networkMonitor : networkMonitors ) {
+            networkMonitor.stop(deadline);
+        }
+        if ( dpaRequestBridge != null ) {
+            dpaRequestBridge.destroy();
+        }
+        if ( metricsPublisher != null ) {
+            metricsPublisher.stop();
+        }
+        if ( metricsHttpServer != null ) {
+            metricsHttpServer.stop();
+        }
+        if ( sinkDispatcher != null ) {
+            sinkDispatcher.stop(deadline);
+        }
+        if ( mqttCommunicator != null ) {
+            mqttCommunicator.shutdown(
+                    Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()))
+            );
+        }
+        for ( NetworkMonitor networkMonitor : networkMonitors ) {
+            networkMonitor.destroy();
+        }
+        log.info("Resources released");
+        
+        // asynchronous appenders never block, so their queues are flushed 
+        // explicitly in order not to lose the last messages
+        ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+        if ( loggerFactory instanceof LoggerContext ) {
+            ((LoggerContext) loggerFactory).stop();
         }
     }
 }
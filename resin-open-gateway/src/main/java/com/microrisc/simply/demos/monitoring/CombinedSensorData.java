@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.monitoring;
+
+import com.microrisc.simply.devices.protronix.dpa22x.types.CO2SensorData;
+import com.microrisc.simply.devices.protronix.dpa22x.types.VOCSensorData;
+
+/**
+ * Data obtained by one combined read of CO2 and VOC sensors sharing one UART 
+ * of a node.
+ */
+public final class CombinedSensorData {
+    private final CO2SensorData co2SensorData;
+    private final VOCSensorData vocSensorData;
+    
+    
+    /**
+     * Creates new combined data.
+     * @param co2SensorData data of the CO2 sensor
+     * @param vocSensorData data of the VOC sensor
+     */
+    public CombinedSensorData(CO2SensorData co2SensorData, VOCSensorData vocSensorData) {
+        this.co2SensorData = co2SensorData;
+        this.vocSensorData = vocSensorData;
+    }
+    
+    /**
+     * @return data of the CO2 sensor
+     */
+    public CO2SensorData getCo2SensorData() {
+        return co2SensorData;
+    }
+    
+    /**
+     * @return data of the VOC sensor
+     */
+    public VOCSensorData getVocSensorData() {
+        return vocSensorData;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.monitoring;
+
+/**
+ * Data obtained from one sensor, which are to be published.
+ *
+ * @author Rostislav Spinar
+ * @author Michal Konopa
+ */
+public final class DataToPublish {
+    private final Object sensorData;
+    private final Integer rssi;
+    private final long timestamp;
+
+
+    /**
+     * Creates new data to publish.
+     * @param sensorData data obtained from the sensor
+     * @param rssi RSSI of the last response of the sensor, {@code null} if not known
+     * @param timestamp time of arrival of the response of the sensor [in ms since the epoch]
+     */
+    public DataToPublish(Object sensorData, Integer rssi, long timestamp) {
+        this.sensorData = sensorData;
+        this.rssi = rssi;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return data obtained from the sensor
+     */
+    public Object getSensorData() {
+        return sensorData;
+    }
+
+    /**
+     * @return RSSI of the last response of the sensor, {@code null} if not known
+     */
+    public Integer getRssi() {
+        return rssi;
+    }
+    
+    /**
+     * @return time of arrival of the response of the sensor [in ms since the epoch]
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
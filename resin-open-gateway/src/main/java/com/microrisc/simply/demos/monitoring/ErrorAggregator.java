@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.monitoring;
+
+import com.microrisc.simply.demos.concurrent.Threads;
+import com.microrisc.simply.demos.mqtt.MqttCommunicator;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates errors of requests to nodes of one network and periodically 
+ * publishes their summary.
+ * <p>
+ * Errors are deduplicated by node, error type and DPA response code. For each
+ * such key the summary contains number of occurrences within the window, time
+ * of the first and the last occurrence and the last description. Recording of
+ * an error does not block, publishing is done on a separate thread, so even 
+ * an outage of the whole network results in one message per window.
+ */
+final class ErrorAggregator {
+    
+    private static final Logger log = LoggerFactory.getLogger(ErrorAggregator.class);
+    
+    /** Default length of the aggregation window [in s]. */
+    static final long DEFAULT_WINDOW = 30;
+    
+    // summary is periodic - errors of the lost one are summarized in the log
+    private static final int PUBLISH_QOS = 1;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    // errors of one key within the window
+    private static final class ErrorEntry {
+        final int nodeId;
+        final String type;
+        final String responseCode;
+        final long firstSeen;
+        long lastSeen;
+        long count;
+        String description;
+        
+        ErrorEntry(int nodeId, String type, String responseCode, long time) {
+            this.nodeId = nodeId;
+            this.type = type;
+            this.responseCode = responseCode;
+            this.firstSeen = time;
+        }
+    }
+    
+    private final MqttCommunicator mqttCommunicator;
+    private final String networkId;
+    private final ScheduledExecutorService scheduler;
+    private volatile String topic;
+    
+    // periodic publishing, null if not started
+    private ScheduledFuture<?> periodicPublishing = null;
+    
+    // errors within the current window indexed by keys
+    private Map<String, ErrorEntry> errors = new LinkedHashMap<>();
+    private long windowStart = System.currentTimeMillis();
+    
+    
+    /**
+     * Creates new aggregator.
+     * @param mqttCommunicator MQTT communicator
+     * @param networkId ID of the network
+     * @param topic topic to publish summaries to
+     */
+    ErrorAggregator(MqttCommunicator mqttCommunicator, String networkId, String topic) {
+        this.mqttCommunicator = mqttCommunicator;
+        this.networkId = networkId;
+        this.topic = topic;
+        this.scheduler = Threads.newScheduledExecutor("error-reporter-" + networkId);
+    }
+    
+    /**
+     * Starts periodic publishing of summaries.
+     * @param window length of the aggregation window [in s]
+     */
+    void start(long window) {
+        periodicPublishing = scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                publish();
+            }
+        }, window, window, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Sets topic to publish next summaries to.
+     * @param topic the topic
+     */
+    void setTopic(String topic) {
+        this.topic = topic;
+    }
+    
+    /**
+     * Records an error.
+     * @param nodeId ID of the node
+     * @param type type of the error
+     * @param responseCode DPA response code, {@code null} if not available
+     * @param description description of the error
+     */
+    void record(int nodeId, String type, String responseCode, String description) {
+        long now = System.currentTimeMillis();
+        String key = nodeId + "|" + type + "|" + responseCode;
+        synchronized ( this ) {
+            ErrorEntry entry = errors.get(key);
+            if ( entry == null ) {
+                entry = new ErrorEntry(nodeId, type, responseCode, now);
+                errors.put(key, entry);
+            }
+            entry.count++;
+            entry.lastSeen = now;
+            entry.description = description;
+        }
+    }
+    
+    // publishes summary of errors of the window, which has just ended
+    @SuppressWarnings("unchecked")
+    private void publish() {
+        List<ErrorEntry> entries;
+        long start;
+        long end = System.currentTimeMillis();
+        synchronized ( this ) {
+            if ( errors.isEmpty() ) {
+                windowStart = end;
+                return;
+            }
+            entries = new ArrayList<>(errors.values());
+            start = windowStart;
+            errors = new LinkedHashMap<>();
+            windowStart = end;
+        }
+        
+        JSONArray errorsArray = new JSONArray();
+        long total = 0;
+        for ( ErrorEntry entry : entries ) {
+            JSONObject errorObject = new JSONObject();
+            errorObject.put("node", entry.nodeId);
+            errorObject.put("type", entry.type);
+            errorObject.put("responseCode", entry.responseCode);
+            errorObject.put("count", entry.count);
+            errorObject.put("firstSeen", entry.firstSeen);
+            errorObject.put("lastSeen", entry.lastSeen);
+            errorObject.put("description", entry.description);
+            errorsArray.add(errorObject);
+            total += entry.count;
+        }
+        
+        JSONObject summary = new JSONObject();
+        summary.put("network", networkId);
+        summary.put("start", start);
+        summary.put("end", end);
+        summary.put("errors", errorsArray);
+        
+        try {
+            mqttCommunicator.publish(topic, PUBLISH_QOS, summary.toJSONString().getBytes(UTF_8));
+        } catch ( MqttException ex ) {
+            log.warn(
+                    "Summary of {} errors of {} kinds in network {} not published: {}", 
+                    total, entries.size(), networkId, ex.toString()
+            );
+        } catch ( RuntimeException ex ) {
+            log.error("Error while publishing summary of errors", ex);
+        }
+    }
+    
+    /**
+     * Stops periodic publishing and publishes errors recorded so far on the 
+     * publishing thread. Waits for the publishing at most until specified 
+     * deadline, errors not published until then are summarized in the log.
+     * @param deadline deadline as a value of {@link System#nanoTime()}
+     */
+    void stop(long deadline) {
+        if ( periodicPublishing != null ) {
+            periodicPublishing.cancel(false);
+        }
+        try {
+            if ( deadline - System.nanoTime() > 0 ) {
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        publish();
+                    }
+                });
+            }
+        } catch ( RejectedExecutionException ex ) {
+            // already stopped
+            return;
+        }
+        scheduler.shutdown();
+        
+        try {
+            long remaining = deadline - System.nanoTime();
+            if ( remaining <= 0 || !scheduler.awaitTermination(remaining, TimeUnit.NANOSECONDS) ) {
+                scheduler.shutdownNow();
+                logUnpublished();
+            }
+        } catch ( InterruptedException ex ) {
+            scheduler.shutdownNow();
+            logUnpublished();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // summarizes errors, which have not been published, in the log
+    private void logUnpublished() {
+        long total = 0;
+        int kinds;
+        synchronized ( this ) {
+            for ( ErrorEntry entry : errors.values() ) {
+                total += entry.count;
+            }
+            kinds = errors.size();
+            errors = new LinkedHashMap<>();
+        }
+        if ( kinds > 0 ) {
+            log.warn(
+                    "Summary of {} errors of {} kinds in network {} not published before shutdown", 
+                    total, kinds, networkId
+            );
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.monitoring;
+
+import java.util.Arrays;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Tracks quality of radio links to nodes of one network.
+ * <p>
+ * For each node moving averages of RSSI, of success rate of requests and of
+ * duration of requests are kept. They are combined into a link quality score
+ * in the range of 0 (dead link) to 1 (reliable link), which determines 
+ * polling order of nodes and number of retries of failed requests. Last 
+ * values and failure counts of nodes are kept in {@link NodeStateTable}.
+ * <p>
+ * Not thread safe - intended to be used by the acquisition thread only.
+ * Scores for other threads, e.g. for metrics, are published through
+ * {@link NodeStateTable#setLinkScore(int, double)}.
+ */
+final class LinkQualityTracker {
+    
+    /** Score, under which the link is considered marginal. */
+    static final double MARGINAL_SCORE = 0.8;
+    
+    /** Score, under which the link is considered dead. */
+    static final double DEAD_SCORE = 0.2;
+    
+    // weight of a new sample in moving averages
+    private static final double SMOOTHING = 0.2;
+    
+    // raw DPA RSSI values mapped to RSSI score of 0 and 1, dBm = raw - 130
+    private static final int RSSI_WEAK = 30;
+    private static final int RSSI_GOOD = 70;
+    
+    // weight of RSSI in the score, the rest is the success rate
+    private static final double RSSI_WEIGHT = 0.3;
+    
+    // maximal number of retries of marginal links in one cycle
+    private static final int MARGINAL_RETRIES = 2;
+    
+    private final double[] rssi = new double[NodeStateTable.MAX_NODES];
+    private final double[] successRate = new double[NodeStateTable.MAX_NODES];
+    private final double[] requestDuration = new double[NodeStateTable.MAX_NODES];
+    private final long[] requests = new long[NodeStateTable.MAX_NODES];
+    private final long[] lostRadioTime = new long[NodeStateTable.MAX_NODES];
+    
+    
+    /**
+     * Creates new tracker with no samples.
+     */
+    LinkQualityTracker() {
+        Arrays.fill(rssi, Double.NaN);
+        Arrays.fill(successRate, 1.0);
+    }
+    
+    // returns moving average updated with specified sample
+    private static double smooth(double average, double sample) {
+        return average + SMOOTHING * (sample - average);
+    }
+    
+    // records duration of a request
+    private void recordDuration(int nodeId, long durationNanos) {
+        requests[nodeId]++;
+        requestDuration[nodeId] = (requests[nodeId] == 1)? 
+                durationNanos : smooth(requestDuration[nodeId], durationNanos);
+    }
+    
+    /**
+     * Records successful request to specified node.
+     * @param nodeId ID of the node
+     * @param rssiValue RSSI of the response, {@link NodeStateTable#RSSI_NOT_KNOWN}
+     *        if not known
+     * @param durationNanos duration of the request [in ns]
+     */
+    void recordSuccess(int nodeId, int rssiValue, long durationNanos) {
+        recordDuration(nodeId, durationNanos);
+        successRate[nodeId] = smooth(successRate[nodeId], 1.0);
+        if ( rssiValue != NodeStateTable.RSSI_NOT_KNOWN ) {
+            rssi[nodeId] = Double.isNaN(rssi[nodeId])? rssiValue : smooth(rssi[nodeId], rssiValue);
+        }
+    }
+    
+    /**
+     * Records failed request to specified node.
+     * @param nodeId ID of the node
+     * @param durationNanos duration of the request [in ns]
+     */
+    void recordFailure(int nodeId, long durationNanos) {
+        recordDuration(nodeId, durationNanos);
+        successRate[nodeId] = smooth(successRate[nodeId], 0.0);
+        lostRadioTime[nodeId] += durationNanos;
+    }
+    
+    /**
+     * Returns link quality score of specified node. Nodes without samples
+     * have the score of 1.
+     * @param nodeId ID of the node
+     * @return score in the range of 0 to 1
+     */
+    double getScore(int nodeId) {
+        if ( Double.isNaN(rssi[nodeId]) ) {
+            return successRate[nodeId];
+        }
+        double rssiScore = (rssi[nodeId] - RSSI_WEAK) / (RSSI_GOOD - RSSI_WEAK);
+        rssiScore = Math.max(0.0, Math.min(1.0, rssiScore));
+        return (1 - RSSI_WEIGHT) * successRate[nodeId] + RSSI_WEIGHT * rssiScore;
+    }
+    
+    /**
+     * @param nodeId ID of the node
+     * @return expected duration of a request to specified node [in ns], 0 if
+     *         not known
+     */
+    long getExpectedDuration(int nodeId) {
+        return (long) requestDuration[nodeId];
+    }
+    
+    /**
+     * Returns number of retries of failed request to specified node in one
+     * cycle. Reliable links are retried once, marginal links more times and 
+     * dead links are not retried at all.
+     * @param nodeId ID of the node
+     * @return number of retries
+     */
+    int getRetries(int nodeId) {
+        double score = getScore(nodeId);
+        if ( score < DEAD_SCORE ) {
+            return 0;
+        }
+        return (score < MARGINAL_SCORE)? MARGINAL_RETRIES : 1;
+    }
+    
+    /**
+     * Sorts specified node IDs from the best link to the worst one. Nodes
+     * with the same score keep the order of their IDs.
+     * @param nodeIds array of node IDs
+     * @param count number of node IDs at the beginning of the array to sort
+     */
+    void sortByScore(int[] nodeIds, int count) {
+        sortByScore(nodeIds, 0, count);
+    }
+    
+    /**
+     * Sorts specified range of node IDs from the best link to the worst one. 
+     * Nodes with the same score keep the order of their IDs.
+     * @param nodeIds array of node IDs
+     * @param from index of the first node ID to sort
+     * @param to index after the last node ID to sort
+     */
+    void sortByScore(int[] nodeIds, int from, int to) {
+        // insertion sort - stable, without boxing and fast for almost sorted arrays
+        for ( int i = from + 1; i < to; i++ ) {
+            int nodeId = nodeIds[i];
+            double score = getScore(nodeId);
+            int j = i - 1;
+            while ( j >= from && getScore(nodeIds[j]) < score ) {
+                nodeIds[j + 1] = nodeIds[j];
+                j--;
+            }
+            nodeIds[j + 1] = nodeId;
+        }
+    }
+    
+    /**
+     * Forgets all samples of specified node.
+     * @param nodeId ID of the node
+     */
+    void reset(int nodeId) {
+        rssi[nodeId] = Double.NaN;
+        successRate[nodeId] = 1.0;
+        requestDuration[nodeId] = 0;
+        requests[nodeId] = 0;
+        lostRadioTime[nodeId] = 0;
+    }
+    
+    /**
+     * Returns link quality map of nodes with at least one request in JSON.
+     * @param networkId ID of the network
+     * @param nodeStates state of nodes of the network
+     * @return link quality map
+     */
+    @SuppressWarnings("unchecked")
+    String toJson(String networkId, NodeStateTable nodeStates) {
+        JSONArray nodes = new JSONArray();
+        NodeStateTable.Snapshot state = new NodeStateTable.Snapshot();
+        for ( int nodeId = 0; nodeId < NodeStateTable.MAX_NODES; nodeId++ ) {
+            if ( requests[nodeId] == 0 ) {
+                continue;
+            }
+            nodeStates.read(nodeId, state);
+            JSONObject node = new JSONObject();
+            node.put("node", nodeId);
+            node.put("score", Math.round(getScore(nodeId) * 1000) / 1000.0);
+            node.put("rssi", Double.isNaN(rssi[nodeId])? null : Math.round(rssi[nodeId]));
+            node.put("successRate", Math.round(successRate[nodeId] * 1000) / 1000.0);
+            node.put("requests", requests[nodeId]);
+            node.put("lastRssi", (state.getRssi() == NodeStateTable.RSSI_NOT_KNOWN)? null : state.getRssi());
+            node.put("lastSeen", (state.getLastSeen() == 0)? null : state.getLastSeen());
+            node.put("failures", state.getTotalFailures());
+            node.put("consecutiveFailures", state.getConsecutiveFailures());
+            node.put("lostRadioTimeMs", Math.round(lostRadioTime[nodeId] / 1e6));
+            nodes.add(node);
+        }
+        
+        JSONObject linkMap = new JSONObject();
+        linkMap.put("network", networkId);
+        linkMap.put("nodes", nodes);
+        return linkMap.toJSONString();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.monitoring;
+
+/**
+ * Builds and parses Modbus RTU frames reading registers of sensors connected 
+ * to UART of nodes.
+ */
+final class ModbusFrames {
+    
+    // length of response header: slave address, function, byte count
+    private static final int RESPONSE_HEADER_LENGTH = 3;
+    
+    // length of CRC
+    private static final int CRC_LENGTH = 2;
+    
+    
+    private ModbusFrames() {}
+    
+    /**
+     * Returns request reading specified registers.
+     * @param slave address of the slave
+     * @param function function reading holding or input registers
+     * @param register address of the first register
+     * @param count number of registers
+     * @return the request including CRC
+     */
+    static short[] readRegisters(int slave, int function, int register, int count) {
+        short[] request = new short[] {
+            (short) slave, (short) function,
+            (short) ((register >> 8) & 0xFF), (short) (register & 0xFF),
+            (short) ((count >> 8) & 0xFF), (short) (count & 0xFF),
+            0, 0
+        };
+        int crc = crc(request, request.length - CRC_LENGTH);
+        request[request.length - 2] = (short) (crc & 0xFF);
+        request[request.length - 1] = (short) ((crc >> 8) & 0xFF);
+        return request;
+    }
+    
+    /**
+     * Returns values of registers from response to request created by 
+     * {@link #readRegisters(int, int, int, int)}.
+     * @param response the response
+     * @param slave address of the slave
+     * @param function function of the request
+     * @param count number of requested registers
+     * @return values of registers, {@code null} if the response is not valid
+     */
+    static int[] parseRegisters(short[] response, int slave, int function, int count) {
+        if ( response == null || response.length != RESPONSE_HEADER_LENGTH + 2 * count + CRC_LENGTH ) {
+            return null;
+        }
+        if ( response[0] != slave || response[1] != function || response[2] != 2 * count ) {
+            return null;
+        }
+        int crc = crc(response, response.length - CRC_LENGTH);
+        if ( (response[response.length - 2] & 0xFF) != (crc & 0xFF) 
+                || (response[response.length - 1] & 0xFF) != ((crc >> 8) & 0xFF) 
+        ) {
+            return null;
+        }
+        
+        int[] registers = new int[count];
+        for ( int i = 0; i < count; i++ ) {
+            registers[i] = ((response[RESPONSE_HEADER_LENGTH + 2 * i] & 0xFF) << 8) 
+                    | (response[RESPONSE_HEADER_LENGTH + 2 * i + 1] & 0xFF);
+        }
+        return registers;
+    }
+    
+    // computes Modbus CRC16 of first length bytes
+    private static int crc(short[] bytes, int length) {
+        int crc = 0xFFFF;
+        for ( int i = 0; i < length; i++ ) {
+            crc ^= bytes[i] & 0xFF;
+            for ( int bit = 0; bit < 8; bit++ ) {
+                crc = ( (crc & 1) != 0 )? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+        }
+        return crc;
+    }
+}
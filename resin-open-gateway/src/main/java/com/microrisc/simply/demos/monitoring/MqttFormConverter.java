@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.monitoring;
+
+import com.microrisc.simply.demos.config.DeviceInfo;
+import com.microrisc.simply.demos.logging.RateLimitedLogger;
+import com.microrisc.simply.demos.mqtt.MqttFormatter;
+import com.microrisc.simply.devices.protronix.dpa22x.types.CO2SensorData;
+import com.microrisc.simply.devices.protronix.dpa22x.types.VOCSensorData;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts data obtained from sensors into messages to publish over MQTT.
+ *
+ * @author Rostislav Spinar
+ * @author Michal Konopa
+ */
+public final class MqttFormConverter {
+    
+    private static final Logger log = LoggerFactory.getLogger(MqttFormConverter.class);
+    
+    // minimal interval between repeated warnings relating to the same node [in s]
+    private static final long NODE_LOG_INTERVAL = 60;
+    
+    // RSSI is not avalaible
+    private static final int RSSI_NOT_AVAILABLE = 0;
+    
+    private final RateLimitedLogger nodeLog = new RateLimitedLogger(
+            log, NODE_LOG_INTERVAL, TimeUnit.SECONDS
+    );
+    
+    // information about devices and module IDs indexed by node IDs
+    private final DeviceInfo[] devicesInfos = new DeviceInfo[NodeStateTable.MAX_NODES];
+    private final String[] moduleIds = new String[NodeStateTable.MAX_NODES];
+    
+    private final DecimalFormat sensorDataFormat = new DecimalFormat("##.#");
+    
+    // not used so far
+    private int pid = 0;
+    
+    
+    /**
+     * Creates new converter.
+     * @param devicesInfoMap information about devices on nodes
+     * @param moduleIds pretty formated module IDs of nodes
+     */
+    public MqttFormConverter(Map<Integer, DeviceInfo> devicesInfoMap, Map<String, String> moduleIds) {
+        for ( Map.Entry<Integer, DeviceInfo> entry : devicesInfoMap.entrySet() ) {
+            if ( isValidNodeId(entry.getKey()) ) {
+                this.devicesInfos[entry.getKey()] = entry.getValue();
+            }
+        }
+        for ( Map.Entry<String, String> entry : moduleIds.entrySet() ) {
+            int nodeId = Integer.parseInt(entry.getKey());
+            if ( isValidNodeId(nodeId) ) {
+                this.moduleIds[nodeId] = entry.getValue();
+            }
+        }
+    }
+    
+    // tests, if specified node ID is in the range of DPA addresses
+    private static boolean isValidNodeId(int nodeId) {
+        return ( nodeId >= 0 && nodeId < NodeStateTable.MAX_NODES );
+    }
+    
+    // tests, if a device is configured on specified node
+    private boolean isDeviceConfigured(int nodeId) {
+        return ( nodeId > 0 && nodeId < NodeStateTable.MAX_NODES && devicesInfos[nodeId] != null );
+    }
+    
+    // returns ID of module for specified sensor ID
+    private String getModuleId(int sensorId) {
+        String moduleId = moduleIds[sensorId];
+        if ( moduleId != null ) {
+            return moduleId;
+        }
+        return "not-known";
+    }
+    
+    /**
+     * Returns MQTT form of specified data from sensors.
+     * @param dataFromSensorsMap data from sensors indexed by node IDs
+     * @return MQTT messages for each node, {@code null} for nodes without data
+     */
+    public Map<String, List<String>> toMqttForm(Map<String, DataToPublish> dataFromSensorsMap) {
+        Map<String, List<String>> mqttAllSensorsData = new LinkedHashMap<>();
+        
+        // for each sensor's data
+        for ( Map.Entry<String, DataToPublish> entry : dataFromSensorsMap.entrySet() ) {
+            int nodeId = Integer.parseInt(entry.getKey());
+            
+            if ( !isDeviceConfigured(nodeId) ) {
+                continue;
+            }
+            
+            mqttAllSensorsData.put(entry.getKey(), toMqttForm(nodeId, entry.getValue()));
+        }
+        
+        return mqttAllSensorsData;
+    }
+    
+    /**
+     * Returns MQTT form of specified data from sensor on specified node.
+     * @param nodeId ID of the node
+     * @param dataToPublish data from the sensor
+     * @return MQTT messages, {@code null} if there are no data or no device 
+     *         is configured on the node
+     */
+    public List<String> toMqttForm(int nodeId, DataToPublish dataToPublish) {
+        if ( !isDeviceConfigured(nodeId) ) {
+            return null;
+        }
+        
+        // mqtt data for 1 sensor
+        List<String> mqttSensorData = new ArrayList<>(5);
+        
+        DeviceInfo sensorInfo = devicesInfos[nodeId];
+        log.debug("Preparing MQTT message for node: {}", nodeId);
+        
+        Integer rssi = dataToPublish.getRssi();
+        if ( rssi == null ) {
+            rssi = RSSI_NOT_AVAILABLE;
+        }
+        long timestamp = dataToPublish.getTimestamp();
+        
+        switch ( sensorInfo.getType().toLowerCase() ) {
+            case "co2-t-h":
+                CO2SensorData co2SensorData = (CO2SensorData)dataToPublish.getSensorData();
+                if ( co2SensorData == null ) {
+                    nodeLog.warn(
+                        nodeId + ":noData", 
+                        "No data received from device {}, check log for details "
+                        + "about protronix uart data", nodeId
+                    );
+                    return null;
+                }
+                
+                // packet id
+                pid++;
+                
+                String moduleId = getModuleId(nodeId);
+                
+                String mqttDataCO2 = MqttFormatter
+                            .formatCO2(
+                                String.valueOf(co2SensorData.getCo2()), 
+                                moduleId,
+                                timestamp
+                            );
+                String mqttDataTemperature = MqttFormatter
+                            .formatTemperature(
+                                sensorDataFormat.format(co2SensorData.getTemperature()), 
+                                moduleId,
+                                timestamp
+                            );
+                
+                String mqttDataHumidity = MqttFormatter
+                            .formatHumidity(
+                                sensorDataFormat.format(co2SensorData.getHumidity()), 
+                                moduleId,
+                                timestamp
+                            );
+                
+                String mqttDataRssi = MqttFormatter
+                            .formatRssi(
+                                sensorDataFormat.format(rssi), 
+                                moduleId,
+                                timestamp
+                            );
+                
+                mqttSensorData.add(mqttDataCO2);
+                mqttSensorData.add(mqttDataTemperature);
+                mqttSensorData.add(mqttDataHumidity);
+                mqttSensorData.add(mqttDataRssi);
+                return mqttSensorData;
+                
+            case "voc-t-h":
+                VOCSensorData vocSensorData = (VOCSensorData)dataToPublish.getSensorData();
+                if ( vocSensorData == null ) {
+                    nodeLog.warn(
+                        nodeId + ":noData", 
+                        "No data received from device {}, check log for details "
+                        + "about protronix uart data", nodeId
+                    );
+                    return null;
+                }
+                
+                // packet id
+                pid++;
+                
+                moduleId = getModuleId(nodeId);
+                
+                String mqttDataVOC = MqttFormatter
+                            .formatVOC(
+                                String.valueOf(vocSensorData.getVoc()), 
+                                moduleId,
+                                timestamp
+                            );
+                mqttDataTemperature = MqttFormatter
+                            .formatTemperature(
+                                sensorDataFormat.format(vocSensorData.getTemperature()), 
+                                moduleId,
+                                timestamp
+                            );
+                
+                mqttDataHumidity = MqttFormatter
+                            .formatHumidity(
+                                sensorDataFormat.format(vocSensorData.getHumidity()), 
+                                moduleId,
+                                timestamp
+                            );
+                
+                mqttDataRssi = MqttFormatter
+                            .formatRssi(
+                                sensorDataFormat.format(rssi), 
+                                moduleId,
+                                timestamp
+                            );
+                
+                mqttSensorData.add(mqttDataVOC);
+                mqttSensorData.add(mqttDataTemperature);
+                mqttSensorData.add(mqttDataHumidity);
+                mqttSensorData.add(mqttDataRssi);
+                return mqttSensorData;
+                
+            case "co2-voc-t-h":
+                CombinedSensorData combinedData = (CombinedSensorData)dataToPublish.getSensorData();
+                if ( combinedData == null ) {
+                    nodeLog.warn(
+                        nodeId + ":noData", 
+                        "No data received from device {}, check log for details "
+                        + "about protronix uart data", nodeId
+                    );
+                    return null;
+                }
+                
+                // packet id
+                pid++;
+                
+                moduleId = getModuleId(nodeId);
+                co2SensorData = combinedData.getCo2SensorData();
+                
+                mqttSensorData.add(MqttFormatter.formatCO2(
+                        String.valueOf(co2SensorData.getCo2()), moduleId, timestamp
+                ));
+                mqttSensorData.add(MqttFormatter.formatVOC(
+                        String.valueOf(combinedData.getVocSensorData().getVoc()), moduleId, timestamp
+                ));
+                mqttSensorData.add(MqttFormatter.formatTemperature(
+                        sensorDataFormat.format(co2SensorData.getTemperature()), moduleId, timestamp
+                ));
+                mqttSensorData.add(MqttFormatter.formatHumidity(
+                        sensorDataFormat.format(co2SensorData.getHumidity()), moduleId, timestamp
+                ));
+                mqttSensorData.add(MqttFormatter.formatRssi(
+                        sensorDataFormat.format(rssi), moduleId, timestamp
+                ));
+                return mqttSensorData;
+                
+            default:
+                throw new IllegalStateException("Device type not supported:" + sensorInfo.getType());
+        }
+    }
+}
@@ -0,0 +1,1569 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.microrisc.simply.demos.monitoring;
+
+import com.microrisc.simply.demos.concurrent.Threads;
+import com.microrisc.simply.demos.config.DeviceInfo;
+import com.microrisc.simply.demos.config.ModbusRegisterMap;
+import com.microrisc.simply.demos.config.NetworkConfiguration;
+import com.microrisc.simply.demos.config.RadioConfiguration;
+import com.microrisc.simply.demos.logging.RateLimitedLogger;
+import com.microrisc.simply.demos.mqtt.MqttTopics;
+import com.microrisc.simply.demos.mqtt.MqttCommunicator;
+import com.microrisc.simply.demos.metrics.Counter;
+import com.microrisc.simply.demos.metrics.Gauge;
+import com.microrisc.simply.demos.metrics.Histogram;
+import com.microrisc.simply.demos.metrics.MetricsRegistry;
+import com.microrisc.simply.demos.radio.RadioArbiter;
+import com.microrisc.simply.demos.radio.RadioPriority;
+import com.microrisc.simply.demos.sink.Reading;
+import com.microrisc.simply.demos.sink.SinkDispatcher;
+import com.microrisc.simply.CallRequestProcessingState;
+import static com.microrisc.simply.CallRequestProcessingState.ERROR;
+import com.microrisc.simply.Network;
+import com.microrisc.simply.Node;
+import com.microrisc.simply.SimplyException;
+import com.microrisc.simply.devices.protronix.dpa22x.CO2Sensor;
+import com.microrisc.simply.devices.protronix.dpa22x.VOCSensor;
+import com.microrisc.simply.devices.protronix.dpa22x.types.CO2SensorData;
+import com.microrisc.simply.devices.protronix.dpa22x.types.VOCSensorData;
+import com.microrisc.simply.errors.CallRequestProcessingError;
+import com.microrisc.simply.errors.CallRequestProcessingErrorType;
+import com.microrisc.simply.iqrf.dpa.DPA_ResponseCode;
+import com.microrisc.simply.iqrf.dpa.DPA_Simply;
+import com.microrisc.simply.iqrf.dpa.v22x.DPA_SimplyFactory;
+import com.microrisc.simply.iqrf.dpa.v22x.devices.Coordinator;
+import com.microrisc.simply.iqrf.dpa.v22x.devices.FRC;
+import com.microrisc.simply.iqrf.dpa.v22x.devices.OS;
+import com.microrisc.simply.iqrf.dpa.v22x.devices.UART;
+import com.microrisc.simply.iqrf.dpa.v22x.types.DPA_AdditionalInfo;
+import com.microrisc.simply.iqrf.dpa.v22x.types.DPA_Parameter;
+import com.microrisc.simply.iqrf.dpa.v22x.types.FRC_Data;
+import com.microrisc.simply.iqrf.dpa.v22x.types.FRC_Prebonding;
+import com.microrisc.simply.iqrf.dpa.v22x.types.OsInfo;
+import com.microrisc.simply.demos.topology.TopologySnapshot;
+import com.microrisc.simply.iqrf.dpa.v22x.types.BondedNodes;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Acquisition of data from sensors in one IQRF network and their publishing.
+ * <p>
+ * Each monitor owns its own Simply instance, radio arbiter and acquisition
+ * thread, so networks are polled independently of each other. Readings are
+ * passed to sinks shared by all monitors, the MQTT communicator is shared too.
+ * 
+ * @author Rostislav Spinar
+ * @author Michal Konopa
+ */
+final class NetworkMonitor {
+    
+    private static final Logger log = LoggerFactory.getLogger(NetworkMonitor.class);
+    
+    // minimal interval between repeated warnings and errors relating to the same node [in s]
+    private static final long NODE_LOG_INTERVAL = 60;
+    
+    // ID of the DPA network inside of each Simply instance
+    private static final String SIMPLY_NETWORK_ID = "1";
+    
+    // delay of the first retry of initialization of a node [in s]
+    private static final long NODE_INIT_RETRY_DELAY = 2;
+    
+    // maximal delay between retries of initialization of a node [in s]
+    private static final long NODE_INIT_MAX_RETRY_DELAY = 300;
+    
+    // maximal part of polling period, which can be spent on retries of failed requests
+    private static final double RETRY_BUDGET_FRACTION = 0.2;
+    
+    // timeout of FRC checking presence of nodes [in ms]
+    private static final long PRESENCE_SWEEP_TIMEOUT = 10000;
+    
+    // maximal status of successful FRC, higher values are errors
+    private static final int FRC_MAX_OK_STATUS = 0xEF;
+    
+    // timeout of reading of the response from UART [in 10 ms units]
+    private static final int COMBINED_UART_TIMEOUT = 10;
+    
+    // logger of warnings and errors repeated for nodes in each cycle
+    private final RateLimitedLogger nodeLog = new RateLimitedLogger(
+            log, NODE_LOG_INTERVAL, TimeUnit.SECONDS
+    );
+    
+    private volatile NetworkConfiguration configuration;
+    private final RadioConfiguration radioConfiguration;
+    private final MqttCommunicator mqttCommunicator;
+    private final SinkDispatcher sinkDispatcher;
+    private volatile MqttTopics mqttTopics;
+    private final MetricsRegistry metrics;
+    private final Histogram cycleDuration;
+    private final Histogram failedRequestDuration;
+    private final Histogram presenceSweepDuration;
+    private final Counter dpaRetries;
+    private final Counter offlineSkips;
+    private final Counter deadlineMisses;
+    
+    // aggregates errors of requests and publishes their summaries
+    private final ErrorAggregator errorAggregator;
+    
+    // references for DPA
+    private DPA_Simply dpaSimply = null;
+    private Network dpaNetwork = null;
+    
+    // arbiter of access to the radio - all DPA calls go through it
+    private RadioArbiter radioArbiter = null;
+    
+    // state of nodes - module IDs, sensors of nodes already initialized and 
+    // results of their polling
+    private final NodeStateTable nodeStates = new NodeStateTable();
+    
+    // quality of links to nodes, used by the acquisition thread only
+    private final LinkQualityTracker linkQuality = new LinkQualityTracker();
+    
+    // nodes, which answered the presence sweep of the current cycle, as bits 
+    // indexed by node IDs, null if the sweep is disabled or failed
+    private short[] presentNodes = null;
+    
+    // polling order of nodes and nodes to retry in the current cycle
+    private final int[] pollingOrder = new int[NodeStateTable.MAX_NODES];
+    private final int[] failedNodes = new int[NodeStateTable.MAX_NODES];
+    
+    // nodes not reached within the polling period of the previous cycle, 
+    // polled first in the next cycle in the same order
+    private final int[] carriedOverNodes = new int[NodeStateTable.MAX_NODES];
+    private final boolean[] carriedOver = new boolean[NodeStateTable.MAX_NODES];
+    private volatile int carriedOverCount = 0;
+    
+    // metrics of DPA requests indexed by node IDs, looked up on the first request 
+    // to the node, used by the acquisition thread only
+    private final Histogram[] dpaRequestDurations = new Histogram[NodeStateTable.MAX_NODES];
+    private final Counter[] dpaFailureCounters = new Counter[NodeStateTable.MAX_NODES];
+    
+    // maps arrivals of responses to the wall clock time, used by the acquisition thread only
+    private final AcquisitionClock acquisitionClock = new AcquisitionClock();
+    
+    // converter of data from sensors into MQTT messages
+    private MqttFormConverter mqttFormConverter = null;
+    
+    // publishes link quality maps, so that a slow broker does not block the 
+    // acquisition thread
+    private ExecutorService linkMapPublisher = null;
+    
+    // link quality map waiting for publishing, null if there is none
+    private final AtomicReference<String> pendingLinkMap = new AtomicReference<>();
+    
+    // initializes nodes on the background and retries failed initializations
+    private ScheduledExecutorService nodeInitializer = null;
+    
+    // number of nodes, whose initialization has not finished yet
+    private final AtomicInteger uninitializedNodes = new AtomicInteger();
+    
+    // source configuration of Simply, used for saving of topology snapshot
+    private Path simplyConfigFile = null;
+    
+    // indicates, that module IDs or sensors changed and the converter must be recreated
+    private final AtomicBoolean converterOutdated = new AtomicBoolean();
+    
+    // acquisition thread
+    private Thread acquisitionThread = null;
+    
+    // configuration to apply at the acquisition thread
+    private final AtomicReference<NetworkConfiguration> pendingConfiguration = new AtomicReference<>();
+    
+    // wakes up the acquisition thread waiting for the next cycle
+    private final Object wakeUpLock = new Object();
+    
+    // topology snapshot the Simply was initialized from
+    private TopologySnapshot verifiedSnapshot = null;
+    
+    // thread verifying the topology snapshot
+    private Thread verifierThread = null;
+    
+    
+    /**
+     * Creates new monitor of specified network. The monitor must be initialized
+     * and started in order to acquire data.
+     * @param configuration configuration of the network
+     * @param radioConfiguration configuration of access to the radio
+     * @param mqttCommunicator communicator to publish errors and link quality through
+     * @param sinkDispatcher dispatcher of readings to sinks
+     * @param mqttTopics MQTT topics
+     * @param metrics registry to register metrics into
+     */
+    NetworkMonitor(
+            NetworkConfiguration configuration, RadioConfiguration radioConfiguration,
+            MqttCommunicator mqttCommunicator, SinkDispatcher sinkDispatcher, MqttTopics mqttTopics, 
+            MetricsRegistry metrics
+    ) {
+        this.configuration = configuration;
+        this.radioConfiguration = radioConfiguration;
+        this.mqttCommunicator = mqttCommunicator;
+        this.sinkDispatcher = sinkDispatcher;
+        this.mqttTopics = mqttTopics;
+        this.metrics = metrics;
+        this.cycleDuration = metrics.histogram(
+                "gateway_cycle_duration_seconds", "Duration of one acquisition and publishing cycle.",
+                Histogram.DEFAULT_LATENCY_BUCKETS, "network", configuration.getId()
+        );
+        this.failedRequestDuration = metrics.histogram(
+                "dpa_failed_request_duration_seconds", "Radio time spent on failed DPA requests to sensors.",
+                Histogram.DEFAULT_LATENCY_BUCKETS, "network", configuration.getId()
+        );
+        this.presenceSweepDuration = metrics.histogram(
+                "frc_sweep_duration_seconds", "Duration of FRC presence sweeps.",
+                Histogram.DEFAULT_LATENCY_BUCKETS, "network", configuration.getId()
+        );
+        this.dpaRetries = metrics.counter(
+                "dpa_retries_total", "Number of retries of failed DPA requests to sensors.",
+                "network", configuration.getId()
+        );
+        this.offlineSkips = metrics.counter(
+                "dpa_offline_skips_total", "Number of polls skipped for nodes absent in presence sweep.",
+                "network", configuration.getId()
+        );
+        this.deadlineMisses = metrics.counter(
+                "dpa_deadline_misses_total", "Number of polls of nodes not reached within polling period.",
+                "network", configuration.getId()
+        );
+        metrics.gauge("dpa_carried_over_nodes", "Number of nodes carried over to the next cycle.", 
+            new Gauge() {
+                @Override
+                public double getValue() {
+                    return carriedOverCount;
+                }
+            }, "network", configuration.getId()
+        );
+        this.errorAggregator = new ErrorAggregator(
+                mqttCommunicator, configuration.getId(), getErrorsSummaryTopic(mqttTopics, configuration)
+        );
+    }
+    
+    /**
+     * Creates Simply of the network and starts initialization of its nodes. 
+     * Nodes are initialized on the background, each of them joins the polling
+     * as soon as its sensor and module ID are known. Nodes, which cannot be 
+     * reached, are retried with increasing delay without delaying the others.
+     * @throws SimplyException if the network cannot be initialized
+     * @throws InterruptedException if interrupted while waiting for the radio
+     */
+    void init() throws SimplyException, InterruptedException {
+        log.info("Initializing network {} on interface {}", 
+                configuration.getId(), configuration.getCommunicationInterface()
+        );
+        
+        simplyConfigFile = Paths.get("config", "simply", configuration.getSimplyConfigFile());
+        TopologySnapshot snapshot = loadTopologySnapshot(simplyConfigFile);
+        
+        dpaSimply = DPA_SimplyFactory.getSimply(
+                ((snapshot != null)? snapshot.getSimplyConfigFile() : simplyConfigFile).toString()
+        );
+        
+        radioArbiter = new RadioArbiter(radioConfiguration, metrics, configuration.getId());
+        radioArbiter.start();
+        
+        // getting reference to IQRF DPA network to use
+        dpaNetwork = dpaSimply.getNetwork(SIMPLY_NETWORK_ID, Network.class);
+        if ( dpaNetwork == null ) {
+            throw new SimplyException("DPA Network doesn't exist");
+        }
+        
+        // reference to map of all nodes in the network
+        Map<String, Node> nodesMap = dpaNetwork.getNodesMap();
+        
+        // module IDs from the snapshot, the others are read from OS Info of nodes
+        if ( snapshot != null ) {
+            for ( Map.Entry<String, String> entry : snapshot.getModuleIds().entrySet() ) {
+                int nodeId = Integer.parseInt(entry.getKey());
+                if ( nodeId >= 0 && nodeId < NodeStateTable.MAX_NODES ) {
+                    nodeStates.setModuleId(nodeId, entry.getValue());
+                }
+            }
+            verifiedSnapshot = snapshot;
+        }
+        
+        mqttFormConverter = new MqttFormConverter(configuration.getDevicesInfoMap(), nodeStates.getModuleIds());
+        
+        // setting, that last RSSI value will be returned in every DPA response or confirmation
+        setGettingLastRssi();
+        
+        nodeInitializer = Threads.newScheduledExecutor("node-init-" + configuration.getId());
+        linkMapPublisher = Threads.newSingleThreadExecutor("link-map-" + configuration.getId());
+        
+        List<String> configuredNodeIds = new ArrayList<>();
+        for ( String nodeId : nodesMap.keySet() ) {
+            if ( isDeviceConfigured(Integer.parseInt(nodeId)) ) {
+                configuredNodeIds.add(nodeId);
+            }
+        }
+        
+        if ( configuredNodeIds.isEmpty() ) {
+            if ( snapshot == null ) {
+                saveTopologySnapshot();
+            }
+            return;
+        }
+        
+        uninitializedNodes.addAndGet(configuredNodeIds.size());
+        for ( String nodeId : configuredNodeIds ) {
+            scheduleNodeInitialization(nodeId, 0, 0);
+        }
+    }
+    
+    /**
+     * Starts acquisition loop of the network on its own thread.
+     */
+    void start() {
+        errorAggregator.start(ErrorAggregator.DEFAULT_WINDOW);
+        
+        acquisitionThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runAcquisition();
+            }
+        }, "network-" + configuration.getId());
+        acquisitionThread.start();
+        
+        if ( verifiedSnapshot != null ) {
+            verifierThread = Threads.newThread(
+                    "topology-verifier-" + configuration.getId(), 
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            verifyTopologySnapshot();
+                        }
+                    }
+            );
+            verifierThread.start();
+        }
+    }
+    
+    /**
+     * Schedules change of configuration of the network. Changes are applied on
+     * the acquisition thread between cycles: devices are added and removed,
+     * new polling period is used for the next cycle. The Simply is not
+     * recreated, so added nodes must already be part of the DPA network.
+     * @param newConfiguration new configuration with the same Simply 
+     *        configuration file
+     */
+    void reconfigure(NetworkConfiguration newConfiguration) {
+        pendingConfiguration.set(newConfiguration);
+        synchronized ( wakeUpLock ) {
+            wakeUpLock.notifyAll();
+        }
+    }
+    
+    /**
+     * Sets MQTT topics to publish data to.
+     * @param mqttTopics new topics
+     */
+    void setMqttTopics(MqttTopics mqttTopics) {
+        this.mqttTopics = mqttTopics;
+        errorAggregator.setTopic(getErrorsSummaryTopic(mqttTopics, configuration));
+    }
+    
+    /**
+     * Stops the acquisition loop and background tasks of the network and 
+     * publishes errors recorded so far. Waits for the acquisition thread to 
+     * finish at most until specified deadline.
+     * @param deadline deadline as a value of {@link System#nanoTime()}
+     */
+    void stop(long deadline) {
+        if ( acquisitionThread != null ) {
+            acquisitionThread.interrupt();
+        }
+        if ( verifierThread != null ) {
+            verifierThread.interrupt();
+        }
+        if ( nodeInitializer != null ) {
+            nodeInitializer.shutdownNow();
+        }
+        
+        if ( acquisitionThread != null ) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                if ( remaining > 0 ) {
+                    acquisitionThread.join(remaining);
+                }
+            } catch ( InterruptedException ex ) {
+                Thread.currentThread().interrupt();
+            }
+            if ( acquisitionThread.isAlive() ) {
+                log.warn("Acquisition in network {} has not stopped in time", configuration.getId());
+            }
+        }
+        if ( linkMapPublisher != null ) {
+            linkMapPublisher.shutdownNow();
+        }
+        errorAggregator.stop(deadline);
+    }
+    
+    /**
+     * Stops the acquisition loop, if it has not been stopped yet, and releases 
+     * resources of the network.
+     */
+    void destroy() {
+        stop(System.nanoTime());
+        if ( radioArbiter != null ) {
+            radioArbiter.destroy();
+        }
+        if ( dpaSimply != null ) {
+            dpaSimply.destroy();
+        }
+    }
+    
+    /**
+     * @return configuration of the network
+     */
+    NetworkConfiguration getConfiguration() {
+        return configuration;
+    }
+    
+    /**
+     * @return the DPA network, {@code null} if the monitor has not been initialized
+     */
+    Network getDpaNetwork() {
+        return dpaNetwork;
+    }
+    
+    /**
+     * @return arbiter of access to the radio of the network, {@code null}
+     *         if the monitor has not been initialized
+     */
+    RadioArbiter getRadioArbiter() {
+        return radioArbiter;
+    }
+    
+    // main acquisition loop
+    private void runAcquisition() {
+        while ( !Thread.currentThread().isInterrupted() ) {
+            try {
+                acquisitionClock.resync();
+                long cycleStart = System.nanoTime();
+                getAndPublishSensorData(cycleStart);
+                cycleDuration.record(System.nanoTime() - cycleStart);
+                if ( log.isDebugEnabled() ) {
+                    log.debug("Radio utilization: {}%", Math.round(radioArbiter.getUtilization() * 100));
+                }
+                awaitNextCycle(System.nanoTime());
+            } catch ( InterruptedException ex ) {
+                break;
+            } catch ( RuntimeException ex ) {
+                log.error("Error in acquisition cycle of network {}", configuration.getId(), ex);
+            }
+        }
+        log.info("Acquisition in network {} stopped.", configuration.getId());
+    }
+    
+    // waits for the polling period since specified time, applies configuration 
+    // changes scheduled meanwhile
+    private void awaitNextCycle(long since) throws InterruptedException {
+        while ( true ) {
+            applyPendingConfiguration();
+            
+            long remaining = since + TimeUnit.SECONDS.toNanos(configuration.getPollingPeriod()) 
+                    - System.nanoTime();
+            if ( remaining <= 0 ) {
+                return;
+            }
+            synchronized ( wakeUpLock ) {
+                if ( pendingConfiguration.get() == null && !converterOutdated.get() ) {
+                    TimeUnit.NANOSECONDS.timedWait(wakeUpLock, remaining);
+                }
+            }
+        }
+    }
+    
+    // requests recreation of the converter at the acquisition thread
+    private void requestConverterUpdate() {
+        converterOutdated.set(true);
+        synchronized ( wakeUpLock ) {
+            wakeUpLock.notifyAll();
+        }
+    }
+    
+    // recreates the converter, if module IDs or sensors changed
+    private void updateConverterIfOutdated() {
+        if ( converterOutdated.getAndSet(false) ) {
+            mqttFormConverter = new MqttFormConverter(
+                    configuration.getDevicesInfoMap(), nodeStates.getModuleIds()
+            );
+        }
+    }
+    
+    // applies pending configuration, if there is some, and recreates 
+    // the converter, if it is outdated
+    private void applyPendingConfiguration() {
+        NetworkConfiguration newConfiguration = pendingConfiguration.getAndSet(null);
+        if ( newConfiguration == null ) {
+            updateConverterIfOutdated();
+            return;
+        }
+        converterOutdated.set(false);
+        
+        Map<Integer, DeviceInfo> oldDevices = configuration.getDevicesInfoMap();
+        Map<Integer, DeviceInfo> newDevices = newConfiguration.getDevicesInfoMap();
+        
+        // removed and changed devices
+        for ( Map.Entry<Integer, DeviceInfo> entry : oldDevices.entrySet() ) {
+            DeviceInfo newDeviceInfo = newDevices.get(entry.getKey());
+            if ( newDeviceInfo != null && isSameDevice(entry.getValue(), newDeviceInfo) ) {
+                continue;
+            }
+            
+            int nodeId = entry.getKey();
+            if ( nodeId < 0 || nodeId >= NodeStateTable.MAX_NODES ) {
+                continue;
+            }
+            linkQuality.reset(nodeId);
+            nodeStates.setLinkScore(nodeId, linkQuality.getScore(nodeId));
+            if ( newDeviceInfo == null ) {
+                String nodeLabel = String.valueOf(nodeId);
+                metrics.remove("dpa_link_quality", "network", configuration.getId(), "node", nodeLabel);
+                metrics.remove("dpa_request_duration_seconds", "network", configuration.getId(), "node", nodeLabel);
+                metrics.remove("dpa_failures_total", "network", configuration.getId(), "node", nodeLabel);
+                dpaRequestDurations[nodeId] = null;
+                dpaFailureCounters[nodeId] = null;
+                nodeStates.removeNode(nodeId);
+                log.info("Device on node {} removed from network {}", nodeId, newConfiguration.getId());
+            } else {
+                nodeStates.setSensor(nodeId, null);
+            }
+        }
+        
+        configuration = newConfiguration;
+        errorAggregator.setTopic(getErrorsSummaryTopic(mqttTopics, newConfiguration));
+        
+        // added and changed devices
+        Map<String, Node> nodesMap = dpaNetwork.getNodesMap();
+        for ( Map.Entry<Integer, DeviceInfo> entry : newDevices.entrySet() ) {
+            DeviceInfo oldDeviceInfo = oldDevices.get(entry.getKey());
+            if ( oldDeviceInfo != null && isSameDevice(oldDeviceInfo, entry.getValue()) ) {
+                continue;
+            }
+            
+            String nodeId = String.valueOf(entry.getKey());
+            Node node = nodesMap.get(nodeId);
+            if ( node == null ) {
+                log.warn(
+                        "Node {} is not part of DPA network {}, its device is not polled", 
+                        nodeId, newConfiguration.getId()
+                );
+                continue;
+            }
+            
+            log.info("Device on node {} added to network {}", nodeId, newConfiguration.getId());
+            uninitializedNodes.incrementAndGet();
+            scheduleNodeInitialization(nodeId, 0, 0);
+        }
+        
+        mqttFormConverter = new MqttFormConverter(newDevices, nodeStates.getModuleIds());
+        log.info("Configuration of network {} applied", newConfiguration.getId());
+    }
+    
+    // indicates, whether specified infos describe the same device
+    private static boolean isSameDevice(DeviceInfo deviceInfo, DeviceInfo otherDeviceInfo) {
+        return deviceInfo.getManufacturer().equals(otherDeviceInfo.getManufacturer())
+                && deviceInfo.getType().equals(otherDeviceInfo.getType())
+                && ( (deviceInfo.getRegisters() == null)? otherDeviceInfo.getRegisters() == null 
+                        : deviceInfo.getRegisters().equals(otherDeviceInfo.getRegisters()) );
+    }
+    
+    // schedules initialization of specified node after specified delay [in s]
+    private void scheduleNodeInitialization(final String nodeId, final int attempt, long delay) {
+        try {
+            nodeInitializer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    initializeNode(nodeId, attempt);
+                }
+            }, delay, TimeUnit.SECONDS);
+        } catch ( RejectedExecutionException ex ) {
+            log.debug("Initialization of node {} not scheduled, network {} destroyed", nodeId, configuration.getId());
+        }
+    }
+    
+    // initializes specified node - finds its sensor and reads its module ID
+    // if the module ID cannot be read, the initialization is retried later
+    private void initializeNode(String nodeId, int attempt) {
+        boolean finished = true;
+        try {
+            finished = tryInitializeNode(nodeId);
+        } catch ( InterruptedException ex ) {
+            return;
+        } catch ( RuntimeException ex ) {
+            nodeLog.error(
+                    nodeId + ":init", "Error while initializing node {} of network {}: {}", 
+                    nodeId, configuration.getId(), ex.toString()
+            );
+            finished = false;
+        }
+        
+        if ( !finished ) {
+            long delay = Math.min(NODE_INIT_RETRY_DELAY << Math.min(attempt, 16), NODE_INIT_MAX_RETRY_DELAY);
+            log.debug("Initialization of node {} will be retried in {} s", nodeId, delay);
+            scheduleNodeInitialization(nodeId, attempt + 1, delay);
+            return;
+        }
+        
+        // snapshot is saved after all nodes have been tried
+        if ( uninitializedNodes.decrementAndGet() == 0 ) {
+            saveTopologySnapshot();
+        }
+    }
+    
+    // tries to initialize specified node, returns false if the initialization 
+    // should be retried
+    private boolean tryInitializeNode(String nodeId) throws InterruptedException {
+        int nodeIdNum = Integer.parseInt(nodeId);
+        
+        // device removed meanwhile or already initialized
+        if ( !isDeviceConfigured(nodeIdNum) || nodeStates.getSensor(nodeIdNum) != null ) {
+            return true;
+        }
+        
+        Node node = dpaNetwork.getNode(nodeId);
+        if ( node == null ) {
+            log.warn("Node {} is not part of DPA network {}", nodeId, configuration.getId());
+            return true;
+        }
+        
+        Object sensor = null;
+        try {
+            sensor = getSensor(nodeIdNum, node);
+        } catch ( SimplyException ex ) {
+            log.error("Device on node {} not initialized: {}", nodeId, ex.getMessage());
+            return true;
+        }
+        if ( sensor == null ) {
+            return true;
+        }
+        
+        String moduleId = nodeStates.getModuleId(nodeIdNum);
+        if ( moduleId == null ) {
+            moduleId = readModuleId(nodeId, node);
+            if ( moduleId == null ) {
+                return false;
+            }
+            nodeStates.setModuleId(nodeIdNum, moduleId);
+        }
+        
+        // converter must know the module ID before the node is polled
+        requestConverterUpdate();
+        registerLinkQualityGauge(nodeIdNum);
+        nodeStates.setSensor(nodeIdNum, sensor);
+        log.info("Node: {} MID: {} joined polling of network {}", nodeId, moduleId, configuration.getId());
+        return true;
+    }
+    
+    // returns directory of topology snapshot of the network
+    private Path getSnapshotDirectory() {
+        return Paths.get("config", "simply", "snapshot", configuration.getId());
+    }
+    
+    // loads topology snapshot of the network, returns null if it is not available
+    private TopologySnapshot loadTopologySnapshot(Path simplyConfigFile) {
+        if ( !configuration.isTopologySnapshot() ) {
+            return null;
+        }
+        
+        TopologySnapshot snapshot = null;
+        try {
+            snapshot = TopologySnapshot.load(getSnapshotDirectory(), simplyConfigFile, SIMPLY_NETWORK_ID);
+        } catch ( IOException ex ) {
+            log.warn("Topology snapshot of network {} not used: {}", configuration.getId(), ex.getMessage());
+            return null;
+        }
+        
+        if ( snapshot == null ) {
+            log.info("No valid topology snapshot of network {}", configuration.getId());
+        } else {
+            log.info(
+                    "Network {} initialized from topology snapshot of {} nodes", 
+                    configuration.getId(), snapshot.getNodeIds().size()
+            );
+        }
+        return snapshot;
+    }
+    
+    // saves topology snapshot of all nodes of the network
+    private void saveTopologySnapshot() {
+        if ( !configuration.isTopologySnapshot() ) {
+            return;
+        }
+        
+        Set<Integer> snapshotNodeIds = new TreeSet<>();
+        for ( String nodeId : dpaNetwork.getNodesMap().keySet() ) {
+            snapshotNodeIds.add(Integer.parseInt(nodeId));
+        }
+        try {
+            TopologySnapshot.save(
+                    getSnapshotDirectory(), simplyConfigFile, SIMPLY_NETWORK_ID, snapshotNodeIds, 
+                    nodeStates.getModuleIds()
+            );
+            log.info("Topology snapshot of network {} saved", configuration.getId());
+        } catch ( IOException ex ) {
+            log.warn("Topology snapshot of network {} not saved: {}", configuration.getId(), ex.getMessage());
+        }
+    }
+    
+    // verifies, that the real network corresponds to the topology snapshot 
+    // the Simply was initialized from
+    // runs on the background at the maintenance priority, so that the acquisition 
+    // is not delayed
+    private void verifyTopologySnapshot() {
+        TopologySnapshot snapshot = verifiedSnapshot;
+        try {
+            final Coordinator coord = dpaNetwork.getNode("0").getDeviceObject(Coordinator.class);
+            BondedNodes bondedNodes = radioArbiter.call(RadioPriority.MAINTENANCE, new Callable<BondedNodes>() {
+                @Override
+                public BondedNodes call() {
+                    return coord.getBondedNodes();
+                }
+            });
+            if ( bondedNodes == null ) {
+                log.warn("Topology snapshot of network {} not verified: bonded nodes not available", 
+                        configuration.getId()
+                );
+                return;
+            }
+            
+            if ( !snapshot.matchesBondedNodes(bondedNodes.getList()) ) {
+                log.warn(
+                        "Bonded nodes of network {} differ from topology snapshot, "
+                        + "full initialization will be done on next start", configuration.getId()
+                );
+                snapshot.invalidate();
+                return;
+            }
+            
+            // module IDs - replaced modules
+            boolean moduleIdsChanged = false;
+            for ( Map.Entry<String, String> entry : snapshot.getModuleIds().entrySet() ) {
+                Node node = dpaNetwork.getNode(entry.getKey());
+                if ( node == null || !isDeviceConfigured(Integer.parseInt(entry.getKey())) ) {
+                    continue;
+                }
+                
+                String moduleId = readModuleId(entry.getKey(), node);
+                if ( moduleId != null && !moduleId.equals(entry.getValue()) ) {
+                    log.warn(
+                            "Module ID of node {} changed from {} to {}", 
+                            entry.getKey(), entry.getValue(), moduleId
+                    );
+                    nodeStates.setModuleId(Integer.parseInt(entry.getKey()), moduleId);
+                    moduleIdsChanged = true;
+                }
+            }
+            
+            if ( moduleIdsChanged ) {
+                TopologySnapshot.save(
+                        getSnapshotDirectory(), simplyConfigFile, SIMPLY_NETWORK_ID, 
+                        snapshot.getNodeIds(), nodeStates.getModuleIds()
+                );
+                
+                // converter is recreated with new module IDs
+                requestConverterUpdate();
+            }
+            log.info("Topology snapshot of network {} verified", configuration.getId());
+        } catch ( InterruptedException ex ) {
+            log.debug("Verification of topology snapshot of network {} interrupted", configuration.getId());
+        } catch ( IOException ex ) {
+            log.warn("Topology snapshot of network {} not updated: {}", configuration.getId(), ex.getMessage());
+        } catch ( RuntimeException ex ) {
+            log.warn("Verification of topology snapshot of network {} failed: {}", configuration.getId(), ex.toString());
+        }
+    }
+    
+    // returns histogram of durations of DPA requests to specified node
+    private Histogram dpaRequestDuration(int nodeId) {
+        Histogram histogram = dpaRequestDurations[nodeId];
+        if ( histogram == null ) {
+            histogram = metrics.histogram(
+                    "dpa_request_duration_seconds", "Duration of DPA requests to sensors.",
+                    Histogram.DEFAULT_LATENCY_BUCKETS, 
+                    "network", configuration.getId(), "node", String.valueOf(nodeId)
+            );
+            dpaRequestDurations[nodeId] = histogram;
+        }
+        return histogram;
+    }
+    
+    // returns counter of failed DPA requests to specified node
+    private Counter dpaFailures(int nodeId) {
+        Counter counter = dpaFailureCounters[nodeId];
+        if ( counter == null ) {
+            counter = metrics.counter(
+                    "dpa_failures_total", "Number of failed DPA requests to sensors.",
+                    "network", configuration.getId(), "node", String.valueOf(nodeId)
+            );
+            dpaFailureCounters[nodeId] = counter;
+        }
+        return counter;
+    }
+    
+    // registers gauge of link quality score of specified node
+    private void registerLinkQualityGauge(final int nodeId) {
+        metrics.gauge(
+                "dpa_link_quality", "Link quality score of node from 0 (dead) to 1 (reliable).", 
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return nodeStates.getLinkScore(nodeId);
+                    }
+                }, 
+                "network", configuration.getId(), "node", String.valueOf(nodeId)
+        );
+    }
+    
+    // wraps specified callable in order to record duration of its call
+    private static <T> Callable<T> timed(final Callable<T> callable, final Histogram histogram) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                long start = System.nanoTime();
+                try {
+                    return callable.call();
+                } finally {
+                    histogram.record(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+    
+    // sets getting last RSSI in DPA responses or notifications
+    private void setGettingLastRssi() throws SimplyException, InterruptedException {
+        Node node0 = dpaNetwork.getNode("0");
+        if ( node0 == null ) {
+            throw new SimplyException("Node 0 doesn't exist");
+        }
+        
+        final Coordinator coord = node0.getDeviceObject(Coordinator.class);
+        if ( coord == null ) {
+            throw new SimplyException("Coordinator doesn't exist on Node 0");
+        }
+        
+        DPA_Parameter dpaParam = radioArbiter.call(RadioPriority.MAINTENANCE, new Callable<DPA_Parameter>() {
+            @Override
+            public DPA_Parameter call() {
+                return coord.setDPA_Param( 
+                        new DPA_Parameter(DPA_Parameter.DPA_ValueType.LAST_RSSI, false, false)
+                );
+            }
+        });
+        
+        if ( dpaParam == null ) {
+            CallRequestProcessingError error = coord.getCallRequestProcessingErrorOfLastCall();
+            if ( error != null ) {
+                log.error("Error while setting DPA parameter: {}", error);
+            }
+            throw new SimplyException("Setting DPA parameter NOT successfull.");
+        }
+    }
+    
+    // gets data from sensors and publishes them
+    /*
+         task - for each polled node from the best link to the worst one:
+         1. Obtain data from sensor.
+         2. Creation of MQTT form of obtained sensor's data. 
+         3. Sending MQTT form of sensor's data through MQTT to destination point.
+         Failed requests are retried, if there is time left in the cycle.
+         Nodes not reached within the polling period are polled first in the
+         next cycle.
+    */
+    private void getAndPublishSensorData(long cycleStart) throws InterruptedException {
+        presentNodes = configuration.isPresenceSweep()? sweepPresence() : null;
+        
+        // nodes carried over from the previous cycle keep their order
+        int nodesCount = 0;
+        for ( int i = 0; i < carriedOverCount; i++ ) {
+            int nodeId = carriedOverNodes[i];
+            if ( nodeStates.getSensor(nodeId) == null ) {
+                carriedOver[nodeId] = false;
+                continue;
+            }
+            if ( !isPresent(nodeId) ) {
+                reportOffline(nodeId);
+                continue;
+            }
+            pollingOrder[nodesCount++] = nodeId;
+        }
+        
+        int carriedOverInOrder = nodesCount;
+        for ( int nodeId = nodeStates.nextSensorAddress(1); nodeId >= 0; 
+                nodeId = nodeStates.nextSensorAddress(nodeId + 1) 
+        ) {
+            if ( carriedOver[nodeId] ) {
+                continue;
+            }
+            if ( !isPresent(nodeId) ) {
+                reportOffline(nodeId);
+                continue;
+            }
+            pollingOrder[nodesCount++] = nodeId;
+        }
+        linkQuality.sortByScore(pollingOrder, carriedOverInOrder, nodesCount);
+        
+        // at least one node is polled in each cycle, even if the period is too short
+        long cycleEnd = cycleStart + TimeUnit.SECONDS.toNanos(configuration.getPollingPeriod());
+        int failedCount = 0;
+        int polledCount = 0;
+        for ( ; polledCount < nodesCount; polledCount++ ) {
+            int nodeId = pollingOrder[polledCount];
+            if ( polledCount > 0 
+                    && cycleEnd - (System.nanoTime() + linkQuality.getExpectedDuration(nodeId)) < 0 
+            ) {
+                break;
+            }
+            if ( !pollNode(nodeId) ) {
+                failedNodes[failedCount++] = nodeId;
+            }
+        }
+        carryOver(polledCount, nodesCount);
+        
+        if ( failedCount > 0 ) {
+            retryFailedNodes(failedCount, cycleStart);
+        }
+        mqttPublishLinkMap();
+    }
+    
+    // carries nodes of the polling order between specified indexes over to 
+    // the next cycle and reports them as missed deadline
+    private void carryOver(int from, int to) {
+        for ( int i = 0; i < carriedOverCount; i++ ) {
+            carriedOver[carriedOverNodes[i]] = false;
+        }
+        
+        int count = to - from;
+        System.arraycopy(pollingOrder, from, carriedOverNodes, 0, count);
+        for ( int i = 0; i < count; i++ ) {
+            int nodeId = carriedOverNodes[i];
+            carriedOver[nodeId] = true;
+            errorAggregator.record(
+                    nodeId, "DEADLINE_MISSED", null, "Node not polled within polling period"
+            );
+        }
+        carriedOverCount = count;
+        
+        if ( count > 0 ) {
+            deadlineMisses.add(count);
+            nodeLog.warn(
+                    "deadline", "{} nodes of network {} not polled within polling period, "
+                    + "carried over to the next cycle: {}", 
+                    count, configuration.getId(), Arrays.toString(Arrays.copyOf(carriedOverNodes, count))
+            );
+        }
+    }
+    
+    // checks presence of all nodes by one FRC and returns bitmap of nodes,
+    // which answered, null if the FRC failed and all nodes are to be polled
+    private short[] sweepPresence() throws InterruptedException {
+        Node node0 = dpaNetwork.getNode("0");
+        final FRC frc = (node0 != null)? node0.getDeviceObject(FRC.class) : null;
+        if ( frc == null ) {
+            nodeLog.warn("frc:notFound", "FRC not found on coordinator, presence of nodes not checked");
+            return null;
+        }
+        frc.setDefaultWaitingTimeout(PRESENCE_SWEEP_TIMEOUT);
+        
+        FRC_Data frcData = radioArbiter.call(
+                RadioPriority.TELEMETRY, timed(new Callable<FRC_Data>() {
+                    @Override
+                    public FRC_Data call() {
+                        return frc.send(new FRC_Prebonding());
+                    }
+                }, presenceSweepDuration)
+        );
+        if ( frcData == null ) {
+            nodeLog.warn(
+                    "frc:error", "Presence sweep failed, all nodes polled: {}", 
+                    frc.getCallRequestProcessingErrorOfLastCall()
+            );
+            return null;
+        }
+        if ( frcData.getStatus() > FRC_MAX_OK_STATUS ) {
+            nodeLog.warn(
+                    "frc:status", "Presence sweep failed, all nodes polled, FRC status: {}", 
+                    frcData.getStatus()
+            );
+            return null;
+        }
+        log.debug("Presence sweep: {} nodes answered", frcData.getStatus());
+        return frcData.getData();
+    }
+    
+    // tests, if specified node answered the presence sweep of the current 
+    // cycle, nodes are considered present, if there is no sweep
+    // bit 0 of results of each node of the FRC command is set, if the node answered
+    private boolean isPresent(int nodeId) {
+        if ( presentNodes == null ) {
+            return true;
+        }
+        int index = nodeId / 8;
+        return index < presentNodes.length && (presentNodes[index] & (1 << (nodeId % 8))) != 0;
+    }
+    
+    // records, that specified node is offline, without sending request to it
+    private void reportOffline(int nodeId) {
+        offlineSkips.inc();
+        nodeStates.recordFailure(nodeId);
+        nodeLog.warn(nodeId + ":offline", "Node {} did not answer presence sweep, not polled", nodeId);
+        errorAggregator.record(nodeId, "OFFLINE", null, "Node did not answer presence sweep");
+    }
+    
+    // retries requests to specified number of failed nodes at the beginning
+    // of failedNodes array
+    // retries are done only within the retry budget of the cycle and only
+    // if they end before the next cycle starts
+    private void retryFailedNodes(int failedCount, long cycleStart) throws InterruptedException {
+        long pollingPeriod = TimeUnit.SECONDS.toNanos(configuration.getPollingPeriod());
+        long cycleEnd = cycleStart + pollingPeriod;
+        long budget = (long) (pollingPeriod * RETRY_BUDGET_FRACTION);
+        
+        // failed nodes with better links are retried first
+        linkQuality.sortByScore(failedNodes, failedCount);
+        
+        for ( int retry = 1; failedCount > 0; retry++ ) {
+            int stillFailedCount = 0;
+            boolean retried = false;
+            for ( int i = 0; i < failedCount; i++ ) {
+                int nodeId = failedNodes[i];
+                if ( linkQuality.getRetries(nodeId) < retry ) {
+                    continue;
+                }
+                
+                long expectedDuration = linkQuality.getExpectedDuration(nodeId);
+                long retryStart = System.nanoTime();
+                if ( expectedDuration > budget || cycleEnd - (retryStart + expectedDuration) < 0 ) {
+                    log.debug("No time left for retry of request to node {}", nodeId);
+                    continue;
+                }
+                
+                dpaRetries.inc();
+                retried = true;
+                boolean success = pollNode(nodeId);
+                budget -= System.nanoTime() - retryStart;
+                if ( !success ) {
+                    failedNodes[stillFailedCount++] = nodeId;
+                }
+            }
+            if ( !retried ) {
+                break;
+            }
+            failedCount = stillFailedCount;
+        }
+    }
+    
+    // gets data from sensor on specified node and publishes them
+    // returns false if the data could not be obtained
+    private boolean pollNode(int nodeId) throws InterruptedException {
+        // device must be configured on the node
+        Object sensor = nodeStates.getSensor(nodeId);
+        if ( sensor == null || !isDeviceConfigured(nodeId) ) {
+            return true;
+        }
+        
+        long requestStart = System.nanoTime();
+        DataToPublish dataToPublish = getDataFromSensor(nodeId, sensor);
+        long requestDuration = System.nanoTime() - requestStart;
+        if ( dataToPublish == null ) {
+            linkQuality.recordFailure(nodeId, requestDuration);
+            nodeStates.setLinkScore(nodeId, linkQuality.getScore(nodeId));
+            failedRequestDuration.record(requestDuration);
+            return false;
+        }
+        linkQuality.recordSuccess(
+                nodeId, 
+                (dataToPublish.getRssi() != null)? dataToPublish.getRssi() : NodeStateTable.RSSI_NOT_KNOWN, 
+                requestDuration
+        );
+        nodeStates.setLinkScore(nodeId, linkQuality.getScore(nodeId));
+        
+        // node joined meanwhile
+        updateConverterIfOutdated();
+        
+        // getting MQTT form of data from sensor and passing them to sinks
+        publishData(nodeId, dataToPublish, mqttFormConverter.toMqttForm(nodeId, dataToPublish));
+        return true;
+    }
+    
+    // tests, if a device is configured on specified node
+    private boolean isDeviceConfigured(int nodeId) {
+        return ( nodeId > 0 && nodeId < NodeStateTable.MAX_NODES 
+                && configuration.getDevicesInfoMap().containsKey(nodeId) 
+        );
+    }
+    
+    // returns pretty formated module ID read from OS of specified node, 
+    // null if it cannot be read
+    private String readModuleId(String nodeId, Node node) throws InterruptedException {
+        log.info("Getting OS info on the node: {} of network: {}", nodeId, configuration.getId());
+        
+        // OS peripheral
+        final OS os = node.getDeviceObject(OS.class);
+        if ( os == null ) {
+            log.error("OS doesn't exist on node {}", nodeId);
+            return null;
+        }
+        
+        // get OS info about module
+        OsInfo osInfo = radioArbiter.call(RadioPriority.MAINTENANCE, new Callable<OsInfo>() {
+            @Override
+            public OsInfo call() {
+                return os.read();
+            }
+        });
+        if ( osInfo != null ) {
+            return osInfo.getPrettyFormatedModuleId();
+        }
+        
+        CallRequestProcessingState procState = os.getCallRequestProcessingStateOfLastCall();
+        if ( procState == ERROR ) {
+            // general call error    
+            CallRequestProcessingError error = os.getCallRequestProcessingErrorOfLastCall();
+            nodeLog.error(nodeId + ":osInfo", "Getting OS info of node {} failed: {}", nodeId, error);
+            
+            if ( error.getErrorType() == CallRequestProcessingErrorType.NETWORK_INTERNAL ) {
+                // specific call error
+                DPA_AdditionalInfo dpaAddInfo = os.getDPA_AdditionalInfoOfLastCall();
+                if ( dpaAddInfo != null ) {
+                    DPA_ResponseCode dpaResponseCode = dpaAddInfo.getResponseCode();
+                    nodeLog.error(nodeId + ":osInfoResponseCode", "DPA response code: {}", dpaResponseCode);
+                }
+            }
+        } else {
+            nodeLog.error(
+                    nodeId + ":osInfoState", 
+                    "Getting OS info of node {} hasn't been processed yet: {}", nodeId, procState
+            );
+        }
+        return null;
+    }
+    
+    // returns CO2 or VOC sensor on specified node, null if it is not found
+    // for sensors sharing one UART, the UART is returned
+    private Object getSensor(int nodeId, Node node) throws SimplyException {
+        log.info("Getting device: {}", nodeId);
+        DeviceInfo sensorInfo = configuration.getDevicesInfoMap().get(nodeId);
+        
+        switch ( sensorInfo.getType() ) {
+            case "co2-t-h":
+                CO2Sensor co2Sensor = node.getDeviceObject(CO2Sensor.class);
+                if ( co2Sensor == null ) {
+                    log.error("CO2 sensor not found on node: {}", nodeId);
+                    return null;
+                }
+                log.info("Device type: {}", sensorInfo.getType());
+                return co2Sensor;
+                
+            case "voc-t-h":
+                VOCSensor vocSensor = node.getDeviceObject(VOCSensor.class);
+                if ( vocSensor == null ) {
+                    log.error("VOC sensor not found on node: {}", nodeId);
+                    return null;
+                }
+                log.info("Device type: {}", sensorInfo.getType());
+                return vocSensor;
+                
+            case "co2-voc-t-h":
+                UART uart = node.getDeviceObject(UART.class);
+                if ( uart == null ) {
+                    log.error("UART not found on node: {}", nodeId);
+                    return null;
+                }
+                log.info("Device type: {}", sensorInfo.getType());
+                return uart;
+                
+            default:
+                throw new SimplyException("Device type not supported:" + sensorInfo.getType());
+        }
+    }
+    
+    // returns data from sensor on specified node and records them into the 
+    // state of the node, null if the data cannot be obtained
+    private DataToPublish getDataFromSensor(int nodeId, Object sensor) 
+            throws InterruptedException 
+    {
+        DeviceInfo sensorInfo = configuration.getDevicesInfoMap().get(nodeId);
+        log.debug("Getting data from sensor {}", nodeId);
+
+        switch ( sensorInfo.getType() ) {
+            case "co2-t-h":
+                Object compDevObject = sensor;
+                if ( compDevObject == null ) {
+                    nodeLog.warn(nodeId + ":notFound", "Sensor not found. Id: {}", nodeId);
+                    break;
+                }
+                
+                if ( !(compDevObject instanceof CO2Sensor) ) {
+                    nodeLog.warn(
+                        nodeId + ":type", "Bad type of sensor. Got: {}, expected: {}", 
+                        compDevObject.getClass(), CO2Sensor.class
+                    );
+                    break;
+                }
+                
+                final CO2Sensor co2Sensor = (CO2Sensor)compDevObject;
+                CO2SensorData co2SensorData = radioArbiter.call(
+                        RadioPriority.TELEMETRY, timed(new Callable<CO2SensorData>() {
+                            @Override
+                            public CO2SensorData call() {
+                                return co2Sensor.get();
+                            }
+                        }, dpaRequestDuration(nodeId))
+                );
+                if ( co2SensorData != null ) {
+                    long timestamp = acquisitionClock.now();
+                    Integer rssi = null;
+                    DPA_AdditionalInfo addInfo = co2Sensor.getDPA_AdditionalInfoOfLastCall();
+                    if ( addInfo == null ) {
+                        nodeLog.warn(nodeId + ":addinfo", "No additional info for CO2 sensor {}", nodeId);
+                    } else {
+                        rssi = addInfo.getDPA_Value();
+                    }
+                    nodeStates.recordData(
+                            nodeId, timestamp, 
+                            (rssi != null)? rssi : NodeStateTable.RSSI_NOT_KNOWN
+                    );
+                    return new DataToPublish(co2SensorData, rssi, timestamp);
+                } else {
+                    dpaFailures(nodeId).inc();
+                    nodeStates.recordFailure(nodeId);
+                    CallRequestProcessingState requestState = co2Sensor.getCallRequestProcessingStateOfLastCall();
+                    if ( requestState == ERROR ) {                      
+                        // call error    
+                        CallRequestProcessingError error = co2Sensor.getCallRequestProcessingErrorOfLastCall();
+                        nodeLog.error(
+                            nodeId + ":error", 
+                            "Error while getting data from CO2 sensor {}: {}", nodeId, error
+                        );
+                        
+                        // specific call error
+                        DPA_ResponseCode dpaResponseCode = null;
+                        if ( error.getErrorType() == CallRequestProcessingErrorType.NETWORK_INTERNAL ) {
+                            DPA_AdditionalInfo dpaAddInfo = co2Sensor.getDPA_AdditionalInfoOfLastCall();
+                            if ( dpaAddInfo != null ) {
+                                dpaResponseCode = dpaAddInfo.getResponseCode();
+                                nodeLog.error(
+                                    nodeId + ":responseCode", 
+                                    "DPA response code of sensor {}: {}", nodeId, dpaResponseCode
+                                );
+                            }
+                        }
+                        
+                        errorAggregator.record(
+                                nodeId, String.valueOf(error.getErrorType()), 
+                                (dpaResponseCode != null)? String.valueOf(dpaResponseCode) : null, 
+                                String.valueOf(error)
+                        );
+                    } else {
+                        nodeLog.warn(
+                            nodeId + ":state", 
+                            "Could not get data from CO2 sensor {}. State of the sensor: {}", 
+                            nodeId, requestState
+                        );
+                        errorAggregator.record(
+                                nodeId, String.valueOf(requestState), null, 
+                                "Request not processed, state: " + requestState
+                        );
+                    }
+                } 
+            break;
+
+            case "voc-t-h":
+                compDevObject = sensor;
+                if ( compDevObject == null ) {
+                    nodeLog.warn(nodeId + ":notFound", "Sensor not found. Id: {}", nodeId);
+                    break;
+                }
+                
+                if ( !(compDevObject instanceof VOCSensor) ) {
+                    nodeLog.warn(
+                        nodeId + ":type", "Bad type of sensor. Got: {}, expected: {}", 
+                        compDevObject.getClass(), VOCSensor.class
+                    );
+                    break;
+                }
+                
+                final VOCSensor vocSensor = (VOCSensor)compDevObject;
+                VOCSensorData vocSensorData = radioArbiter.call(
+                        RadioPriority.TELEMETRY, timed(new Callable<VOCSensorData>() {
+                            @Override
+                            public VOCSensorData call() {
+                                return vocSensor.get();
+                            }
+                        }, dpaRequestDuration(nodeId))
+                );
+                if ( vocSensorData != null ) {
+                    long timestamp = acquisitionClock.now();
+                    Integer rssi = null;
+                    DPA_AdditionalInfo addInfo = vocSensor.getDPA_AdditionalInfoOfLastCall();
+                    if ( addInfo == null ) {
+                        nodeLog.warn(nodeId + ":addinfo", "No additional info for VOC sensor {}", nodeId);
+                    } else {
+                        rssi = addInfo.getDPA_Value();
+                    }
+                    nodeStates.recordData(
+                            nodeId, timestamp, 
+                            (rssi != null)? rssi : NodeStateTable.RSSI_NOT_KNOWN
+                    );
+                    return new DataToPublish(vocSensorData, rssi, timestamp);
+                } else {
+                    dpaFailures(nodeId).inc();
+                    nodeStates.recordFailure(nodeId);
+                    CallRequestProcessingState requestState = vocSensor.getCallRequestProcessingStateOfLastCall();
+                    if ( requestState == ERROR ) {
+                        // general call error
+                        CallRequestProcessingError error = vocSensor.getCallRequestProcessingErrorOfLastCall();
+                        nodeLog.error(
+                            nodeId + ":error", 
+                            "Error while getting data from VOC sensor {}: {}", nodeId, error
+                        );
+                        
+                        // specific call error
+                        DPA_ResponseCode dpaResponseCode = null;
+                        if (error.getErrorType() == CallRequestProcessingErrorType.NETWORK_INTERNAL) {
+                            DPA_AdditionalInfo dpaAddInfo = vocSensor.getDPA_AdditionalInfoOfLastCall();
+                            if ( dpaAddInfo != null ) {
+                                dpaResponseCode = dpaAddInfo.getResponseCode();
+                                nodeLog.error(
+                                    nodeId + ":responseCode", 
+                                    "DPA response code of sensor {}: {}", nodeId, dpaResponseCode
+                                );
+                            }
+                        }
+                        
+                        errorAggregator.record(
+                                nodeId, String.valueOf(error.getErrorType()), 
+                                (dpaResponseCode != null)? String.valueOf(dpaResponseCode) : null, 
+                                String.valueOf(error)
+                        );
+                    } else {
+                        nodeLog.warn(
+                            nodeId + ":state", 
+                            "Could not get data from VOC sensor {}. State of the sensor: {}", 
+                            nodeId, requestState
+                        );
+                        errorAggregator.record(
+                                nodeId, String.valueOf(requestState), null, 
+                                "Request not processed, state: " + requestState
+                        );
+                    }
+                }
+            break;
+            
+            case "co2-voc-t-h":
+                if ( sensor == null ) {
+                    nodeLog.warn(nodeId + ":notFound", "Sensor not found. Id: {}", nodeId);
+                    break;
+                }
+                if ( !(sensor instanceof UART) ) {
+                    nodeLog.warn(
+                        nodeId + ":type", "Bad type of sensor. Got: {}, expected: {}", 
+                        sensor.getClass(), UART.class
+                    );
+                    break;
+                }
+                return getCombinedDataFromSensors(nodeId, (UART) sensor, sensorInfo.getRegisters());
+
+            default:
+                throw new IllegalStateException("Device type not supported:" + sensorInfo.getType());
+        }
+        return null;
+    }
+    
+    // returns data from CO2 and VOC sensors sharing specified UART of specified 
+    // node read in one exchange from specified registers and records them into 
+    // the state of the node, null if the data cannot be obtained
+    private DataToPublish getCombinedDataFromSensors(
+            int nodeId, final UART uart, ModbusRegisterMap registerMap
+    ) throws InterruptedException {
+        final int firstRegister = registerMap.getFirstRegister();
+        final int registerCount = registerMap.getRegisterCount();
+        final short[] request = ModbusFrames.readRegisters(
+                registerMap.getSlave(), registerMap.getFunction(), firstRegister, registerCount
+        );
+        
+        short[] response = radioArbiter.call(
+                RadioPriority.TELEMETRY, timed(new Callable<short[]>() {
+                    @Override
+                    public short[] call() {
+                        return uart.writeAndRead(COMBINED_UART_TIMEOUT, request);
+                    }
+                }, dpaRequestDuration(nodeId))
+        );
+        if ( response == null ) {
+            dpaFailures(nodeId).inc();
+            nodeStates.recordFailure(nodeId);
+            CallRequestProcessingState requestState = uart.getCallRequestProcessingStateOfLastCall();
+            if ( requestState == ERROR ) {
+                CallRequestProcessingError error = uart.getCallRequestProcessingErrorOfLastCall();
+                nodeLog.error(
+                    nodeId + ":error", 
+                    "Error while reading sensors on UART of node {}: {}", nodeId, error
+                );
+                errorAggregator.record(
+                        nodeId, String.valueOf(error.getErrorType()), null, String.valueOf(error)
+                );
+            } else {
+                nodeLog.warn(
+                    nodeId + ":state", 
+                    "Could not read sensors on UART of node {}. State of the UART: {}", 
+                    nodeId, requestState
+                );
+                errorAggregator.record(
+                        nodeId, String.valueOf(requestState), null, 
+                        "Request not processed, state: " + requestState
+                );
+            }
+            return null;
+        }
+        long timestamp = acquisitionClock.now();
+        
+        int[] registers = ModbusFrames.parseRegisters(
+                response, registerMap.getSlave(), registerMap.getFunction(), registerCount
+        );
+        if ( registers == null ) {
+            dpaFailures(nodeId).inc();
+            nodeStates.recordFailure(nodeId);
+            nodeLog.warn(nodeId + ":modbus", "Invalid Modbus response from UART of node {}", nodeId);
+            errorAggregator.record(nodeId, "MODBUS", null, "Invalid Modbus response");
+            return null;
+        }
+        
+        int co2 = registers[registerMap.getCo2Register() - firstRegister];
+        int voc = registers[registerMap.getVocRegister() - firstRegister];
+        // temperature is signed
+        float scale = registerMap.getScale();
+        float temperature = (short) registers[registerMap.getTemperatureRegister() - firstRegister] / scale;
+        float humidity = registers[registerMap.getHumidityRegister() - firstRegister] / scale;
+        CombinedSensorData sensorData = new CombinedSensorData(
+                new CO2SensorData(co2, temperature, humidity),
+                new VOCSensorData(voc, temperature, humidity)
+        );
+        
+        Integer rssi = null;
+        DPA_AdditionalInfo addInfo = uart.getDPA_AdditionalInfoOfLastCall();
+        if ( addInfo == null ) {
+            nodeLog.warn(nodeId + ":addinfo", "No additional info for UART {}", nodeId);
+        } else {
+            rssi = addInfo.getDPA_Value();
+        }
+        nodeStates.recordData(
+                nodeId, timestamp, 
+                (rssi != null)? rssi : NodeStateTable.RSSI_NOT_KNOWN
+        );
+        return new DataToPublish(sensorData, rssi, timestamp);
+    }
+    
+    // passes data from sensor on specified node and their prepared json messages to sinks
+    private void publishData(int nodeId, DataToPublish dataToPublish, List<String> mqttSensorData) { 
+        if ( mqttSensorData == null ) {
+            nodeLog.warn(nodeId + ":noData", "No data found for sensor: {}", nodeId);
+            return;
+        }
+        
+        log.debug("Passing parsed data for node: {}", nodeId);
+        String topic = mqttTopics.getStdSensorsProtronix() + configuration.getTopicPrefix() + nodeId;
+        sinkDispatcher.publish(new Reading(
+                configuration.getId(), nodeId, nodeStates.getModuleId(nodeId),
+                configuration.getDevicesInfoMap().get(nodeId).getType(), 
+                dataToPublish.getTimestamp(), getValues(dataToPublish), topic, mqttSensorData
+        ));
+    }
+    
+    // returns values of specified data from sensor indexed by names of quantities
+    private static Map<String, Number> getValues(DataToPublish dataToPublish) {
+        Map<String, Number> values = new LinkedHashMap<>();
+        Object sensorData = dataToPublish.getSensorData();
+        if ( sensorData instanceof CO2SensorData ) {
+            CO2SensorData co2SensorData = (CO2SensorData) sensorData;
+            values.put("co2", co2SensorData.getCo2());
+            values.put("temperature", co2SensorData.getTemperature());
+            values.put("humidity", co2SensorData.getHumidity());
+        } else if ( sensorData instanceof VOCSensorData ) {
+            VOCSensorData vocSensorData = (VOCSensorData) sensorData;
+            values.put("voc", vocSensorData.getVoc());
+            values.put("temperature", vocSensorData.getTemperature());
+            values.put("humidity", vocSensorData.getHumidity());
+        } else if ( sensorData instanceof CombinedSensorData ) {
+            CombinedSensorData combinedData = (CombinedSensorData) sensorData;
+            values.put("co2", combinedData.getCo2SensorData().getCo2());
+            values.put("voc", combinedData.getVocSensorData().getVoc());
+            values.put("temperature", combinedData.getCo2SensorData().getTemperature());
+            values.put("humidity", combinedData.getCo2SensorData().getHumidity());
+        }
+        if ( dataToPublish.getRssi() != null ) {
+            values.put("rssi", dataToPublish.getRssi());
+        }
+        return values;
+    }
+    
+    // returns topic of summaries of errors of specified network
+    private static String getErrorsSummaryTopic(MqttTopics mqttTopics, NetworkConfiguration configuration) {
+        return mqttTopics.getStdSensorsProtronixErrors() + configuration.getTopicPrefix() + "summary";
+    }
+    
+    // passes link quality map of the network to the publishing thread
+    // at most one map waits for publishing, older map is replaced by newer one
+    private void mqttPublishLinkMap() {
+        final String topic = mqttTopics.getGatewayLinks() + "/" + configuration.getId();
+        if ( pendingLinkMap.getAndSet(linkQuality.toJson(configuration.getId(), nodeStates)) != null ) {
+            nodeLog.warn(
+                    "links:pending", "Link quality map of network {} not published yet, replaced", 
+                    configuration.getId()
+            );
+            return;
+        }
+        
+        try {
+            linkMapPublisher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String linkMap = pendingLinkMap.getAndSet(null);
+                    try {
+                        mqttCommunicator.publish(topic, 1, linkMap.getBytes());
+                    } catch ( MqttException ex ) {
+                        nodeLog.error(
+                                "links:publish", "Error while publishing link quality map: {}", 
+                                ex.toString()
+                        );
+                    }
+                }
+            });
+        } catch ( RejectedExecutionException ex ) {
+            pendingLinkMap.set(null);
+        }
+    }
+    
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.monitoring;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * State of nodes of one network indexed by DPA address of nodes.
+ * <p>
+ * Primitive state of each node is kept in one row of a flat array, so that
+ * the state of all nodes occupies few contiguous cache lines and no objects
+ * are created while recording results of polling. References to sensors and 
+ * module IDs are kept in separate arrays.
+ * <p>
+ * Primitive state of a node is written by one thread only - the acquisition 
+ * thread of the network. Readers on other threads obtain consistent snapshots 
+ * of a row without locking: each row carries a version, which is odd while 
+ * the row is being written, and readers retry until they read the same even 
+ * version before and after the row.
+ */
+final class NodeStateTable {
+    
+    /** Number of DPA addresses of nodes. */
+    static final int MAX_NODES = 240;
+    
+    /** RSSI value of nodes, whose RSSI is not known. */
+    static final int RSSI_NOT_KNOWN = Integer.MIN_VALUE;
+    
+    /** Link quality score of nodes without samples. */
+    static final double INITIAL_LINK_SCORE = 1.0;
+    
+    // columns of a row
+    private static final int VERSION = 0;
+    private static final int LAST_SEEN = 1;
+    private static final int RSSI = 2;
+    private static final int CONSECUTIVE_FAILURES = 3;
+    private static final int TOTAL_FAILURES = 4;
+    private static final int LINK_SCORE = 5;
+    
+    // number of columns including padding - one row fills one 64 bytes cache line
+    private static final int ROW_SIZE = 8;
+    
+    /**
+     * Consistent snapshot of state of one node. 
+     */
+    static final class Snapshot {
+        private long lastSeen;
+        private int rssi;
+        private long consecutiveFailures;
+        private long totalFailures;
+        
+        /**
+         * @return time of the last successful reading of the node [in ms since
+         *         the epoch], 0 if the node has not been read yet
+         */
+        long getLastSeen() {
+            return lastSeen;
+        }
+        
+        /**
+         * @return RSSI of the last response of the node, {@link #RSSI_NOT_KNOWN} 
+         *         if it is not known
+         */
+        int getRssi() {
+            return rssi;
+        }
+        
+        /**
+         * @return number of failed readings since the last successful one
+         */
+        long getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+        
+        /**
+         * @return total number of failed readings
+         */
+        long getTotalFailures() {
+            return totalFailures;
+        }
+    }
+    
+    private final AtomicLongArray rows = new AtomicLongArray(MAX_NODES * ROW_SIZE);
+    private final AtomicReferenceArray<Object> sensors 
+            = new AtomicReferenceArray<>(MAX_NODES);
+    private final AtomicReferenceArray<String> moduleIds = new AtomicReferenceArray<>(MAX_NODES);
+    
+    
+    /**
+     * Creates new table with no nodes.
+     */
+    NodeStateTable() {
+        for ( int address = 0; address < MAX_NODES; address++ ) {
+            rows.set(address * ROW_SIZE + RSSI, RSSI_NOT_KNOWN);
+            rows.set(address * ROW_SIZE + LINK_SCORE, Double.doubleToRawLongBits(INITIAL_LINK_SCORE));
+        }
+    }
+    
+    // checks specified address
+    private static void checkAddress(int address) {
+        if ( address < 0 || address >= MAX_NODES ) {
+            throw new IllegalArgumentException("Address out of range: " + address);
+        }
+    }
+    
+    // marks start of writing into row
+    private int beginWrite(int address) {
+        int base = address * ROW_SIZE;
+        rows.set(base + VERSION, rows.get(base + VERSION) + 1);
+        return base;
+    }
+    
+    // marks end of writing into row
+    private void endWrite(int base) {
+        rows.lazySet(base + VERSION, rows.get(base + VERSION) + 1);
+    }
+    
+    /**
+     * Records successful reading of specified node. Must be called from the 
+     * writing thread only.
+     * @param address address of the node
+     * @param time time of the reading [in ms since the epoch]
+     * @param rssi RSSI of the response, {@link #RSSI_NOT_KNOWN} if not known
+     */
+    void recordData(int address, long time, int rssi) {
+        checkAddress(address);
+        int base = beginWrite(address);
+        rows.lazySet(base + LAST_SEEN, time);
+        rows.lazySet(base + RSSI, rssi);
+        rows.lazySet(base + CONSECUTIVE_FAILURES, 0);
+        endWrite(base);
+    }
+    
+    /**
+     * Records failed reading of specified node. Must be called from the 
+     * writing thread only.
+     * @param address address of the node
+     */
+    void recordFailure(int address) {
+        checkAddress(address);
+        int base = beginWrite(address);
+        rows.lazySet(base + CONSECUTIVE_FAILURES, rows.get(base + CONSECUTIVE_FAILURES) + 1);
+        rows.lazySet(base + TOTAL_FAILURES, rows.get(base + TOTAL_FAILURES) + 1);
+        endWrite(base);
+    }
+    
+    /**
+     * Publishes link quality score of specified node for readers on other 
+     * threads. Must be called from the writing thread only.
+     * @param address address of the node
+     * @param score link quality score in the range of 0 to 1
+     */
+    void setLinkScore(int address, double score) {
+        checkAddress(address);
+        rows.set(address * ROW_SIZE + LINK_SCORE, Double.doubleToRawLongBits(score));
+    }
+    
+    /**
+     * @param address address of the node
+     * @return the last published link quality score of specified node
+     */
+    double getLinkScore(int address) {
+        checkAddress(address);
+        return Double.longBitsToDouble(rows.get(address * ROW_SIZE + LINK_SCORE));
+    }
+    
+    /**
+     * Reads consistent snapshot of state of specified node.
+     * @param address address of the node
+     * @param snapshot snapshot to fill
+     * @return {@code snapshot}
+     */
+    Snapshot read(int address, Snapshot snapshot) {
+        checkAddress(address);
+        int base = address * ROW_SIZE;
+        while ( true ) {
+            long version = rows.get(base + VERSION);
+            if ( (version & 1) != 0 ) {
+                Thread.yield();
+                continue;
+            }
+            
+            snapshot.lastSeen = rows.get(base + LAST_SEEN);
+            snapshot.rssi = (int) rows.get(base + RSSI);
+            snapshot.consecutiveFailures = rows.get(base + CONSECUTIVE_FAILURES);
+            snapshot.totalFailures = rows.get(base + TOTAL_FAILURES);
+            
+            if ( rows.get(base + VERSION) == version ) {
+                return snapshot;
+            }
+        }
+    }
+    
+    /**
+     * Sets sensor on specified node. Node with a sensor is polled.
+     * @param address address of the node
+     * @param sensor device object the node is read through, e.g. compound 
+     *        device of the sensor, {@code null} to stop polling of the node
+     */
+    void setSensor(int address, Object sensor) {
+        checkAddress(address);
+        sensors.set(address, sensor);
+    }
+    
+    /**
+     * @param address address of the node
+     * @return sensor on specified node, {@code null} if the node is not polled
+     */
+    Object getSensor(int address) {
+        checkAddress(address);
+        return sensors.get(address);
+    }
+    
+    /**
+     * Returns the lowest address of a node with sensor, which is not lower 
+     * than specified address.
+     * @param fromAddress address to start searching from
+     * @return address of the node, -1 if there is no such node
+     */
+    int nextSensorAddress(int fromAddress) {
+        for ( int address = Math.max(fromAddress, 0); address < MAX_NODES; address++ ) {
+            if ( sensors.get(address) != null ) {
+                return address;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Sets module ID of specified node.
+     * @param address address of the node
+     * @param moduleId pretty formated module ID, {@code null} if not known
+     */
+    void setModuleId(int address, String moduleId) {
+        checkAddress(address);
+        moduleIds.set(address, moduleId);
+    }
+    
+    /**
+     * @param address address of the node
+     * @return pretty formated module ID of specified node, {@code null} if not known
+     */
+    String getModuleId(int address) {
+        checkAddress(address);
+        return moduleIds.get(address);
+    }
+    
+    /**
+     * @return known module IDs indexed by node IDs
+     */
+    Map<String, String> getModuleIds() {
+        Map<String, String> moduleIdsMap = new HashMap<>();
+        for ( int address = 0; address < MAX_NODES; address++ ) {
+            String moduleId = moduleIds.get(address);
+            if ( moduleId != null ) {
+                moduleIdsMap.put(String.valueOf(address), moduleId);
+            }
+        }
+        return moduleIdsMap;
+    }
+    
+    /**
+     * Removes specified node - its sensor, module ID and state. Must be called 
+     * from the writing thread only.
+     * @param address address of the node
+     */
+    void removeNode(int address) {
+        checkAddress(address);
+        sensors.set(address, null);
+        moduleIds.set(address, null);
+        
+        int base = beginWrite(address);
+        rows.lazySet(base + LAST_SEEN, 0);
+        rows.lazySet(base + RSSI, RSSI_NOT_KNOWN);
+        rows.lazySet(base + CONSECUTIVE_FAILURES, 0);
+        rows.lazySet(base + TOTAL_FAILURES, 0);
+        rows.lazySet(base + LINK_SCORE, Double.doubleToRawLongBits(INITIAL_LINK_SCORE));
+        endWrite(base);
+    }
+}
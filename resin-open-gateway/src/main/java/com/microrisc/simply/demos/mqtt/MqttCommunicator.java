@@ -16,10 +16,17 @@
 
 package com.microrisc.simply.demos.mqtt;
 
+import com.microrisc.simply.demos.concurrent.Threads;
+import com.microrisc.simply.demos.metrics.Counter;
+import com.microrisc.simply.demos.metrics.Gauge;
+import com.microrisc.simply.demos.metrics.Histogram;
+import com.microrisc.simply.demos.metrics.MetricsRegistry;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.security.GeneralSecurityException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -28,8 +35,11 @@ import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
-import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManagerFactory;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
@@ -42,20 +52,56 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Communicator with MQTT broker over MQTT 3.1.1.
+ * <p>
+ * Communicators of other versions of the protocol extend this class and use
+ * the same bookkeeping of subscriptions and metrics. Use {@link #create} to 
+ * get communicator of the version specified by configuration.
  *
  * @author Rostislav Spinar
  * @author Michal Konopa
  */
 public class MqttCommunicator implements MqttCallback {
     
-    private MqttClient client;
-    private String brokerUrl;
-    private boolean quietMode;
-    private MqttConnectOptions conOpt;
-    private boolean clean;
-    private String password;
-    private String userName;
-    private String certFile;
+    // implementation of MQTT 5 - present only in builds with the mqtt5 profile
+    private static final String MQTT5_COMMUNICATOR_CLASS 
+            = "com.microrisc.simply.demos.mqtt.Mqtt5Communicator";
+    
+    private volatile MqttClient client;
+    private volatile String brokerUrl;
+    private volatile boolean quietMode;
+    private volatile MqttConnectOptions conOpt;
+    
+    // set by shutdown - no more reconnections
+    private volatile boolean shutDown = false;
+    
+    // handlers of subscribed topics
+    private final Map<String, MqttMessageHandler> messageHandlers = new ConcurrentHashMap<>();
+    
+    // QoS of subscribed topics - used for resubscription after reconnect
+    private final Map<String, Integer> subscriptions = new ConcurrentHashMap<>();
+    
+    // metrics
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final Histogram publishDuration = metrics.histogram(
+            "mqtt_publish_duration_seconds", "Duration of blocking MQTT publish.", 
+            Histogram.DEFAULT_LATENCY_BUCKETS
+    );
+    private final Counter publishedMessages = metrics.counter(
+            "mqtt_published_messages_total", "Number of published MQTT messages."
+    );
+    private final Counter publishedBytes = metrics.counter(
+            "mqtt_published_bytes_total", "Number of published MQTT payload bytes."
+    );
+    private final Counter publishFailures = metrics.counter(
+            "mqtt_publish_failures_total", "Number of failed MQTT publications."
+    );
+    private final Counter connectionsLost = metrics.counter(
+            "mqtt_connections_lost_total", "Number of losses of connection to MQTT broker."
+    );
+    private final Counter reconnects = metrics.counter(
+            "mqtt_reconnects_total", "Number of successful reconnections to MQTT broker."
+    );
     
     // time  between consecutive attempts to reconnection [in ms]
     private static final int DEFAULT_RECONNECTION_SLEEP_TIME = 3000;
@@ -64,16 +110,16 @@ public class MqttCommunicator implements MqttCallback {
         @Override
         public void run() {
             
-            while ( (client != null) && !(client.isConnected()) ) {
+            while ( (client != null) && !(client.isConnected()) && !shutDown ) {
                 // Connect to the MQTT server
-                log("Reconnecting to " + brokerUrl + " with client ID " + client.getClientId());
+                log.info("Reconnecting to {} with client ID {}", brokerUrl, client.getClientId());
                 
                 try {
                     client.connect(conOpt);
                 } catch ( MqttException ex ) {
-                    log(
-                        "Reconnecting to " + brokerUrl + " with client "
-                        + "ID " + client.getClientId() + " failed: " + ex.getMessage()
+                    log.warn(
+                        "Reconnecting to {} with client ID {} failed: {}", 
+                        brokerUrl, client.getClientId(), ex.getMessage()
                     );
                 }
                 
@@ -85,7 +131,12 @@ public class MqttCommunicator implements MqttCallback {
                     }
                 }
             }
-            log("Connected");
+            if ( shutDown ) {
+                return;
+            }
+            log.info("Connected");
+            recordReconnect();
+            resubscribe();
         }
     };
     
@@ -93,38 +144,79 @@ public class MqttCommunicator implements MqttCallback {
     
     private static final Logger log = LoggerFactory.getLogger(MqttCommunicator.class);
     
-    // sets connection options
-    private void setConnectionOptions(
-            boolean isCleanSession, String password, String userName, String certFile
-    ) throws CertificateException, IOException, KeyStoreException, 
+    // creates connection options according to specified configuration
+    private MqttConnectOptions createConnectionOptions(MqttConfiguration mqttConfig) 
+            throws CertificateException, IOException, KeyStoreException, 
             NoSuchAlgorithmException, KeyManagementException 
     {
-        conOpt.setCleanSession(isCleanSession);
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(mqttConfig.isCleanSession());
+        
+        String password = mqttConfig.getPassword();
+        String userName = mqttConfig.getUsername();
+        String certFile = mqttConfig.getCertFilePath();
             
         if ( !password.isEmpty() ) {
-            conOpt.setPassword(password.toCharArray());
+            options.setPassword(password.toCharArray());
         }
         if ( !userName.isEmpty() ) {
-            conOpt.setUserName(userName);
+            options.setUserName(userName);
         }
 
         if ( !certFile.isEmpty() ) {
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            options.setSocketFactory(createSocketFactory(certFile));
+        }
+        return options;
+    }
+    
+    /**
+     * Creates factory of SSL sockets trusting the CA certificate in specified file.
+     * @param certFile resource path of the CA certificate
+     * @return the socket factory
+     * @throws CertificateException if the certificate cannot be parsed
+     * @throws IOException if the certificate cannot be read
+     * @throws KeyStoreException if the key store cannot be created
+     * @throws NoSuchAlgorithmException if TLS is not available
+     * @throws KeyManagementException if the SSL context cannot be initialized
+     */
+    protected static SSLSocketFactory createSocketFactory(String certFile) 
+            throws CertificateException, IOException, KeyStoreException, 
+            NoSuchAlgorithmException, KeyManagementException 
+    {
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
 
-            InputStream certFileInputStream = fullStream(certFile);
-            Certificate ca = cf.generateCertificate(certFileInputStream);
+        InputStream certFileInputStream = fullStream(certFile);
+        Certificate ca = cf.generateCertificate(certFileInputStream);
 
-            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-            keyStore.load(null);
-            keyStore.setCertificateEntry("ca", ca);
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keyStore.load(null);
+        keyStore.setCertificateEntry("ca", ca);
 
-            TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-            trustManagerFactory.init(keyStore);
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
 
-            SSLContext sslContext = SSLContext.getInstance("TLSv1");
-            sslContext.init(null, trustManagerFactory.getTrustManagers(), new SecureRandom());
-            conOpt.setSocketFactory(sslContext.getSocketFactory());
-        }
+        SSLContext sslContext = SSLContext.getInstance("TLSv1");
+        sslContext.init(null, trustManagerFactory.getTrustManagers(), new SecureRandom());
+        return sslContext.getSocketFactory();
+    }
+    
+    /**
+     * Returns URL of the broker specified by configuration.
+     * @param mqttConfig the configuration
+     * @return URL of the broker
+     */
+    protected static String getBrokerUrl(MqttConfiguration mqttConfig) {
+        return mqttConfig.getProtocol() + mqttConfig.getBroker() + ":" + mqttConfig.getPort();
+    }
+    
+    // creates persistence of messages not yet delivered to the server
+    private static MqttDefaultFilePersistence createDataStore() {
+    	//This sample stores in a temporary directory... where messages temporarily
+        // stored until the message has been delivered to the server.
+        //..a real application ought to store them somewhere
+        // where they are not likely to get deleted or tampered with
+        String tmpDir = System.getProperty("java.io.tmpdir");
+        return new MqttDefaultFilePersistence(tmpDir);
     }
     
     /**
@@ -135,30 +227,16 @@ public class MqttCommunicator implements MqttCallback {
      */
     public MqttCommunicator(MqttConfiguration mqttConfig) throws MqttException {
         
-        String brokerUrl = mqttConfig.getProtocol() + mqttConfig.getBroker() + ":" + mqttConfig.getPort();
-        
-        this.brokerUrl = brokerUrl;
+        this.brokerUrl = getBrokerUrl(mqttConfig);
         this.quietMode = mqttConfig.isQuiteMode();
-        this.clean = mqttConfig.isCleanSession();
-        this.certFile = mqttConfig.getCertFilePath();
-        this.userName = mqttConfig.getUsername();
-        this.password = mqttConfig.getPassword();
         
-    	//This sample stores in a temporary directory... where messages temporarily
-        // stored until the message has been delivered to the server.
-        //..a real application ought to store them somewhere
-        // where they are not likely to get deleted or tampered with
-        String tmpDir = System.getProperty("java.io.tmpdir");
-        MqttDefaultFilePersistence dataStore = new MqttDefaultFilePersistence(tmpDir);
-
         try {
             // Construct the connection options object that contains connection parameters
             // such as cleanSession and LWT
-            conOpt = new MqttConnectOptions();
-            setConnectionOptions(clean, password, userName, certFile);
+            conOpt = createConnectionOptions(mqttConfig);
 
             // Construct an MQTT blocking mode client
-            client = new MqttClient(this.brokerUrl, mqttConfig.getClientId(), dataStore);
+            client = new MqttClient(this.brokerUrl, mqttConfig.getClientId(), createDataStore());
 
             // Set this wrapper as the callback handler
             client.setCallback(this);
@@ -168,33 +246,153 @@ public class MqttCommunicator implements MqttCallback {
             
             client.connect(conOpt);
             log("Connected");
+            
+            registerConnectedGauge();
         } catch (MqttException e) {
-            e.printStackTrace();
-            log("Unable to set up client: " + e.toString());
+            log.error("Unable to set up client", e);
             System.exit(1);
         } catch (CertificateException e) {
-            e.printStackTrace();
-            log("Unable to set up client - certificate exception: " + e.toString());
+            log.error("Unable to set up client - certificate exception", e);
             System.exit(1);
         } catch (IOException e) {
-            e.printStackTrace();
-            log("Unable to set up client - certificate exception in input stream: " + e.toString());
+            log.error("Unable to set up client - certificate exception in input stream", e);
             System.exit(1);
         } catch (KeyStoreException e) {
-            e.printStackTrace();
-            log("Unable to set up client - certificate exception in key store: " + e.toString());
+            log.error("Unable to set up client - certificate exception in key store", e);
             System.exit(1);
         } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            log("Unable to set up client - certificate exception in loading key store: " + e.toString());
+            log.error("Unable to set up client - certificate exception in loading key store", e);
             System.exit(1);
         } catch (KeyManagementException e) {
-            e.printStackTrace();
-            log("Unable to set up client - certificate exception in ssl context: " + e.toString());
+            log.error("Unable to set up client - certificate exception in ssl context", e);
             System.exit(1);
         }
     }
 
+    /**
+     * Constructs an instance without connection. Intended for subclasses 
+     * implementing other versions of the protocol, which must override all 
+     * methods communicating with the broker.
+     *
+     * @param quietMode if {@code true}, connection related events are not logged
+     */
+    protected MqttCommunicator(boolean quietMode) {
+        this.quietMode = quietMode;
+        registerConnectedGauge();
+    }
+    
+    /**
+     * Creates communicator of the version of MQTT specified by configuration 
+     * and connects it to the broker.
+     *
+     * @param mqttConfig the configuration
+     * @return connected communicator
+     * @throws MqttException if the communicator cannot be connected
+     * @throws IllegalStateException if the version is not supported by this build
+     */
+    public static MqttCommunicator create(MqttConfiguration mqttConfig) throws MqttException {
+        if ( mqttConfig.getMqttVersion() != MqttConfiguration.MQTT_VERSION_5 ) {
+            return new MqttCommunicator(mqttConfig);
+        }
+        
+        try {
+            return (MqttCommunicator) Class.forName(MQTT5_COMMUNICATOR_CLASS)
+                    .getConstructor(MqttConfiguration.class)
+                    .newInstance(mqttConfig);
+        } catch ( ClassNotFoundException ex ) {
+            throw new IllegalStateException(
+                    "MQTT 5 is not supported by this build, build with the mqtt5 profile", ex
+            );
+        } catch ( InvocationTargetException ex ) {
+            if ( ex.getCause() instanceof MqttException ) {
+                throw (MqttException) ex.getCause();
+            }
+            throw new MqttException(ex.getCause());
+        } catch ( ReflectiveOperationException ex ) {
+            throw new IllegalStateException("MQTT 5 communicator cannot be created", ex);
+        }
+    }
+
+    /**
+     * Constructs an instance wrapping specified client, which is already
+     * connected. Intended for benchmarks and tests supplying their own client.
+     *
+     * @param client connected MQTT client
+     * @param quietMode if {@code true}, connection related events are not logged
+     */
+    public MqttCommunicator(MqttClient client, boolean quietMode) {
+        this.client = client;
+        this.brokerUrl = client.getServerURI();
+        this.quietMode = quietMode;
+        this.conOpt = new MqttConnectOptions();
+        
+        client.setCallback(this);
+        registerConnectedGauge();
+    }
+    
+    // registers gauge of the connection state
+    private void registerConnectedGauge() {
+        metrics.gauge("mqtt_connected", "1 if connected to MQTT broker, 0 otherwise.", new Gauge() {
+            @Override
+            public double getValue() {
+                return isConnected()? 1 : 0;
+            }
+        });
+    }
+    
+    /**
+     * @return {@code true} if connected to the broker, {@code false} otherwise
+     */
+    protected boolean isConnected() {
+        MqttClient currentClient = client;
+        return ( currentClient != null && currentClient.isConnected() );
+    }
+    
+    /**
+     * @return {@code true} if connection related events are not logged
+     */
+    protected final boolean isQuietMode() {
+        return quietMode;
+    }
+    
+    /**
+     * Sets, whether connection related events are logged.
+     * @param quietMode if {@code true}, connection related events are not logged
+     */
+    protected final void setQuietMode(boolean quietMode) {
+        this.quietMode = quietMode;
+    }
+    
+    /**
+     * Records successful or failed publication into metrics.
+     * @param payloadLength length of the payload [in bytes]
+     * @param durationNanos duration of the publication [in ns]
+     * @param success {@code true} if the message has been published
+     */
+    protected final void recordPublication(int payloadLength, long durationNanos, boolean success) {
+        publishDuration.record(durationNanos);
+        if ( success ) {
+            publishedMessages.inc();
+            publishedBytes.add(payloadLength);
+        } else {
+            publishFailures.inc();
+        }
+    }
+    
+    /**
+     * Records loss of connection into metrics.
+     */
+    protected final void recordConnectionLost() {
+        connectionsLost.inc();
+    }
+    
+    /**
+     * Records successful reconnection into metrics.
+     */
+    protected final void recordReconnect() {
+        reconnects.inc();
+    }
+
     /**
      * Publish / send a message to an MQTT server
      *
@@ -210,8 +408,9 @@ public class MqttCommunicator implements MqttCallback {
         //client.connect(conOpt);
         //log("Connected");
 
-        String time = new Timestamp(System.currentTimeMillis()).toString();
-        log("Publishing at: " + time + " to topic \"" + topicName + "\" qos " + qos);
+        if ( !quietMode ) {
+            log.debug("Publishing to topic \"{}\" qos {}", topicName, qos);
+        }
 
         // Create and configure a message
         MqttMessage message = new MqttMessage(payload);
@@ -220,13 +419,132 @@ public class MqttCommunicator implements MqttCallback {
     	// Send the message to the server, control is not returned until
         // it has been delivered to the server meeting the specified
         // quality of service.
-        client.publish(topicName, message);
+        long start = System.nanoTime();
+        try {
+            client.publish(topicName, message);
+        } catch ( MqttException ex ) {
+            recordPublication(payload.length, System.nanoTime() - start, false);
+            throw ex;
+        }
+        recordPublication(payload.length, System.nanoTime() - start, true);
 
         // Disconnect the client
         //client.disconnect();
         //log("Disconnected");
     }
 
+    /**
+     * Connects to the MQTT server according to specified configuration and
+     * renews all subscriptions there. The current connection is closed first,
+     * publishing is blocked until the new connection is established. If the new
+     * connection cannot be established, the previous one is restored.
+     *
+     * @param mqttConfig new configuration of the connection
+     * @throws MqttException if connecting according to new configuration failed
+     */
+    public synchronized void reconfigure(MqttConfiguration mqttConfig) throws MqttException {
+        MqttConnectOptions newConOpt = null;
+        try {
+            newConOpt = createConnectionOptions(mqttConfig);
+        } catch ( GeneralSecurityException | IOException ex ) {
+            throw new MqttException(ex);
+        }
+        
+        String newBrokerUrl = getBrokerUrl(mqttConfig);
+        MqttClient newClient = new MqttClient(newBrokerUrl, mqttConfig.getClientId(), createDataStore());
+        newClient.setCallback(this);
+        
+        // the old connection is closed first in order not to be taken over by 
+        // the new one in the case of the same client ID
+        MqttClient oldClient = client;
+        if ( oldClient.isConnected() ) {
+            try {
+                oldClient.disconnect();
+            } catch ( MqttException ex ) {
+                log.warn("Disconnecting from {} failed: {}", brokerUrl, ex.toString());
+            }
+        }
+        
+        log("Connecting to " + newBrokerUrl + " with client ID " + newClient.getClientId());
+        try {
+            newClient.connect(newConOpt);
+        } catch ( MqttException ex ) {
+            log.warn("Connecting to {} failed, restoring connection to {}", newBrokerUrl, brokerUrl);
+            try {
+                oldClient.connect(conOpt);
+            } catch ( MqttException reconnectEx ) {
+                connectionLost(reconnectEx);
+            }
+            throw ex;
+        }
+        log("Connected");
+        
+        client = newClient;
+        brokerUrl = newBrokerUrl;
+        conOpt = newConOpt;
+        quietMode = mqttConfig.isQuiteMode();
+        resubscribe();
+        
+        try {
+            oldClient.close();
+        } catch ( MqttException ex ) {
+            log.warn("Closing of previous client failed: {}", ex.toString());
+        }
+    }
+
+    /**
+     * Disconnects from the MQTT server. Reconnection is not attempted.
+     *
+     * @throws MqttException
+     */
+    public void disconnect() throws MqttException {
+        client.disconnect();
+    }
+
+    /**
+     * Waits for delivery of messages being published at most for specified 
+     * time, then disconnects from the MQTT server and releases the client.
+     * Reconnection is not attempted any more.
+     * <p>
+     * Messages of QoS 1 and 2 not delivered in time stay in the persistence of
+     * the client and are delivered after the next connection with the same 
+     * client ID, if the session is not clean.
+     *
+     * @param timeout maximal time to wait [in ms]
+     */
+    public void shutdown(long timeout) {
+        shutDown = true;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        
+        int undelivered = 0;
+        for ( IMqttDeliveryToken token : client.getPendingDeliveryTokens() ) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                if ( remaining > 0 ) {
+                    token.waitForCompletion(remaining);
+                }
+            } catch ( MqttException ex ) {
+                log.debug("Waiting for delivery failed: {}", ex.toString());
+            }
+            if ( !token.isComplete() ) {
+                undelivered++;
+            }
+        }
+        if ( undelivered > 0 ) {
+            log.warn("{} messages not delivered before shutdown, kept in persistence", undelivered);
+        }
+        
+        try {
+            if ( client.isConnected() ) {
+                client.disconnect(Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            }
+            client.close();
+        } catch ( MqttException ex ) {
+            log.warn("Disconnecting from {} failed: {}", brokerUrl, ex.toString());
+        }
+        log("Disconnected");
+    }
+    
     /**
      * Subscribe to a topic on an MQTT server. Once subscribed this method waits
      * for the messages to arrive from the server that match the subscription.
@@ -249,22 +567,85 @@ public class MqttCommunicator implements MqttCallback {
         // be downgraded to 1 when delivering to the client but messages published at 1 and 0
         // will be received at the same level they were published at.
         log("Subscribing to topic \"" + topicName + "\" qos " + qos);
-        client.subscribe(topicName, qos);
+        subscribeOnBroker(topicName, qos);
+        subscriptions.put(topicName, qos);
 
         // Disconnect the client from the server
         //client.disconnect();
         //log("Disconnected");
     }
 
+    /**
+     * Subscribes to a topic on an MQTT server and registers specified handler
+     * for messages arriving on that topic. The subscription is renewed after
+     * each reconnection.
+     *
+     * @param topicName topic to subscribe to, wildcards are not supported
+     * @param qos the maximum quality of service to receive messages at
+     * @param handler handler of arrived messages
+     * @throws MqttException
+     */
+    public void subscribe(String topicName, int qos, MqttMessageHandler handler) 
+            throws MqttException 
+    {
+        messageHandlers.put(topicName, handler);
+        subscribe(topicName, qos);
+    }
+    
+    /**
+     * Unsubscribes from a topic and removes handler of messages arriving on it.
+     *
+     * @param topicName topic to unsubscribe from
+     * @throws MqttException
+     */
+    public void unsubscribe(String topicName) throws MqttException {
+        log("Unsubscribing from topic \"" + topicName + "\"");
+        subscriptions.remove(topicName);
+        messageHandlers.remove(topicName);
+        unsubscribeOnBroker(topicName);
+    }
+    
+    /**
+     * Subscribes to specified topic on the broker.
+     * @param topicName topic to subscribe to
+     * @param qos the maximum quality of service to receive messages at
+     * @throws MqttException if subscribing failed
+     */
+    protected void subscribeOnBroker(String topicName, int qos) throws MqttException {
+        client.subscribe(topicName, qos);
+    }
+    
+    /**
+     * Unsubscribes from specified topic on the broker.
+     * @param topicName topic to unsubscribe from
+     * @throws MqttException if unsubscribing failed
+     */
+    protected void unsubscribeOnBroker(String topicName) throws MqttException {
+        client.unsubscribe(topicName);
+    }
+    
+    /**
+     * Renews all subscriptions, e.g. after reconnection.
+     */
+    protected final void resubscribe() {
+        for ( Map.Entry<String, Integer> subscription : subscriptions.entrySet() ) {
+            try {
+                subscribeOnBroker(subscription.getKey(), subscription.getValue());
+            } catch ( MqttException ex ) {
+                log.warn("Resubscribing to topic {} failed: {}", subscription.getKey(), ex.toString());
+            }
+        }
+    }
+
     /**
      * Utility method to handle logging. If 'quietMode' is set, this method does
      * nothing
      *
      * @param message the message to log
      */
-    private void log(String message) {
+    protected final void log(String message) {
         if (!quietMode) {
-            System.out.println(message);
+            log.info(message);
         }
     }
 
@@ -272,14 +653,15 @@ public class MqttCommunicator implements MqttCallback {
      * @see MqttCallback#connectionLost(Throwable)
      */
     public void connectionLost(Throwable cause) {
-        log.debug("connectionLost - start: cause=" + cause.getMessage());
+        log.debug("connectionLost - start: cause={}", cause.getMessage());
         
         // Called when the connection to the server has been lost.
         // An application may choose to implement reconnection
         // logic at this point. This sample simply exits.
-        log("Connection to " + brokerUrl + " lost! " + cause);
+        log.warn("Connection to {} lost! {}", brokerUrl, cause.toString());
+        recordConnectionLost();
         
-        reconnectionThread = new Thread(reconnectionRunnable);
+        reconnectionThread = Threads.newThread("mqtt-reconnection", reconnectionRunnable);
         reconnectionThread.start();
         
         log.debug("connectionLost - end");
@@ -316,11 +698,18 @@ public class MqttCommunicator implements MqttCallback {
         // Called when a message arrives from the server that matches any
         // subscription made by the client
         
-        String time = new Timestamp(System.currentTimeMillis()).toString();
-        System.out.println("Time:\t" + time
-                           + "  Topic:\t" + topic
-                           + "  Message:\t" + new String(message.getPayload())
-                           + "  QoS:\t" + message.getQos());
+        MqttMessageHandler handler = messageHandlers.get(topic);
+        if ( handler != null ) {
+            handler.handleMessage(topic, message);
+            return;
+        }
+        
+        if ( log.isInfoEnabled() ) {
+            log.info(
+                    "Topic: {}  Message: {}  QoS: {}", 
+                    topic, new String(message.getPayload()), message.getQos()
+            );
+        }
         
     }
     
@@ -332,8 +721,8 @@ public class MqttCommunicator implements MqttCallback {
      * @return The filled InputStream
      * @exception IOException, if the Streams couldn't be created.
      **/
-    private InputStream fullStream ( String fname ) throws IOException {
-        InputStream is = this.getClass().getResourceAsStream(fname);
+    private static InputStream fullStream ( String fname ) throws IOException {
+        InputStream is = MqttCommunicator.class.getResourceAsStream(fname);
         //FileInputStream fis = new FileInputStream(fname);
         
         DataInputStream dis = new DataInputStream(is);
@@ -22,6 +22,12 @@ package com.microrisc.simply.demos.mqtt;
  * @author Rostislav Spinar
  */
 public final class MqttConfiguration {
+    
+    /** Version 3.1.1 of MQTT protocol. */
+    public static final int MQTT_VERSION_3 = 3;
+    
+    /** Version 5 of MQTT protocol. */
+    public static final int MQTT_VERSION_5 = 5;
 
     private final String protocol;
     private final String broker;
@@ -35,16 +41,44 @@ public final class MqttConfiguration {
     private final String username;
     private final String password;
     private final String rootTopic;    
+    private final int mqttVersion;
+    private final long messageExpiry;
     
     /**
      * Creates new object holding information about MQTT configuration
-     * parameters.
+     * parameters of MQTT 3.1.1 connection.
      */
     public MqttConfiguration(
             String protocol, String broker, long port, String clientId,
             String gwId, boolean cleanSession, boolean quiteMode, boolean ssl,
             String certFilePath, String username, String password, String rootTopic
     ) {
+        this(
+                protocol, broker, port, clientId, gwId, cleanSession, quiteMode, ssl, 
+                certFilePath, username, password, rootTopic, MQTT_VERSION_3, 0
+        );
+    }
+    
+    /**
+     * Creates new object holding information about MQTT configuration
+     * parameters.
+     * @param mqttVersion version of MQTT protocol, {@link #MQTT_VERSION_3} 
+     *        or {@link #MQTT_VERSION_5}
+     * @param messageExpiry expiry interval of published messages [in s], 
+     *        0 for no expiry; used by MQTT 5 only
+     */
+    public MqttConfiguration(
+            String protocol, String broker, long port, String clientId,
+            String gwId, boolean cleanSession, boolean quiteMode, boolean ssl,
+            String certFilePath, String username, String password, String rootTopic,
+            int mqttVersion, long messageExpiry
+    ) {
+        if ( mqttVersion != MQTT_VERSION_3 && mqttVersion != MQTT_VERSION_5 ) {
+            throw new IllegalArgumentException("Unsupported MQTT version: " + mqttVersion);
+        }
+        if ( messageExpiry < 0 ) {
+            throw new IllegalArgumentException("Message expiry must be nonnegative: " + messageExpiry);
+        }
         this.protocol = protocol;
         this.broker = broker;
         this.port = port;
@@ -57,6 +91,8 @@ public final class MqttConfiguration {
         this.username = username;
         this.password = password;
         this.rootTopic = rootTopic;
+        this.mqttVersion = mqttVersion;
+        this.messageExpiry = messageExpiry;
     }
     
     /**
@@ -142,4 +178,39 @@ public final class MqttConfiguration {
     public String getRootTopic() {
         return rootTopic;
     }
+    
+    /**
+     * @return the version of MQTT protocol
+     */
+    public int getMqttVersion() {
+        return mqttVersion;
+    }
+    
+    /**
+     * @return the expiry interval of published messages [in s], 0 for no expiry
+     */
+    public long getMessageExpiry() {
+        return messageExpiry;
+    }
+    
+    /**
+     * Indicates, whether connection to the broker described by specified 
+     * configuration is the same as the one described by this configuration.
+     * @param other other configuration
+     * @return {@code true} if both configurations lead to the same connection,
+     *         {@code false} otherwise
+     */
+    public boolean isSameConnection(MqttConfiguration other) {
+        return protocol.equals(other.protocol)
+                && broker.equals(other.broker)
+                && port == other.port
+                && clientId.equals(other.clientId)
+                && cleanSession == other.cleanSession
+                && ssl == other.ssl
+                && certFilePath.equals(other.certFilePath)
+                && username.equals(other.username)
+                && password.equals(other.password)
+                && mqttVersion == other.mqttVersion
+                && messageExpiry == other.messageExpiry;
+    }
 }
@@ -16,6 +16,9 @@
 
 package com.microrisc.simply.demos.mqtt;
 
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
 /**
  * Formats various types od sensor data to MQTT form.
  *
@@ -24,18 +27,26 @@ package com.microrisc.simply.demos.mqtt;
  */
 public final class MqttFormatter {
     
+    // returns specified time as SenML time, i.e. in seconds since the epoch
+    private static String formatTime(long timestamp) {
+        long millis = timestamp % 1000;
+        return (timestamp / 1000) + "." + (millis < 100? (millis < 10? "00" : "0") : "") + millis;
+    }
+    
     /**
      * Returns formated value of CO2.
      *
      * @param co2 CO2 value
      * @param moduleId ID of source module
+     * @param timestamp time of measurement [in ms since the epoch]
      * @return formated value of CO2
      */
-    public static String formatCO2(String co2, String moduleId) {
+    public static String formatCO2(String co2, String moduleId, long timestamp) {
         return "{\"e\":["
                 + "{\"n\":\"co2\"," + "\"u\":\"PPM\"," + "\"v\":" + co2 + "}"
                 + "],"
-                + "\"bn\":" + "\"urn:dev:mid:" + moduleId + "\""
+                + "\"bn\":" + "\"urn:dev:mid:" + moduleId + "\","
+                + "\"bt\":" + formatTime(timestamp)
                 + "}";
     }
 
@@ -44,13 +55,15 @@ public final class MqttFormatter {
      *
      * @param voc VOC value
      * @param moduleId ID of source module
+     * @param timestamp time of measurement [in ms since the epoch]
      * @return formated value of VOC
      */
-    public static String formatVOC(String voc, String moduleId) {
+    public static String formatVOC(String voc, String moduleId, long timestamp) {
         return "{\"e\":["
                 + "{\"n\":\"voc\"," + "\"u\":\"PPM\"," + "\"v\":" + voc + "}"
                 + "],"
-                + "\"bn\":" + "\"urn:dev:mid:" + moduleId + "\""
+                + "\"bn\":" + "\"urn:dev:mid:" + moduleId + "\","
+                + "\"bt\":" + formatTime(timestamp)
                 + "}";
     }
 
@@ -59,13 +72,15 @@ public final class MqttFormatter {
      *
      * @param temperature temperature
      * @param moduleId ID of source module
+     * @param timestamp time of measurement [in ms since the epoch]
      * @return formated value of temperature
      */
-    public static String formatTemperature(String temperature, String moduleId) {
+    public static String formatTemperature(String temperature, String moduleId, long timestamp) {
         return "{\"e\":["
                 + "{\"n\":\"temperature\"," + "\"u\":\"Cel\"," + "\"v\":" + temperature + "}"
                 + "],"
-                + "\"bn\":" + "\"urn:dev:mid:" + moduleId + "\""
+                + "\"bn\":" + "\"urn:dev:mid:" + moduleId + "\","
+                + "\"bt\":" + formatTime(timestamp)
                 + "}";
     }
 
@@ -74,13 +89,15 @@ public final class MqttFormatter {
      *
      * @param humidity humidity
      * @param moduleId ID of source module
+     * @param timestamp time of measurement [in ms since the epoch]
      * @return formated value of humidity
      */
-    public static String formatHumidity(String humidity, String moduleId) {
+    public static String formatHumidity(String humidity, String moduleId, long timestamp) {
         return "{\"e\":["
                 + "{\"n\":\"humidity\"," + "\"u\":\"%RH\"," + "\"v\":" + humidity + "}"
                 + "],"
-                + "\"bn\":" + "\"urn:dev:mid:" + moduleId + "\""
+                + "\"bn\":" + "\"urn:dev:mid:" + moduleId + "\","
+                + "\"bt\":" + formatTime(timestamp)
                 + "}";
     }
     
@@ -89,13 +106,15 @@ public final class MqttFormatter {
      *
      * @param rssi RSSI
      * @param moduleId ID of source module
+     * @param timestamp time of measurement [in ms since the epoch]
      * @return formated value of RSSI
      */
-    public static String formatRssi(String rssi, String moduleId) {
+    public static String formatRssi(String rssi, String moduleId, long timestamp) {
         return "{\"e\":["
                 + "{\"n\":\"rssi\"," + "\"u\":\"dBm\"," + "\"v\":" + rssi + "}"
                 + "],"
-                + "\"bn\":" + "\"urn:dev:mid:" + moduleId + "\""
+                + "\"bn\":" + "\"urn:dev:mid:" + moduleId + "\","
+                + "\"bt\":" + formatTime(timestamp)
                 + "}";
     }
     
@@ -108,7 +127,70 @@ public final class MqttFormatter {
      */
     public static String formatError(String error) {
         return "{\"e\":["
-                + "{\"n\":\"error\"," + "\"u\":\"description\"," + "\"v\":" + "\"" + error + "\"}"
+                + "{\"n\":\"error\"," + "\"u\":\"description\"," + "\"v\":" + "\"" + JSONObject.escape(error) + "\"}"
                 + "]}";
     }
+    
+    /**
+     * Returns formated confirmation of DPA request received over MQTT.
+     *
+     * @param msgId ID of the request message
+     * @param status status of the request: queued, coalesced or rejected
+     * @param queueSize number of requests waiting for the radio
+     * @param error error description, or {@code null}
+     * @return formated confirmation
+     */
+    public static String formatDpaConfirmation(String msgId, String status, int queueSize, String error) {
+        JSONObject confirmation = new JSONObject();
+        confirmation.put("msgid", msgId);
+        confirmation.put("status", status);
+        confirmation.put("queue", queueSize);
+        if ( error != null ) {
+            confirmation.put("error", error);
+        }
+        return confirmation.toJSONString();
+    }
+    
+    /**
+     * Returns formated response to DPA request received over MQTT.
+     *
+     * @param msgId ID of the request message
+     * @param nadr node address
+     * @param pnum peripheral number
+     * @param pcmd peripheral command
+     * @param status status of the request: ok, error or cancelled
+     * @param responseCode DPA response code, or {@code null} if not known
+     * @param dpaValue DPA value, or {@code null} if not known
+     * @param data response data, or {@code null} if there are no data
+     * @param error error description, or {@code null}
+     * @return formated response
+     */
+    public static String formatDpaResponse(
+            String msgId, int nadr, int pnum, int pcmd, String status, 
+            String responseCode, Integer dpaValue, short[] data, String error
+    ) {
+        JSONObject response = new JSONObject();
+        response.put("msgid", msgId);
+        response.put("nadr", nadr);
+        response.put("pnum", pnum);
+        response.put("pcmd", pcmd);
+        response.put("status", status);
+        if ( responseCode != null ) {
+            response.put("rcode", responseCode);
+        }
+        if ( dpaValue != null ) {
+            response.put("dpaval", dpaValue);
+        }
+        if ( data != null ) {
+            JSONArray dataArray = new JSONArray();
+            for ( short dataItem : data ) {
+                dataArray.add(dataItem);
+            }
+            response.put("data", dataArray);
+        }
+        if ( error != null ) {
+            response.put("error", error);
+        }
+        return response.toJSONString();
+    }
 }
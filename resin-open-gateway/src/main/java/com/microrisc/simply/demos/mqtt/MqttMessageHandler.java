@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.mqtt;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+/**
+ * Handler of messages arrived on subscribed MQTT topic.
+ * <p>
+ * Handlers are called from within the MQTT client's callback thread. They must
+ * return quickly and must not publish synchronously, otherwise the MQTT client
+ * cannot process acknowledgements of its own publications.
+ */
+public interface MqttMessageHandler {
+
+    /**
+     * Handles message arrived on specified topic.
+     *
+     * @param topic topic, the message has arrived on
+     * @param message arrived message
+     */
+    void handleMessage(String topic, MqttMessage message);
+}
@@ -50,11 +50,18 @@ public final class MqttTopics {
     
     public static final String DEFAULT_ERRORS = "/errors/";
     
+    public static final String DEFAULT_GATEWAY_STATUS = "/gateway/status";
+    
+    public static final String DEFAULT_GATEWAY_LINKS = "/gateway/links";
+    
     
     private final String gwId;
     
     private final String stdSensorsProtronix;
     private final String stdSensorsProtronixErrors;
+    private final String stdSensorsProtronixDpaRequests;
+    private final String stdSensorsProtronixDpaConfirmations;
+    private final String stdSensorsProtronixDpaResponses;
 
     private final String stdSensorsAustyn;
     private final String stdSensorsAustynErrors;
@@ -83,6 +90,10 @@ public final class MqttTopics {
     private final String stdStatusDevtech;
     private final String stdStatusDatmolux;
     
+    private final String gatewayStatus;
+    
+    private final String gatewayLinks;
+    
     
     /**
      * Builder class.
@@ -92,6 +103,9 @@ public final class MqttTopics {
         
         private String stdSensorsProtronix;
         private String stdSensorsProtronixErrors;
+        private String stdSensorsProtronixDpaRequests;
+        private String stdSensorsProtronixDpaConfirmations;
+        private String stdSensorsProtronixDpaResponses;
 
         private String stdSensorsAustyn;
         private String stdSensorsAustynErrors;
@@ -120,6 +134,10 @@ public final class MqttTopics {
         private String stdStatusDevtech;
         private String stdStatusDatmolux;
         
+        private String gatewayStatus;
+        
+        private String gatewayLinks;
+        
         
         public Builder gwId(String gwId) { 
             this.gwId = gwId;
@@ -135,6 +153,21 @@ public final class MqttTopics {
             this.stdSensorsProtronixErrors = stdSensorsProtronixErrors;
             return this;
         }
+        
+        public Builder stdSensorsProtronixDpaRequests(String stdSensorsProtronixDpaRequests) { 
+            this.stdSensorsProtronixDpaRequests = stdSensorsProtronixDpaRequests;
+            return this;
+        }
+        
+        public Builder stdSensorsProtronixDpaConfirmations(String stdSensorsProtronixDpaConfirmations) { 
+            this.stdSensorsProtronixDpaConfirmations = stdSensorsProtronixDpaConfirmations;
+            return this;
+        }
+        
+        public Builder stdSensorsProtronixDpaResponses(String stdSensorsProtronixDpaResponses) { 
+            this.stdSensorsProtronixDpaResponses = stdSensorsProtronixDpaResponses;
+            return this;
+        }
 
         public Builder stdSensorsAustyn(String stdSensorsAustyn) {
             this.stdSensorsAustyn = stdSensorsAustyn;
@@ -226,6 +259,16 @@ public final class MqttTopics {
             return this;
         }
         
+        public Builder gatewayStatus(String gatewayStatus) { 
+            this.gatewayStatus = gatewayStatus;
+            return this;
+        }
+        
+        public Builder gatewayLinks(String gatewayLinks) { 
+            this.gatewayLinks = gatewayLinks;
+            return this;
+        }
+        
         public MqttTopics build() {
             return new MqttTopics(this);
         }
@@ -242,6 +285,15 @@ public final class MqttTopics {
                 this.gwId + builder.stdSensorsProtronix : this.gwId + DEFAULT_STD_SENSORS_PROTRONIX; 
         this.stdSensorsProtronixErrors = (builder.stdSensorsProtronixErrors != null)
                 ? this.gwId + builder.stdSensorsProtronixErrors : this.stdSensorsProtronix + DEFAULT_ERRORS;
+        this.stdSensorsProtronixDpaRequests = (builder.stdSensorsProtronixDpaRequests != null)
+                ? this.gwId + builder.stdSensorsProtronixDpaRequests 
+                : this.gwId + DEFAULT_STD_SENSORS_PROTRONIX_DPA_REQUESTS;
+        this.stdSensorsProtronixDpaConfirmations = (builder.stdSensorsProtronixDpaConfirmations != null)
+                ? this.gwId + builder.stdSensorsProtronixDpaConfirmations 
+                : this.gwId + DEFAULT_STD_SENSORS_PROTRONIX_DPA_CONFIRMATIONS;
+        this.stdSensorsProtronixDpaResponses = (builder.stdSensorsProtronixDpaResponses != null)
+                ? this.gwId + builder.stdSensorsProtronixDpaResponses 
+                : this.gwId + DEFAULT_STD_SENSORS_PROTRONIX_DPA_RESPONSES;
 
         this.stdSensorsAustyn = (builder.stdSensorsAustyn != null)
                 ? this.gwId + builder.stdSensorsAustyn : this.gwId + DEFAULT_STD_SENSORS_AUSTYN;
@@ -288,6 +340,12 @@ public final class MqttTopics {
         
         this.stdStatusDatmolux = (builder.stdStatusDatmolux != null)? 
                 this.gwId + builder.stdStatusDatmolux : this.gwId + DEFAULT_STD_STATUS_DATMOLUX;
+        
+        this.gatewayStatus = (builder.gatewayStatus != null)? 
+                this.gwId + builder.gatewayStatus : this.gwId + DEFAULT_GATEWAY_STATUS;
+        
+        this.gatewayLinks = (builder.gatewayLinks != null)? 
+                this.gwId + builder.gatewayLinks : this.gwId + DEFAULT_GATEWAY_LINKS;
     }
     
     /**
@@ -311,6 +369,27 @@ public final class MqttTopics {
         return stdSensorsProtronixErrors;
     }
     
+    /**
+     * @return the full std sensors Protronix DPA requests path
+     */
+    public String getStdSensorsProtronixDpaRequests() {
+        return stdSensorsProtronixDpaRequests;
+    }
+    
+    /**
+     * @return the full std sensors Protronix DPA confirmations path
+     */
+    public String getStdSensorsProtronixDpaConfirmations() {
+        return stdSensorsProtronixDpaConfirmations;
+    }
+    
+    /**
+     * @return the full std sensors Protronix DPA responses path
+     */
+    public String getStdSensorsProtronixDpaResponses() {
+        return stdSensorsProtronixDpaResponses;
+    }
+    
     /**
      * @return the full std sensors Austyn path
      */
@@ -436,4 +515,18 @@ public final class MqttTopics {
     public String getStdStatusDatmolux() {
         return stdStatusDatmolux;
     }
+    
+    /**
+     * @return the full gateway status path
+     */
+    public String getGatewayStatus() {
+        return gatewayStatus;
+    }
+    
+    /**
+     * @return the full path of link quality maps of networks
+     */
+    public String getGatewayLinks() {
+        return gatewayLinks;
+    }
 }
@@ -0,0 +1,471 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.radio;
+
+import com.microrisc.simply.demos.config.RadioConfiguration;
+import com.microrisc.simply.demos.metrics.Counter;
+import com.microrisc.simply.demos.metrics.Gauge;
+import com.microrisc.simply.demos.metrics.Histogram;
+import com.microrisc.simply.demos.metrics.MetricsRegistry;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single owner of access to the radio of one DPA network.
+ * <p>
+ * All DPA calls into the network are submitted to the arbiter as tasks of some
+ * {@link RadioPriority priority class} and are run one by one in the arbiter's
+ * thread. The next task to run is the oldest task of the highest priority
+ * class, which is within the rate limit of its class. Maintenance tasks run
+ * only if no other task is waiting and the radio has been idle for configured
+ * idle gap. Each class has bounded queue - task submitted into full queue is
+ * rejected.
+ * <p>
+ * The arbiter measures time, the radio has been busy, so the radio
+ * utilization can be watched. Utilization, queue depths, waiting and running
+ * times of tasks are exposed as metrics.
+ */
+public final class RadioArbiter {
+
+    private static final Logger log = LoggerFactory.getLogger(RadioArbiter.class);
+
+    // length of the utilization window [in s]
+    private static final int UTILIZATION_WINDOW = 60;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // priority classes from the highest
+    private static final RadioPriority[] PRIORITIES = RadioPriority.values();
+
+    // task together with time of its submission
+    private static final class RadioTask<T> extends FutureTask<T> {
+        final long submitTime = System.nanoTime();
+
+        RadioTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        RadioTask(Runnable runnable, T result) {
+            super(runnable, result);
+        }
+    }
+
+    // state of one priority class
+    private static final class PriorityClass {
+        final Queue<RadioTask<?>> tasks = new ArrayDeque<>();
+        final int capacity;
+        final RateLimiter rateLimiter;
+        final Histogram waitDuration;
+        final Histogram runDuration;
+        final Counter rejected;
+        long busyNanos = 0;
+
+        PriorityClass(
+                RadioPriority priority, RadioConfiguration.ClassSettings settings, 
+                MetricsRegistry metrics, String networkId, long now
+        ) {
+            this.capacity = settings.getQueueCapacity();
+            this.rateLimiter = new RateLimiter(settings.getRate(), settings.getBurst(), now);
+
+            String className = priority.name().toLowerCase();
+            this.waitDuration = metrics.histogram(
+                    "radio_task_wait_seconds", "Time radio tasks waited for the radio.",
+                    Histogram.DEFAULT_LATENCY_BUCKETS, "network", networkId, "class", className
+            );
+            this.runDuration = metrics.histogram(
+                    "radio_task_duration_seconds", "Time radio tasks occupied the radio.",
+                    Histogram.DEFAULT_LATENCY_BUCKETS, "network", networkId, "class", className
+            );
+            this.rejected = metrics.counter(
+                    "radio_tasks_rejected_total", "Number of radio tasks rejected due to full queue.",
+                    "network", networkId, "class", className
+            );
+        }
+    }
+
+    private final Map<RadioPriority, PriorityClass> classes = new EnumMap<>(RadioPriority.class);
+    private final long idleGapNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition taskAvailable = lock.newCondition();
+
+    // time of the end of the last non maintenance task
+    private long lastForegroundEnd;
+
+    // busy time of the radio in each second of the utilization window
+    private final long[] busyNanosPerSecond = new long[UTILIZATION_WINDOW];
+
+    // second since creation, the busyNanosPerSecond were updated in last time
+    private long lastBusySecond;
+
+    // time of creation
+    private final long startTime;
+
+    private volatile boolean stopped = false;
+
+    private final Thread worker;
+
+
+    /**
+     * Creates new arbiter. The arbiter must be started in order to run tasks.
+     * @param configuration configuration of access to the radio
+     * @param metrics registry to register metrics of the arbiter into
+     * @param networkId ID of the network, whose radio the arbiter controls
+     */
+    public RadioArbiter(RadioConfiguration configuration, MetricsRegistry metrics, String networkId) {
+        long now = System.nanoTime();
+        for ( final RadioPriority priority : PRIORITIES ) {
+            classes.put(priority, new PriorityClass(
+                    priority, configuration.getClassSettings(priority), metrics, networkId, now
+            ));
+            metrics.gauge("radio_queue_depth", "Number of radio tasks waiting for the radio.", 
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return getQueueSize(priority);
+                    }
+                }, "network", networkId, "class", priority.name().toLowerCase()
+            );
+        }
+        metrics.gauge("radio_utilization", "Fraction of time the radio was busy during last minute.", 
+            new Gauge() {
+                @Override
+                public double getValue() {
+                    return getUtilization();
+                }
+            }, "network", networkId
+        );
+        this.idleGapNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getIdleGap());
+        this.lastForegroundEnd = now - idleGapNanos;
+        this.startTime = now;
+        this.lastBusySecond = 0;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runTasks();
+            }
+        }, "radio-arbiter-" + networkId);
+        worker.setDaemon(true);
+    }
+
+    /**
+     * Starts running of submitted tasks.
+     */
+    public void start() {
+        worker.start();
+    }
+
+    /**
+     * Stops running of tasks. Waiting tasks are cancelled.
+     */
+    public void destroy() {
+        stopped = true;
+        lock.lock();
+        try {
+            for ( PriorityClass priorityClass : classes.values() ) {
+                for ( RadioTask<?> task : priorityClass.tasks ) {
+                    task.cancel(false);
+                }
+                priorityClass.tasks.clear();
+            }
+            taskAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        worker.interrupt();
+    }
+
+    /**
+     * Submits specified task.
+     * @param priority priority class of the task
+     * @param task task to run
+     * @return future result of the task
+     * @throws RejectedExecutionException if the queue of the class is full or
+     *         the arbiter has been destroyed
+     */
+    public <T> Future<T> submit(RadioPriority priority, Callable<T> task) {
+        RadioTask<T> futureTask = new RadioTask<>(task);
+        enqueue(priority, futureTask);
+        return futureTask;
+    }
+
+    /**
+     * Submits specified task.
+     * @param priority priority class of the task
+     * @param task task to run
+     * @return future, which returns {@code null} on completion
+     * @throws RejectedExecutionException if the queue of the class is full or
+     *         the arbiter has been destroyed
+     */
+    public Future<?> submit(RadioPriority priority, Runnable task) {
+        RadioTask<Object> futureTask = new RadioTask<>(task, null);
+        enqueue(priority, futureTask);
+        return futureTask;
+    }
+
+    /**
+     * Submits specified task and waits for its result.
+     * @param priority priority class of the task
+     * @param task task to run
+     * @return result of the task
+     * @throws InterruptedException if interrupted while waiting
+     * @throws RejectedExecutionException if the queue of the class is full or
+     *         the arbiter has been destroyed
+     */
+    public <T> T call(RadioPriority priority, Callable<T> task) throws InterruptedException {
+        Future<T> future = submit(priority, task);
+        try {
+            return future.get();
+        } catch ( ExecutionException ex ) {
+            Throwable cause = ex.getCause();
+            if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Radio task failed", cause);
+        } catch ( InterruptedException ex ) {
+            future.cancel(false);
+            throw ex;
+        }
+    }
+
+    // puts specified task into the queue of specified class
+    private void enqueue(RadioPriority priority, RadioTask<?> task) {
+        lock.lock();
+        try {
+            PriorityClass priorityClass = classes.get(priority);
+            if ( stopped ) {
+                throw new RejectedExecutionException("Radio arbiter destroyed");
+            }
+            if ( priorityClass.tasks.size() >= priorityClass.capacity ) {
+                priorityClass.rejected.inc();
+                throw new RejectedExecutionException("Queue of " + priority + " tasks full");
+            }
+            priorityClass.tasks.add(task);
+            taskAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // returns class of the next task to run, or null if no task can run now
+    private RadioPriority nextRunnableClass(long now) {
+        boolean foregroundWaiting = false;
+        for ( RadioPriority priority : PRIORITIES ) {
+            PriorityClass priorityClass = classes.get(priority);
+            if ( priorityClass.tasks.isEmpty() ) {
+                continue;
+            }
+            if ( priority == RadioPriority.MAINTENANCE ) {
+                if ( foregroundWaiting || now - lastForegroundEnd < idleGapNanos ) {
+                    return null;
+                }
+            }
+            if ( priorityClass.rateLimiter.tryAcquire(now) ) {
+                return priority;
+            }
+            foregroundWaiting = true;
+        }
+        return null;
+    }
+
+    // returns time [in ns] to wait for some task to become runnable, or
+    // negative value, if it is necessary to wait for a new task
+    private long nanosToWait(long now) {
+        long toWait = -1;
+        boolean foregroundWaiting = false;
+        for ( RadioPriority priority : PRIORITIES ) {
+            PriorityClass priorityClass = classes.get(priority);
+            if ( priorityClass.tasks.isEmpty() ) {
+                continue;
+            }
+            long classWait = priorityClass.rateLimiter.nanosUntilAvailable(now);
+            if ( priority == RadioPriority.MAINTENANCE ) {
+                if ( foregroundWaiting ) {
+                    continue;
+                }
+                classWait = Math.max(classWait, lastForegroundEnd + idleGapNanos - now);
+            } else {
+                foregroundWaiting = true;
+            }
+            if ( toWait < 0 || classWait < toWait ) {
+                toWait = classWait;
+            }
+        }
+        return toWait;
+    }
+
+    // main loop of the worker thread
+    private void runTasks() {
+        while ( !stopped ) {
+            RadioPriority priority;
+            RadioTask<?> task;
+
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                while ( (priority = nextRunnableClass(now)) == null ) {
+                    long toWait = nanosToWait(now);
+                    if ( toWait < 0 ) {
+                        taskAvailable.await();
+                    } else {
+                        taskAvailable.awaitNanos(Math.max(toWait, 1));
+                    }
+                    if ( stopped ) {
+                        return;
+                    }
+                    now = System.nanoTime();
+                }
+                task = classes.get(priority).tasks.poll();
+            } catch ( InterruptedException ex ) {
+                if ( !stopped ) {
+                    log.warn("Radio arbiter interrupted");
+                }
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            PriorityClass priorityClass = classes.get(priority);
+            long start = System.nanoTime();
+            priorityClass.waitDuration.record(start - task.submitTime);
+            task.run();
+            long end = System.nanoTime();
+            priorityClass.runDuration.record(end - start);
+
+            lock.lock();
+            try {
+                priorityClass.busyNanos += end - start;
+                if ( priority != RadioPriority.MAINTENANCE ) {
+                    lastForegroundEnd = end;
+                }
+                addBusyTime(start, end);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // moves the utilization window to specified second since creation
+    private void advanceWindow(long second) {
+        if ( second - lastBusySecond >= UTILIZATION_WINDOW ) {
+            Arrays.fill(busyNanosPerSecond, 0);
+        } else {
+            for ( long s = lastBusySecond + 1; s <= second; s++ ) {
+                busyNanosPerSecond[(int)(s % UTILIZATION_WINDOW)] = 0;
+            }
+        }
+        lastBusySecond = Math.max(lastBusySecond, second);
+    }
+
+    // adds busy interval into the utilization window
+    // times are converted relative to creation, System.nanoTime() may be negative
+    // and seconds derived from it would give negative indexes into the window
+    private void addBusyTime(long startNanos, long endNanos) {
+        long start = Math.max(0, startNanos - startTime);
+        long end = Math.max(0, endNanos - startTime);
+        advanceWindow(end / NANOS_PER_SECOND);
+        long windowStart = (lastBusySecond - UTILIZATION_WINDOW + 1) * NANOS_PER_SECOND;
+        long from = Math.max(start, windowStart);
+        while ( from < end ) {
+            long second = from / NANOS_PER_SECOND;
+            long to = Math.min(end, (second + 1) * NANOS_PER_SECOND);
+            busyNanosPerSecond[(int)(second % UTILIZATION_WINDOW)] += to - from;
+            from = to;
+        }
+    }
+
+    /**
+     * Returns utilization of the radio during last minute, i.e. the fraction of
+     * time, when some task was running.
+     * @return utilization in the interval [0, 1]
+     */
+    public double getUtilization() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            advanceWindow((now - startTime) / NANOS_PER_SECOND);
+            long busy = 0;
+            for ( long busyInSecond : busyNanosPerSecond ) {
+                busy += busyInSecond;
+            }
+            long window = Math.min(
+                    now - startTime, UTILIZATION_WINDOW * NANOS_PER_SECOND
+            );
+            return (window <= 0)? 0 : Math.min(1.0, (double) busy / window);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param priority priority class
+     * @return number of waiting tasks of specified class
+     */
+    public int getQueueSize(RadioPriority priority) {
+        lock.lock();
+        try {
+            return classes.get(priority).tasks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param priority priority class
+     * @return number of executed tasks of specified class
+     */
+    public long getExecutedCount(RadioPriority priority) {
+        return classes.get(priority).runDuration.getCount();
+    }
+
+    /**
+     * @param priority priority class
+     * @return number of rejected tasks of specified class
+     */
+    public long getRejectedCount(RadioPriority priority) {
+        return classes.get(priority).rejected.get();
+    }
+
+    /**
+     * @param priority priority class
+     * @return total time [in ns], the radio was busy with tasks of specified class
+     */
+    public long getBusyNanos(RadioPriority priority) {
+        lock.lock();
+        try {
+            return classes.get(priority).busyNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.radio;
+
+/**
+ * Priority classes of access to the radio. Classes are declared from the
+ * highest priority to the lowest one.
+ */
+public enum RadioPriority {
+    
+    /** Alarms and commands, e.g. DPA requests received over MQTT. */
+    COMMAND,
+    
+    /** Periodic reading of sensors. */
+    TELEMETRY,
+    
+    /** 
+     * Background work, e.g. OS info refreshes or RSSI sweeps. Runs only if
+     * the radio has been idle for configured time.
+     */
+    MAINTENANCE
+}
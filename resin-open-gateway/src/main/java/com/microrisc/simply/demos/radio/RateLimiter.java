@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.radio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Not thread safe - it is used by the radio
+ * arbiter under its lock only.
+ */
+final class RateLimiter {
+    
+    // nanoseconds needed to get one token, 0 for unlimited rate
+    private final long nanosPerToken;
+    
+    // maximal number of tokens
+    private final int burst;
+    
+    // available tokens, in nanoseconds of accumulated time
+    private long storedNanos;
+    
+    // time of the last update of stored nanoseconds
+    private long lastUpdate;
+    
+    
+    /**
+     * Creates new rate limiter.
+     * @param rate permitted rate [per second], 0 for unlimited rate
+     * @param burst maximal number of permits taken at once after idle time
+     * @param now current time [in ns, as by {@link System#nanoTime()}]
+     */
+    RateLimiter(double rate, int burst, long now) {
+        if ( rate < 0 ) {
+            throw new IllegalArgumentException("Rate must be nonnegative: " + rate);
+        }
+        if ( burst <= 0 ) {
+            throw new IllegalArgumentException("Burst must be positive: " + burst);
+        }
+        this.nanosPerToken = (rate == 0)? 0 : (long)(TimeUnit.SECONDS.toNanos(1) / rate);
+        this.burst = burst;
+        this.storedNanos = nanosPerToken * burst;
+        this.lastUpdate = now;
+    }
+    
+    // adds tokens accumulated till now
+    private void update(long now) {
+        storedNanos = Math.min(storedNanos + (now - lastUpdate), nanosPerToken * burst);
+        lastUpdate = now;
+    }
+    
+    /**
+     * Takes one permit, if it is available.
+     * @param now current time [in ns]
+     * @return {@code true} if the permit was taken
+     */
+    boolean tryAcquire(long now) {
+        if ( nanosPerToken == 0 ) {
+            return true;
+        }
+        update(now);
+        if ( storedNanos < nanosPerToken ) {
+            return false;
+        }
+        storedNanos -= nanosPerToken;
+        return true;
+    }
+    
+    /**
+     * @param now current time [in ns]
+     * @return time [in ns] till the next permit is available, 0 if available now
+     */
+    long nanosUntilAvailable(long now) {
+        if ( nanosPerToken == 0 ) {
+            return 0;
+        }
+        update(now);
+        return Math.max(0, nanosPerToken - storedNanos);
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sim;
+
+import com.microrisc.simply.SimplyException;
+import com.microrisc.simply.network.NetworkData;
+import com.microrisc.simply.network.NetworkLayer;
+import com.microrisc.simply.network.NetworkLayerException;
+import com.microrisc.simply.network.NetworkLayerListener;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Network layer simulating DPA coordinator and nodes, so the gateway can run
+ * without any IQRF hardware.
+ * <p>
+ * The coordinator answers requests for addressing info, bonded and discovered
+ * nodes, setting of DPA parameters and FRC, in which bit 0 of results of 
+ * each node answering the FRC is set. For requests to nodes, confirmation is
+ * sent at once and the response is sent after delay given by the settings of
+ * the node. Nodes answer OS reads and UART write-read requests carrying
+ * Modbus RTU "read registers" frames, which is how Protronix sensors are read.
+ * Registers contain randomized primary value (CO2 or VOC), temperature and
+ * humidity, both multiplied by 10, and VOC for sensors sharing one UART.
+ * <p>
+ * Lost requests and requests to dead nodes are confirmed, but never answered.
+ */
+public final class SimulatedNetworkLayer implements NetworkLayer {
+    
+    private static final Logger log = LoggerFactory.getLogger(SimulatedNetworkLayer.class);
+    
+    // peripherals
+    private static final int PNUM_COORDINATOR = 0x00;
+    private static final int PNUM_OS = 0x02;
+    private static final int PNUM_UART = 0x0C;
+    private static final int PNUM_FRC = 0x0D;
+    
+    // commands
+    private static final int CMD_COORDINATOR_ADDR_INFO = 0x00;
+    private static final int CMD_COORDINATOR_DISCOVERED_DEVICES = 0x01;
+    private static final int CMD_COORDINATOR_BONDED_DEVICES = 0x02;
+    private static final int CMD_COORDINATOR_SET_DPAPARAMS = 0x08;
+    private static final int CMD_OS_READ = 0x00;
+    private static final int CMD_UART_WRITE_READ = 0x02;
+    private static final int CMD_FRC_SEND = 0x00;
+    
+    // response codes
+    private static final int STATUS_NO_ERROR = 0x00;
+    private static final int ERROR_PNUM = 0x03;
+    private static final int ERROR_NADR = 0x08;
+    private static final int STATUS_CONFIRMATION = 0xFF;
+    
+    private static final int COORDINATOR_ADDRESS = 0x00;
+    private static final int BROADCAST_ADDRESS = 0xFF;
+    
+    // length of DPA request header: NADR, PNUM, PCMD, HWPID
+    private static final int REQUEST_HEADER_LENGTH = 6;
+    
+    // length of one timeslot reported in confirmations [in 10 ms]
+    private static final int TIMESLOT_LENGTH = 6;
+    
+    // Modbus RTU function codes reading registers
+    private static final int MODBUS_READ_HOLDING_REGISTERS = 0x03;
+    private static final int MODBUS_READ_INPUT_REGISTERS = 0x04;
+    
+    // maximal number of registers read at once
+    private static final int MAX_REGISTERS = 16;
+    
+    // length of data of FRC response
+    private static final int FRC_DATA_LENGTH = 55;
+    
+    // time of collection of FRC result of one node [in ms]
+    private static final long FRC_NODE_LATENCY = 3;
+    
+    // delay of responses of the coordinator itself [in ms]
+    private final long coordinatorLatency;
+    
+    // simulated nodes indexed by their addresses
+    private final Map<Integer, SimulatedNode> nodes;
+    
+    private final Random random;
+    private final ScheduledExecutorService scheduler;
+    private volatile NetworkLayerListener listener = null;
+    
+    
+    /**
+     * Creates new simulated network layer.
+     * @param nodes simulated nodes indexed by their addresses
+     * @param coordinatorLatency delay of responses of the coordinator [in ms]
+     * @param seed seed of randomness of the simulation
+     */
+    SimulatedNetworkLayer(Map<Integer, SimulatedNode> nodes, long coordinatorLatency, long seed) {
+        this.nodes = nodes;
+        this.coordinatorLatency = coordinatorLatency;
+        this.random = new Random(seed);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "simulated-network");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    
+    @Override
+    public void start() throws SimplyException {
+        log.info("Simulated network of {} nodes started", nodes.size());
+    }
+    
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+    
+    @Override
+    public void registerListener(NetworkLayerListener listener) {
+        this.listener = listener;
+    }
+    
+    @Override
+    public void unregisterListener() {
+        this.listener = null;
+    }
+    
+    @Override
+    public void sendData(final NetworkData networkData) throws NetworkLayerException {
+        final short[] request = networkData.getData();
+        if ( request.length < REQUEST_HEADER_LENGTH ) {
+            throw new NetworkLayerException("DPA request too short: " + Arrays.toString(request));
+        }
+        
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    process(networkData.getNetworkId(), request);
+                }
+            });
+        } catch ( RejectedExecutionException ex ) {
+            throw new NetworkLayerException("Simulated network destroyed");
+        }
+    }
+    
+    // processes request - runs in the scheduler thread
+    private void process(String networkId, short[] request) {
+        int nadr = request[0] | (request[1] << 8);
+        int pnum = request[2];
+        int pcmd = request[3];
+        short[] data = Arrays.copyOfRange(request, REQUEST_HEADER_LENGTH, request.length);
+        
+        if ( nadr == COORDINATOR_ADDRESS && pnum == PNUM_FRC ) {
+            respond(
+                    networkId, request, STATUS_NO_ERROR, 0, 
+                    ( pcmd == CMD_FRC_SEND )? frcResponse() : new short[0], 
+                    coordinatorLatency + nodes.size() * FRC_NODE_LATENCY
+            );
+            return;
+        }
+        if ( nadr == COORDINATOR_ADDRESS ) {
+            respond(networkId, request, STATUS_NO_ERROR, 0, processCoordinator(pcmd, data), coordinatorLatency);
+            return;
+        }
+        
+        SimulatedNode node = nodes.get(nadr);
+        if ( node == null && nadr != BROADCAST_ADDRESS ) {
+            respond(networkId, request, ERROR_NADR, 0, new short[0], coordinatorLatency);
+            return;
+        }
+        
+        // confirmation from the coordinator
+        int hops = ( node != null )? node.getHops() : 0xFF;
+        respond(
+                networkId, request, STATUS_CONFIRMATION, 0,
+                new short[] { (short) hops, TIMESLOT_LENGTH, (short) hops }, coordinatorLatency
+        );
+        
+        if ( node == null || node.nextLost(random) ) {
+            return;
+        }
+        
+        short[] responseData;
+        int responseCode = STATUS_NO_ERROR;
+        switch ( pnum ) {
+            case PNUM_OS:
+                responseData = ( pcmd == CMD_OS_READ )? osInfo(node) : new short[0];
+                break;
+            case PNUM_UART:
+                responseData = ( pcmd == CMD_UART_WRITE_READ )? modbusResponse(data) : new short[0];
+                break;
+            default:
+                responseData = new short[0];
+                if ( pnum > PNUM_UART ) {
+                    responseCode = ERROR_PNUM;
+                }
+                break;
+        }
+        respond(
+                networkId, request, responseCode, node.nextRssi(random), responseData,
+                node.nextResponseDelay(random)
+        );
+    }
+    
+    // returns response data of coordinator command
+    private short[] processCoordinator(int pcmd, short[] data) {
+        switch ( pcmd ) {
+            case CMD_COORDINATOR_ADDR_INFO:
+                return new short[] { (short) nodes.size(), 0 };
+            case CMD_COORDINATOR_DISCOVERED_DEVICES:
+            case CMD_COORDINATOR_BONDED_DEVICES:
+                short[] bitmap = new short[32];
+                for ( int address : nodes.keySet() ) {
+                    bitmap[address / 8] |= 1 << (address % 8);
+                }
+                return bitmap;
+            case CMD_COORDINATOR_SET_DPAPARAMS:
+                return new short[] { 0 };
+            default:
+                return new short[0];
+        }
+    }
+    
+    // returns response data of FRC: status with number of answering nodes 
+    // and bit 0 of results of the nodes
+    private short[] frcResponse() {
+        short[] response = new short[1 + FRC_DATA_LENGTH];
+        int answered = 0;
+        for ( SimulatedNode node : nodes.values() ) {
+            if ( node.nextLost(random) ) {
+                continue;
+            }
+            int address = node.getAddress();
+            response[1 + address / 8] |= 1 << (address % 8);
+            answered++;
+        }
+        response[0] = (short) answered;
+        return response;
+    }
+    
+    // returns OS info of specified node
+    private short[] osInfo(SimulatedNode node) {
+        long moduleId = node.getModuleId();
+        return new short[] {
+            (short) (moduleId & 0xFF), (short) ((moduleId >> 8) & 0xFF),
+            (short) ((moduleId >> 16) & 0xFF), (short) ((moduleId >> 24) & 0xFF),
+            0x36,               // OS version 3.06
+            0x44,               // MCU type
+            0x08, 0x08,         // OS build
+            (short) node.nextRssi(random),
+            0x9A,               // supply voltage
+            0x00,               // flags
+            0x00                // slot limits
+        };
+    }
+    
+    // returns data read from UART as response to written Modbus request
+    private short[] modbusResponse(short[] data) {
+        // data: read timeout, slave address, function, register (2 B), count (2 B), CRC (2 B)
+        if ( data.length < 7 ) {
+            return new short[0];
+        }
+        int function = data[2];
+        if ( function != MODBUS_READ_HOLDING_REGISTERS && function != MODBUS_READ_INPUT_REGISTERS ) {
+            return new short[0];
+        }
+        int count = Math.min((data[5] << 8) | data[6], MAX_REGISTERS);
+        
+        // primary value, temperature, humidity and VOC, the rest is zero
+        int[] registers = new int[MAX_REGISTERS];
+        registers[0] = 400 + random.nextInt(1200);
+        registers[1] = 200 + random.nextInt(60);
+        registers[2] = 300 + random.nextInt(300);
+        registers[3] = random.nextInt(500);
+        
+        short[] response = new short[3 + 2 * count + 2];
+        response[0] = data[1];
+        response[1] = (short) function;
+        response[2] = (short) (2 * count);
+        for ( int i = 0; i < count; i++ ) {
+            response[3 + 2 * i] = (short) ((registers[i] >> 8) & 0xFF);
+            response[4 + 2 * i] = (short) (registers[i] & 0xFF);
+        }
+        int crc = modbusCrc(response, response.length - 2);
+        response[response.length - 2] = (short) (crc & 0xFF);
+        response[response.length - 1] = (short) ((crc >> 8) & 0xFF);
+        return response;
+    }
+    
+    // computes Modbus CRC16 of first length bytes
+    private static int modbusCrc(short[] bytes, int length) {
+        int crc = 0xFFFF;
+        for ( int i = 0; i < length; i++ ) {
+            crc ^= bytes[i] & 0xFF;
+            for ( int bit = 0; bit < 8; bit++ ) {
+                crc = ( (crc & 1) != 0 )? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            }
+        }
+        return crc;
+    }
+    
+    // delivers response to specified request after specified delay
+    private void respond(
+            final String networkId, short[] request, int responseCode, int dpaValue, 
+            short[] responseData, long delay
+    ) {
+        final short[] response = new short[REQUEST_HEADER_LENGTH + 2 + responseData.length];
+        System.arraycopy(request, 0, response, 0, REQUEST_HEADER_LENGTH);
+        if ( responseCode != STATUS_CONFIRMATION ) {
+            response[3] |= 0x80;
+        }
+        response[REQUEST_HEADER_LENGTH] = (short) responseCode;
+        response[REQUEST_HEADER_LENGTH + 1] = (short) dpaValue;
+        System.arraycopy(responseData, 0, response, REQUEST_HEADER_LENGTH + 2, responseData.length);
+        
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    NetworkLayerListener currentListener = listener;
+                    if ( currentListener != null ) {
+                        currentListener.onGetData(new NetworkData(response, networkId));
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch ( RejectedExecutionException ex ) {
+            log.debug("Simulated network destroyed, response not delivered");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sim;
+
+import com.microrisc.simply.network.AbstractNetworkLayerFactory;
+import com.microrisc.simply.network.NetworkConnectionStorage;
+import com.microrisc.simply.network.NetworkLayer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Factory of simulated network layer. Select it in Simply configuration by: <br>
+ * {@code networkLayer.factory.class = com.microrisc.simply.demos.sim.SimulatedNetworkLayerFactory}
+ * <p>
+ * Configuration keys of the simulated network, all optional:
+ * <ul>
+ *  <li>{@code networkLayer.type.sim.nodes} - number of nodes, addressed from 1</li>
+ *  <li>{@code networkLayer.type.sim.deadNodes} - addresses of nodes, which never answer</li>
+ *  <li>{@code networkLayer.type.sim.coordinatorLatency} - delay of coordinator responses [in ms]</li>
+ *  <li>{@code networkLayer.type.sim.seed} - seed of randomness of the simulation</li>
+ *  <li>{@code networkLayer.type.sim.hops}, {@code hopLatency} [in ms], {@code jitter} [in ms] 
+ *      and {@code lossRate} - settings of all nodes</li>
+ *  <li>{@code networkLayer.type.sim.node.<address>.<setting>} - settings of particular node</li>
+ * </ul>
+ */
+public final class SimulatedNetworkLayerFactory 
+        extends AbstractNetworkLayerFactory<Configuration, NetworkLayer> 
+{
+    // defaults
+    private static final int DEFAULT_NODES = 10;
+    private static final long DEFAULT_COORDINATOR_LATENCY = 10;
+    private static final long DEFAULT_SEED = 0;
+    
+    // maximal address of a node in IQRF network
+    private static final int MAX_NODE_ADDRESS = 239;
+    
+    
+    @Override
+    public NetworkLayer getNetworkLayer(
+            NetworkConnectionStorage networkConnectionStorage, Configuration configuration
+    ) throws Exception {
+        String prefix = SimulatedNode.CONFIG_PREFIX;
+        
+        int nodesNumber = configuration.getInt(prefix + "nodes", DEFAULT_NODES);
+        if ( nodesNumber < 0 || nodesNumber > MAX_NODE_ADDRESS ) {
+            throw new IllegalArgumentException(
+                    "Number of nodes out of [0, " + MAX_NODE_ADDRESS + "]: " + nodesNumber
+            );
+        }
+        
+        Set<Integer> deadNodes = new HashSet<>();
+        for ( String deadNode : configuration.getStringArray(prefix + "deadNodes") ) {
+            if ( !deadNode.trim().isEmpty() ) {
+                deadNodes.add(Integer.parseInt(deadNode.trim()));
+            }
+        }
+        
+        Map<Integer, SimulatedNode> nodes = new HashMap<>();
+        for ( int address = 1; address <= nodesNumber; address++ ) {
+            nodes.put(
+                    address, 
+                    SimulatedNode.fromConfiguration(configuration, address, deadNodes.contains(address))
+            );
+        }
+        
+        return new SimulatedNetworkLayer(
+                nodes,
+                configuration.getLong(prefix + "coordinatorLatency", DEFAULT_COORDINATOR_LATENCY),
+                configuration.getLong(prefix + "seed", DEFAULT_SEED)
+        );
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sim;
+
+import java.util.Random;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Settings of one simulated node.
+ * <p>
+ * Settings common to all nodes are read from keys 
+ * {@code networkLayer.type.sim.<setting>}, settings of particular node
+ * override them under keys {@code networkLayer.type.sim.node.<address>.<setting>}.
+ */
+final class SimulatedNode {
+    
+    // prefix of simulator configuration keys
+    static final String CONFIG_PREFIX = "networkLayer.type.sim.";
+    
+    // defaults
+    private static final int DEFAULT_HOPS = 1;
+    private static final long DEFAULT_HOP_LATENCY = 60;
+    private static final long DEFAULT_JITTER = 20;
+    private static final double DEFAULT_LOSS_RATE = 0;
+    
+    private final int address;
+    private final int hops;
+    private final long hopLatency;
+    private final long jitter;
+    private final double lossRate;
+    private final boolean dead;
+    private final long moduleId;
+    
+    
+    private SimulatedNode(
+            int address, int hops, long hopLatency, long jitter, double lossRate, boolean dead
+    ) {
+        if ( hops < 1 ) {
+            throw new IllegalArgumentException("Number of hops of node " + address + " must be positive");
+        }
+        if ( lossRate < 0 || lossRate > 1 ) {
+            throw new IllegalArgumentException("Loss rate of node " + address + " out of [0, 1]");
+        }
+        this.address = address;
+        this.hops = hops;
+        this.hopLatency = hopLatency;
+        this.jitter = jitter;
+        this.lossRate = lossRate;
+        this.dead = dead;
+        this.moduleId = 0x81000000L | address;
+    }
+    
+    // returns configuration key of the setting of specified node
+    private static String key(int address, String setting) {
+        return CONFIG_PREFIX + "node." + address + "." + setting;
+    }
+    
+    /**
+     * Reads settings of node of specified address.
+     * @param configuration Simply configuration
+     * @param address address of the node
+     * @param dead indicates, whether the node is listed as dead
+     */
+    static SimulatedNode fromConfiguration(Configuration configuration, int address, boolean dead) {
+        int hops = configuration.getInt(CONFIG_PREFIX + "hops", DEFAULT_HOPS);
+        long hopLatency = configuration.getLong(CONFIG_PREFIX + "hopLatency", DEFAULT_HOP_LATENCY);
+        long jitter = configuration.getLong(CONFIG_PREFIX + "jitter", DEFAULT_JITTER);
+        double lossRate = configuration.getDouble(CONFIG_PREFIX + "lossRate", DEFAULT_LOSS_RATE);
+        
+        return new SimulatedNode(
+                address,
+                configuration.getInt(key(address, "hops"), hops),
+                configuration.getLong(key(address, "hopLatency"), hopLatency),
+                configuration.getLong(key(address, "jitter"), jitter),
+                configuration.getDouble(key(address, "lossRate"), lossRate),
+                configuration.getBoolean(key(address, "dead"), dead)
+        );
+    }
+    
+    /**
+     * Returns randomized time [in ms] between sending of a request to the node
+     * and receiving of its response: the request and the response travel
+     * over all hops, jitter is normally distributed.
+     */
+    long nextResponseDelay(Random random) {
+        long delay = 2 * hops * hopLatency + Math.round(random.nextGaussian() * jitter);
+        return Math.max(delay, 0);
+    }
+    
+    /**
+     * Returns {@code true} if the next request or its response gets lost.
+     */
+    boolean nextLost(Random random) {
+        return dead || ( random.nextDouble() < lossRate );
+    }
+    
+    /**
+     * Returns RSSI reported by the node - the more hops, the weaker signal.
+     */
+    int nextRssi(Random random) {
+        return Math.max(0, 0x50 - 6 * hops - random.nextInt(8));
+    }
+    
+    int getAddress() {
+        return address;
+    }
+    
+    int getHops() {
+        return hops;
+    }
+    
+    boolean isDead() {
+        return dead;
+    }
+    
+    long getModuleId() {
+        return moduleId;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import com.microrisc.simply.demos.mqtt.MqttCommunicator;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * Publishes MQTT messages of readings to their topics.
+ * <p>
+ * Properties: {@code qos} - QoS of publications, 2 by default.
+ */
+public final class MqttSink implements Sink {
+    
+    /** Default QoS of publications. */
+    public static final int DEFAULT_QOS = 2;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final MqttCommunicator mqttCommunicator;
+    private final int qos;
+    
+    
+    /**
+     * Creates new MQTT sink.
+     * @param mqttCommunicator communicator to publish through
+     * @param qos QoS of publications
+     */
+    public MqttSink(MqttCommunicator mqttCommunicator, int qos) {
+        if ( qos < 0 || qos > 2 ) {
+            throw new IllegalArgumentException("Invalid QoS: " + qos);
+        }
+        this.mqttCommunicator = mqttCommunicator;
+        this.qos = qos;
+    }
+    
+    @Override
+    public void open() {
+        // communicator is connected by the application
+    }
+    
+    @Override
+    public void write(Reading reading) throws IOException {
+        for ( String message : reading.getMessages() ) {
+            try {
+                mqttCommunicator.publish(reading.getTopic(), qos, message.getBytes(UTF_8));
+            } catch ( MqttException ex ) {
+                throw new IOException("Publishing of data of node " + reading.getNodeId() + " failed", ex);
+            }
+        }
+    }
+    
+    @Override
+    public void flush() {
+        // publications are not buffered
+    }
+    
+    @Override
+    public void close() {
+        // communicator is disconnected by the application
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Values obtained from a sensor on one node in one request, together with 
+ * their MQTT form.
+ */
+public final class Reading {
+    private final String networkId;
+    private final int nodeId;
+    private final String moduleId;
+    private final String deviceType;
+    private final long timestamp;
+    private final Map<String, Number> values;
+    private final String topic;
+    private final List<String> messages;
+    
+    
+    /**
+     * Creates new reading.
+     * @param networkId ID of the network
+     * @param nodeId ID of the node
+     * @param moduleId module ID of the node, {@code null} if not known
+     * @param deviceType type of the device on the node
+     * @param timestamp time of acquisition [in ms since the epoch]
+     * @param values values indexed by names of quantities, in the order of publishing
+     * @param topic MQTT topic of the reading
+     * @param messages MQTT messages of the reading
+     */
+    public Reading(
+            String networkId, int nodeId, String moduleId, String deviceType, long timestamp, 
+            Map<String, Number> values, String topic, List<String> messages
+    ) {
+        this.networkId = networkId;
+        this.nodeId = nodeId;
+        this.moduleId = moduleId;
+        this.deviceType = deviceType;
+        this.timestamp = timestamp;
+        this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+        this.topic = topic;
+        this.messages = Collections.unmodifiableList(new ArrayList<>(messages));
+    }
+
+    /**
+     * @return ID of the network
+     */
+    public String getNetworkId() {
+        return networkId;
+    }
+
+    /**
+     * @return ID of the node
+     */
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return module ID of the node, {@code null} if not known
+     */
+    public String getModuleId() {
+        return moduleId;
+    }
+
+    /**
+     * @return type of the device on the node
+     */
+    public String getDeviceType() {
+        return deviceType;
+    }
+
+    /**
+     * @return time of acquisition [in ms since the epoch]
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return values indexed by names of quantities, in the order of publishing
+     */
+    public Map<String, Number> getValues() {
+        return values;
+    }
+
+    /**
+     * @return MQTT topic of the reading
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return MQTT messages of the reading
+     */
+    public List<String> getMessages() {
+        return messages;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import java.util.Map;
+import org.json.simple.JSONObject;
+
+/**
+ * Textual formats of readings for file and datagram sinks. Each reading is 
+ * formatted into one line without the line terminator.
+ */
+public enum ReadingFormat {
+    
+    /** 
+     * JSON object per line, for example: <br>
+     * {@code {"network":"1","node":3,"module":"8100401F","type":"co2-t-h","time":1475661616000,"values":{"co2":450,"temperature":21.5}}}
+     */
+    JSON("jsonl") {
+        @Override
+        public String format(Reading reading) {
+            StringBuilder sb = new StringBuilder(192);
+            sb.append("{\"network\":\"").append(JSONObject.escape(reading.getNetworkId())).append('"');
+            sb.append(",\"node\":").append(reading.getNodeId());
+            if ( reading.getModuleId() != null ) {
+                sb.append(",\"module\":\"").append(JSONObject.escape(reading.getModuleId())).append('"');
+            }
+            sb.append(",\"type\":\"").append(JSONObject.escape(reading.getDeviceType())).append('"');
+            sb.append(",\"time\":").append(reading.getTimestamp());
+            sb.append(",\"values\":{");
+            boolean first = true;
+            for ( Map.Entry<String, Number> value : reading.getValues().entrySet() ) {
+                if ( !first ) {
+                    sb.append(',');
+                }
+                first = false;
+                sb.append('"').append(JSONObject.escape(value.getKey())).append("\":").append(value.getValue());
+            }
+            return sb.append("}}").toString();
+        }
+    },
+    
+    /**
+     * InfluxDB line protocol with timestamps in ns, for example: <br>
+     * {@code protronix,network=1,node=3,module=8100401F,type=co2-t-h co2=450i,temperature=21.5 1475661616000000000}
+     */
+    INFLUX("lp") {
+        @Override
+        public String format(Reading reading) {
+            StringBuilder sb = new StringBuilder(160);
+            sb.append(MEASUREMENT);
+            sb.append(",network=");
+            appendTagValue(sb, reading.getNetworkId());
+            sb.append(",node=").append(reading.getNodeId());
+            if ( reading.getModuleId() != null ) {
+                sb.append(",module=");
+                appendTagValue(sb, reading.getModuleId());
+            }
+            sb.append(",type=");
+            appendTagValue(sb, reading.getDeviceType());
+            
+            char separator = ' ';
+            for ( Map.Entry<String, Number> value : reading.getValues().entrySet() ) {
+                sb.append(separator);
+                separator = ',';
+                appendTagValue(sb, value.getKey());
+                sb.append('=').append(value.getValue());
+                if ( value.getValue() instanceof Integer || value.getValue() instanceof Long ) {
+                    sb.append('i');
+                }
+            }
+            return sb.append(' ').append(reading.getTimestamp() * 1000000L).toString();
+        }
+    };
+    
+    // name of measurement in line protocol
+    private static final String MEASUREMENT = "protronix";
+    
+    private final String fileExtension;
+    
+    private ReadingFormat(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+    
+    // appends tag value or field key escaped according to line protocol
+    private static void appendTagValue(StringBuilder sb, String value) {
+        for ( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt(i);
+            if ( c == ',' || c == '=' || c == ' ' ) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+    }
+    
+    /**
+     * @return extension of files in this format
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+    
+    /**
+     * Formats specified reading into one line.
+     * @param reading reading to format
+     * @return formatted reading
+     */
+    public abstract String format(Reading reading);
+}
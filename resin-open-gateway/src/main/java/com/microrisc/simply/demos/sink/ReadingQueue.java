@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import com.microrisc.simply.demos.config.SinkConfiguration.OverflowPolicy;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded FIFO queue of readings waiting for a sink, which handles readings
+ * not fitting into it according to an overflow policy.
+ * <p>
+ * Under the {@code COALESCE} policy, a reading replaces the pending reading 
+ * of the same node with the same set of quantities in its place in the queue,
+ * so the queue holds at most one reading per node and set of quantities.
+ */
+final class ReadingQueue {
+    
+    /**
+     * Result of putting a reading into the queue.
+     */
+    static enum OfferResult {
+        /** The reading has been appended to the queue. */
+        ACCEPTED,
+        
+        /** The reading has replaced pending reading of the same node. */
+        COALESCED,
+        
+        /** The reading has been appended to the queue instead of the oldest one. */
+        OLDEST_DROPPED,
+        
+        /** The reading has not been put into the queue. */
+        REJECTED
+    }
+    
+    // place of a reading in the queue, its reading can be replaced 
+    private static final class Slot {
+        private final CoalescingKey key;
+        private Reading reading;
+        
+        private Slot(CoalescingKey key, Reading reading) {
+            this.key = key;
+            this.reading = reading;
+        }
+    }
+    
+    // identifies readings, which can replace each other
+    private static final class CoalescingKey {
+        private final String networkId;
+        private final int nodeId;
+        private final Set<String> quantities;
+        
+        private CoalescingKey(Reading reading) {
+            this.networkId = reading.getNetworkId();
+            this.nodeId = reading.getNodeId();
+            this.quantities = reading.getValues().keySet();
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if ( !(obj instanceof CoalescingKey) ) {
+                return false;
+            }
+            CoalescingKey other = (CoalescingKey) obj;
+            return nodeId == other.nodeId
+                    && networkId.equals(other.networkId)
+                    && quantities.equals(other.quantities);
+        }
+        
+        @Override
+        public int hashCode() {
+            int hash = networkId.hashCode();
+            hash = 31 * hash + nodeId;
+            return 31 * hash + quantities.hashCode();
+        }
+    }
+    
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    
+    private final Deque<Slot> slots = new ArrayDeque<>();
+    
+    // pending slots indexed by their keys, used under the COALESCE policy only
+    private final Map<CoalescingKey, Slot> pendingSlots = new HashMap<>();
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    
+    
+    /**
+     * Creates new empty queue.
+     * @param capacity maximal number of readings in the queue
+     * @param overflowPolicy policy applied to readings not fitting into the queue
+     */
+    ReadingQueue(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+    
+    /**
+     * Puts specified reading into the queue according to the overflow policy.
+     * Under the {@code BLOCK} policy waits for free space at most for specified
+     * timeout.
+     * @param reading reading to put
+     * @param timeout maximal time to wait for free space [in ms]
+     * @return result of putting
+     * @throws InterruptedException if interrupted while waiting
+     */
+    OfferResult offer(Reading reading, long timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            CoalescingKey key = null;
+            if ( overflowPolicy == OverflowPolicy.COALESCE ) {
+                key = new CoalescingKey(reading);
+                Slot pendingSlot = pendingSlots.get(key);
+                if ( pendingSlot != null ) {
+                    pendingSlot.reading = reading;
+                    return OfferResult.COALESCED;
+                }
+            }
+            
+            OfferResult result = OfferResult.ACCEPTED;
+            if ( slots.size() >= capacity ) {
+                switch ( overflowPolicy ) {
+                    case BLOCK:
+                        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+                        while ( slots.size() >= capacity ) {
+                            if ( remaining <= 0 ) {
+                                return OfferResult.REJECTED;
+                            }
+                            remaining = notFull.awaitNanos(remaining);
+                        }
+                        break;
+                    case DROP_OLDEST:
+                    case COALESCE:
+                        removeSlot(slots.pollFirst());
+                        result = OfferResult.OLDEST_DROPPED;
+                        break;
+                    default:
+                        return OfferResult.REJECTED;
+                }
+            }
+            
+            Slot slot = new Slot(key, reading);
+            slots.addLast(slot);
+            if ( key != null ) {
+                pendingSlots.put(key, slot);
+            }
+            notEmpty.signal();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Retrieves and removes the oldest reading, waits at most for specified 
+     * timeout, if the queue is empty.
+     * @param timeout maximal time to wait [in ms]
+     * @return the oldest reading, {@code null} if the timeout has elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Reading poll(long timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while ( slots.isEmpty() ) {
+                if ( remaining <= 0 ) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            Slot slot = slots.pollFirst();
+            removeSlot(slot);
+            notFull.signal();
+            return slot.reading;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Removes all readings from the queue and adds them into specified collection.
+     * @param readings collection to add the readings into
+     */
+    void drainTo(Collection<Reading> readings) {
+        lock.lock();
+        try {
+            for ( Slot slot : slots ) {
+                readings.add(slot.reading);
+            }
+            slots.clear();
+            pendingSlots.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * @return number of readings in the queue
+     */
+    int size() {
+        lock.lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * @return {@code true} if the queue is empty
+     */
+    boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    // removes specified slot, which has been taken out of the queue, from pending slots
+    private void removeSlot(Slot slot) {
+        if ( slot.key != null ) {
+            pendingSlots.remove(slot.key);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves readings not written into a sink before shutdown and loads them 
+ * back at the next start. Readings are stored as JSON objects, one per line.
+ */
+final class ReadingSpool {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReadingSpool.class);
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final Path file;
+    
+    
+    /**
+     * Creates new spool in specified file.
+     * @param file file of the spool
+     */
+    ReadingSpool(Path file) {
+        this.file = file;
+    }
+    
+    /**
+     * Appends specified readings to the spool.
+     * @param readings readings to save
+     * @throws IOException if an I/O error occurs
+     */
+    @SuppressWarnings("unchecked")
+    void save(Collection<Reading> readings) throws IOException {
+        if ( readings.isEmpty() ) {
+            return;
+        }
+        Files.createDirectories(file.getParent());
+        try ( BufferedWriter writer = Files.newBufferedWriter(
+                file, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND
+        ) ) {
+            for ( Reading reading : readings ) {
+                JSONObject readingObject = new JSONObject();
+                readingObject.put("network", reading.getNetworkId());
+                readingObject.put("node", reading.getNodeId());
+                readingObject.put("module", reading.getModuleId());
+                readingObject.put("type", reading.getDeviceType());
+                readingObject.put("time", reading.getTimestamp());
+                readingObject.put("values", new JSONObject(reading.getValues()));
+                readingObject.put("topic", reading.getTopic());
+                JSONArray messages = new JSONArray();
+                messages.addAll(reading.getMessages());
+                readingObject.put("messages", messages);
+                
+                writer.write(readingObject.toJSONString());
+                writer.newLine();
+            }
+        }
+    }
+    
+    /**
+     * Loads all readings from the spool and deletes it. Invalid lines are skipped.
+     * @return loaded readings in the order of saving
+     * @throws IOException if an I/O error occurs
+     */
+    List<Reading> loadAndDelete() throws IOException {
+        List<Reading> readings = new ArrayList<>();
+        if ( !Files.exists(file) ) {
+            return readings;
+        }
+        
+        try ( BufferedReader reader = Files.newBufferedReader(file, UTF_8) ) {
+            String line;
+            while ( (line = reader.readLine()) != null ) {
+                try {
+                    readings.add(parse((JSONObject) JSONValue.parse(line)));
+                } catch ( RuntimeException ex ) {
+                    log.warn("Invalid reading in spool {} skipped: {}", file, ex.toString());
+                }
+            }
+        }
+        Files.delete(file);
+        return readings;
+    }
+    
+    // creates reading from its JSON form
+    private static Reading parse(JSONObject readingObject) {
+        Map<String, Number> values = new LinkedHashMap<>();
+        for ( Object entry : ((JSONObject) readingObject.get("values")).entrySet() ) {
+            Map.Entry<?, ?> value = (Map.Entry<?, ?>) entry;
+            values.put((String) value.getKey(), (Number) value.getValue());
+        }
+        List<String> messages = new ArrayList<>();
+        for ( Object message : (JSONArray) readingObject.get("messages") ) {
+            messages.add((String) message);
+        }
+        return new Reading(
+                (String) readingObject.get("network"),
+                (int)(long) readingObject.get("node"),
+                (String) readingObject.get("module"),
+                (String) readingObject.get("type"),
+                (long) readingObject.get("time"),
+                values,
+                (String) readingObject.get("topic"),
+                messages
+        );
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends readings as lines to a local file, which is rolled over when it 
+ * reaches maximal size. Only limited number of rolled files is kept.
+ * <p>
+ * Lines are written through a buffer and flushed, when there are no more 
+ * readings waiting, so the file is written sequentially in large chunks.
+ * <p>
+ * Properties: {@code directory} - directory of files, {@code data} by default, 
+ * {@code format} - {@code json} (default) or {@code influx}, 
+ * {@code maxFileSize} - maximal size of one file [in bytes], 
+ * {@code maxFiles} - maximal number of rolled files kept.
+ */
+public final class RollingFileSink implements Sink {
+    
+    private static final Logger log = LoggerFactory.getLogger(RollingFileSink.class);
+    
+    /** Default maximal size of one file [in bytes]. */
+    public static final long DEFAULT_MAX_FILE_SIZE = 10 * 1024 * 1024;
+    
+    /** Default maximal number of rolled files kept. */
+    public static final int DEFAULT_MAX_FILES = 10;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final Path directory;
+    private final String baseName;
+    private final ReadingFormat format;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final Path activeFile;
+    
+    private BufferedWriter writer = null;
+    private long fileSize = 0;
+    
+    
+    /**
+     * Creates new file sink.
+     * @param directory directory of files
+     * @param baseName base name of files
+     * @param format format of readings
+     * @param maxFileSize maximal size of one file [in bytes]
+     * @param maxFiles maximal number of rolled files kept
+     */
+    public RollingFileSink(
+            Path directory, String baseName, ReadingFormat format, long maxFileSize, int maxFiles
+    ) {
+        if ( maxFileSize <= 0 ) {
+            throw new IllegalArgumentException("Maximal file size must be positive: " + maxFileSize);
+        }
+        if ( maxFiles < 0 ) {
+            throw new IllegalArgumentException("Maximal number of files cannot be negative: " + maxFiles);
+        }
+        this.directory = directory;
+        this.baseName = baseName;
+        this.format = format;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        this.activeFile = directory.resolve(baseName + "." + format.getFileExtension());
+    }
+    
+    @Override
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+        openActiveFile();
+    }
+    
+    // opens active file for appending
+    private void openActiveFile() throws IOException {
+        writer = Files.newBufferedWriter(
+                activeFile, UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND
+        );
+        fileSize = Files.size(activeFile);
+    }
+    
+    @Override
+    public void write(Reading reading) throws IOException {
+        if ( writer == null ) {
+            // previous roll over failed
+            openActiveFile();
+        }
+        
+        String line = format.format(reading);
+        writer.write(line);
+        writer.newLine();
+        
+        // lines are ASCII mostly, exact size is not needed
+        fileSize += line.length() + 1;
+        if ( fileSize >= maxFileSize ) {
+            rollOver();
+        }
+    }
+    
+    // closes active file, renames it and deletes the oldest rolled files
+    private void rollOver() throws IOException {
+        writer.close();
+        writer = null;
+        
+        Path rolledFile = directory.resolve(
+                baseName + "-" + System.currentTimeMillis() + "." + format.getFileExtension()
+        );
+        Files.move(activeFile, rolledFile);
+        log.debug("File {} rolled over to {}", activeFile, rolledFile);
+        
+        deleteOldestFiles();
+        openActiveFile();
+    }
+    
+    // deletes rolled files over the maximal number
+    private void deleteOldestFiles() throws IOException {
+        List<Path> rolledFiles = new ArrayList<>();
+        String glob = baseName + "-*." + format.getFileExtension();
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob) ) {
+            for ( Path file : stream ) {
+                rolledFiles.add(file);
+            }
+        }
+        
+        // names differ in timestamps of the same length, so the oldest are the first
+        Collections.sort(rolledFiles);
+        for ( int i = 0; i < rolledFiles.size() - maxFiles; i++ ) {
+            Files.deleteIfExists(rolledFiles.get(i));
+        }
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        if ( writer != null ) {
+            writer.flush();
+        }
+    }
+    
+    @Override
+    public void close() {
+        if ( writer == null ) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch ( IOException ex ) {
+            log.warn("Error while closing file {}: {}", activeFile, ex.toString());
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import java.io.IOException;
+
+/**
+ * Output of readings.
+ * <p>
+ * Each sink is used by its own thread only, so implementations need not be 
+ * thread safe. Implementations may block - slowness of a sink affects only 
+ * the queue of the sink, not acquisition of data or other sinks.
+ */
+public interface Sink {
+    
+    /**
+     * Opens the sink. Called once before the first write.
+     * @throws IOException if the sink cannot be opened
+     */
+    void open() throws IOException;
+    
+    /**
+     * Writes specified reading. Writes may be buffered until the next flush.
+     * @param reading reading to write
+     * @throws IOException if an I/O error occurs, the reading is lost then
+     */
+    void write(Reading reading) throws IOException;
+    
+    /**
+     * Flushes buffered writes. Called each time the queue of the sink gets empty.
+     * @throws IOException if an I/O error occurs
+     */
+    void flush() throws IOException;
+    
+    /**
+     * Closes the sink and releases its resources.
+     */
+    void close();
+}
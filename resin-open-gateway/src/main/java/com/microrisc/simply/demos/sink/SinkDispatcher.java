@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import com.microrisc.simply.demos.config.SinkConfiguration;
+import com.microrisc.simply.demos.metrics.MetricsRegistry;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fans readings out to all sinks.
+ * <p>
+ * Each sink has its own bounded queue and thread, so publishing of a reading
+ * does not wait for writes into sinks and a slow or failed sink does not 
+ * delay the other ones. If the queue of a sink is full, the reading is 
+ * dropped for that sink according to its overflow policy.
+ */
+public final class SinkDispatcher {
+    
+    /** Extension of files of spooled readings. */
+    public static final String SPOOL_FILE_EXTENSION = ".jsonl";
+    
+    // time reserved at the end of stop for spooling of readings, which have 
+    // not been written [in ms]
+    private static final long SPOOL_MARGIN = 1000;
+    
+    private final MetricsRegistry metrics;
+    private final Path spoolDirectory;
+    private final List<SinkWorker> workers = new CopyOnWriteArrayList<>();
+    
+    
+    /**
+     * Creates new dispatcher without sinks.
+     * @param metrics registry to register metrics of sinks into
+     * @param spoolDirectory directory to save readings not written before 
+     *        stop into, {@code null} if they are to be discarded
+     */
+    public SinkDispatcher(MetricsRegistry metrics, Path spoolDirectory) {
+        this.metrics = metrics;
+        this.spoolDirectory = spoolDirectory;
+    }
+    
+    /**
+     * Adds specified sink and starts feeding it. Readings spooled by the sink
+     * of the same name are written first.
+     * @param configuration configuration of the sink
+     * @param sink the sink
+     */
+    public void addSink(SinkConfiguration configuration, Sink sink) {
+        Path spoolFile = (spoolDirectory != null)? 
+                spoolDirectory.resolve(configuration.getName() + SPOOL_FILE_EXTENSION) : null;
+        SinkWorker worker = new SinkWorker(configuration, sink, spoolFile, metrics);
+        workers.add(worker);
+        worker.start();
+    }
+    
+    /**
+     * Passes specified reading to all sinks. Does not block except for 
+     * sinks with the {@code BLOCK} overflow policy, whose queues are full.
+     * @param reading reading to publish
+     */
+    public void publish(Reading reading) {
+        for ( SinkWorker worker : workers ) {
+            worker.offer(reading);
+        }
+    }
+    
+    /**
+     * Stops all sinks. Readings already passed to sinks are still written
+     * until shortly before specified deadline, so that the rest can be 
+     * spooled in time. Sinks are drained in parallel.
+     * @param deadline deadline as a value of {@link System#nanoTime()}
+     */
+    public void stop(long deadline) {
+        long drainDeadline = deadline - TimeUnit.MILLISECONDS.toNanos(SPOOL_MARGIN);
+        for ( SinkWorker worker : workers ) {
+            worker.beginStop(drainDeadline);
+        }
+        for ( SinkWorker worker : workers ) {
+            worker.awaitStop(deadline);
+        }
+        workers.clear();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import com.microrisc.simply.demos.config.SinkConfiguration;
+import com.microrisc.simply.demos.mqtt.MqttCommunicator;
+import com.microrisc.simply.demos.store.TimeSeriesStore;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates sinks according to their configuration.
+ */
+public final class SinkFactory {
+    
+    /** Type of MQTT sink. */
+    public static final String TYPE_MQTT = "mqtt";
+    
+    /** Type of rolling file sink. */
+    public static final String TYPE_FILE = "file";
+    
+    /** Type of UDP sink. */
+    public static final String TYPE_UDP = "udp";
+    
+    /** Type of sink into the embedded time series store. */
+    public static final String TYPE_STORE = "store";
+    
+    // not instantiable
+    private SinkFactory() {}
+    
+    /**
+     * Creates sink according to specified configuration. The sink is not opened.
+     * @param configuration configuration of the sink
+     * @param mqttCommunicator MQTT communicator of the application
+     * @return created sink
+     * @throws IllegalArgumentException if the type of the sink is not supported
+     *         or some of its properties is not valid
+     */
+    public static Sink create(SinkConfiguration configuration, MqttCommunicator mqttCommunicator) {
+        switch ( configuration.getType().toLowerCase() ) {
+            case TYPE_MQTT:
+                return new MqttSink(
+                        mqttCommunicator, (int) configuration.getLongProperty("qos", MqttSink.DEFAULT_QOS)
+                );
+            case TYPE_FILE:
+                return new RollingFileSink(
+                        Paths.get(configuration.getProperty("directory", "data")),
+                        configuration.getName(),
+                        getFormat(configuration, ReadingFormat.JSON),
+                        configuration.getLongProperty("maxFileSize", RollingFileSink.DEFAULT_MAX_FILE_SIZE),
+                        (int) configuration.getLongProperty("maxFiles", RollingFileSink.DEFAULT_MAX_FILES)
+                );
+            case TYPE_UDP:
+                String host = configuration.getProperty("host", null);
+                if ( host == null ) {
+                    throw new IllegalArgumentException("No host of UDP sink " + configuration.getName());
+                }
+                return new UdpSink(
+                        host, (int) configuration.getLongProperty("port", 0),
+                        getFormat(configuration, ReadingFormat.INFLUX)
+                );
+            case TYPE_STORE:
+                return new StoreSink(new TimeSeriesStore(
+                        Paths.get(configuration.getProperty("directory", "store")),
+                        (int) configuration.getLongProperty("retentionDays", StoreSink.DEFAULT_RETENTION_DAYS),
+                        TimeUnit.SECONDS.toMillis(
+                            configuration.getLongProperty("flushInterval", StoreSink.DEFAULT_FLUSH_INTERVAL)
+                        )
+                ));
+            default:
+                throw new IllegalArgumentException("Sink type not supported: " + configuration.getType());
+        }
+    }
+    
+    // returns format of readings specified by configuration
+    private static ReadingFormat getFormat(SinkConfiguration configuration, ReadingFormat defaultFormat) {
+        String format = configuration.getProperty("format", null);
+        if ( format == null ) {
+            return defaultFormat;
+        }
+        return ReadingFormat.valueOf(format.toUpperCase());
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import com.microrisc.simply.demos.concurrent.Threads;
+import com.microrisc.simply.demos.config.SinkConfiguration;
+import com.microrisc.simply.demos.logging.RateLimitedLogger;
+import com.microrisc.simply.demos.metrics.Counter;
+import com.microrisc.simply.demos.metrics.Gauge;
+import com.microrisc.simply.demos.metrics.MetricsRegistry;
+import com.microrisc.simply.demos.sink.ReadingQueue.OfferResult;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Feeds one sink from its bounded queue in its own thread. A reading, whose
+ * write fails, is retried with increasing delay, so that an outage of the 
+ * sink fills the queue instead of losing readings.
+ */
+final class SinkWorker {
+    
+    private static final Logger log = LoggerFactory.getLogger(SinkWorker.class);
+    
+    // minimal interval between repeated warnings relating to the same sink [in s]
+    private static final long LOG_INTERVAL = 60;
+    
+    // delay between attempts to open the sink [in s]
+    private static final long OPEN_RETRY_DELAY = 10;
+    
+    // maximal time to wait for a reading before checking, if the worker is stopped [in ms]
+    private static final long POLL_TIMEOUT = 500;
+    
+    // initial and maximal delay between attempts to write a reading [in ms]
+    private static final long WRITE_RETRY_DELAY = 500;
+    private static final long WRITE_RETRY_MAX_DELAY = 30000;
+    
+    // maximal time to wait for the thread to finish after it has been interrupted [in ms]
+    private static final long INTERRUPT_TIMEOUT = 500;
+    
+    private final RateLimitedLogger sinkLog = new RateLimitedLogger(log, LOG_INTERVAL, TimeUnit.SECONDS);
+    
+    private final String name;
+    private final Sink sink;
+    private final long offerTimeout;
+    private final ReadingQueue queue;
+    private final ReadingSpool spool;
+    private final Thread thread;
+    
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter coalesced;
+    private final Counter writeFailures;
+    
+    private volatile boolean running = true;
+    
+    // end of writing of readings remaining in the queue after stop [System.nanoTime()]
+    private volatile long drainDeadline;
+    
+    
+    /**
+     * Creates new worker of specified sink.
+     * @param configuration configuration of the sink
+     * @param sink the sink
+     * @param spoolFile file to save readings not written before stop into, 
+     *        {@code null} if they are to be discarded
+     * @param metrics registry to register metrics into
+     */
+    SinkWorker(SinkConfiguration configuration, Sink sink, Path spoolFile, MetricsRegistry metrics) {
+        this.name = configuration.getName();
+        this.sink = sink;
+        this.offerTimeout = configuration.getOfferTimeout();
+        this.queue = new ReadingQueue(
+                configuration.getQueueCapacity(), configuration.getOverflowPolicy()
+        );
+        this.spool = (spoolFile != null)? new ReadingSpool(spoolFile) : null;
+        this.written = metrics.counter(
+                "sink_written_total", "Number of readings written into sink.", "sink", name
+        );
+        this.dropped = metrics.counter(
+                "sink_dropped_total", "Number of readings dropped because of full queue of sink.", 
+                "sink", name
+        );
+        this.coalesced = metrics.counter(
+                "sink_coalesced_total", "Number of pending readings replaced by newer reading of the same node.", 
+                "sink", name
+        );
+        metrics.gauge("sink_queue_depth", "Number of readings waiting for sink.", 
+            new Gauge() {
+                @Override
+                public double getValue() {
+                    return queue.size();
+                }
+            }, "sink", name
+        );
+        this.writeFailures = metrics.counter(
+                "sink_write_failures_total", "Number of failed attempts to write reading into sink.", 
+                "sink", name
+        );
+        this.thread = Threads.newThread("sink-" + name, new Runnable() {
+            @Override
+            public void run() {
+                runWorker();
+            }
+        });
+    }
+    
+    /**
+     * @return name of the sink
+     */
+    String getName() {
+        return name;
+    }
+    
+    /**
+     * Starts the thread of the worker.
+     */
+    void start() {
+        thread.start();
+    }
+    
+    /**
+     * Puts specified reading into the queue according to the overflow policy.
+     * Waits for free space in the queue at most for the offer timeout.
+     * @param reading reading to put
+     */
+    void offer(Reading reading) {
+        OfferResult result;
+        try {
+            result = queue.offer(reading, offerTimeout);
+        } catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            result = OfferResult.REJECTED;
+        }
+        countOfferResult(result);
+        
+        switch ( result ) {
+            case REJECTED:
+                sinkLog.warn(
+                        name + ":full", "Queue of sink {} is full, reading of node {} dropped", 
+                        name, reading.getNodeId()
+                );
+                break;
+            case OLDEST_DROPPED:
+                sinkLog.warn(name + ":full", "Queue of sink {} is full, oldest reading dropped", name);
+                break;
+            default:
+                break;
+        }
+    }
+    
+    // updates metrics according to specified result of putting a reading into the queue
+    private void countOfferResult(OfferResult result) {
+        switch ( result ) {
+            case COALESCED:
+                coalesced.inc();
+                break;
+            case OLDEST_DROPPED:
+            case REJECTED:
+                dropped.inc();
+                break;
+            default:
+                break;
+        }
+    }
+    
+    // writes readings from the queue into the sink until stopped and then 
+    // until the queue is empty or the drain deadline passes
+    private void runWorker() {
+        List<Reading> unwritten = new ArrayList<>();
+        try {
+            if ( !openSink() ) {
+                return;
+            }
+            restoreSpooledReadings();
+            while ( running || (!queue.isEmpty() && System.nanoTime() - drainDeadline < 0) ) {
+                Reading reading = queue.poll(POLL_TIMEOUT);
+                if ( reading == null ) {
+                    continue;
+                }
+                boolean writeDone;
+                try {
+                    writeDone = writeWithRetry(reading);
+                } catch ( InterruptedException ex ) {
+                    unwritten.add(reading);
+                    throw ex;
+                }
+                if ( !writeDone ) {
+                    // stopped and sink is not available, the rest would be lost too
+                    unwritten.add(reading);
+                    break;
+                }
+                if ( queue.isEmpty() ) {
+                    flush();
+                }
+            }
+            flush();
+        } catch ( InterruptedException ex ) {
+            log.debug("Sink {} interrupted", name);
+        } catch ( RuntimeException ex ) {
+            log.error("Unexpected error in sink " + name, ex);
+        } finally {
+            queue.drainTo(unwritten);
+            spoolReadings(unwritten);
+            sink.close();
+        }
+    }
+    
+    // puts readings saved into the spool before the last stop into the queue
+    private void restoreSpooledReadings() throws InterruptedException {
+        if ( spool == null ) {
+            return;
+        }
+        List<Reading> readings;
+        try {
+            readings = spool.loadAndDelete();
+        } catch ( IOException ex ) {
+            log.error("Error while loading spooled readings of sink {}: {}", name, ex.toString());
+            return;
+        }
+        if ( readings.isEmpty() ) {
+            return;
+        }
+        
+        for ( Reading reading : readings ) {
+            countOfferResult(queue.offer(reading, 0));
+        }
+        log.info("{} spooled readings restored into sink {}", readings.size(), name);
+    }
+    
+    // saves specified readings into the spool
+    private void spoolReadings(List<Reading> readings) {
+        if ( readings.isEmpty() ) {
+            return;
+        }
+        if ( spool == null ) {
+            dropped.add(readings.size());
+            log.warn("{} readings not written into sink {} discarded", readings.size(), name);
+            return;
+        }
+        try {
+            spool.save(readings);
+            log.info("{} readings not written into sink {} spooled", readings.size(), name);
+        } catch ( IOException ex ) {
+            dropped.add(readings.size());
+            log.error("Error while spooling readings of sink {}: {}", name, ex.toString());
+        }
+    }
+    
+    // opens the sink, retries until success or stop
+    // returns false if the worker has been stopped meanwhile
+    private boolean openSink() throws InterruptedException {
+        while ( running ) {
+            try {
+                sink.open();
+                log.info("Sink {} opened", name);
+                return true;
+            } catch ( IOException ex ) {
+                sinkLog.error(name + ":open", "Error while opening sink {}: {}", name, ex.toString());
+            }
+            TimeUnit.SECONDS.sleep(OPEN_RETRY_DELAY);
+        }
+        return false;
+    }
+    
+    // writes specified reading into the sink, failed write is retried with 
+    // increasing delay while the worker is running, new readings meanwhile
+    // wait in the queue according to its overflow policy
+    // returns false if the write failed and the worker has been stopped
+    private boolean writeWithRetry(Reading reading) throws InterruptedException {
+        long delay = WRITE_RETRY_DELAY;
+        while ( !write(reading) ) {
+            long retryTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            while ( running && retryTime - System.nanoTime() > 0 ) {
+                TimeUnit.MILLISECONDS.sleep(Math.min(POLL_TIMEOUT, delay));
+            }
+            if ( !running ) {
+                return false;
+            }
+            delay = Math.min(2 * delay, WRITE_RETRY_MAX_DELAY);
+        }
+        return true;
+    }
+    
+    // writes specified reading into the sink, returns false if the write failed
+    private boolean write(Reading reading) {
+        try {
+            sink.write(reading);
+            written.inc();
+            return true;
+        } catch ( IOException ex ) {
+            writeFailures.inc();
+            sinkLog.warn(name + ":write", "Error while writing into sink {}: {}", name, ex.toString());
+            return false;
+        }
+    }
+    
+    // flushes buffered writes of the sink
+    private void flush() {
+        try {
+            sink.flush();
+        } catch ( IOException ex ) {
+            sinkLog.warn(name + ":flush", "Error while flushing sink {}: {}", name, ex.toString());
+        }
+    }
+    
+    /**
+     * Signals the worker to stop. Readings in the queue are still written 
+     * until specified deadline, the rest is saved into the spool.
+     * @param deadline deadline of writing as a value of {@link System#nanoTime()}
+     */
+    void beginStop(long deadline) {
+        drainDeadline = deadline;
+        running = false;
+    }
+    
+    /**
+     * Waits for the worker to finish at most until specified deadline, then 
+     * interrupts it.
+     * @param deadline deadline as a value of {@link System#nanoTime()}
+     */
+    void awaitStop(long deadline) {
+        try {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if ( remaining > 0 ) {
+                thread.join(remaining);
+            }
+            if ( thread.isAlive() ) {
+                log.warn("Sink {} has not finished in time, interrupting", name);
+                thread.interrupt();
+                thread.join(INTERRUPT_TIMEOUT);
+            }
+        } catch ( InterruptedException ex ) {
+            thread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import com.microrisc.simply.demos.store.TimeSeriesStore;
+import java.io.IOException;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends readings into the embedded time series store. Each node is one 
+ * series with one column per quantity, its key is {@code <network>/<node>}.
+ * <p>
+ * Properties: {@code directory} - directory of the store, {@code store} by 
+ * default, {@code retentionDays} - number of days to keep data for, 
+ * {@code flushInterval} - minimal interval between writes into files [in s].
+ */
+public final class StoreSink implements Sink {
+    
+    private static final Logger log = LoggerFactory.getLogger(StoreSink.class);
+    
+    /** Default number of days to keep data for. */
+    public static final int DEFAULT_RETENTION_DAYS = 30;
+    
+    /** Default minimal interval between writes into files [in s]. */
+    public static final long DEFAULT_FLUSH_INTERVAL = 900;
+    
+    private final TimeSeriesStore store;
+    
+    
+    /**
+     * Creates new store sink.
+     * @param store store to append readings into
+     */
+    public StoreSink(TimeSeriesStore store) {
+        this.store = store;
+    }
+    
+    /**
+     * Returns key of series of specified node.
+     * @param networkId ID of the network
+     * @param nodeId ID of the node
+     * @return key of the series
+     */
+    public static String getSeriesKey(String networkId, int nodeId) {
+        return networkId + "/" + nodeId;
+    }
+    
+    @Override
+    public void open() throws IOException {
+        store.open();
+    }
+    
+    @Override
+    public void write(Reading reading) {
+        Map<String, Number> values = reading.getValues();
+        String[] metrics = new String[values.size()];
+        double[] doubleValues = new double[values.size()];
+        int i = 0;
+        for ( Map.Entry<String, Number> value : values.entrySet() ) {
+            metrics[i] = value.getKey();
+            doubleValues[i] = value.getValue().doubleValue();
+            i++;
+        }
+        store.append(
+                getSeriesKey(reading.getNetworkId(), reading.getNodeId()), 
+                reading.getTimestamp(), metrics, doubleValues
+        );
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        store.flush();
+    }
+    
+    @Override
+    public void close() {
+        try {
+            store.close();
+        } catch ( IOException ex ) {
+            log.error("Error while closing store: {}", ex.toString());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.sink;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+
+/**
+ * Sends each reading as one UDP datagram, for example to a Telegraf or 
+ * InfluxDB UDP listener.
+ * <p>
+ * Properties: {@code host}, {@code port} - target of datagrams, 
+ * {@code format} - {@code influx} (default) or {@code json}.
+ */
+public final class UdpSink implements Sink {
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final String host;
+    private final int port;
+    private final ReadingFormat format;
+    
+    private InetSocketAddress target = null;
+    private DatagramSocket socket = null;
+    
+    
+    /**
+     * Creates new UDP sink.
+     * @param host target host
+     * @param port target port
+     * @param format format of readings
+     */
+    public UdpSink(String host, int port, ReadingFormat format) {
+        if ( port <= 0 || port > 65535 ) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        this.host = host;
+        this.port = port;
+        this.format = format;
+    }
+    
+    @Override
+    public void open() throws IOException {
+        target = new InetSocketAddress(host, port);
+        if ( target.isUnresolved() ) {
+            throw new IOException("Unresolved host: " + host);
+        }
+        socket = new DatagramSocket();
+    }
+    
+    @Override
+    public void write(Reading reading) throws IOException {
+        byte[] data = format.format(reading).getBytes(UTF_8);
+        socket.send(new DatagramPacket(data, data.length, target));
+    }
+    
+    @Override
+    public void flush() {
+        // datagrams are not buffered
+    }
+    
+    @Override
+    public void close() {
+        if ( socket != null ) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.store;
+
+/**
+ * Reader of a stream of bits written by {@link BitOutput}.
+ */
+final class BitInput {
+    
+    private final byte[] data;
+    
+    // position of the next bit
+    private int bitPosition = 0;
+    
+    
+    /**
+     * Creates new input.
+     * @param data bits to read
+     */
+    BitInput(byte[] data) {
+        this.data = data;
+    }
+    
+    /**
+     * @return next bit
+     * @throws IllegalStateException if there are no more bits
+     */
+    boolean readBit() {
+        return readBits(1) != 0;
+    }
+    
+    /**
+     * Reads specified number of bits.
+     * @param bits number of bits to read, at most 64
+     * @return read bits as the lowest bits of the result
+     * @throws IllegalStateException if there are not enough bits
+     */
+    long readBits(int bits) {
+        if ( bitPosition + bits > data.length * 8 ) {
+            throw new IllegalStateException("End of data");
+        }
+        long value = 0;
+        while ( bits > 0 ) {
+            int offset = bitPosition & 7;
+            int available = 8 - offset;
+            int n = Math.min(available, bits);
+            int chunk = ((data[bitPosition >>> 3] & 0xFF) >>> (available - n)) & ((1 << n) - 1);
+            value = (value << n) | chunk;
+            bitPosition += n;
+            bits -= n;
+        }
+        return value;
+    }
+}
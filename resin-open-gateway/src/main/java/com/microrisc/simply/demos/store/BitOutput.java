@@ -0,0 +1,91 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.store;
+
+import java.util.Arrays;
+
+/**
+ * Writer of a stream of bits into a growing byte array. Bits are written from
+ * the most significant bit of each byte.
+ */
+final class BitOutput {
+    
+    private byte[] buffer;
+    private int length = 0;
+    
+    // byte being filled and number of bits already written into it
+    private int current = 0;
+    private int currentBits = 0;
+    
+    
+    /**
+     * Creates new output.
+     * @param initialCapacity initial capacity of the buffer [in bytes]
+     */
+    BitOutput(int initialCapacity) {
+        this.buffer = new byte[Math.max(initialCapacity, 16)];
+    }
+    
+    /**
+     * Writes one bit.
+     * @param bit the bit
+     */
+    void writeBit(boolean bit) {
+        writeBits(bit? 1 : 0, 1);
+    }
+    
+    /**
+     * Writes specified number of the lowest bits of specified value, the most
+     * significant bit first.
+     * @param value value to write
+     * @param bits number of bits to write, at most 64
+     */
+    void writeBits(long value, int bits) {
+        while ( bits > 0 ) {
+            int free = 8 - currentBits;
+            int n = Math.min(free, bits);
+            int chunk = (int)(value >>> (bits - n)) & ((1 << n) - 1);
+            current |= chunk << (free - n);
+            currentBits += n;
+            bits -= n;
+            if ( currentBits == 8 ) {
+                appendByte(current);
+                current = 0;
+                currentBits = 0;
+            }
+        }
+    }
+    
+    // appends complete byte to the buffer
+    private void appendByte(int value) {
+        if ( length == buffer.length ) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = (byte) value;
+    }
+    
+    /**
+     * @return written bits, the last byte padded with zeros
+     */
+    byte[] toByteArray() {
+        byte[] result = Arrays.copyOf(buffer, length + ((currentBits > 0)? 1 : 0));
+        if ( currentBits > 0 ) {
+            result[length] = (byte) current;
+        }
+        return result;
+    }
+}
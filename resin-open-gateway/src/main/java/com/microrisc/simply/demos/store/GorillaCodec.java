@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.store;
+
+/**
+ * Compression of one block of a time series in the way of Facebook Gorilla.
+ * <p>
+ * The block is stored by columns - the column of timestamps first, then 
+ * the column of each metric. Timestamps are encoded as delta of deltas, 
+ * which takes one bit for regularly polled nodes. Values are encoded as XOR 
+ * with the previous value of the same metric, which takes one bit for 
+ * unchanged values and only few bits for slowly changing ones.
+ */
+final class GorillaCodec {
+    
+    // not instantiable
+    private GorillaCodec() {}
+    
+    /**
+     * Encodes specified points.
+     * @param timestamps timestamps of points, not decreasing
+     * @param columns values of points, one array per metric
+     * @param count number of points
+     * @return encoded points
+     */
+    static byte[] encode(long[] timestamps, double[][] columns, int count) {
+        BitOutput output = new BitOutput(count * (1 + columns.length * 2) + 16);
+        encodeTimestamps(output, timestamps, count);
+        for ( double[] column : columns ) {
+            encodeValues(output, column, count);
+        }
+        return output.toByteArray();
+    }
+    
+    // encodes timestamps as delta of deltas
+    private static void encodeTimestamps(BitOutput output, long[] timestamps, int count) {
+        if ( count == 0 ) {
+            return;
+        }
+        output.writeBits(timestamps[0], 64);
+        long prevDelta = 0;
+        for ( int i = 1; i < count; i++ ) {
+            long delta = timestamps[i] - timestamps[i - 1];
+            long deltaOfDelta = delta - prevDelta;
+            prevDelta = delta;
+            
+            if ( deltaOfDelta == 0 ) {
+                output.writeBit(false);
+            } else if ( deltaOfDelta >= -63 && deltaOfDelta <= 64 ) {
+                output.writeBits(0x2, 2);
+                output.writeBits(deltaOfDelta + 63, 7);
+            } else if ( deltaOfDelta >= -255 && deltaOfDelta <= 256 ) {
+                output.writeBits(0x6, 3);
+                output.writeBits(deltaOfDelta + 255, 9);
+            } else if ( deltaOfDelta >= -2047 && deltaOfDelta <= 2048 ) {
+                output.writeBits(0xE, 4);
+                output.writeBits(deltaOfDelta + 2047, 12);
+            } else {
+                output.writeBits(0xF, 4);
+                output.writeBits(deltaOfDelta, 64);
+            }
+        }
+    }
+    
+    // encodes values as XOR with previous value
+    private static void encodeValues(BitOutput output, double[] values, int count) {
+        if ( count == 0 ) {
+            return;
+        }
+        long prev = Double.doubleToRawLongBits(values[0]);
+        output.writeBits(prev, 64);
+        
+        // window of meaningful bits of the previous XOR
+        int prevLeading = Integer.MAX_VALUE;
+        int prevTrailing = 0;
+        
+        for ( int i = 1; i < count; i++ ) {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ prev;
+            prev = bits;
+            
+            if ( xor == 0 ) {
+                output.writeBit(false);
+                continue;
+            }
+            output.writeBit(true);
+            
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if ( prevLeading != Integer.MAX_VALUE && leading >= prevLeading && trailing >= prevTrailing ) {
+                // meaningful bits fit into the previous window
+                output.writeBit(false);
+                output.writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+            } else {
+                int meaningful = 64 - leading - trailing;
+                output.writeBit(true);
+                output.writeBits(leading, 5);
+                output.writeBits(meaningful & 0x3F, 6);
+                output.writeBits(xor >>> trailing, meaningful);
+                prevLeading = leading;
+                prevTrailing = trailing;
+            }
+        }
+    }
+    
+    /**
+     * Decodes points encoded by {@link #encode}.
+     * @param data encoded points
+     * @param count number of points
+     * @param timestamps array to store timestamps into
+     * @param columns arrays to store values into, one array per metric
+     * @throws IllegalStateException if the data are truncated
+     */
+    static void decode(byte[] data, int count, long[] timestamps, double[][] columns) {
+        if ( count == 0 ) {
+            return;
+        }
+        BitInput input = new BitInput(data);
+        decodeTimestamps(input, count, timestamps);
+        for ( double[] column : columns ) {
+            decodeValues(input, count, column);
+        }
+    }
+    
+    // decodes timestamps encoded as delta of deltas
+    private static void decodeTimestamps(BitInput input, int count, long[] timestamps) {
+        timestamps[0] = input.readBits(64);
+        long prevDelta = 0;
+        for ( int i = 1; i < count; i++ ) {
+            long deltaOfDelta;
+            if ( !input.readBit() ) {
+                deltaOfDelta = 0;
+            } else if ( !input.readBit() ) {
+                deltaOfDelta = input.readBits(7) - 63;
+            } else if ( !input.readBit() ) {
+                deltaOfDelta = input.readBits(9) - 255;
+            } else if ( !input.readBit() ) {
+                deltaOfDelta = input.readBits(12) - 2047;
+            } else {
+                deltaOfDelta = input.readBits(64);
+            }
+            prevDelta += deltaOfDelta;
+            timestamps[i] = timestamps[i - 1] + prevDelta;
+        }
+    }
+    
+    // decodes values encoded as XOR with previous value
+    private static void decodeValues(BitInput input, int count, double[] values) {
+        long prev = input.readBits(64);
+        values[0] = Double.longBitsToDouble(prev);
+        
+        int prevLeading = 0;
+        int prevTrailing = 0;
+        for ( int i = 1; i < count; i++ ) {
+            if ( input.readBit() ) {
+                if ( input.readBit() ) {
+                    prevLeading = (int) input.readBits(5);
+                    int meaningful = (int) input.readBits(6);
+                    if ( meaningful == 0 ) {
+                        meaningful = 64;
+                    }
+                    prevTrailing = 64 - prevLeading - meaningful;
+                }
+                long xor = input.readBits(64 - prevLeading - prevTrailing) << prevTrailing;
+                prev ^= xor;
+            }
+            values[i] = Double.longBitsToDouble(prev);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.store;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded store of time series for retention of data while the gateway is 
+ * offline.
+ * <p>
+ * Points of each series are collected in memory into blocks, which are 
+ * compressed by {@link GorillaCodec} and appended to the file of their
+ * partition at most once per flush interval. Each partition covers one day
+ * in UTC and partitions older than the retention period are deleted. Files
+ * are written only by appending, so an SD card is written sequentially in 
+ * few large chunks.
+ * <p>
+ * Format of each block: magic number, series key, names of metrics, the 
+ * first and the last timestamp, number of points, length of compressed 
+ * points, compressed points and their CRC32. A block truncated by power loss
+ * ends reading of its file.
+ * <p>
+ * Methods writing points are intended to be called from one thread. Scans 
+ * may run concurrently with writes and see persisted points only.
+ */
+public final class TimeSeriesStore {
+    
+    private static final Logger log = LoggerFactory.getLogger(TimeSeriesStore.class);
+    
+    /** Extension of partition files. */
+    public static final String FILE_EXTENSION = ".gts";
+    
+    // marks beginning of each block
+    private static final int BLOCK_MAGIC = 0x47545331;
+    
+    private static final long MS_PER_DAY = 24L * 60 * 60 * 1000;
+    
+    // maximal number of points in one block
+    private static final int MAX_BLOCK_POINTS = 720;
+    
+    // maximal number of metrics of one series
+    private static final int MAX_METRICS = 255;
+    
+    // maximal size of encoded blocks waiting for writing, newer blocks are 
+    // dropped while files cannot be written [in bytes]
+    private static final int MAX_PENDING_SIZE = 4 * 1024 * 1024;
+    
+    /**
+     * Receives points found by a scan.
+     */
+    public static interface Visitor {
+        
+        /**
+         * Called for each point found.
+         * @param seriesKey key of the series
+         * @param timestamp timestamp of the point [in ms since the epoch]
+         * @param metrics names of metrics
+         * @param values values of metrics, in the order of their names
+         */
+        void visit(String seriesKey, long timestamp, String[] metrics, double[] values);
+    }
+    
+    // points of one series collected in memory
+    private static final class OpenBlock {
+        final String seriesKey;
+        final String[] metrics;
+        final long partition;
+        final long[] timestamps = new long[MAX_BLOCK_POINTS];
+        final double[][] columns;
+        int count = 0;
+        
+        OpenBlock(String seriesKey, String[] metrics, long partition) {
+            this.seriesKey = seriesKey;
+            this.metrics = metrics;
+            this.partition = partition;
+            this.columns = new double[metrics.length][MAX_BLOCK_POINTS];
+        }
+        
+        boolean accepts(String[] metrics, long partition, long timestamp) {
+            return count < MAX_BLOCK_POINTS
+                    && this.partition == partition
+                    && timestamp >= timestamps[count - 1]
+                    && Arrays.equals(this.metrics, metrics);
+        }
+    }
+    
+    private final Path directory;
+    private final int retentionDays;
+    private final long flushInterval;
+    
+    // blocks collected in memory indexed by series keys
+    private final Map<String, OpenBlock> openBlocks = new HashMap<>();
+    
+    // encoded blocks waiting for writing indexed by partitions
+    private final Map<Long, ByteArrayOutputStream> sealedBlocks = new HashMap<>();
+    
+    private int pendingSize = 0;
+    private long lastFlushTime = 0;
+    private long lastRetentionPartition = Long.MIN_VALUE;
+    
+    
+    /**
+     * Creates new store.
+     * @param directory directory of partition files
+     * @param retentionDays number of days to keep partitions for
+     * @param flushInterval minimal interval between writes into files [in ms]
+     */
+    public TimeSeriesStore(Path directory, int retentionDays, long flushInterval) {
+        if ( retentionDays <= 0 ) {
+            throw new IllegalArgumentException("Retention must be positive: " + retentionDays);
+        }
+        if ( flushInterval < 0 ) {
+            throw new IllegalArgumentException("Flush interval cannot be negative: " + flushInterval);
+        }
+        this.directory = directory;
+        this.retentionDays = retentionDays;
+        this.flushInterval = flushInterval;
+    }
+    
+    /**
+     * Creates directory of the store and deletes expired partitions.
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        lastFlushTime = System.currentTimeMillis();
+        deleteExpiredPartitions(lastFlushTime);
+    }
+    
+    // returns partition of specified timestamp
+    private static long getPartition(long timestamp) {
+        return timestamp / MS_PER_DAY;
+    }
+    
+    // returns format of names of partition files
+    private static SimpleDateFormat createPartitionFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+    
+    // returns file of specified partition
+    private Path getPartitionFile(long partition) {
+        return directory.resolve(createPartitionFormat().format(partition * MS_PER_DAY) + FILE_EXTENSION);
+    }
+    
+    /**
+     * Appends point to specified series. Points of one series are expected 
+     * in the order of their timestamps.
+     * @param seriesKey key of the series
+     * @param timestamp timestamp of the point [in ms since the epoch]
+     * @param metrics names of metrics
+     * @param values values of metrics, in the order of their names
+     * @throws IllegalArgumentException if numbers of metrics and values differ
+     */
+    public synchronized void append(String seriesKey, long timestamp, String[] metrics, double[] values) {
+        if ( metrics.length != values.length || metrics.length > MAX_METRICS ) {
+            throw new IllegalArgumentException(
+                    "Invalid number of metrics or values: " + metrics.length + ", " + values.length
+            );
+        }
+        
+        long partition = getPartition(timestamp);
+        OpenBlock block = openBlocks.get(seriesKey);
+        if ( block != null && !block.accepts(metrics, partition, timestamp) ) {
+            seal(block);
+            block = null;
+        }
+        if ( block == null ) {
+            block = new OpenBlock(seriesKey, metrics.clone(), partition);
+            openBlocks.put(seriesKey, block);
+        }
+        
+        block.timestamps[block.count] = timestamp;
+        for ( int i = 0; i < values.length; i++ ) {
+            block.columns[i][block.count] = values[i];
+        }
+        block.count++;
+    }
+    
+    // encodes specified block and moves it among blocks waiting for writing
+    private void seal(OpenBlock block) {
+        openBlocks.remove(block.seriesKey);
+        if ( pendingSize >= MAX_PENDING_SIZE ) {
+            log.warn("Files of store cannot be written, {} points of series {} dropped", block.count, block.seriesKey);
+            return;
+        }
+        
+        byte[] points = GorillaCodec.encode(block.timestamps, block.columns, block.count);
+        CRC32 crc = new CRC32();
+        crc.update(points);
+        
+        pendingSize += points.length;
+        ByteArrayOutputStream partitionBlocks = sealedBlocks.get(block.partition);
+        if ( partitionBlocks == null ) {
+            partitionBlocks = new ByteArrayOutputStream(4096);
+            sealedBlocks.put(block.partition, partitionBlocks);
+        }
+        
+        try {
+            DataOutputStream output = new DataOutputStream(partitionBlocks);
+            output.writeInt(BLOCK_MAGIC);
+            output.writeUTF(block.seriesKey);
+            output.writeByte(block.metrics.length);
+            for ( String metric : block.metrics ) {
+                output.writeUTF(metric);
+            }
+            output.writeLong(block.timestamps[0]);
+            output.writeLong(block.timestamps[block.count - 1]);
+            output.writeShort(block.count);
+            output.writeInt(points.length);
+            output.write(points);
+            output.writeInt((int) crc.getValue());
+            output.flush();
+        } catch ( IOException ex ) {
+            // writing into memory
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    /**
+     * Writes collected points into files, if the flush interval has elapsed 
+     * since the last write.
+     * @throws IOException if an I/O error occurs, points are kept for the next flush then
+     */
+    public synchronized void flush() throws IOException {
+        long now = System.currentTimeMillis();
+        if ( now - lastFlushTime < flushInterval ) {
+            return;
+        }
+        forceFlush();
+    }
+    
+    /**
+     * Writes all collected points into files.
+     * @throws IOException if an I/O error occurs, points are kept for the next flush then
+     */
+    public synchronized void forceFlush() throws IOException {
+        for ( OpenBlock block : new ArrayList<>(openBlocks.values()) ) {
+            seal(block);
+        }
+        
+        Iterator<Map.Entry<Long, ByteArrayOutputStream>> iterator = sealedBlocks.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Map.Entry<Long, ByteArrayOutputStream> entry = iterator.next();
+            writeBlocks(getPartitionFile(entry.getKey()), entry.getValue().toByteArray());
+            iterator.remove();
+        }
+        pendingSize = 0;
+        
+        lastFlushTime = System.currentTimeMillis();
+        if ( getPartition(lastFlushTime) != lastRetentionPartition ) {
+            deleteExpiredPartitions(lastFlushTime);
+        }
+    }
+    
+    // appends specified blocks to specified file in one write, partially 
+    // written blocks are truncated in the case of an error
+    private static void writeBlocks(Path file, byte[] blocks) throws IOException {
+        try ( FileChannel channel = FileChannel.open(
+                file, StandardOpenOption.CREATE, StandardOpenOption.WRITE
+        ) ) {
+            long originalSize = channel.size();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(blocks);
+                while ( buffer.hasRemaining() ) {
+                    channel.write(buffer, originalSize + buffer.position());
+                }
+                channel.force(false);
+            } catch ( IOException ex ) {
+                channel.truncate(originalSize);
+                throw ex;
+            }
+        }
+    }
+    
+    // deletes partitions older than the retention period
+    private void deleteExpiredPartitions(long now) throws IOException {
+        long currentPartition = getPartition(now);
+        SimpleDateFormat format = createPartitionFormat();
+        try ( DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION) ) {
+            for ( Path file : stream ) {
+                String name = file.getFileName().toString();
+                long partition;
+                try {
+                    partition = getPartition(
+                            format.parse(name.substring(0, name.length() - FILE_EXTENSION.length())).getTime()
+                    );
+                } catch ( ParseException ex ) {
+                    continue;
+                }
+                if ( partition <= currentPartition - retentionDays ) {
+                    Files.deleteIfExists(file);
+                    log.info("Expired partition {} deleted", file);
+                }
+            }
+        }
+        lastRetentionPartition = currentPartition;
+    }
+    
+    /**
+     * Writes all collected points into files.
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void close() throws IOException {
+        forceFlush();
+    }
+    
+    /**
+     * Visits persisted points of specified series within specified time range.
+     * Points are visited in the order of partitions and blocks, i.e. in the 
+     * order of timestamps for each series.
+     * @param seriesKey key of the series, {@code null} for all series
+     * @param from beginning of the range, inclusive [in ms since the epoch]
+     * @param to end of the range, inclusive [in ms since the epoch]
+     * @param visitor visitor of found points
+     * @throws IOException if an I/O error occurs
+     */
+    public void scan(String seriesKey, long from, long to, Visitor visitor) throws IOException {
+        for ( long partition = getPartition(from); partition <= getPartition(to); partition++ ) {
+            Path file = getPartitionFile(partition);
+            if ( Files.exists(file) ) {
+                scanFile(file, seriesKey, from, to, visitor);
+            }
+        }
+    }
+    
+    // visits points in specified file
+    private static void scanFile(Path file, String seriesKey, long from, long to, Visitor visitor) 
+            throws IOException 
+    {
+        try ( InputStream fileInput = Files.newInputStream(file) ) {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(fileInput, 8192));
+            while ( true ) {
+                int magic;
+                try {
+                    magic = input.readInt();
+                } catch ( EOFException ex ) {
+                    return;
+                }
+                if ( magic != BLOCK_MAGIC ) {
+                    log.warn("Corrupted block in {}, rest of the file skipped", file);
+                    return;
+                }
+                
+                String blockKey = input.readUTF();
+                String[] metrics = new String[input.readUnsignedByte()];
+                for ( int i = 0; i < metrics.length; i++ ) {
+                    metrics[i] = input.readUTF();
+                }
+                long firstTimestamp = input.readLong();
+                long lastTimestamp = input.readLong();
+                int count = input.readUnsignedShort();
+                int length = input.readInt();
+                
+                if ( (seriesKey != null && !seriesKey.equals(blockKey)) 
+                        || lastTimestamp < from || firstTimestamp > to 
+                ) {
+                    // data and CRC
+                    skipFully(input, length + 4);
+                    continue;
+                }
+                
+                byte[] points = new byte[length];
+                input.readFully(points);
+                CRC32 crc = new CRC32();
+                crc.update(points);
+                if ( input.readInt() != (int) crc.getValue() ) {
+                    log.warn("Block of series {} in {} has invalid checksum, skipped", blockKey, file);
+                    continue;
+                }
+                visitBlock(blockKey, metrics, points, count, from, to, visitor);
+            }
+        } catch ( EOFException ex ) {
+            log.warn("Truncated block at the end of {}", file);
+        }
+    }
+    
+    // skips specified number of bytes
+    private static void skipFully(DataInputStream input, int length) throws IOException {
+        while ( length > 0 ) {
+            int skipped = input.skipBytes(length);
+            if ( skipped == 0 ) {
+                input.readByte();
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+    
+    // decodes points of a block and visits those within the range
+    private static void visitBlock(
+            String seriesKey, String[] metrics, byte[] points, int count, long from, long to, 
+            Visitor visitor
+    ) {
+        long[] timestamps = new long[count];
+        double[][] columns = new double[metrics.length][count];
+        try {
+            GorillaCodec.decode(points, count, timestamps, columns);
+        } catch ( IllegalStateException ex ) {
+            log.warn("Block of series {} cannot be decoded: {}", seriesKey, ex.getMessage());
+            return;
+        }
+        
+        double[] values = new double[metrics.length];
+        for ( int i = 0; i < count; i++ ) {
+            if ( timestamps[i] < from || timestamps[i] > to ) {
+                continue;
+            }
+            for ( int m = 0; m < metrics.length; m++ ) {
+                values[m] = columns[m][i];
+            }
+            visitor.visit(seriesKey, timestamps[i], metrics, values);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.topology;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Reading and writing of Simply configuration of distribution of peripherals 
+ * on nodes, i.e. of source file of the {@code dpa.fixed} initialization.
+ */
+final class PeripheralDistribution {
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    // ID of the coordinator node
+    private static final int COORDINATOR_ID = 0;
+    
+    // not instantiable
+    private PeripheralDistribution() {}
+    
+    /**
+     * Reads peripherals of nodes of specified network. Nodes declared by 
+     * {@code node}, {@code nodesInterval} and {@code nodesSet} elements are
+     * all resolved to single nodes.
+     * @param file file to read
+     * @param networkId ID of the network
+     * @return peripherals of nodes ordered by node ID, peripherals are in the
+     *         form of the configuration file
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    static Map<Integer, String> read(Path file, String networkId) throws IOException {
+        Document document = null;
+        try {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file.toFile());
+        } catch ( ParserConfigurationException | SAXException ex ) {
+            throw new IOException("Malformed peripheral distribution " + file + ": " + ex.getMessage(), ex);
+        }
+        
+        Map<Integer, String> nodePeripherals = new TreeMap<>();
+        NodeList networks = document.getElementsByTagName("network");
+        for ( int i = 0; i < networks.getLength(); i++ ) {
+            Element network = (Element) networks.item(i);
+            if ( !network.getAttribute("id").equals(networkId) ) {
+                continue;
+            }
+            
+            NodeList children = network.getElementsByTagName("*");
+            for ( int j = 0; j < children.getLength(); j++ ) {
+                Element element = (Element) children.item(j);
+                String peripherals = getPeripherals(element);
+                if ( peripherals == null ) {
+                    continue;
+                }
+                
+                switch ( element.getTagName() ) {
+                    case "node":
+                        nodePeripherals.put(parseInt(element.getAttribute("id")), peripherals);
+                        break;
+                    case "nodesInterval":
+                        int min = parseInt(element.getAttribute("min"));
+                        int max = parseInt(element.getAttribute("max"));
+                        for ( int nodeId = min; nodeId <= max; nodeId++ ) {
+                            nodePeripherals.put(nodeId, peripherals);
+                        }
+                        break;
+                    case "nodesSet":
+                        for ( String nodeId : element.getAttribute("id").split(",") ) {
+                            nodePeripherals.put(parseInt(nodeId), peripherals);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return nodePeripherals;
+    }
+    
+    // returns normalized peripherals of specified element of nodes
+    private static String getPeripherals(Element element) throws IOException {
+        for ( Node child = element.getFirstChild(); child != null; child = child.getNextSibling() ) {
+            if ( child instanceof Element && ((Element) child).getTagName().equals("peripherals") ) {
+                StringBuilder peripherals = new StringBuilder();
+                for ( String peripheral : child.getTextContent().split(",") ) {
+                    if ( peripherals.length() > 0 ) {
+                        peripherals.append(", ");
+                    }
+                    peripherals.append(parseInt(peripheral));
+                }
+                return peripherals.toString();
+            }
+        }
+        return null;
+    }
+    
+    // parses integer value of the configuration
+    private static int parseInt(String value) throws IOException {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch ( NumberFormatException ex ) {
+            throw new IOException("Malformed number in peripheral distribution: " + value, ex);
+        }
+    }
+    
+    /**
+     * Writes peripherals of specified nodes of one network. The coordinator is
+     * written as {@code node} element, other nodes with the same peripherals 
+     * as one {@code nodesSet} element.
+     * @param file file to write
+     * @param networkId ID of the network
+     * @param nodePeripherals peripherals of nodes
+     * @param comment description of the file
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path file, String networkId, Map<Integer, String> nodePeripherals, String comment) 
+            throws IOException 
+    {
+        // node IDs grouped by theirs peripherals
+        Map<String, List<Integer>> peripheralsNodes = new LinkedHashMap<>();
+        for ( Map.Entry<Integer, String> entry : new TreeMap<>(nodePeripherals).entrySet() ) {
+            if ( entry.getKey() == COORDINATOR_ID ) {
+                continue;
+            }
+            List<Integer> nodeIds = peripheralsNodes.get(entry.getValue());
+            if ( nodeIds == null ) {
+                nodeIds = new ArrayList<>();
+                peripheralsNodes.put(entry.getValue(), nodeIds);
+            }
+            nodeIds.add(entry.getKey());
+        }
+        
+        try ( Writer writer = Files.newBufferedWriter(file, UTF_8) ) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n\n");
+            writer.write("<!-- " + comment + " -->\n\n");
+            writer.write("<networks>\n");
+            writer.write("    <network id=\"" + networkId + "\">\n");
+            String coordinatorPeripherals = nodePeripherals.get(COORDINATOR_ID);
+            if ( coordinatorPeripherals != null ) {
+                writer.write("        <nodes>\n");
+                writer.write("            <node id=\"" + COORDINATOR_ID + "\">\n");
+                writer.write("                <peripherals>" + coordinatorPeripherals + "</peripherals>\n");
+                writer.write("            </node>\n");
+                writer.write("        </nodes>\n");
+            }
+            for ( Map.Entry<String, List<Integer>> entry : peripheralsNodes.entrySet() ) {
+                writer.write("        <nodesSet id=\"" + join(entry.getValue()) + "\">\n");
+                writer.write("            <peripherals>" + entry.getKey() + "</peripherals>\n");
+                writer.write("        </nodesSet>\n");
+            }
+            writer.write("    </network>\n");
+            writer.write("</networks>\n");
+        }
+    }
+    
+    // returns specified node IDs separated by commas
+    private static String join(List<Integer> nodeIds) {
+        StringBuilder joined = new StringBuilder();
+        for ( Integer nodeId : nodeIds ) {
+            if ( joined.length() > 0 ) {
+                joined.append(", ");
+            }
+            joined.append(nodeId);
+        }
+        return joined.toString();
+    }
+}
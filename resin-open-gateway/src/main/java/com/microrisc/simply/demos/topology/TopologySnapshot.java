@@ -0,0 +1,351 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.topology;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Snapshot of topology of one network taken after successful full 
+ * initialization of its Simply.
+ * <p>
+ * The snapshot consists of nodes found in the network, module IDs of these 
+ * nodes and of Simply configuration derived from the original one. The derived 
+ * configuration uses {@code dpa.fixed} initialization with generated 
+ * distribution of peripherals on exactly the snapshot nodes, without getting
+ * bonded nodes from the coordinator and without discovery. 
+ * <p>
+ * The snapshot is valid as long as the original Simply configuration and its 
+ * distribution of peripherals do not change. Correspondence with the real 
+ * network should be verified after start, see {@link #matchesBondedNodes}.
+ */
+public final class TopologySnapshot {
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    // files of the snapshot
+    private static final String SNAPSHOT_FILE = "snapshot.json";
+    private static final String DISTRIBUTION_FILE = "PeripheralDistribution.xml";
+    private static final String SIMPLY_CONFIG_FILE = "Simply.properties";
+    
+    // keys of Simply configuration
+    private static final String INITIALIZATION_TYPE = "initialization.type";
+    private static final String FIXED_SOURCE_FILE = "initialization.type.dpa.fixed.sourceFile";
+    private static final String INVOLVE_BONDED_NODES = "initialization.type.dpa.fixed.involveBondedNodes";
+    private static final String DISCOVERY = "initialization.type.dpa.discovery";
+    
+    // the only initialization type supported
+    private static final String FIXED_INITIALIZATION = "dpa.fixed";
+    
+    // ID of the coordinator node
+    private static final int COORDINATOR_ID = 0;
+    
+    private final Path directory;
+    private final Set<Integer> nodeIds;
+    private final Map<String, String> moduleIds;
+    private final long creationTime;
+    
+    // nodes of the original distribution of peripherals
+    private final Set<Integer> sourceNodeIds;
+    
+    // indicates, whether the original configuration filters nodes by bonding
+    private final boolean involvesBondedNodes;
+    
+    
+    private TopologySnapshot(
+            Path directory, Set<Integer> nodeIds, Map<String, String> moduleIds, 
+            long creationTime, SourceConfiguration source
+    ) {
+        this.directory = directory;
+        this.nodeIds = Collections.unmodifiableSet(new TreeSet<>(nodeIds));
+        this.moduleIds = Collections.unmodifiableMap(new HashMap<>(moduleIds));
+        this.creationTime = creationTime;
+        this.sourceNodeIds = source.distribution.keySet();
+        this.involvesBondedNodes = source.involvesBondedNodes;
+    }
+    
+    // original Simply configuration
+    private static final class SourceConfiguration {
+        final Properties properties = new Properties();
+        final String text;
+        final String digest;
+        final Map<Integer, String> distribution;
+        final boolean involvesBondedNodes;
+        
+        SourceConfiguration(Path simplyConfigFile, String networkId) throws IOException {
+            byte[] configBytes = Files.readAllBytes(simplyConfigFile);
+            text = new String(configBytes, UTF_8);
+            try ( Reader reader = new StringReader(text) ) {
+                properties.load(reader);
+            }
+            
+            String initializationType = properties.getProperty(INITIALIZATION_TYPE, "").trim();
+            if ( !initializationType.equals(FIXED_INITIALIZATION) ) {
+                throw new IOException(
+                        "Not supported initialization type for topology snapshot: " + initializationType
+                );
+            }
+            
+            String sourceFile = properties.getProperty(FIXED_SOURCE_FILE, "").trim();
+            Path distributionFile = simplyConfigFile.getFileSystem().getPath(sourceFile);
+            distribution = PeripheralDistribution.read(distributionFile, networkId);
+            involvesBondedNodes = !properties.getProperty(INVOLVE_BONDED_NODES, "0").trim().equals("0");
+            
+            MessageDigest messageDigest = null;
+            try {
+                messageDigest = MessageDigest.getInstance("SHA-256");
+            } catch ( NoSuchAlgorithmException ex ) {
+                throw new IllegalStateException(ex);
+            }
+            messageDigest.update(configBytes);
+            messageDigest.update(Files.readAllBytes(distributionFile));
+            
+            StringBuilder hex = new StringBuilder();
+            for ( byte b : messageDigest.digest() ) {
+                hex.append(String.format("%02x", b));
+            }
+            digest = hex.toString();
+        }
+    }
+    
+    /**
+     * Loads snapshot from specified directory.
+     * @param directory directory of the snapshot
+     * @param simplyConfigFile original Simply configuration of the network
+     * @param networkId ID of the network inside of the Simply configuration
+     * @return the snapshot, {@code null} if there is no snapshot in the directory
+     *         or if the snapshot does not correspond to the original configuration
+     * @throws IOException if the snapshot or the original configuration cannot
+     *         be read, or if the original configuration does not support snapshots
+     */
+    public static TopologySnapshot load(Path directory, Path simplyConfigFile, String networkId) 
+            throws IOException 
+    {
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        if ( !Files.exists(snapshotFile) ) {
+            return null;
+        }
+        
+        SourceConfiguration source = new SourceConfiguration(simplyConfigFile, networkId);
+        
+        JSONObject snapshotJson = null;
+        try ( Reader reader = Files.newBufferedReader(snapshotFile, UTF_8) ) {
+            snapshotJson = (JSONObject) JSONValue.parseWithException(reader);
+        } catch ( ParseException | ClassCastException ex ) {
+            throw new IOException("Malformed topology snapshot " + snapshotFile + ": " + ex, ex);
+        }
+        
+        if ( !source.digest.equals(snapshotJson.get("digest")) ) {
+            return null;
+        }
+        
+        Set<Integer> nodeIds = new LinkedHashSet<>();
+        Map<String, String> moduleIds = new HashMap<>();
+        for ( Object nodeObject : (JSONArray) snapshotJson.get("nodes") ) {
+            JSONObject nodeJson = (JSONObject) nodeObject;
+            int nodeId = (int)(long) nodeJson.get("id");
+            nodeIds.add(nodeId);
+            
+            String moduleId = (String) nodeJson.get("mid");
+            if ( moduleId != null ) {
+                moduleIds.put(String.valueOf(nodeId), moduleId);
+            }
+        }
+        
+        return new TopologySnapshot(
+                directory, nodeIds, moduleIds, (long) snapshotJson.get("created"), source
+        );
+    }
+    
+    /**
+     * Takes snapshot of specified nodes and stores it into specified directory.
+     * @param directory directory of the snapshot
+     * @param simplyConfigFile original Simply configuration of the network
+     * @param networkId ID of the network inside of the Simply configuration
+     * @param nodeIds IDs of nodes found in the network, the coordinator 
+     *        may be included
+     * @param moduleIds module IDs of the nodes, if known
+     * @return the snapshot
+     * @throws IOException if the snapshot cannot be stored, or if the original 
+     *         configuration cannot be read or does not support snapshots
+     */
+    public static TopologySnapshot save(
+            Path directory, Path simplyConfigFile, String networkId, 
+            Collection<Integer> nodeIds, Map<String, String> moduleIds
+    ) throws IOException {
+        SourceConfiguration source = new SourceConfiguration(simplyConfigFile, networkId);
+        Files.createDirectories(directory);
+        
+        // distribution of peripherals on the snapshot nodes and the coordinator
+        Map<Integer, String> distribution = new TreeMap<>();
+        Set<Integer> snapshotNodeIds = new TreeSet<>();
+        for ( Integer nodeId : nodeIds ) {
+            String peripherals = source.distribution.get(nodeId);
+            if ( peripherals != null && nodeId != COORDINATOR_ID ) {
+                distribution.put(nodeId, peripherals);
+                snapshotNodeIds.add(nodeId);
+            }
+        }
+        if ( source.distribution.containsKey(COORDINATOR_ID) ) {
+            distribution.put(COORDINATOR_ID, source.distribution.get(COORDINATOR_ID));
+        }
+        
+        Path distributionFile = directory.resolve(DISTRIBUTION_FILE);
+        PeripheralDistribution.write(
+                distributionFile, networkId, distribution, 
+                "Generated from topology snapshot of " + simplyConfigFile + ", do not edit."
+        );
+        writeSimplyConfiguration(directory.resolve(SIMPLY_CONFIG_FILE), source, distributionFile);
+        
+        long creationTime = System.currentTimeMillis();
+        JSONArray nodesJson = new JSONArray();
+        for ( Integer nodeId : snapshotNodeIds ) {
+            JSONObject nodeJson = new JSONObject();
+            nodeJson.put("id", nodeId);
+            String moduleId = moduleIds.get(String.valueOf(nodeId));
+            if ( moduleId != null ) {
+                nodeJson.put("mid", moduleId);
+            }
+            nodesJson.add(nodeJson);
+        }
+        JSONObject snapshotJson = new JSONObject();
+        snapshotJson.put("digest", source.digest);
+        snapshotJson.put("created", creationTime);
+        snapshotJson.put("nodes", nodesJson);
+        
+        // snapshot file is written as the last one - it makes the snapshot valid
+        Path tmpFile = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try ( Writer writer = Files.newBufferedWriter(tmpFile, UTF_8) ) {
+            snapshotJson.writeJSONString(writer);
+        }
+        Files.move(tmpFile, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING);
+        
+        return new TopologySnapshot(directory, snapshotNodeIds, moduleIds, creationTime, source);
+    }
+    
+    // writes Simply configuration derived from the original one
+    private static void writeSimplyConfiguration(
+            Path file, SourceConfiguration source, Path distributionFile
+    ) throws IOException {
+        Map<String, String> overrides = new HashMap<>();
+        overrides.put(FIXED_SOURCE_FILE, distributionFile.toString().replace('\\', '/'));
+        overrides.put(INVOLVE_BONDED_NODES, "0");
+        overrides.put(DISCOVERY, "0");
+        
+        StringBuilder config = new StringBuilder();
+        config.append("# Generated from topology snapshot, do not edit.\n");
+        try ( BufferedReader reader = new BufferedReader(new StringReader(source.text)) ) {
+            String line;
+            while ( (line = reader.readLine()) != null ) {
+                String key = getKey(line);
+                if ( key != null && overrides.containsKey(key) ) {
+                    line = key + " = " + overrides.remove(key);
+                }
+                config.append(line).append('\n');
+            }
+        }
+        for ( Map.Entry<String, String> override : overrides.entrySet() ) {
+            config.append(override.getKey()).append(" = ").append(override.getValue()).append('\n');
+        }
+        
+        Files.write(file, config.toString().getBytes(UTF_8));
+    }
+    
+    // returns key of specified line of properties, null for comments and empty lines
+    private static String getKey(String line) {
+        String trimmed = line.trim();
+        if ( trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith("!") ) {
+            return null;
+        }
+        int separator = trimmed.indexOf('=');
+        return (separator < 0)? trimmed : trimmed.substring(0, separator).trim();
+    }
+    
+    /**
+     * Deletes the snapshot, so that it is not used any more.
+     * @throws IOException if the snapshot cannot be deleted
+     */
+    public void invalidate() throws IOException {
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_FILE));
+    }
+    
+    /**
+     * Indicates, whether specified bonded nodes of the network lead to the 
+     * same nodes as the snapshot, if the full initialization was done.
+     * @param bondedNodeIds IDs of nodes bonded to the coordinator
+     * @return {@code true} if the snapshot corresponds to bonded nodes
+     */
+    public boolean matchesBondedNodes(Collection<Integer> bondedNodeIds) {
+        if ( !involvesBondedNodes ) {
+            return true;
+        }
+        Set<Integer> expectedNodeIds = new TreeSet<>(bondedNodeIds);
+        expectedNodeIds.retainAll(sourceNodeIds);
+        expectedNodeIds.remove(COORDINATOR_ID);
+        return expectedNodeIds.equals(nodeIds);
+    }
+    
+    /**
+     * @return the derived Simply configuration file to create Simply with
+     */
+    public Path getSimplyConfigFile() {
+        return directory.resolve(SIMPLY_CONFIG_FILE);
+    }
+    
+    /**
+     * @return IDs of nodes of the snapshot, without the coordinator
+     */
+    public Set<Integer> getNodeIds() {
+        return nodeIds;
+    }
+    
+    /**
+     * @return module IDs of nodes of the snapshot indexed by node IDs
+     */
+    public Map<String, String> getModuleIds() {
+        return moduleIds;
+    }
+    
+    /**
+     * @return time of creation of the snapshot [in ms since the epoch]
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+}
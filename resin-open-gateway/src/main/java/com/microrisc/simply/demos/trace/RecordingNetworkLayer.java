@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.trace;
+
+import com.microrisc.simply.SimplyException;
+import com.microrisc.simply.network.NetworkData;
+import com.microrisc.simply.network.NetworkLayer;
+import com.microrisc.simply.network.NetworkLayerException;
+import com.microrisc.simply.network.NetworkLayerListener;
+
+/**
+ * Network layer recording all DPA packets passing through another network 
+ * layer into a trace file, which can be replayed by {@link ReplayNetworkLayer}.
+ */
+public final class RecordingNetworkLayer implements NetworkLayer {
+    
+    private final NetworkLayer networkLayer;
+    private final TraceWriter traceWriter;
+    private volatile NetworkLayerListener listener = null;
+    
+    
+    /**
+     * Creates new layer recording traffic of specified network layer.
+     * @param networkLayer network layer to record
+     * @param traceWriter writer of the trace
+     */
+    RecordingNetworkLayer(NetworkLayer networkLayer, TraceWriter traceWriter) {
+        this.networkLayer = networkLayer;
+        this.traceWriter = traceWriter;
+    }
+    
+    @Override
+    public void start() throws SimplyException {
+        networkLayer.registerListener(new NetworkLayerListener() {
+            @Override
+            public void onGetData(NetworkData networkData) {
+                traceWriter.write(TraceWriter.RECEIVED, networkData);
+                NetworkLayerListener currentListener = listener;
+                if ( currentListener != null ) {
+                    currentListener.onGetData(networkData);
+                }
+            }
+        });
+        networkLayer.start();
+    }
+    
+    @Override
+    public void destroy() {
+        networkLayer.destroy();
+        traceWriter.close();
+    }
+    
+    @Override
+    public void registerListener(NetworkLayerListener listener) {
+        this.listener = listener;
+    }
+    
+    @Override
+    public void unregisterListener() {
+        this.listener = null;
+    }
+    
+    @Override
+    public void sendData(NetworkData networkData) throws NetworkLayerException {
+        traceWriter.write(TraceWriter.SENT, networkData);
+        networkLayer.sendData(networkData);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.trace;
+
+import com.microrisc.simply.network.AbstractNetworkLayerFactory;
+import com.microrisc.simply.network.NetworkConnectionStorage;
+import com.microrisc.simply.network.NetworkLayer;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Factory of network layer recording DPA traffic of another network layer. 
+ * Select it in Simply configuration by: <br>
+ * {@code networkLayer.factory.class = com.microrisc.simply.demos.trace.RecordingNetworkLayerFactory}
+ * <p>
+ * Configuration keys:
+ * <ul>
+ *  <li>{@code networkLayer.record.factory.class} - factory of the recorded 
+ *      network layer, which is configured by the same configuration, e.g. 
+ *      according to {@code networkLayer.type}</li>
+ *  <li>{@code networkLayer.record.directory} - directory of trace files, 
+ *      optional. Each start creates new file named by the start time.</li>
+ * </ul>
+ */
+public final class RecordingNetworkLayerFactory 
+        extends AbstractNetworkLayerFactory<Configuration, NetworkLayer> 
+{
+    // prefix of configuration keys
+    private static final String CONFIG_PREFIX = "networkLayer.record.";
+    
+    // defaults
+    private static final String DEFAULT_DIRECTORY = "traces";
+    
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public NetworkLayer getNetworkLayer(
+            NetworkConnectionStorage networkConnectionStorage, Configuration configuration
+    ) throws Exception {
+        String factoryClass = configuration.getString(CONFIG_PREFIX + "factory.class");
+        if ( factoryClass == null ) {
+            throw new IllegalArgumentException(
+                    "Factory of recorded network layer not configured: " + CONFIG_PREFIX + "factory.class"
+            );
+        }
+        AbstractNetworkLayerFactory<Configuration, NetworkLayer> factory = 
+                (AbstractNetworkLayerFactory<Configuration, NetworkLayer>) 
+                Class.forName(factoryClass).newInstance();
+        
+        TraceWriter traceWriter = createTraceWriter(
+                Paths.get(configuration.getString(CONFIG_PREFIX + "directory", DEFAULT_DIRECTORY))
+        );
+        NetworkLayer networkLayer;
+        try {
+            networkLayer = factory.getNetworkLayer(networkConnectionStorage, configuration);
+        } catch ( Exception ex ) {
+            traceWriter.close();
+            throw ex;
+        }
+        return new RecordingNetworkLayer(networkLayer, traceWriter);
+    }
+    
+    // creates writer of new trace file in specified directory named by the current time
+    private static TraceWriter createTraceWriter(Path directory) throws IOException {
+        String baseName = "dpa-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+        for ( int attempt = 1; ; attempt++ ) {
+            String fileName = baseName + ((attempt > 1)? "-" + attempt : "") + ".trace";
+            try {
+                return new TraceWriter(directory.resolve(fileName));
+            } catch ( FileAlreadyExistsException ex ) {
+                // trace of another network started within the same second
+            }
+        }
+    }
+}
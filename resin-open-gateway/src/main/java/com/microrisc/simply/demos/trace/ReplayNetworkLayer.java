@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.trace;
+
+import com.microrisc.simply.SimplyException;
+import com.microrisc.simply.demos.concurrent.Threads;
+import com.microrisc.simply.network.NetworkData;
+import com.microrisc.simply.network.NetworkLayer;
+import com.microrisc.simply.network.NetworkLayerException;
+import com.microrisc.simply.network.NetworkLayerListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Network layer answering DPA requests by replies recorded in a trace by
+ * {@link RecordingNetworkLayer}, so traffic of a real network can be 
+ * repeated without any IQRF hardware.
+ * <p>
+ * Each request is answered by the next not yet replayed exchange recorded 
+ * for the same request. If there is no such exchange, the next not yet
+ * replayed exchange recorded for request with the same node address, 
+ * peripheral and command is used. Each exchange is replayed once, no matter
+ * which of the two ways it has been matched by. Replies are delivered after 
+ * their recorded delays divided by the speed of the replay. Requests without
+ * any recorded exchange, like requests, which were not answered in the 
+ * trace, are never answered.
+ * <p>
+ * If all exchanges matching a request are exhausted, they are replayed from 
+ * the beginning again, unless looping is disabled.
+ */
+public final class ReplayNetworkLayer implements NetworkLayer {
+    
+    private static final Logger log = LoggerFactory.getLogger(ReplayNetworkLayer.class);
+    
+    // indexes of exchanges recorded for one key in the order of recording
+    private static final class ExchangeSequence {
+        private final List<Integer> indexes = new ArrayList<>();
+        private int next = 0;
+    }
+    
+    // recorded exchanges in the order of recording
+    private final List<TraceExchange> exchanges;
+    
+    // indicates for each exchange, whether it has been replayed, shared by 
+    // both ways of matching, guarded by the layer
+    private final boolean[] replayed;
+    
+    // exchanges indexed by whole requests and by headers of requests
+    private final Map<String, ExchangeSequence> requestExchanges = new HashMap<>();
+    private final Map<Integer, ExchangeSequence> headerExchanges = new HashMap<>();
+    
+    private final double speed;
+    private final boolean loop;
+    
+    private final ScheduledExecutorService scheduler;
+    private volatile NetworkLayerListener listener = null;
+    
+    // statistics of matching of requests
+    private final AtomicLong requestMatches = new AtomicLong();
+    private final AtomicLong headerMatches = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+    
+    
+    /**
+     * Creates new layer replaying specified exchanges.
+     * @param exchanges recorded exchanges in the order of recording
+     * @param speed speed of the replay, 1 for the recorded speed
+     * @param loop indicates, whether exhausted exchanges are replayed again
+     */
+    ReplayNetworkLayer(List<TraceExchange> exchanges, double speed, boolean loop) {
+        if ( speed <= 0 ) {
+            throw new IllegalArgumentException("Speed of replay must be positive: " + speed);
+        }
+        this.exchanges = new ArrayList<>(exchanges);
+        this.replayed = new boolean[exchanges.size()];
+        for ( int i = 0; i < this.exchanges.size(); i++ ) {
+            short[] request = this.exchanges.get(i).getRequest();
+            getSequence(requestExchanges, getRequestKey(request)).indexes.add(i);
+            getSequence(headerExchanges, TraceReader.getHeaderKey(request)).indexes.add(i);
+        }
+        this.speed = speed;
+        this.loop = loop;
+        this.scheduler = Threads.newScheduledExecutor("replay-network");
+    }
+    
+    // returns sequence of specified key, creates it if it does not exist
+    private static <K> ExchangeSequence getSequence(Map<K, ExchangeSequence> sequences, K key) {
+        ExchangeSequence sequence = sequences.get(key);
+        if ( sequence == null ) {
+            sequence = new ExchangeSequence();
+            sequences.put(key, sequence);
+        }
+        return sequence;
+    }
+    
+    // returns key of whole request
+    private static String getRequestKey(short[] request) {
+        return Arrays.toString(request);
+    }
+    
+    @Override
+    public void start() throws SimplyException {
+        log.info(
+                "Replay of {} different requests started, speed: {}", 
+                requestExchanges.size(), speed
+        );
+    }
+    
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        log.info(
+                "Replay finished, requests matched: {}, matched by header only: {}, unmatched: {}",
+                requestMatches.get(), headerMatches.get(), unmatched.get()
+        );
+    }
+    
+    @Override
+    public void registerListener(NetworkLayerListener listener) {
+        this.listener = listener;
+    }
+    
+    @Override
+    public void unregisterListener() {
+        this.listener = null;
+    }
+    
+    @Override
+    public void sendData(NetworkData networkData) throws NetworkLayerException {
+        short[] request = networkData.getData();
+        if ( request.length < TraceReader.HEADER_LENGTH ) {
+            throw new NetworkLayerException("DPA request too short: " + Arrays.toString(request));
+        }
+        
+        TraceExchange exchange = nextExchange(request);
+        if ( exchange == null ) {
+            log.debug("No recorded exchange for request: {}", Arrays.toString(request));
+            return;
+        }
+        
+        try {
+            for ( TraceExchange.Reply reply : exchange.getReplies() ) {
+                deliver(networkData.getNetworkId(), reply);
+            }
+        } catch ( RejectedExecutionException ex ) {
+            throw new NetworkLayerException("Replay network destroyed");
+        }
+    }
+    
+    // returns exchange to replay as answer to specified request, null if there is none
+    private synchronized TraceExchange nextExchange(short[] request) {
+        ExchangeSequence requestSequence = requestExchanges.get(getRequestKey(request));
+        TraceExchange exchange = next(requestSequence);
+        if ( exchange != null ) {
+            requestMatches.incrementAndGet();
+            return exchange;
+        }
+        
+        ExchangeSequence headerSequence = headerExchanges.get(TraceReader.getHeaderKey(request));
+        exchange = next(headerSequence);
+        if ( exchange != null ) {
+            headerMatches.incrementAndGet();
+            return exchange;
+        }
+        
+        // all matching exchanges replayed - start again
+        if ( loop && headerSequence != null ) {
+            if ( requestSequence != null ) {
+                rewind(requestSequence);
+                requestMatches.incrementAndGet();
+                return next(requestSequence);
+            }
+            rewind(headerSequence);
+            headerMatches.incrementAndGet();
+            return next(headerSequence);
+        }
+        
+        unmatched.incrementAndGet();
+        return null;
+    }
+    
+    // returns next not yet replayed exchange of specified sequence and marks 
+    // it as replayed, null if there is none
+    private TraceExchange next(ExchangeSequence sequence) {
+        if ( sequence == null ) {
+            return null;
+        }
+        while ( sequence.next < sequence.indexes.size() ) {
+            int index = sequence.indexes.get(sequence.next++);
+            if ( !replayed[index] ) {
+                replayed[index] = true;
+                return exchanges.get(index);
+            }
+        }
+        return null;
+    }
+    
+    // makes all exchanges of specified sequence available for replay again
+    private void rewind(ExchangeSequence sequence) {
+        for ( int index : sequence.indexes ) {
+            replayed[index] = false;
+        }
+        sequence.next = 0;
+    }
+    
+    // delivers specified reply after its delay scaled by the speed
+    private void deliver(final String networkId, final TraceExchange.Reply reply) {
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                NetworkLayerListener currentListener = listener;
+                if ( currentListener != null ) {
+                    currentListener.onGetData(new NetworkData(reply.getData(), networkId));
+                }
+            }
+        }, Math.round(reply.getDelay() / speed), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.trace;
+
+import com.microrisc.simply.network.AbstractNetworkLayerFactory;
+import com.microrisc.simply.network.NetworkConnectionStorage;
+import com.microrisc.simply.network.NetworkLayer;
+import java.nio.file.Paths;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Factory of network layer replaying recorded DPA traffic. Select it in 
+ * Simply configuration by: <br>
+ * {@code networkLayer.factory.class = com.microrisc.simply.demos.trace.ReplayNetworkLayerFactory}
+ * <p>
+ * Configuration keys:
+ * <ul>
+ *  <li>{@code networkLayer.type.replay.file} - trace file to replay</li>
+ *  <li>{@code networkLayer.type.replay.speed} - speed of the replay, 1 for 
+ *      the recorded speed, optional</li>
+ *  <li>{@code networkLayer.type.replay.loop} - whether exhausted exchanges 
+ *      are replayed again, optional</li>
+ * </ul>
+ */
+public final class ReplayNetworkLayerFactory 
+        extends AbstractNetworkLayerFactory<Configuration, NetworkLayer> 
+{
+    // prefix of configuration keys
+    private static final String CONFIG_PREFIX = "networkLayer.type.replay.";
+    
+    // defaults
+    private static final double DEFAULT_SPEED = 1;
+    private static final boolean DEFAULT_LOOP = true;
+    
+    
+    @Override
+    public NetworkLayer getNetworkLayer(
+            NetworkConnectionStorage networkConnectionStorage, Configuration configuration
+    ) throws Exception {
+        String file = configuration.getString(CONFIG_PREFIX + "file");
+        if ( file == null ) {
+            throw new IllegalArgumentException("Trace file not configured: " + CONFIG_PREFIX + "file");
+        }
+        return new ReplayNetworkLayer(
+                TraceReader.read(Paths.get(file)),
+                configuration.getDouble(CONFIG_PREFIX + "speed", DEFAULT_SPEED),
+                configuration.getBoolean(CONFIG_PREFIX + "loop", DEFAULT_LOOP)
+        );
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * DPA request recorded in a trace together with packets received as 
+ * answers to it, i.e. confirmation and response.
+ */
+final class TraceExchange {
+    
+    /**
+     * Packet received as an answer to the request.
+     */
+    static final class Reply {
+        private final long delay;
+        private final short[] data;
+        
+        private Reply(long delay, short[] data) {
+            this.delay = delay;
+            this.data = data;
+        }
+        
+        /**
+         * @return time from sending of the request to reception of the packet [in ns]
+         */
+        long getDelay() {
+            return delay;
+        }
+        
+        /**
+         * @return bytes of the packet
+         */
+        short[] getData() {
+            return data.clone();
+        }
+    }
+    
+    private final long time;
+    private final short[] request;
+    private final List<Reply> replies = new ArrayList<>(2);
+    
+    
+    /**
+     * Creates new exchange without replies.
+     * @param time time of sending of the request since the start of the trace [in ns]
+     * @param request bytes of the request
+     */
+    TraceExchange(long time, short[] request) {
+        this.time = time;
+        this.request = request;
+    }
+    
+    /**
+     * Adds packet received at specified time.
+     * @param receptionTime time of reception since the start of the trace [in ns]
+     * @param data bytes of the packet
+     */
+    void addReply(long receptionTime, short[] data) {
+        replies.add(new Reply(receptionTime - time, data));
+    }
+    
+    /**
+     * @return bytes of the request
+     */
+    short[] getRequest() {
+        return request;
+    }
+    
+    /**
+     * @return packets received as answers to the request, in the order of reception
+     */
+    List<Reply> getReplies() {
+        return Collections.unmodifiableList(replies);
+    }
+}
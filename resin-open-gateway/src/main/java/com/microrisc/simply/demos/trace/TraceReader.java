@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.trace;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads trace files written by {@link TraceWriter}.
+ * <p>
+ * Each received packet is assigned to the last preceding sent request with 
+ * the same node address, peripheral and command. Received packets without 
+ * such a request, e.g. asynchronous messages of nodes, are skipped.
+ */
+final class TraceReader {
+    
+    private static final Logger log = LoggerFactory.getLogger(TraceReader.class);
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    // length of DPA header: NADR, PNUM, PCMD, HWPID
+    static final int HEADER_LENGTH = 6;
+    
+    // bit of PCMD marking responses
+    private static final int RESPONSE_FLAG = 0x80;
+    
+    
+    private TraceReader() {}
+    
+    /**
+     * Reads exchanges recorded in specified trace file.
+     * @param file the trace file
+     * @return exchanges in the order of sending of their requests
+     * @throws IOException if the file cannot be read or has bad format
+     */
+    static List<TraceExchange> read(Path file) throws IOException {
+        List<TraceExchange> exchanges = new ArrayList<>();
+        
+        // last requests indexed by their headers
+        Map<Integer, TraceExchange> lastRequests = new HashMap<>();
+        int skipped = 0;
+        
+        try ( BufferedReader reader = Files.newBufferedReader(file, UTF_8) ) {
+            String line;
+            int lineNumber = 0;
+            while ( (line = reader.readLine()) != null ) {
+                lineNumber++;
+                line = line.trim();
+                if ( line.isEmpty() || line.startsWith("#") ) {
+                    continue;
+                }
+                
+                String[] items = line.split("\\s+");
+                if ( items.length != 4 ) {
+                    throw new IOException("Bad format of line " + lineNumber + " of " + file);
+                }
+                long time;
+                short[] data;
+                try {
+                    time = Math.round(Double.parseDouble(items[0]) * 1000000);
+                    data = parseBytes(items[3]);
+                } catch ( NumberFormatException ex ) {
+                    throw new IOException("Bad format of line " + lineNumber + " of " + file + ": " + ex);
+                }
+                if ( data.length < HEADER_LENGTH ) {
+                    throw new IOException("DPA packet too short at line " + lineNumber + " of " + file);
+                }
+                
+                switch ( items[1].charAt(0) ) {
+                    case TraceWriter.SENT:
+                        TraceExchange exchange = new TraceExchange(time, data);
+                        exchanges.add(exchange);
+                        lastRequests.put(getHeaderKey(data), exchange);
+                        break;
+                    case TraceWriter.RECEIVED:
+                        TraceExchange request = lastRequests.get(getHeaderKey(data));
+                        if ( request != null ) {
+                            request.addReply(time, data);
+                        } else {
+                            skipped++;
+                        }
+                        break;
+                    default:
+                        throw new IOException("Bad direction at line " + lineNumber + " of " + file);
+                }
+            }
+        }
+        
+        if ( skipped > 0 ) {
+            log.info("{} received packets of trace {} not answering any request skipped", skipped, file);
+        }
+        return exchanges;
+    }
+    
+    /**
+     * Returns key of the header of specified packet: node address, peripheral
+     * and command without the response flag.
+     * @param packet the packet
+     * @return key of the header
+     */
+    static int getHeaderKey(short[] packet) {
+        int nadr = (packet[0] & 0xFF) | ((packet[1] & 0xFF) << 8);
+        return (nadr << 16) | ((packet[2] & 0xFF) << 8) | (packet[3] & 0xFF & ~RESPONSE_FLAG);
+    }
+    
+    // parses bytes in hex separated by dots
+    private static short[] parseBytes(String text) {
+        String[] items = text.split("\\.");
+        short[] bytes = new short[items.length];
+        for ( int i = 0; i < items.length; i++ ) {
+            bytes[i] = (short) Integer.parseInt(items[i], 16);
+        }
+        return bytes;
+    }
+}
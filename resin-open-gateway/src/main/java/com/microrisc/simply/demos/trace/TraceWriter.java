@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.trace;
+
+import com.microrisc.simply.network.NetworkData;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes DPA packets passing through a network layer into a trace file.
+ * <p>
+ * Each packet is written on one line: time since the start of the trace 
+ * [in ms, with microsecond precision], direction ({@code >} sent, {@code <} 
+ * received), network ID and bytes of the packet in hex separated by dots. 
+ * Lines starting with {@code #} are comments. Confirmations are received 
+ * packets with response code {@code ff}.
+ * <p>
+ * Every line is flushed, so the trace survives a crash of the gateway. 
+ * After a write error, the trace is closed and packets are not written 
+ * any more, the network layer is not affected.
+ */
+final class TraceWriter {
+    
+    private static final Logger log = LoggerFactory.getLogger(TraceWriter.class);
+    
+    /** Direction of packets sent into the network. */
+    static final char SENT = '>';
+    
+    /** Direction of packets received from the network. */
+    static final char RECEIVED = '<';
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private static final String HEX_DIGITS = "0123456789abcdef";
+    
+    private final Path file;
+    private final long startTime;
+    private BufferedWriter writer;
+    
+    
+    /**
+     * Creates new trace file and writes its header. 
+     * @param file the file
+     * @throws FileAlreadyExistsException if the file already exists
+     * @throws IOException if the file cannot be created
+     */
+    TraceWriter(Path file) throws IOException {
+        this.file = file;
+        Path directory = file.toAbsolutePath().getParent();
+        if ( directory != null ) {
+            Files.createDirectories(directory);
+        }
+        this.writer = Files.newBufferedWriter(file, UTF_8, StandardOpenOption.CREATE_NEW);
+        this.startTime = System.nanoTime();
+        
+        String start = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.ROOT).format(new Date());
+        writer.write("# DPA trace started " + start);
+        writer.newLine();
+        writer.write("# time [ms], direction (> sent, < received), network ID, bytes");
+        writer.newLine();
+        writer.flush();
+    }
+    
+    /**
+     * Writes specified packet.
+     * @param direction direction of the packet, {@link #SENT} or {@link #RECEIVED}
+     * @param networkData the packet
+     */
+    synchronized void write(char direction, NetworkData networkData) {
+        if ( writer == null ) {
+            return;
+        }
+        long time = (System.nanoTime() - startTime) / 1000;
+        
+        StringBuilder line = new StringBuilder(64);
+        line.append(time / 1000).append('.');
+        long micros = time % 1000;
+        if ( micros < 100 ) {
+            line.append( (micros < 10)? "00" : "0" );
+        }
+        line.append(micros).append(' ').append(direction).append(' ')
+            .append(networkData.getNetworkId()).append(' ');
+        appendBytes(line, networkData.getData());
+        
+        try {
+            writer.write(line.toString());
+            writer.newLine();
+            writer.flush();
+        } catch ( IOException ex ) {
+            log.error("Error while writing DPA trace {}, recording stopped: {}", file, ex.toString());
+            close();
+        }
+    }
+    
+    // appends specified bytes in hex separated by dots
+    private static void appendBytes(StringBuilder line, short[] bytes) {
+        for ( int i = 0; i < bytes.length; i++ ) {
+            if ( i > 0 ) {
+                line.append('.');
+            }
+            line.append(HEX_DIGITS.charAt((bytes[i] >> 4) & 0x0F));
+            line.append(HEX_DIGITS.charAt(bytes[i] & 0x0F));
+        }
+    }
+    
+    /**
+     * Closes the trace file.
+     */
+    synchronized void close() {
+        if ( writer == null ) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch ( IOException ex ) {
+            log.error("Error while closing DPA trace {}: {}", file, ex.toString());
+        }
+        writer = null;
+    }
+}
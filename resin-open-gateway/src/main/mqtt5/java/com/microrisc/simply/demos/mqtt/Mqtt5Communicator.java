@@ -0,0 +1,328 @@
+/*
+ * Copyright 2016 MICRORISC s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.microrisc.simply.demos.mqtt;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttClient;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MqttDefaultFilePersistence;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.UserProperty;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Communicator with MQTT broker over MQTT 5.
+ * <p>
+ * Compared to MQTT 3.1.1 communicator:
+ * <ul>
+ *   <li>Topic aliases are used, if the broker allows them. The client assigns
+ *       an alias to each topic at its first publication, so that long topic
+ *       names are sent only once per connection.</li>
+ *   <li>Published messages carry message expiry interval, if configured, so
+ *       that the broker drops stale telemetry instead of delivering it to
+ *       subscribers connecting later.</li>
+ *   <li>Content type and sequence number of each message are sent in user
+ *       properties, not in the payload.</li>
+ * </ul>
+ * Available only in builds with the {@code mqtt5} profile, created by
+ * {@link MqttCommunicator#create}.
+ */
+public final class Mqtt5Communicator extends MqttCommunicator {
+    
+    private static final Logger log = LoggerFactory.getLogger(Mqtt5Communicator.class);
+    
+    // all payloads published by the gateway are JSON
+    private static final String CONTENT_TYPE = "application/json";
+    
+    // names of user properties
+    private static final String CONTENT_TYPE_PROPERTY = "content-type";
+    private static final String SEQUENCE_PROPERTY = "seq";
+    
+    private volatile MqttClient client;
+    private volatile String brokerUrl;
+    private volatile MqttConnectionOptions connectionOptions;
+    private volatile long messageExpiry;
+    
+    // sequence number of published messages
+    private final AtomicLong sequence = new AtomicLong();
+    
+    // callback of the client
+    private final MqttCallback callback = new MqttCallback() {
+        @Override
+        public void disconnected(MqttDisconnectResponse disconnectResponse) {
+            log.warn("Connection to {} lost! {}", brokerUrl, disconnectResponse);
+            recordConnectionLost();
+        }
+
+        @Override
+        public void mqttErrorOccurred(org.eclipse.paho.mqttv5.common.MqttException exception) {
+            log.warn("MQTT error: {}", exception.toString());
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message) throws Exception {
+            org.eclipse.paho.client.mqttv3.MqttMessage arrivedMessage 
+                    = new org.eclipse.paho.client.mqttv3.MqttMessage(message.getPayload());
+            arrivedMessage.setQos(message.getQos());
+            Mqtt5Communicator.this.messageArrived(topic, arrivedMessage);
+        }
+
+        @Override
+        public void deliveryComplete(IMqttToken token) {
+        }
+
+        @Override
+        public void connectComplete(boolean reconnect, String serverURI) {
+            if ( reconnect ) {
+                log.info("Reconnected to {}", serverURI);
+                recordReconnect();
+                resubscribe();
+            }
+        }
+
+        @Override
+        public void authPacketArrived(int reasonCode, MqttProperties properties) {
+        }
+    };
+    
+    
+    /**
+     * Creates new communicator and connects it to the broker.
+     * @param mqttConfig configuration of the connection
+     * @throws MqttException if the connection cannot be established
+     */
+    public Mqtt5Communicator(MqttConfiguration mqttConfig) throws MqttException {
+        super(mqttConfig.isQuiteMode());
+        
+        MqttConnectionOptions options = createConnectionOptions(mqttConfig);
+        String url = getBrokerUrl(mqttConfig);
+        MqttClient newClient = createClient(url, mqttConfig);
+        connect(newClient, url, options);
+        
+        this.client = newClient;
+        this.brokerUrl = url;
+        this.connectionOptions = options;
+        this.messageExpiry = mqttConfig.getMessageExpiry();
+    }
+    
+    // creates connection options according to specified configuration
+    private static MqttConnectionOptions createConnectionOptions(MqttConfiguration mqttConfig) 
+            throws MqttException 
+    {
+        MqttConnectionOptions options = new MqttConnectionOptions();
+        options.setCleanStart(mqttConfig.isCleanSession());
+        options.setAutomaticReconnect(true);
+        
+        if ( !mqttConfig.getPassword().isEmpty() ) {
+            options.setPassword(mqttConfig.getPassword().getBytes());
+        }
+        if ( !mqttConfig.getUsername().isEmpty() ) {
+            options.setUserName(mqttConfig.getUsername());
+        }
+        if ( !mqttConfig.getCertFilePath().isEmpty() ) {
+            try {
+                options.setSocketFactory(createSocketFactory(mqttConfig.getCertFilePath()));
+            } catch ( GeneralSecurityException | IOException ex ) {
+                throw new MqttException(ex);
+            }
+        }
+        return options;
+    }
+    
+    // creates client of specified broker
+    private MqttClient createClient(String url, MqttConfiguration mqttConfig) throws MqttException {
+        try {
+            MqttClient newClient = new MqttClient(
+                    url, mqttConfig.getClientId(), 
+                    new MqttDefaultFilePersistence(System.getProperty("java.io.tmpdir"))
+            );
+            newClient.setCallback(callback);
+            return newClient;
+        } catch ( org.eclipse.paho.mqttv5.common.MqttException ex ) {
+            throw new MqttException(ex);
+        }
+    }
+    
+    // connects specified client to the broker
+    private void connect(MqttClient newClient, String url, MqttConnectionOptions options) 
+            throws MqttException 
+    {
+        log("Connecting to " + url + " with client ID " + newClient.getClientId());
+        try {
+            IMqttToken token = newClient.connectWithResult(options);
+            Integer topicAliasMaximum = (token.getResponseProperties() != null)? 
+                    token.getResponseProperties().getTopicAliasMaximum() : null;
+            log.info(
+                    "Connected over MQTT 5, topic aliases allowed by broker: {}", 
+                    (topicAliasMaximum != null)? topicAliasMaximum : 0
+            );
+        } catch ( org.eclipse.paho.mqttv5.common.MqttException ex ) {
+            throw new MqttException(ex);
+        }
+    }
+    
+    @Override
+    protected boolean isConnected() {
+        MqttClient currentClient = client;
+        return ( currentClient != null && currentClient.isConnected() );
+    }
+    
+    @Override
+    public synchronized void publish(String topicName, int qos, byte[] payload) throws MqttException {
+        if ( !isQuietMode() ) {
+            log.debug("Publishing to topic \"{}\" qos {}", topicName, qos);
+        }
+        
+        List<UserProperty> userProperties = new ArrayList<>(2);
+        userProperties.add(new UserProperty(CONTENT_TYPE_PROPERTY, CONTENT_TYPE));
+        userProperties.add(new UserProperty(SEQUENCE_PROPERTY, Long.toString(sequence.incrementAndGet())));
+        
+        MqttProperties properties = new MqttProperties();
+        properties.setUserProperties(userProperties);
+        if ( messageExpiry > 0 ) {
+            properties.setMessageExpiryInterval(messageExpiry);
+        }
+        
+        MqttMessage message = new MqttMessage(payload);
+        message.setQos(qos);
+        message.setProperties(properties);
+        
+        long start = System.nanoTime();
+        try {
+            client.publish(topicName, message);
+        } catch ( org.eclipse.paho.mqttv5.common.MqttException ex ) {
+            recordPublication(payload.length, System.nanoTime() - start, false);
+            throw new MqttException(ex);
+        }
+        recordPublication(payload.length, System.nanoTime() - start, true);
+    }
+    
+    @Override
+    public synchronized void reconfigure(MqttConfiguration mqttConfig) throws MqttException {
+        MqttConnectionOptions newOptions = createConnectionOptions(mqttConfig);
+        String newBrokerUrl = getBrokerUrl(mqttConfig);
+        MqttClient newClient = createClient(newBrokerUrl, mqttConfig);
+        
+        // the old connection is closed first in order not to be taken over by 
+        // the new one in the case of the same client ID
+        MqttClient oldClient = client;
+        if ( oldClient.isConnected() ) {
+            try {
+                oldClient.disconnect();
+            } catch ( org.eclipse.paho.mqttv5.common.MqttException ex ) {
+                log.warn("Disconnecting from {} failed: {}", brokerUrl, ex.toString());
+            }
+        }
+        
+        try {
+            connect(newClient, newBrokerUrl, newOptions);
+        } catch ( MqttException ex ) {
+            log.warn("Connecting to {} failed, restoring connection to {}", newBrokerUrl, brokerUrl);
+            try {
+                oldClient.connect(connectionOptions);
+            } catch ( org.eclipse.paho.mqttv5.common.MqttException reconnectEx ) {
+                log.error("Restoring connection to {} failed: {}", brokerUrl, reconnectEx.toString());
+            }
+            throw ex;
+        }
+        
+        client = newClient;
+        brokerUrl = newBrokerUrl;
+        connectionOptions = newOptions;
+        messageExpiry = mqttConfig.getMessageExpiry();
+        setQuietMode(mqttConfig.isQuiteMode());
+        resubscribe();
+        
+        try {
+            oldClient.close();
+        } catch ( org.eclipse.paho.mqttv5.common.MqttException ex ) {
+            log.warn("Closing of previous client failed: {}", ex.toString());
+        }
+    }
+    
+    @Override
+    public void shutdown(long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        MqttClient currentClient = client;
+        
+        int undelivered = 0;
+        for ( IMqttToken token : currentClient.getPendingTokens() ) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                if ( remaining > 0 ) {
+                    token.waitForCompletion(remaining);
+                }
+            } catch ( org.eclipse.paho.mqttv5.common.MqttException ex ) {
+                log.debug("Waiting for delivery failed: {}", ex.toString());
+            }
+            if ( !token.isComplete() ) {
+                undelivered++;
+            }
+        }
+        if ( undelivered > 0 ) {
+            log.warn("{} messages not delivered before shutdown, kept in persistence", undelivered);
+        }
+        
+        try {
+            if ( currentClient.isConnected() ) {
+                currentClient.disconnect(Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            }
+            currentClient.close();
+        } catch ( org.eclipse.paho.mqttv5.common.MqttException ex ) {
+            log.warn("Disconnecting from {} failed: {}", brokerUrl, ex.toString());
+        }
+        log("Disconnected");
+    }
+    
+    @Override
+    public void disconnect() throws MqttException {
+        try {
+            client.disconnect();
+        } catch ( org.eclipse.paho.mqttv5.common.MqttException ex ) {
+            throw new MqttException(ex);
+        }
+    }
+    
+    @Override
+    protected void subscribeOnBroker(String topicName, int qos) throws MqttException {
+        try {
+            client.subscribe(topicName, qos);
+        } catch ( org.eclipse.paho.mqttv5.common.MqttException ex ) {
+            throw new MqttException(ex);
+        }
+    }
+    
+    @Override
+    protected void unsubscribeOnBroker(String topicName) throws MqttException {
+        try {
+            client.unsubscribe(topicName);
+        } catch ( org.eclipse.paho.mqttv5.common.MqttException ex ) {
+            throw new MqttException(ex);
+        }
+    }
+}